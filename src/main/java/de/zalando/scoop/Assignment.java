@@ -0,0 +1,84 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The partitions a single member owns according to an {@link AssignmentTable}.
+ */
+public final class Assignment {
+
+    private final AssignmentTable table;
+    private final String member;
+    private final BitSet ownedPartitions;
+    private final BitSet pendingPartitions;
+
+    public Assignment(final AssignmentTable table, final String member) {
+        this(table, member, new BitSet());
+    }
+
+    /**
+     * @param pendingPartitions partitions assigned to the member which are not active yet as their state is
+     *                          still being handed over
+     */
+    Assignment(final AssignmentTable table, final String member, final BitSet pendingPartitions) {
+        this.table = checkNotNull(table, "assignment table must not be null");
+        this.member = checkNotNull(member, "member must not be null");
+        checkNotNull(pendingPartitions, "pending partitions must not be null");
+        this.ownedPartitions = table.partitionsOf(member);
+        this.pendingPartitions = (BitSet) pendingPartitions.clone();
+        this.pendingPartitions.and(ownedPartitions);
+        this.ownedPartitions.andNot(this.pendingPartitions);
+    }
+
+    public AssignmentTable getTable() {
+        return table;
+    }
+
+    public String getMember() {
+        return member;
+    }
+
+    public long getEpoch() {
+        return table.getEpoch();
+    }
+
+    public int getNumberOfPartitions() {
+        return table.getNumberOfPartitions();
+    }
+
+    public boolean isOwned(final int partition) {
+        return ownedPartitions.get(partition);
+    }
+
+    public int[] getOwnedPartitions() {
+        return ownedPartitions.stream().toArray();
+    }
+
+    public BitSet getOwnedPartitionSet() {
+        return (BitSet) ownedPartitions.clone();
+    }
+
+    /**
+     * @return partitions assigned to the member which are not owned yet as their state is still being handed
+     * over
+     */
+    public BitSet getPendingPartitionSet() {
+        return (BitSet) pendingPartitions.clone();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("epoch", table.getEpoch())
+                .add("member", member)
+                .add("numberOfPartitions", table.getNumberOfPartitions())
+                .add("ownedPartitions", ownedPartitions)
+                .add("pendingPartitions", pendingPartitions)
+                .toString();
+    }
+}
@@ -0,0 +1,725 @@
+package de.zalando.scoop;
+
+
+import akka.actor.ActorIdentity;
+import akka.actor.ActorRef;
+import akka.actor.ActorSelection;
+import akka.actor.Address;
+import akka.actor.Cancellable;
+import akka.actor.Identify;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.actor.UntypedActor;
+import akka.cluster.Cluster;
+import akka.cluster.ClusterEvent;
+import akka.cluster.ClusterEvent.CurrentClusterState;
+import akka.cluster.ClusterEvent.MemberEvent;
+import akka.cluster.ClusterEvent.MemberExited;
+import akka.cluster.ClusterEvent.MemberLeft;
+import akka.cluster.ClusterEvent.MemberRemoved;
+import akka.cluster.ClusterEvent.MemberUp;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.zalando.scoop.ScoopCommunication.BalanceRanges;
+import de.zalando.scoop.ScoopCommunication.CheckLoad;
+import de.zalando.scoop.ScoopCommunication.CurrentAssignment;
+import de.zalando.scoop.ScoopCommunication.DepartureAccepted;
+import de.zalando.scoop.ScoopCommunication.Departing;
+import de.zalando.scoop.ScoopCommunication.FederationAck;
+import de.zalando.scoop.ScoopCommunication.FederationAssignment;
+import de.zalando.scoop.ScoopCommunication.FederationSummary;
+import de.zalando.scoop.ScoopCommunication.FederationTick;
+import de.zalando.scoop.ScoopCommunication.GetAssignment;
+import de.zalando.scoop.ScoopCommunication.GetAssignmentTable;
+import de.zalando.scoop.ScoopCommunication.HotKeyProposal;
+import de.zalando.scoop.ScoopCommunication.LeaseGranted;
+import de.zalando.scoop.ScoopCommunication.LeaseRequest;
+import de.zalando.scoop.ScoopCommunication.LoadReport;
+import de.zalando.scoop.ScoopCommunication.RecoveryTimeout;
+import de.zalando.scoop.ScoopCommunication.ReservationExpired;
+import de.zalando.scoop.ScoopCommunication.TelemetryReport;
+import de.zalando.scoop.telemetry.ClusterTelemetry;
+import de.zalando.scoop.telemetry.JmxRegistration;
+import de.zalando.scoop.telemetry.OwnershipTelemetry;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Computes the partition assignment for the whole cluster. It runs as cluster singleton (see
+ * {@link ScoopActor}), so there is exactly one authoritative assignment table at any time.
+ *
+ * When the singleton (re)starts - e.g. because the oldest member left - it first recovers the latest
+ * table from the local {@link AssignmentStore} and from all members before it computes anything. Since
+ * the {@link AssignmentStrategy} only moves partitions of members which joined or left, moving the
+ * coordinator does not reshuffle the cluster.
+ *
+ * Members are identified by their node id (see {@link Scoop#withNodeId(String)}) if they declare one.
+ * With a restart grace period, the partitions of a removed member stay reserved for it, so a member
+ * coming back with the same node id within that period gets its partitions back and no key moves.
+ *
+ * Members leaving gracefully (see {@link Scoop#leave(long, java.util.concurrent.TimeUnit)}) announce their
+ * departure first: their partitions are reassigned right away while they are still up, without any
+ * reservation.
+ *
+ * If an assignment role is configured, only members with that role get partitions; all others just receive
+ * the assignment.
+ *
+ * With leases (see {@link Lease}), the partitions of a removed member are reserved at least until the last lease
+ * granted to it has run out; the lease of a member this coordinator did not grant one to (e.g. because the
+ * coordinator moved) is assumed to last a full lease duration.
+ *
+ * Changes of the assignment are published once as {@link AssignmentDelta} on the distributed pub-sub topic
+ * {@link ScoopActor#ASSIGNMENT_TOPIC}; members missing a delta ask for the full table. Messages to single
+ * members go to their Scoop actor's {@link ActorRef}, resolved once via {@link Identify}.
+ *
+ * With range partitions (see {@link Scoop#withRangePartitions(int, String...)}), the coordinator splits and merges
+ * key ranges by the load reported via telemetry every {@link #RANGE_BALANCE_INTERVAL} (see {@link RangeBalancer}).
+ * The telemetry collected so far is dropped whenever the ranges change, as it no longer matches them. Changed ranges
+ * are published with unchanged owners before the members are evened out, so that moved ranges are handed off.
+ *
+ * With load shedding (see {@link Scoop#withLoadShedding(long, TimeUnit, long)}), members falling behind get fewer
+ * partitions until they recover (see {@link LoadShedder}); reports are evaluated on arrival and every
+ * {@link #LOAD_CHECK_INTERVAL}, so that shed members get their partitions back once the hold period is over.
+ *
+ * With a federation (see {@link Scoop#withFederation(String, Map)}), the coordinator publishes the slices claimed by
+ * its cluster to its members and sends them to the peer clusters every heartbeat (see {@link FederationBalancer}).
+ * Released slices are still sent to the peers as claimed until all members acknowledged an assignment without them
+ * or the lease of members which did not has run out.
+ */
+final class AssignmentCoordinator extends UntypedActor {
+
+    private final LoggingAdapter logger;
+    private final Cluster cluster;
+    private final AssignmentStrategy strategy;
+    private final Optional<AssignmentStore> store;
+    private final Optional<ClusterTelemetry> clusterTelemetry;
+    private final TreeMap<String, Address> members;
+    private final HashMap<Address, ActorRef> scoopActors;
+    private final HashMap<String, Cancellable> reservations;
+    private final Set<String> departing;
+    private final Optional<String> assignmentRole;
+    private final Set<String> observers;
+    private final FiniteDuration restartGracePeriod;
+    private ActorRef mediator;
+    private final Optional<Long> leaseDurationNanos;
+    private final HashMap<String, Long> leases;
+    private final HashMap<String, Map<String, Integer>> hotKeyProposals;
+    private final Optional<RangeBalancer> rangeBalancer;
+    private Cancellable balanceTask;
+    private final Optional<LoadShedder> loadShedder;
+    private Cancellable loadTask;
+    private final Optional<Federation> federation;
+    private FederationBalancer federationBalancer;
+    private Cancellable federationTask;
+    private BitSet federationClaims;
+    private long federationVersion;
+    private final BitSet releasedSlices;
+    private long releaseVersion;
+    private long releasedAtNanos;
+    private final HashMap<String, Long> federationAcks;
+    private AssignmentTable table;
+    private HotKeys hotKeys;
+    private boolean recovering;
+    private final Set<String> pendingRecovery;
+    private Cancellable recoveryTimeout;
+
+    static final FiniteDuration RECOVERY_TIMEOUT = Duration.create(3, TimeUnit.SECONDS);
+    static final FiniteDuration RANGE_BALANCE_INTERVAL = Duration.create(60, TimeUnit.SECONDS);
+    static final FiniteDuration LOAD_CHECK_INTERVAL = Duration.create(10, TimeUnit.SECONDS);
+
+    private static final String CLUSTER_TELEMETRY_MBEAN = "ClusterTelemetry";
+
+
+    public AssignmentCoordinator(final ScoopSettings settings, final Optional<AssignmentStore> store) {
+        requireNonNull(settings, "settings must not be null");
+        this.store = requireNonNull(store, "store must not be null");
+        this.strategy = settings.getAssignmentStrategy();
+        this.clusterTelemetry = settings.getTelemetry()
+                                        .map(t -> new ClusterTelemetry(t.getHotKeyCapacity()));
+        this.logger = Logging.getLogger(context().system(), this);
+        this.cluster = Cluster.get(context().system());
+        this.members = Maps.newTreeMap();
+        this.scoopActors = Maps.newHashMap();
+        this.reservations = Maps.newHashMap();
+        this.departing = Sets.newHashSet();
+        this.assignmentRole = settings.getAssignmentRole();
+        this.observers = Sets.newHashSet();
+        this.restartGracePeriod = settings.getRestartGracePeriod();
+        this.leaseDurationNanos = settings.getLease().map(Lease::getDurationNanos);
+        this.leases = Maps.newHashMap();
+        this.hotKeyProposals = Maps.newHashMap();
+        this.rangeBalancer = settings.getRangeBalancer();
+        this.loadShedder = settings.getLoadShedding().map(LoadShedder::new);
+        this.federation = settings.getFederation();
+        this.releasedSlices = new BitSet();
+        this.federationAcks = Maps.newHashMap();
+        this.pendingRecovery = Sets.newHashSet();
+        this.table = AssignmentTable.EMPTY;
+        this.hotKeys = HotKeys.NONE;
+        this.recovering = true;
+    }
+
+
+    static Props props(final ScoopSettings settings, final Optional<AssignmentStore> store) {
+        requireNonNull(settings, "settings must not be null");
+        requireNonNull(store, "store must not be null");
+        return Props.create(AssignmentCoordinator.class, settings, store);
+    }
+
+
+    static String memberKey(final Member member) {
+        return memberKey(member.address(), member.getRoles());
+    }
+
+    /**
+     * @return node id declared via role {@link Scoop#NODE_ID_ROLE_PREFIX} or the address if there is none
+     */
+    static String memberKey(final Address address, final Collection<String> roles) {
+        for (final String role : roles) {
+            if (role.startsWith(Scoop.NODE_ID_ROLE_PREFIX)) {
+                return role.substring(Scoop.NODE_ID_ROLE_PREFIX.length());
+            }
+        }
+        return address.toString();
+    }
+
+
+    @Override
+    public void preStart() {
+        if (store.isPresent()) {
+            try {
+                table = store.get().load();
+            }
+            catch (final IOException e) {
+                logger.error(e, "could not load persisted assignment -> recovering from members only");
+            }
+        }
+
+        clusterTelemetry.ifPresent(t -> JmxRegistration.register(CLUSTER_TELEMETRY_MBEAN, t));
+        mediator = DistributedPubSub.get(context().system()).mediator();
+        cluster.subscribe(self(), ClusterEvent.initialStateAsSnapshot(), MemberEvent.class);
+        if (rangeBalancer.isPresent() && clusterTelemetry.isPresent()) {
+            balanceTask = context().system().scheduler().schedule(RANGE_BALANCE_INTERVAL,
+                                                                  RANGE_BALANCE_INTERVAL,
+                                                                  self(),
+                                                                  BalanceRanges.INSTANCE,
+                                                                  context().dispatcher(),
+                                                                  self());
+        }
+        if (loadShedder.isPresent()) {
+            loadTask = context().system().scheduler().schedule(LOAD_CHECK_INTERVAL,
+                                                               LOAD_CHECK_INTERVAL,
+                                                               self(),
+                                                               CheckLoad.INSTANCE,
+                                                               context().dispatcher(),
+                                                               self());
+        }
+        if (federation.isPresent()) {
+            // the slices the local member owns are the ones the cluster claimed last, e.g. before the coordinator moved
+            federationClaims = federation.get().getOwnedSlices();
+            federationVersion = federation.get().getVersion();
+            federationBalancer = new FederationBalancer(federation.get(), federationClaims, System.nanoTime());
+            final FiniteDuration heartbeat = Duration.create(federation.get().getHeartbeatNanos(), TimeUnit.NANOSECONDS);
+            federationTask = context().system().scheduler().schedule(Duration.Zero(),
+                                                                     heartbeat,
+                                                                     self(),
+                                                                     FederationTick.INSTANCE,
+                                                                     context().dispatcher(),
+                                                                     self());
+        }
+        logger.info("assignment coordinator started [table={}]", table);
+    }
+
+
+    @Override
+    public void postStop() {
+        cluster.unsubscribe(self());
+        clusterTelemetry.ifPresent(t -> JmxRegistration.unregister(CLUSTER_TELEMETRY_MBEAN));
+        if (recoveryTimeout != null) {
+            recoveryTimeout.cancel();
+        }
+        if (balanceTask != null) {
+            balanceTask.cancel();
+        }
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
+        if (federationTask != null) {
+            federationTask.cancel();
+        }
+        reservations.values().forEach(Cancellable::cancel);
+    }
+
+
+    @Override
+    public void onReceive(final Object message) throws Exception {
+
+        if (message instanceof CurrentClusterState) {
+            final CurrentClusterState state = (CurrentClusterState) message;
+            for (final Member member : state.getMembers()) {
+                if (member.status().equals(MemberStatus.up())) {
+                    addMember(member);
+                }
+            }
+            startRecovery();
+        }
+        else if (message instanceof MemberUp) {
+            final Member member = ((MemberUp) message).member();
+            final String memberKey = addMember(member);
+            departing.remove(memberKey);
+
+            final Cancellable reservation = reservations.remove(memberKey);
+            if (reservation != null) {
+                reservation.cancel();
+                logger.info("member returned within grace period [member={}]", memberKey);
+            }
+
+            // the member gets the current table first: a returning member does not change the table, so it
+            // does not get it from rebalance(), and a new member learns the former owners of its partitions
+            if (!recovering) {
+                tellScoopActor(member.address(), table);
+                tellScoopActor(member.address(), hotKeys);
+            }
+
+            // the new member may not be subscribed to the assignment topic yet; it has the previous table already
+            final AssignmentTable previousTable = table;
+            rebalance();
+            if (!recovering && table != previousTable) {
+                tellScoopActor(member.address(), previousTable.hasSamePartitionsAs(table)
+                                                 ? AssignmentDelta.between(previousTable, table)
+                                                 : table);
+            }
+        }
+        else if (message instanceof MemberRemoved) {
+            final Member member = ((MemberRemoved) message).member();
+            final String memberKey = memberKey(member);
+            forgetScoopActor(member.address());
+            if (!member.address().equals(members.get(memberKey))) {
+                logger.info("ignoring removal of former incarnation [member={}, address={}]",
+                            memberKey, member.address());
+                return;
+            }
+
+            members.remove(memberKey);
+            final boolean observer = observers.remove(memberKey);
+            if (!departing.remove(memberKey) && !observer) {
+                reserve(memberKey);
+            }
+            hotKeyProposals.remove(memberKey);
+            federationAcks.remove(memberKey);
+            leases.remove(memberKey);
+            loadShedder.ifPresent(s -> s.remove(memberKey));
+            clusterTelemetry.ifPresent(t -> t.remove(memberKey));
+            pendingRecovery.remove(memberKey);
+            if (recovering && pendingRecovery.isEmpty()) {
+                finishRecovery();
+            }
+            else {
+                rebalance();
+                publishHotKeys();
+            }
+        }
+        else if (message instanceof MemberLeft || message instanceof MemberExited) {
+            final Member member = ((MemberEvent) message).member();
+            if (member.address().equals(members.get(memberKey(member)))) {
+                depart(memberKey(member));
+            }
+        }
+        else if (message instanceof Departing) {
+            depart(((Departing) message).getMember());
+            sender().tell(new DepartureAccepted(table.getEpoch()), self());
+        }
+        else if (message instanceof LeaseRequest) {
+            final LeaseRequest request = (LeaseRequest) message;
+            if (members.containsKey(request.getMember())) {
+                leases.put(request.getMember(), System.nanoTime());
+                sender().tell(new LeaseGranted(request.getRequestedAtNanos()), self());
+            }
+        }
+        else if (message instanceof GetAssignmentTable) {
+            sender().tell(table, self());
+        }
+        else if (message instanceof ActorIdentity) {
+            final ActorIdentity identity = (ActorIdentity) message;
+            final Address address = (Address) identity.correlationId();
+            if (identity.getRef() != null && members.containsValue(address)) {
+                scoopActors.put(address, identity.getRef());
+                context().watch(identity.getRef());
+            }
+        }
+        else if (message instanceof Terminated) {
+            forgetScoopActor(((Terminated) message).getActor().path().address());
+        }
+        else if (message instanceof CurrentAssignment) {
+            final CurrentAssignment current = (CurrentAssignment) message;
+            final boolean newer = adopt(current);
+            pendingRecovery.remove(current.getMember());
+            if (recovering && pendingRecovery.isEmpty()) {
+                finishRecovery();
+            }
+            else if (newer && !recovering) {
+                logger.info("member knows newer assignment -> republishing [member={}]", current.getMember());
+                rebalance();
+                publishAll();
+            }
+        }
+        else if (message instanceof ReservationExpired) {
+            final String memberKey = ((ReservationExpired) message).getMember();
+            if (reservations.remove(memberKey) != null) {
+                logger.info("member did not return within grace period -> reassigning [member={}]", memberKey);
+                rebalance();
+            }
+        }
+        else if (message instanceof RecoveryTimeout) {
+            if (recovering) {
+                logger.warning("recovery timed out -> continuing without [members={}]", pendingRecovery);
+                finishRecovery();
+            }
+        }
+        else if (message instanceof HotKeyProposal) {
+            final HotKeyProposal proposal = (HotKeyProposal) message;
+            hotKeyProposals.put(proposal.getMember(), proposal.getHotKeys());
+            publishHotKeys();
+        }
+        else if (message instanceof BalanceRanges) {
+            balanceRanges();
+        }
+        else if (message instanceof LoadReport) {
+            final LoadReport report = (LoadReport) message;
+            if (loadShedder.isPresent() && members.containsKey(report.getMember())) {
+                loadShedder.get().update(report, System.nanoTime());
+                checkLoad();
+            }
+        }
+        else if (message instanceof CheckLoad) {
+            checkLoad();
+        }
+        else if (message instanceof FederationSummary) {
+            final FederationSummary summary = (FederationSummary) message;
+            if (federationBalancer == null || !federationBalancer.update(summary, System.nanoTime())) {
+                logger.warning("ignoring summary of unknown cluster [cluster={}]", summary.getCluster());
+            }
+        }
+        else if (message instanceof FederationTick) {
+            federate();
+        }
+        else if (message instanceof FederationAck) {
+            final FederationAck ack = (FederationAck) message;
+            if (members.containsKey(ack.getMember())) {
+                federationAcks.merge(ack.getMember(), ack.getVersion(), Math::max);
+            }
+        }
+        else if (message instanceof TelemetryReport) {
+            final TelemetryReport report = (TelemetryReport) message;
+            clusterTelemetry.ifPresent(t -> t.update(report.getMember(), report.getSnapshot()));
+        }
+        else {
+            unhandled(message);
+        }
+    }
+
+    private String addMember(final Member member) {
+        final String memberKey = memberKey(member);
+        members.put(memberKey, member.address());
+        if (!scoopActors.containsKey(member.address())) {
+            selectScoopActor(member.address()).tell(new Identify(member.address()), self());
+        }
+        if (assignmentRole.isPresent() && !member.hasRole(assignmentRole.get())) {
+            observers.add(memberKey);
+        }
+        else {
+            observers.remove(memberKey);
+        }
+        return memberKey;
+    }
+
+    private void startRecovery() {
+        pendingRecovery.addAll(members.keySet());
+        if (pendingRecovery.isEmpty()) {
+            finishRecovery();
+            return;
+        }
+
+        members.values().forEach(address -> tellScoopActor(address, GetAssignment.INSTANCE));
+        recoveryTimeout = context().system().scheduler().scheduleOnce(RECOVERY_TIMEOUT,
+                                                                      self(),
+                                                                      RecoveryTimeout.INSTANCE,
+                                                                      context().dispatcher(),
+                                                                      self());
+    }
+
+    private void finishRecovery() {
+        recovering = false;
+        pendingRecovery.clear();
+        if (recoveryTimeout != null) {
+            recoveryTimeout.cancel();
+        }
+
+        logger.info("recovered assignment [table={}, hotKeys={}]", table, hotKeys);
+
+        // owners which are gone may be restarting right now
+        table.getMembers().stream().filter(m -> !members.containsKey(m)).forEach(this::reserve);
+        rebalance();
+        publishAll();
+    }
+
+    /**
+     * @return true if the given member knew a newer assignment table or hot key table than this coordinator
+     */
+    private boolean adopt(final CurrentAssignment current) {
+        boolean newer = false;
+        if (current.getTable().getEpoch() > table.getEpoch()) {
+            table = current.getTable();
+            newer = true;
+        }
+        if (current.getHotKeys().getVersion() > hotKeys.getVersion()) {
+            hotKeys = current.getHotKeys();
+            newer = true;
+        }
+        return newer;
+    }
+
+    private Set<String> eligibleMembers() {
+        final Set<String> eligible = Sets.newHashSet(members.keySet());
+        eligible.removeAll(departing);
+        eligible.removeAll(observers);
+        eligible.addAll(reservations.keySet());
+        return eligible;
+    }
+
+    private void rebalance() {
+        if (recovering) {
+            return;
+        }
+
+        final AssignmentTable ranged = rangeBalancer.map(b -> b.ranged(table)).orElse(table);
+        final Map<String, Double> capacities = loadShedder.map(LoadShedder::getCapacities)
+                                                          .orElse(Collections.emptyMap());
+        final AssignmentTable newTable = strategy.assign(ranged, eligibleMembers(), capacities);
+        if (newTable != table) {
+            logger.info("rebalanced [table={}]", newTable);
+            final AssignmentTable previousTable = table;
+            table = newTable;
+            if (previousTable.hasSamePartitionsAs(newTable)) {
+                publish(AssignmentDelta.between(previousTable, newTable));
+            }
+            else {
+                publish(newTable);
+            }
+        }
+    }
+
+    private void balanceRanges() {
+        if (recovering) {
+            return;
+        }
+
+        final ClusterTelemetry telemetry = clusterTelemetry.get();
+        final AssignmentTable balanced = rangeBalancer.get().balance(table,
+                                                                     telemetry.getPartitionHits(),
+                                                                     telemetry.sampledKeys(),
+                                                                     eligibleMembers().size());
+        if (balanced != table) {
+            logger.info("ranges changed by load [ranges={}, previousRanges={}]",
+                        balanced.getNumberOfPartitions(), table.getNumberOfPartitions());
+            telemetry.clear();
+            // the new ranges keep their owners, so that ranges moved by the strategy afterwards are handed off
+            table = balanced;
+            publish(balanced);
+            rebalance();
+        }
+    }
+
+    private void checkLoad() {
+        if (recovering) {
+            return;
+        }
+
+        final LoadShedder shedder = loadShedder.get();
+        if (shedder.adjust(eligibleMembers(), System.nanoTime())) {
+            logger.info("capacities changed by load [capacities={}]", shedder.getCapacities());
+            rebalance();
+        }
+    }
+
+    /**
+     * Publishes the claims to the members, which renews their lease on them, and sends them to the peers. Released
+     * slices are sent as claimed until all members acknowledged an assignment without them, so that a peer does not
+     * claim a slice which is still handled here.
+     */
+    private void federate() {
+        final long now = System.nanoTime();
+        if (!releasedSlices.isEmpty() && isReleaseAcknowledged()) {
+            logger.info("release of slices acknowledged by all members [slices={}]", releasedSlices.cardinality());
+            releasedSlices.clear();
+        }
+        else if (!releasedSlices.isEmpty() && now - releasedAtNanos > releaseExpiryNanos()) {
+            logger.warning("release of slices not acknowledged by all members -> their lease ran out [slices={}]",
+                           releasedSlices.cardinality());
+            releasedSlices.clear();
+        }
+
+        final BitSet claims = federationBalancer.claims(now);
+        federationVersion = Math.max(federationVersion + 1, System.currentTimeMillis());
+        if (!claims.equals(federationClaims)) {
+            logger.info("claimed slices changed [slices={}, liveClusters={}]",
+                        claims.cardinality(), federationBalancer.liveClusters(now));
+            final BitSet released = (BitSet) federationClaims.clone();
+            released.andNot(claims);
+            if (!released.isEmpty()) {
+                releasedSlices.or(released);
+                releaseVersion = federationVersion;
+                releasedAtNanos = now;
+            }
+            federationClaims = claims;
+        }
+        publish(new FederationAssignment(federationVersion, claims, !releasedSlices.isEmpty()));
+
+        final BitSet advertised = (BitSet) claims.clone();
+        advertised.or(releasedSlices);
+        final FederationSummary summary = new FederationSummary(federation.get().getLocalCluster(), advertised);
+        federation.get().getPeers().values().forEach(contacts -> contacts.forEach(
+                contact -> context().actorSelection(contact + ScoopActor.PATH).tell(summary, self())));
+    }
+
+    /**
+     * Observers own no partitions, so they handle no slice either.
+     */
+    private boolean isReleaseAcknowledged() {
+        return members.keySet().stream()
+                      .filter(member -> !observers.contains(member))
+                      .allMatch(member -> federationAcks.getOrDefault(member, 0L) >= releaseVersion);
+    }
+
+    /**
+     * A member which did not get the release (e.g. cut off from the coordinator) holds the slices for the lease
+     * after the former assignment arrived, which may have taken up to a heartbeat.
+     */
+    private long releaseExpiryNanos() {
+        return federation.get().getLeaseNanos() + federation.get().getHeartbeatNanos();
+    }
+
+    /**
+     * Reassigns the partitions of a member which is about to leave. It still gets the new table (and thereby
+     * stops handling its former partitions) as it stays a member until it is removed.
+     */
+    private void depart(final String memberKey) {
+        if (!departing.add(memberKey)) {
+            return;
+        }
+
+        logger.info("member is leaving -> reassigning its partitions [member={}]", memberKey);
+        final Cancellable reservation = reservations.remove(memberKey);
+        if (reservation != null) {
+            reservation.cancel();
+        }
+        rebalance();
+    }
+
+    /**
+     * Keeps the partitions of the given member for the restart grace period or until its lease has run out,
+     * whichever is later.
+     */
+    private void reserve(final String memberKey) {
+        final long leaseRemainingMillis = TimeUnit.NANOSECONDS.toMillis(remainingLeaseNanos(memberKey) + 999999);
+        final FiniteDuration leaseRemaining = Duration.create(leaseRemainingMillis, TimeUnit.MILLISECONDS);
+        final FiniteDuration period = leaseRemaining.gt(restartGracePeriod) ? leaseRemaining : restartGracePeriod;
+        if (period.length() == 0 || reservations.containsKey(memberKey)) {
+            return;
+        }
+
+        logger.info("reserving partitions of removed member [member={}, period={}]", memberKey, period);
+        reservations.put(memberKey, context().system().scheduler().scheduleOnce(period,
+                                                                                self(),
+                                                                                new ReservationExpired(memberKey),
+                                                                                context().dispatcher(),
+                                                                                self()));
+    }
+
+    private long remainingLeaseNanos(final String memberKey) {
+        if (!leaseDurationNanos.isPresent()) {
+            return 0;
+        }
+
+        final Long grantedAt = leases.get(memberKey);
+        return grantedAt == null ? leaseDurationNanos.get()
+                                 : Math.max(0, grantedAt + leaseDurationNanos.get() - System.nanoTime());
+    }
+
+    /**
+     * Merges the hot keys proposed by all members (taking the highest number of owners per key) and publishes
+     * a new version of the table if it differs from the current one.
+     */
+    private void publishHotKeys() {
+        if (recovering) {
+            return;
+        }
+
+        final HashMap<String, Integer> merged = Maps.newHashMap();
+        hotKeyProposals.values()
+                       .forEach(proposal -> proposal.forEach((key, owners) -> merged.merge(key, owners, Math::max)));
+
+        if (!merged.equals(hotKeys.getOwners())) {
+            hotKeys = new HotKeys(hotKeys.getVersion() + 1, merged);
+            logger.info("publishing new hot keys [hotKeys={}]", hotKeys);
+            publish(hotKeys);
+        }
+    }
+
+    private void publishAll() {
+        members.values().forEach(address -> {
+            tellScoopActor(address, table);
+            tellScoopActor(address, hotKeys);
+        });
+    }
+
+    /**
+     * Sends the message once to the pub-sub mediator, which delivers it to the Scoop actors of all members.
+     */
+    private void publish(final Object message) {
+        mediator.tell(new DistributedPubSubMediator.Publish(ScoopActor.ASSIGNMENT_TOPIC, message), self());
+    }
+
+    /**
+     * Uses the resolved actor ref if there is one; the actor selection otherwise.
+     */
+    private void tellScoopActor(final Address address, final Object message) {
+        final ActorRef scoopActor = scoopActors.get(address);
+        if (scoopActor != null) {
+            scoopActor.tell(message, self());
+        }
+        else {
+            selectScoopActor(address).tell(message, self());
+        }
+    }
+
+    private void forgetScoopActor(final Address address) {
+        final ActorRef scoopActor = scoopActors.remove(address);
+        if (scoopActor != null) {
+            context().unwatch(scoopActor);
+        }
+    }
+
+    private ActorSelection selectScoopActor(final Address address) {
+        return context().actorSelection(address + ScoopActor.PATH);
+    }
+}
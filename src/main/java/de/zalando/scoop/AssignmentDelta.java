@@ -0,0 +1,132 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Changes between two consecutive {@link AssignmentTable}s: the partitions whose owner changed and their new
+ * owners. Each owner is sent once and referenced by index, so the size of a delta depends on the number of moved
+ * partitions only, not on the size of the cluster. A delta only applies to the table it was computed from.
+ * It carries the wall clock time it was computed at, from which members measure how long changes take to reach them.
+ */
+public final class AssignmentDelta implements Serializable {
+
+    private final long baseEpoch;
+    private final long epoch;
+    private final int numberOfPartitions;
+    private final String[] members;
+    private final int[] partitions;
+    private final int[] owners;
+    private final long decidedAtMillis;
+
+    private AssignmentDelta(final long baseEpoch,
+                            final long epoch,
+                            final int numberOfPartitions,
+                            final String[] members,
+                            final int[] partitions,
+                            final int[] owners,
+                            final long decidedAtMillis) {
+        this.baseEpoch = baseEpoch;
+        this.epoch = epoch;
+        this.numberOfPartitions = numberOfPartitions;
+        this.members = members;
+        this.partitions = partitions;
+        this.owners = owners;
+        this.decidedAtMillis = decidedAtMillis;
+    }
+
+    /**
+     * @return changes turning {@code base} into {@code target}
+     */
+    public static AssignmentDelta between(final AssignmentTable base, final AssignmentTable target) {
+        checkNotNull(base, "base table must not be null");
+        checkNotNull(target, "target table must not be null");
+        checkArgument(base.hasSamePartitionsAs(target),
+                      "tables must have the same partitions. Got [base=%s, target=%s]",
+                      base.getNumberOfPartitions(), target.getNumberOfPartitions());
+        checkArgument(target.getEpoch() > base.getEpoch(), "target must be newer than base. Got [base=%s, target=%s]",
+                      base.getEpoch(), target.getEpoch());
+
+        final String[] baseOwners = base.getOwners();
+        final String[] targetOwners = target.getOwners();
+        final Map<String, Integer> members = Maps.newLinkedHashMap();
+        final int[] partitions = new int[targetOwners.length];
+        final int[] owners = new int[targetOwners.length];
+
+        int changed = 0;
+        for (int p = 0; p < targetOwners.length; p++) {
+            if (!Objects.equals(baseOwners[p], targetOwners[p])) {
+                partitions[changed] = p;
+                owners[changed] = targetOwners[p] == null ? -1
+                                                          : members.computeIfAbsent(targetOwners[p], m -> members.size());
+                changed++;
+            }
+        }
+
+        return new AssignmentDelta(base.getEpoch(),
+                                   target.getEpoch(),
+                                   targetOwners.length,
+                                   members.keySet().toArray(new String[members.size()]),
+                                   Arrays.copyOf(partitions, changed),
+                                   Arrays.copyOf(owners, changed),
+                                   System.currentTimeMillis());
+    }
+
+    public long getBaseEpoch() {
+        return baseEpoch;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return wall clock time of the coordinator at which this delta was computed
+     */
+    public long getDecidedAtMillis() {
+        return decidedAtMillis;
+    }
+
+    /**
+     * @return number of partitions whose owner changed
+     */
+    public int size() {
+        return partitions.length;
+    }
+
+    public boolean appliesTo(final AssignmentTable table) {
+        return table.getEpoch() == baseEpoch && table.getNumberOfPartitions() == numberOfPartitions;
+    }
+
+    public AssignmentTable applyTo(final AssignmentTable table) {
+        checkArgument(appliesTo(table), "delta does not apply to table. Got [baseEpoch=%s, epoch=%s]",
+                      baseEpoch, table.getEpoch());
+
+        final String[] newOwners = table.getOwners();
+        for (int i = 0; i < partitions.length; i++) {
+            newOwners[partitions[i]] = owners[i] == -1 ? null : members[owners[i]];
+        }
+        return table.withEpoch(epoch, newOwners);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("baseEpoch", baseEpoch)
+                .add("epoch", epoch)
+                .add("numberOfPartitions", numberOfPartitions)
+                .add("changedPartitions", partitions.length)
+                .add("members", Arrays.toString(members))
+                .add("decidedAtMillis", decidedAtMillis)
+                .toString();
+    }
+}
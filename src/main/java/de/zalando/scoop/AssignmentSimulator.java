@@ -0,0 +1,546 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.math.IntMath;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * Previews the cost of an assignment change offline: given the current {@link AssignmentTable} (e.g. loaded from
+ * the state directory, see {@link Scoop#withStateDirectory(Path)}) and a proposed member set or strategy, it computes
+ * the proposed table, the share of keys and load which would move, the resulting load per member and the messages
+ * the change would cost. It does not need a cluster, so thousands of scenarios can be compared in a test or via
+ * {@link #main(String[])}.
+ *
+ * Moved keys are computed per partition if the partitions stay the same. Otherwise they are computed over the given
+ * sample keys (see {@link #withKeys(Collection, KeyExtractor)}) or, for hashed partitions, exactly over all hashes.
+ * Keys are assumed to be spread evenly within a partition.
+ */
+public final class AssignmentSimulator {
+
+    private final AssignmentTable current;
+    private long[] load;
+    private Collection<String> keys;
+    private KeyExtractor keyExtractor;
+    private int chunksPerPartition;
+    private KeySample sample;
+
+    public AssignmentSimulator(final AssignmentTable current) {
+        this.current = checkNotNull(current, "current table must not be null");
+        this.keyExtractor = KeyExtractor.WHOLE_ID;
+    }
+
+    /**
+     * Weighs partitions by the given load (e.g. the partition hits of the cluster telemetry) instead of evenly.
+     */
+    public AssignmentSimulator withLoad(final long[] partitionLoad) {
+        checkNotNull(partitionLoad, "partition load must not be null");
+        checkArgument(partitionLoad.length == current.getNumberOfPartitions(),
+                      "there must be one load per partition. Got [load=%s, numberOfPartitions=%s]",
+                      partitionLoad.length, current.getNumberOfPartitions());
+        checkArgument(Arrays.stream(partitionLoad).allMatch(l -> l > -1), "load must be >= 0");
+        this.load = partitionLoad.clone();
+        this.sample = null;
+        return this;
+    }
+
+    /**
+     * Computes moved keys over the given keys instead of over all hashes; required if key ranges change.
+     */
+    public AssignmentSimulator withKeys(final Collection<String> sampleKeys, final KeyExtractor extractor) {
+        checkNotNull(sampleKeys, "keys must not be null");
+        checkArgument(!sampleKeys.isEmpty(), "keys must not be empty");
+        this.keys = Lists.newArrayList(sampleKeys);
+        this.keyExtractor = checkNotNull(extractor, "key extractor must not be null");
+        this.sample = null;
+        return this;
+    }
+
+    public AssignmentSimulator withKeys(final Collection<String> sampleKeys) {
+        return withKeys(sampleKeys, KeyExtractor.WHOLE_ID);
+    }
+
+    /**
+     * Counts the messages of state handoffs (see {@link Scoop#withStateHandoff(PartitionStateListener, long,
+     * java.util.concurrent.TimeUnit)}) whose snapshots consist of the given number of chunks per partition.
+     */
+    public AssignmentSimulator withStateHandoff(final int chunksPerPartition) {
+        checkArgument(chunksPerPartition > 0,
+                      "chunks per partition must be > 0. Got [chunksPerPartition=%s]", chunksPerPartition);
+        this.chunksPerPartition = chunksPerPartition;
+        return this;
+    }
+
+    /**
+     * Keeps the partitions and assigns them to the given members with the {@link StickyAssignmentStrategy}.
+     */
+    public Result simulate(final Collection<String> members) {
+        return simulate(new StickyAssignmentStrategy(current.getNumberOfPartitions()), members);
+    }
+
+    public Result simulate(final AssignmentStrategy strategy, final Collection<String> members) {
+        checkNotNull(strategy, "strategy must not be null");
+        checkNotNull(members, "members must not be null");
+        return compare(strategy.assign(current, members), members);
+    }
+
+    /**
+     * @param members members which are up after the change and receive the proposed table
+     */
+    public Result compare(final AssignmentTable proposed, final Collection<String> members) {
+        checkNotNull(proposed, "proposed table must not be null");
+        checkNotNull(members, "members must not be null");
+
+        final String[] currentOwners = current.getOwners();
+        final String[] proposedOwners = proposed.getOwners();
+        final Movement movement = keys == null ? overHashes(proposed, currentOwners, proposedOwners)
+                                               : overKeys(proposed, currentOwners, proposedOwners);
+        final double[] partitionLoad = movement.partitionLoad;
+        final boolean[] moved = movement.moved;
+
+        final TreeMap<String, Double> memberLoad = Maps.newTreeMap();
+        members.forEach(m -> memberLoad.put(m, 0.0));
+        for (int p = 0; p < proposedOwners.length; p++) {
+            if (proposedOwners[p] != null) {
+                memberLoad.merge(proposedOwners[p], partitionLoad[p], Double::sum);
+            }
+        }
+
+        final boolean samePartitions = current.hasSamePartitionsAs(proposed);
+        final Set<String> remaining = Sets.newHashSet(members);
+        int movedPartitions = 0;
+        int handoffs = 0;
+        for (int p = 0; p < moved.length; p++) {
+            if (moved[p]) {
+                movedPartitions++;
+                if (samePartitions && remaining.contains(currentOwners[p])) {
+                    handoffs++;
+                }
+            }
+        }
+
+        final Serializable published = samePartitions && proposed.getEpoch() > current.getEpoch()
+                                       ? AssignmentDelta.between(current, proposed)
+                                       : proposed;
+        final boolean changed = !proposed.equals(current);
+        final long assignmentMessages = changed ? members.size() : 0;
+        final long handoffMessages = chunksPerPartition == 0 ? 0 : (long) handoffs * (1 + 2 * chunksPerPartition);
+
+        return new Result(proposed,
+                          movedPartitions,
+                          movement.movedKeys,
+                          movement.movedLoad,
+                          memberLoad,
+                          handoffs,
+                          assignmentMessages + handoffMessages,
+                          changed ? serializedSize(published) : 0);
+    }
+
+    /**
+     * Computes the movement over all hashes: a hash lands in the partitions {@code hash mod n} before and {@code hash
+     * mod n'} after the change, so every pair of partitions which are congruent modulo {@code gcd(n, n')} shares the
+     * same fraction of the hashes and the movement can be summed up per owner and residue instead of per hash.
+     */
+    private Movement overHashes(final AssignmentTable proposed,
+                                final String[] currentOwners,
+                                final String[] proposedOwners) {
+        final int currentPartitions = currentOwners.length;
+        final int proposedPartitions = proposedOwners.length;
+        final Movement movement = new Movement(proposedPartitions);
+        if (proposedPartitions == 0) {
+            return movement;
+        }
+        checkArgument(current.hasSamePartitionsAs(proposed) || !current.isRanged() && !proposed.isRanged(),
+                      "moved keys of changed ranges can only be computed over sample keys -> use withKeys(keys)");
+        if (currentPartitions == 0) {
+            for (int p = 0; p < proposedPartitions; p++) {
+                movement.partitionLoad[p] = 1.0 / proposedPartitions;
+                movement.moved[p] = proposedOwners[p] != null;
+                movement.movedKeys += movement.moved[p] ? 1.0 / proposedPartitions : 0.0;
+            }
+            movement.movedLoad = movement.movedKeys;
+            return movement;
+        }
+
+        final int residues = IntMath.gcd(currentPartitions, proposedPartitions);
+        final double[] weights = weights();
+        final Map<String, Integer> ownerIndex = Maps.newHashMap();
+        for (final String owner : currentOwners) {
+            ownerIndex.putIfAbsent(owner, ownerIndex.size());
+        }
+
+        // partitions, load and single owner (-1 if several) of the current partitions per owner and residue
+        final int[] ownedPartitions = new int[ownerIndex.size() * residues];
+        final double[] ownedLoad = new double[ownerIndex.size() * residues];
+        final double[] residueLoad = new double[residues];
+        final int[] residueOwner = new int[residues];
+        Arrays.fill(residueOwner, -2);
+        for (int p = 0; p < currentPartitions; p++) {
+            final int residue = p % residues;
+            final int owner = ownerIndex.get(currentOwners[p]);
+            ownedPartitions[owner * residues + residue]++;
+            ownedLoad[owner * residues + residue] += weights[p];
+            residueLoad[residue] += weights[p];
+            residueOwner[residue] = residueOwner[residue] == -2 || residueOwner[residue] == owner ? owner : -1;
+        }
+
+        final int partitionsPerResidue = currentPartitions / residues;
+        final double loadPerPartner = (double) residues / proposedPartitions;
+        long movedPairs = 0;
+        for (int p = 0; p < proposedPartitions; p++) {
+            final int residue = p % residues;
+            final Integer owner = ownerIndex.get(proposedOwners[p]);
+            final int kept = owner == null ? 0 : ownedPartitions[owner * residues + residue];
+            final double keptLoad = owner == null ? 0.0 : ownedLoad[owner * residues + residue];
+
+            movement.partitionLoad[p] = residueLoad[residue] * loadPerPartner;
+            movement.moved[p] = owner == null || residueOwner[residue] != owner;
+            movedPairs += partitionsPerResidue - kept;
+            movement.movedLoad += (residueLoad[residue] - keptLoad) * loadPerPartner;
+        }
+        movement.movedKeys = (double) movedPairs / ((long) partitionsPerResidue * proposedPartitions);
+        return movement;
+    }
+
+    /**
+     * @return share of the load of each current partition
+     */
+    private double[] weights() {
+        final int partitions = current.getNumberOfPartitions();
+        final double[] weights = new double[partitions];
+        final long total = load == null ? 0 : Arrays.stream(load).sum();
+        for (int p = 0; p < partitions; p++) {
+            weights[p] = total == 0 ? 1.0 / partitions : (double) load[p] / total;
+        }
+        return weights;
+    }
+
+    private Movement overKeys(final AssignmentTable proposed,
+                              final String[] currentOwners,
+                              final String[] proposedOwners) {
+        if (sample == null || !sample.hasPartitionsOf(proposed)) {
+            sample = new KeySample(proposed);
+        }
+
+        final Movement movement = new Movement(proposedOwners.length);
+        int movedKeys = 0;
+        for (int i = 0; i < sample.size; i++) {
+            final String formerOwner = sample.current[i] < 0 ? null : currentOwners[sample.current[i]];
+            final String newOwner = proposedOwners[sample.proposed[i]];
+            movement.partitionLoad[sample.proposed[i]] += sample.weights[i];
+            if (!Objects.equals(formerOwner, newOwner)) {
+                movement.moved[sample.proposed[i]] = true;
+                movement.movedLoad += sample.weights[i];
+                movedKeys++;
+            }
+        }
+        movement.movedKeys = (double) movedKeys / sample.size;
+        return movement;
+    }
+
+    private int partitionOf(final AssignmentTable table, final String key) {
+        if (table.getNumberOfPartitions() == 0) {
+            return -1;
+        }
+        return ScoopClientImpl.partitionOf(key, keyExtractor, table.getNumberOfPartitions(), table.getBoundaries());
+    }
+
+    private static int serializedSize(final Serializable message) {
+        final CountingOutputStream counting = new CountingOutputStream(ByteStreams.nullOutputStream());
+        try (ObjectOutputStream out = new ObjectOutputStream(counting)) {
+            out.writeObject(message);
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return (int) counting.getCount();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("current", current)
+                .add("load", load != null)
+                .add("keys", keys == null ? 0 : keys.size())
+                .add("keyExtractor", keyExtractor)
+                .add("chunksPerPartition", chunksPerPartition)
+                .toString();
+    }
+
+    /**
+     * Previews an assignment change of the assignment persisted in a state directory:
+     * <pre>
+     * java -cp scoop.jar de.zalando.scoop.AssignmentSimulator &lt;state-directory&gt;
+     *      [--members a,b,c] [--add n] [--remove a,b] [--partitions n] [--load file] [--handoff-chunks n]
+     * </pre>
+     * The members default to the owners of the current table; {@code --partitions 0} assigns one partition per
+     * member. The load file holds one load per partition, separated by commas or white space.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            System.err.println("usage: AssignmentSimulator <state-directory> [--members a,b,c] [--add n] "
+                               + "[--remove a,b] [--partitions n] [--load file] [--handoff-chunks n]");
+            System.exit(2);
+        }
+
+        final Path directory = Paths.get(args[0]);
+        checkArgument(Files.isDirectory(directory), "state directory does not exist. Got [directory=%s]", directory);
+        final AssignmentTable current = new AssignmentStore(directory).load();
+        final AssignmentSimulator simulator = new AssignmentSimulator(current);
+
+        final List<String> members = Lists.newArrayList(current.getMembers());
+        int partitions = current.getNumberOfPartitions();
+        for (int i = 1; i < args.length; i += 2) {
+            checkArgument(i + 1 < args.length, "missing value of option %s", args[i]);
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--members":
+                    members.clear();
+                    members.addAll(Arrays.asList(value.split(",")));
+                    break;
+                case "--add":
+                    for (int m = 1; m <= Integer.parseInt(value); m++) {
+                        members.add("new-" + m);
+                    }
+                    break;
+                case "--remove":
+                    members.removeAll(Arrays.asList(value.split(",")));
+                    break;
+                case "--partitions":
+                    partitions = Integer.parseInt(value);
+                    break;
+                case "--load":
+                    final String content = new String(Files.readAllBytes(Paths.get(value)), StandardCharsets.UTF_8);
+                    simulator.withLoad(Arrays.stream(content.trim().split("[,\\s]+")).mapToLong(Long::parseLong).toArray());
+                    break;
+                case "--handoff-chunks":
+                    simulator.withStateHandoff(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        System.out.println("current:  " + current.getNumberOfPartitions() + " partitions, epoch " + current.getEpoch()
+                           + ", members " + current.getMembers());
+        System.out.println(simulator.simulate(new StickyAssignmentStrategy(partitions), members).report());
+    }
+
+    /**
+     * Former and new partition of each sample key and its share of the load: the load of its former partition spread
+     * evenly over the sample keys in it.
+     */
+    private final class KeySample {
+        private final int numberOfPartitions;
+        private final String[] boundaries;
+        private final int size;
+        private final int[] current;
+        private final int[] proposed;
+        private final double[] weights;
+
+        private KeySample(final AssignmentTable proposedTable) {
+            this.numberOfPartitions = proposedTable.getNumberOfPartitions();
+            this.boundaries = proposedTable.getBoundaries();
+            this.size = keys.size();
+            this.current = new int[size];
+            this.proposed = new int[size];
+            this.weights = new double[size];
+
+            int i = 0;
+            for (final String key : keys) {
+                current[i] = partitionOf(AssignmentSimulator.this.current, key);
+                proposed[i] = partitionOf(proposedTable, key);
+                i++;
+            }
+
+            final double[] partitionWeights = weights();
+            final int[] keysPerPartition = new int[partitionWeights.length];
+            for (final int partition : current) {
+                if (partition > -1) {
+                    keysPerPartition[partition]++;
+                }
+            }
+            double total = 0.0;
+            for (i = 0; i < size; i++) {
+                weights[i] = current[i] < 0 ? 1.0 : partitionWeights[current[i]] / keysPerPartition[current[i]];
+                total += weights[i];
+            }
+            for (i = 0; i < size; i++) {
+                weights[i] = total == 0 ? 1.0 / size : weights[i] / total;
+            }
+        }
+
+        private boolean hasPartitionsOf(final AssignmentTable table) {
+            return numberOfPartitions == table.getNumberOfPartitions()
+                    && Arrays.equals(boundaries, table.getBoundaries());
+        }
+    }
+
+    /**
+     * Moved keys and load of a proposed table and the share of the load of each of its partitions.
+     */
+    private static final class Movement {
+        private final double[] partitionLoad;
+        private final boolean[] moved;
+        private double movedKeys;
+        private double movedLoad;
+
+        private Movement(final int numberOfPartitions) {
+            this.partitionLoad = new double[numberOfPartitions];
+            this.moved = new boolean[numberOfPartitions];
+        }
+    }
+
+    /**
+     * Outcome of a simulated assignment change.
+     */
+    public static final class Result {
+        private final AssignmentTable proposed;
+        private final int movedPartitions;
+        private final double movedKeyShare;
+        private final double movedLoadShare;
+        private final ImmutableSortedMap<String, Double> loadShares;
+        private final int handoffs;
+        private final long messages;
+        private final int assignmentBytes;
+
+        Result(final AssignmentTable proposed,
+               final int movedPartitions,
+               final double movedKeyShare,
+               final double movedLoadShare,
+               final Map<String, Double> loadShares,
+               final int handoffs,
+               final long messages,
+               final int assignmentBytes) {
+            this.proposed = proposed;
+            this.movedPartitions = movedPartitions;
+            this.movedKeyShare = movedKeyShare;
+            this.movedLoadShare = movedLoadShare;
+            this.loadShares = ImmutableSortedMap.copyOf(loadShares);
+            this.handoffs = handoffs;
+            this.messages = messages;
+            this.assignmentBytes = assignmentBytes;
+        }
+
+        public AssignmentTable getProposed() {
+            return proposed;
+        }
+
+        /**
+         * @return partitions of the proposed table which get keys from another owner
+         */
+        public int getMovedPartitions() {
+            return movedPartitions;
+        }
+
+        /**
+         * @return share of all keys whose owner changes
+         */
+        public double getMovedKeyShare() {
+            return movedKeyShare;
+        }
+
+        /**
+         * @return share of the load whose owner changes; the same as {@link #getMovedKeyShare()} without load
+         */
+        public double getMovedLoadShare() {
+            return movedLoadShare;
+        }
+
+        /**
+         * @return share of the load each member gets
+         */
+        public Map<String, Double> getLoadShares() {
+            return loadShares;
+        }
+
+        /**
+         * @return ratio of the busiest member's load to the average load; 1.0 means perfectly balanced
+         */
+        public double getLoadSkew() {
+            final double total = loadShares.values().stream().mapToDouble(Double::doubleValue).sum();
+            if (loadShares.isEmpty() || total == 0) {
+                return 0.0;
+            }
+            final double max = loadShares.values().stream().mapToDouble(Double::doubleValue).max().getAsDouble();
+            return max / (total / loadShares.size());
+        }
+
+        /**
+         * @return partitions whose state is handed over from their former owner, which stays up
+         */
+        public int getHandoffs() {
+            return handoffs;
+        }
+
+        /**
+         * @return messages sent for the change: the published delta (or table) delivered to every member, plus
+         * request, chunks and acknowledgements of every state handoff
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return serialized size of the published delta or, if the partitions change, of the full table
+         */
+        public int getAssignmentBytes() {
+            return assignmentBytes;
+        }
+
+        /**
+         * @return human readable summary
+         */
+        public String report() {
+            final StringBuilder report = new StringBuilder();
+            report.append(format("proposed: %d partitions, epoch %d%n", proposed.getNumberOfPartitions(),
+                                 proposed.getEpoch()));
+            report.append(format("moved:    %d partitions, %.2f%% of keys, %.2f%% of load%n", movedPartitions,
+                                 movedKeyShare * 100, movedLoadShare * 100));
+            report.append(format("messages: %d (%d handoffs, %d assignment bytes)%n", messages, handoffs,
+                                 assignmentBytes));
+            report.append(format("skew:     %.3f%n", getLoadSkew()));
+            loadShares.forEach((member, share) -> report.append(format("  %s: %.2f%%%n", member, share * 100)));
+            return report.toString();
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("numberOfPartitions", proposed.getNumberOfPartitions())
+                    .add("movedPartitions", movedPartitions)
+                    .add("movedKeyShare", movedKeyShare)
+                    .add("movedLoadShare", movedLoadShare)
+                    .add("loadSkew", getLoadSkew())
+                    .add("handoffs", handoffs)
+                    .add("messages", messages)
+                    .add("assignmentBytes", assignmentBytes)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Persists {@link AssignmentTable}s on local disk as a snapshot plus a journal of ownership changes
+ * since that snapshot. Each journal record carries a CRC so that a record torn by a crash is
+ * detected and ignored on replay. After {@link #SNAPSHOT_INTERVAL} records a new snapshot is
+ * written (atomically via rename) and the journal is truncated. A change of the key ranges of a ranged
+ * table is written as snapshot right away, so journal records never change ranges. A crash between writing
+ * the snapshot and truncating the journal leaves records which are not newer than the snapshot; they are
+ * skipped on replay.
+ */
+final class AssignmentStore {
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private AssignmentTable lastSaved;
+    private int journalRecords;
+
+    static final int SNAPSHOT_INTERVAL = 100;
+
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final int MAGIC = 0x5c009a55;
+    private static final int FORMAT_VERSION = 2;
+    private static final int UNRANGED_FORMAT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "assignment.snapshot";
+    private static final String JOURNAL_FILE = "assignment.journal";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssignmentStore.class);
+
+    AssignmentStore(final Path directory) throws IOException {
+        checkNotNull(directory, "directory must not be null");
+        Files.createDirectories(directory);
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        this.journalFile = directory.resolve(JOURNAL_FILE);
+        this.lastSaved = null;
+    }
+
+    /**
+     * @return latest persisted table or {@link AssignmentTable#EMPTY} if nothing was persisted yet
+     */
+    synchronized AssignmentTable load() throws IOException {
+        AssignmentTable table = readSnapshot();
+        journalRecords = 0;
+
+        if (Files.exists(journalFile)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(journalFile))) {
+                while (true) {
+                    final AssignmentTable replayed = readRecord(in, table);
+                    if (replayed == null) {
+                        break;
+                    }
+                    table = replayed;
+                    journalRecords++;
+                }
+            }
+        }
+
+        lastSaved = table;
+        LOGGER.debug("loaded assignment [table={}, journalRecords={}]", table, journalRecords);
+        return table;
+    }
+
+    synchronized void save(final AssignmentTable table) throws IOException {
+        checkNotNull(table, "assignment table must not be null");
+
+        if (lastSaved == null) {
+            load();
+        }
+
+        if (table.getEpoch() <= lastSaved.getEpoch()) {
+            LOGGER.debug("not persisting outdated assignment [table={}, lastSaved={}]", table, lastSaved);
+            return;
+        }
+
+        if (journalRecords >= SNAPSHOT_INTERVAL || !Arrays.equals(lastSaved.getBoundaries(), table.getBoundaries())) {
+            writeSnapshot(table);
+            Files.deleteIfExists(journalFile);
+            journalRecords = 0;
+        }
+        else {
+            appendRecord(lastSaved, table);
+            journalRecords++;
+        }
+
+        lastSaved = table;
+    }
+
+    private AssignmentTable readSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return AssignmentTable.EMPTY;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshotFile))) {
+            final int magic = in.readInt();
+            final int version = in.readInt();
+            if (magic != MAGIC || (version != FORMAT_VERSION && version != UNRANGED_FORMAT_VERSION)) {
+                throw new IOException("unsupported assignment snapshot [file=" + snapshotFile + "]");
+            }
+
+            final long epoch = in.readLong();
+            final String[] owners = new String[in.readInt()];
+            for (int i = 0; i < owners.length; i++) {
+                owners[i] = in.readBoolean() ? in.readUTF() : null;
+            }
+            if (version == UNRANGED_FORMAT_VERSION || !in.readBoolean()) {
+                return new AssignmentTable(epoch, owners);
+            }
+
+            final String[] boundaries = new String[in.readInt()];
+            for (int i = 0; i < boundaries.length; i++) {
+                boundaries[i] = in.readUTF();
+            }
+            return new AssignmentTable(epoch, owners, boundaries);
+        }
+    }
+
+    private void writeSnapshot(final AssignmentTable table) throws IOException {
+        final Path tmpFile = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+                                                             StandardOpenOption.WRITE,
+                                                             StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(table.getEpoch());
+
+            final String[] owners = table.getOwners();
+            out.writeInt(owners.length);
+            for (final String owner : owners) {
+                out.writeBoolean(owner != null);
+                if (owner != null) {
+                    out.writeUTF(owner);
+                }
+            }
+
+            final String[] boundaries = table.getBoundaries();
+            out.writeBoolean(boundaries != null);
+            if (boundaries != null) {
+                out.writeInt(boundaries.length);
+                for (final String boundary : boundaries) {
+                    out.writeUTF(boundary);
+                }
+            }
+            // the snapshot must be durable before it replaces the old one and the journal is deleted
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Record layout: length, payload, CRC32 of payload. The payload holds the epoch, the number of
+     * partitions and the changed partitions with their new owner.
+     */
+    private void appendRecord(final AssignmentTable previous, final AssignmentTable table) throws IOException {
+        final String[] previousOwners = previous.getOwners();
+        final String[] owners = table.getOwners();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeLong(table.getEpoch());
+        payload.writeInt(owners.length);
+
+        int changes = 0;
+        for (int i = 0; i < owners.length; i++) {
+            if (i >= previousOwners.length || !Objects.equals(previousOwners[i], owners[i])) {
+                changes++;
+            }
+        }
+        payload.writeInt(changes);
+
+        for (int i = 0; i < owners.length; i++) {
+            if (i >= previousOwners.length || !Objects.equals(previousOwners[i], owners[i])) {
+                payload.writeInt(i);
+                payload.writeBoolean(owners[i] != null);
+                if (owners[i] != null) {
+                    payload.writeUTF(owners[i]);
+                }
+            }
+        }
+        payload.flush();
+
+        final byte[] record = bytes.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+
+        try (OutputStream file = Files.newOutputStream(journalFile, StandardOpenOption.CREATE,
+                                                                   StandardOpenOption.APPEND,
+                                                                   StandardOpenOption.SYNC);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(record.length);
+            out.write(record);
+            out.writeLong(crc.getValue());
+        }
+    }
+
+    /**
+     * @return table after applying the next record, {@code previous} if the record is not newer than it (left
+     *         over from a crash before the journal was truncated) or {@code null} if there is no (intact) record left
+     */
+    private AssignmentTable readRecord(final DataInputStream in, final AssignmentTable previous) throws IOException {
+        final byte[] record;
+        try {
+            final int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD_BYTES) {
+                LOGGER.warn("ignoring corrupt assignment journal record [file={}, length={}]", journalFile, length);
+                return null;
+            }
+            record = new byte[length];
+            in.readFully(record);
+            final CRC32 crc = new CRC32();
+            crc.update(record);
+            if (crc.getValue() != in.readLong()) {
+                LOGGER.warn("ignoring corrupt assignment journal record [file={}]", journalFile);
+                return null;
+            }
+        }
+        catch (final EOFException e) {
+            return null;
+        }
+
+        try (InputStream bytes = new ByteArrayInputStream(record);
+             DataInputStream payload = new DataInputStream(bytes)) {
+            final long epoch = payload.readLong();
+            if (epoch <= previous.getEpoch()) {
+                LOGGER.debug("skipping outdated assignment journal record [file={}, epoch={}, previousEpoch={}]",
+                             journalFile, epoch, previous.getEpoch());
+                return previous;
+            }
+            final String[] owners = new String[payload.readInt()];
+            final String[] previousOwners = previous.getOwners();
+            System.arraycopy(previousOwners, 0, owners, 0, Math.min(previousOwners.length, owners.length));
+
+            final int changes = payload.readInt();
+            for (int i = 0; i < changes; i++) {
+                final int partition = payload.readInt();
+                owners[partition] = payload.readBoolean() ? payload.readUTF() : null;
+            }
+            return previous.isRanged() ? previous.withEpoch(epoch, owners) : new AssignmentTable(epoch, owners);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("snapshotFile", snapshotFile)
+                .add("journalFile", journalFile)
+                .add("journalRecords", journalRecords)
+                .toString();
+    }
+}
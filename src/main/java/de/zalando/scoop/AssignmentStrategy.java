@@ -0,0 +1,31 @@
+package de.zalando.scoop;
+
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Computes the assignment of partitions to members whenever the set of members changes.
+ */
+public interface AssignmentStrategy {
+
+    /**
+     * @param current currently active assignment
+     * @param members members which are up and eligible for partitions
+     * @return {@code current} if nothing changes, otherwise a table with the next epoch
+     */
+    AssignmentTable assign(AssignmentTable current, Collection<String> members);
+
+    /**
+     * Like {@link #assign(AssignmentTable, Collection)} but members with a capacity below {@code 1.0} should get only
+     * that share of their partitions (see {@link Scoop#withLoadShedding(long, java.util.concurrent.TimeUnit, long)}).
+     * Ignores the capacities by default.
+     *
+     * @param capacities capacity of members falling behind; members not contained have a capacity of {@code 1.0}
+     */
+    default AssignmentTable assign(final AssignmentTable current,
+                                   final Collection<String> members,
+                                   final Map<String, Double> capacities) {
+        return assign(current, members);
+    }
+}
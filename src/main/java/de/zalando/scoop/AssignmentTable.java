@@ -0,0 +1,178 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Cluster-wide, versioned assignment of partitions to members. It is computed by the
+ * {@link AssignmentCoordinator} and distributed to all members, which derive their own partitions from it.
+ * Every change of ownership increments the epoch, so members can tell outdated tables apart.
+ *
+ * A ranged table (see {@link Scoop#withRangePartitions(int, String...)}) additionally holds the sorted lower
+ * bounds of all but the first partition: partition {@code i} then owns the keys in {@link #rangeOf(int)}.
+ */
+public final class AssignmentTable implements Serializable {
+
+    private final long epoch;
+    private final String[] owners;
+    private final String[] boundaries;
+
+    public static final AssignmentTable EMPTY = new AssignmentTable(0, new String[0]);
+
+    /**
+     * @param owners member owning each partition; {@code null} for unassigned partitions
+     */
+    public AssignmentTable(final long epoch, final String[] owners) {
+        checkArgument(epoch > -1, "epoch must be > -1. Got [epoch=%s]", epoch);
+        this.epoch = epoch;
+        this.owners = checkNotNull(owners, "owners must not be null").clone();
+        this.boundaries = null;
+    }
+
+    /**
+     * @param owners     member owning each range; {@code null} for unassigned ranges
+     * @param boundaries strictly ascending lower bounds of the ranges {@code 1..n-1}; range {@code 0} starts with
+     *                   the lowest key, range {@code n-1} ends with the highest key
+     */
+    public AssignmentTable(final long epoch, final String[] owners, final String[] boundaries) {
+        checkArgument(epoch > -1, "epoch must be > -1. Got [epoch=%s]", epoch);
+        checkNotNull(owners, "owners must not be null");
+        checkNotNull(boundaries, "boundaries must not be null");
+        checkArgument(owners.length == boundaries.length + 1,
+                      "there must be one owner per range. Got [owners=%s, boundaries=%s]",
+                      owners.length, boundaries.length);
+        for (int i = 1; i < boundaries.length; i++) {
+            checkArgument(boundaries[i - 1].compareTo(boundaries[i]) < 0,
+                          "boundaries must be strictly ascending. Got [%s, %s]", boundaries[i - 1], boundaries[i]);
+        }
+        this.epoch = epoch;
+        this.owners = owners.clone();
+        this.boundaries = boundaries.clone();
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getNumberOfPartitions() {
+        return owners.length;
+    }
+
+    public Optional<String> ownerOf(final int partition) {
+        checkArgument(partition > -1 && partition < owners.length,
+                      "partition must be in [0, %s). Got [partition=%s]", owners.length, partition);
+        return Optional.ofNullable(owners[partition]);
+    }
+
+    public boolean isRanged() {
+        return boundaries != null;
+    }
+
+    /**
+     * @return keys owned by the given partition of a ranged table
+     */
+    public KeyRange rangeOf(final int partition) {
+        checkState(boundaries != null, "table is not ranged");
+        checkArgument(partition > -1 && partition < owners.length,
+                      "partition must be in [0, %s). Got [partition=%s]", owners.length, partition);
+        return new KeyRange(partition == 0 ? null : boundaries[partition - 1],
+                            partition == boundaries.length ? null : boundaries[partition]);
+    }
+
+    public BitSet partitionsOf(final String member) {
+        final BitSet partitions = new BitSet(owners.length);
+        for (int i = 0; i < owners.length; i++) {
+            if (Objects.equals(owners[i], member)) {
+                partitions.set(i);
+            }
+        }
+        return partitions;
+    }
+
+    public Set<String> getMembers() {
+        return ImmutableSortedSet.copyOf(Arrays.stream(owners).filter(Objects::nonNull).iterator());
+    }
+
+    String[] getOwners() {
+        return owners.clone();
+    }
+
+    /**
+     * @return lower bounds of the ranges {@code 1..n-1}; {@code null} if the table is not ranged
+     */
+    String[] getBoundaries() {
+        return boundaries == null ? null : boundaries.clone();
+    }
+
+    /**
+     * @return true if the partitions of both tables own the same keys
+     */
+    boolean hasSamePartitionsAs(final AssignmentTable other) {
+        return owners.length == other.owners.length && Arrays.equals(boundaries, other.boundaries);
+    }
+
+    /**
+     * @return this table if the owners did not change, otherwise a new table with the next epoch
+     */
+    AssignmentTable withOwners(final String[] newOwners) {
+        if (Arrays.equals(owners, newOwners)) {
+            return this;
+        }
+        return withEpoch(epoch + 1, newOwners);
+    }
+
+    /**
+     * @return table with the given epoch and owners and the ranges of this table
+     */
+    AssignmentTable withEpoch(final long newEpoch, final String[] newOwners) {
+        return boundaries == null ? new AssignmentTable(newEpoch, newOwners)
+                                  : new AssignmentTable(newEpoch, newOwners, boundaries);
+    }
+
+    /**
+     * @return ranged table with the next epoch
+     */
+    AssignmentTable withRanges(final String[] newBoundaries, final String[] newOwners) {
+        return new AssignmentTable(epoch + 1, newOwners, newBoundaries);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final AssignmentTable that = (AssignmentTable) o;
+        return epoch == that.epoch && Arrays.equals(owners, that.owners) && Arrays.equals(boundaries, that.boundaries);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(epoch) + Arrays.hashCode(owners)) + Arrays.hashCode(boundaries);
+    }
+
+    @Override
+    public String toString() {
+        final MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this)
+                .add("epoch", epoch)
+                .add("owners", Arrays.toString(owners));
+        if (boundaries != null) {
+            helper.add("boundaries", Arrays.toString(boundaries));
+        }
+        return helper.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package de.zalando.scoop;
+
+
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Remembers the ids claimed per owned partition in a time-windowed Bloom filter (two generations, each covering
+ * one window) and hands the filter of a revoked partition over to its new owner. For one window after a
+ * partition moved, the new owner rejects claims of ids the former owner already processed. False positives
+ * (at the configured probability) reject ids which were not processed yet.
+ */
+final class ClaimFilter implements PartitionStateListener {
+
+    private final long windowNanos;
+    private final int expectedIds;
+    private final double falsePositiveProbability;
+    private final Ticker ticker;
+    private final ConcurrentHashMap<Integer, Generations> claimed;
+    private final ConcurrentHashMap<Integer, Received> received;
+    private final ConcurrentHashMap<Integer, ByteArrayOutputStream> incoming;
+
+    static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.001;
+
+    /**
+     * Chunks stay well below Akka's default maximum frame size of 128 KiB.
+     */
+    static final int CHUNK_BYTES = 64 * 1024;
+
+    private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(StandardCharsets.UTF_8);
+
+    ClaimFilter(final long window, final TimeUnit unit, final int expectedIds) {
+        this(window, unit, expectedIds, DEFAULT_FALSE_POSITIVE_PROBABILITY, Ticker.systemTicker());
+    }
+
+    ClaimFilter(final long window,
+                final TimeUnit unit,
+                final int expectedIds,
+                final double falsePositiveProbability,
+                final Ticker ticker) {
+        checkArgument(window > 0, "window must be > 0. Got [window=%s]", window);
+        checkNotNull(unit, "time unit must not be null");
+        checkArgument(expectedIds > 0, "expected ids must be > 0. Got [expectedIds=%s]", expectedIds);
+        checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                      "false positive probability must be in (0, 1). Got [falsePositiveProbability=%s]",
+                      falsePositiveProbability);
+        this.windowNanos = unit.toNanos(window);
+        this.expectedIds = expectedIds;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.ticker = checkNotNull(ticker, "ticker must not be null");
+        this.claimed = new ConcurrentHashMap<>();
+        this.received = new ConcurrentHashMap<>();
+        this.incoming = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return false if the id was already processed by the former owner of the (recently moved) partition
+     */
+    boolean claim(final int partition, final String id) {
+        final long now = ticker.read();
+
+        final Received fromFormerOwner = received.get(partition);
+        if (fromFormerOwner != null) {
+            if (now - fromFormerOwner.receivedAt > windowNanos) {
+                received.remove(partition, fromFormerOwner);
+            }
+            else if (fromFormerOwner.mightContain(id)) {
+                return false;
+            }
+        }
+
+        claimed.computeIfAbsent(partition, p -> new Generations(now)).put(id, now);
+        return true;
+    }
+
+    @Override
+    public Iterator<byte[]> snapshotPartition(final int partition) {
+        final Generations generations = claimed.remove(partition);
+        if (generations == null) {
+            return Arrays.<byte[]>asList().iterator();
+        }
+
+        final ChunkedOutput out = new ChunkedOutput();
+        try {
+            generations.merged().writeTo(out);
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.chunks();
+    }
+
+    @Override
+    public void restorePartition(final int partition, final byte[] chunk) {
+        final ByteArrayOutputStream buffer = incoming.computeIfAbsent(partition, p -> new ByteArrayOutputStream());
+        buffer.write(chunk, 0, chunk.length);
+    }
+
+    @Override
+    public void onHandoffCompleted(final int partition, final boolean complete) {
+        final ByteArrayOutputStream buffer = incoming.remove(partition);
+        if (!complete || buffer == null) {
+            return;
+        }
+
+        try {
+            final BloomFilter<CharSequence> filter = BloomFilter.readFrom(new ByteArrayInputStream(buffer.toByteArray()),
+                                                                          FUNNEL);
+            received.put(partition, new Received(filter, ticker.read()));
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Drops the filters of partitions which were revoked without being requested by the new owner.
+     */
+    @Override
+    public void onAssignmentChanged(final Assignment assignment) {
+        final long now = ticker.read();
+        claimed.entrySet().removeIf(e -> !assignment.isOwned(e.getKey()) && now - e.getValue().rotatedAt > windowNanos);
+        received.entrySet().removeIf(e -> now - e.getValue().receivedAt > windowNanos);
+    }
+
+    @Override
+    public void init(final Cluster cluster) {}
+
+    @Override
+    public void onRebalanced(final int partitionId, final int numberOfPartitions) {}
+
+    @Override
+    public void onMemberUp(final Member member) {}
+
+    @Override
+    public void onMemberRemoved(final Member member) {}
+
+    @Override
+    public void onMemberUnreachable(final Member member) {}
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("windowMillis", TimeUnit.NANOSECONDS.toMillis(windowNanos))
+                .add("expectedIds", expectedIds)
+                .add("falsePositiveProbability", falsePositiveProbability)
+                .add("claimedPartitions", claimed.keySet())
+                .add("receivedPartitions", received.keySet())
+                .toString();
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(FUNNEL, expectedIds, falsePositiveProbability);
+    }
+
+    /**
+     * The ids of the current and the former window. Guava's Bloom filter is not thread-safe for writes.
+     */
+    private final class Generations {
+        private BloomFilter<CharSequence> current;
+        private BloomFilter<CharSequence> previous;
+        private volatile long rotatedAt;
+
+        private Generations(final long now) {
+            this.current = newFilter();
+            this.previous = newFilter();
+            this.rotatedAt = now;
+        }
+
+        private synchronized void put(final String id, final long now) {
+            if (now - rotatedAt > windowNanos) {
+                previous = now - rotatedAt > 2 * windowNanos ? newFilter() : current;
+                current = newFilter();
+                rotatedAt = now;
+            }
+            current.put(id);
+        }
+
+        private synchronized BloomFilter<CharSequence> merged() {
+            final BloomFilter<CharSequence> merged = current.copy();
+            merged.putAll(previous);
+            return merged;
+        }
+    }
+
+    private static final class Received {
+        private final BloomFilter<CharSequence> filter;
+        private final long receivedAt;
+
+        private Received(final BloomFilter<CharSequence> filter, final long receivedAt) {
+            this.filter = filter;
+            this.receivedAt = receivedAt;
+        }
+
+        private boolean mightContain(final String id) {
+            return filter.mightContain(id);
+        }
+    }
+
+    /**
+     * Collects the serialized filter and cuts it into chunks.
+     */
+    private static final class ChunkedOutput extends ByteArrayOutputStream {
+        private Iterator<byte[]> chunks() {
+            final byte[] bytes = toByteArray();
+            final byte[][] chunks = new byte[(bytes.length + CHUNK_BYTES - 1) / CHUNK_BYTES][];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = Arrays.copyOfRange(bytes, i * CHUNK_BYTES, Math.min(bytes.length, (i + 1) * CHUNK_BYTES));
+            }
+            return Arrays.asList(chunks).iterator();
+        }
+    }
+}
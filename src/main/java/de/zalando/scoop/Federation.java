@@ -0,0 +1,238 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Ordering;
+import de.zalando.scoop.ScoopCommunication.FederationAssignment;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Splits the key space between several Scoop clusters, so that every key is handled by one cluster only, and
+ * within that cluster by the owner of its partition. Ids are hashed onto {@link #SLICES} slices independently of
+ * their partition; every cluster is home of a contiguous block of the slices, and ids with a home cluster (see
+ * {@link HomeResolver}) are hashed onto the slices of their home only. A slice is owned by its home cluster while
+ * it is up and by one of the other clusters (picked by rendezvous hashing) otherwise (see
+ * {@link FederationBalancer}).
+ *
+ * The coordinator publishes the slices claimed by its cluster to all members every heartbeat; a member owns no
+ * slice until it received them and none once it did not get them for {@link #LEASE_HEARTBEATS} heartbeats, so a
+ * member cut off from its coordinator fences itself before peer clusters take its slices over (see
+ * {@link #getTakeoverNanos()}). Must be configured on all members of all clusters with the same cluster names.
+ */
+final class Federation {
+
+    private final String localCluster;
+    private final ImmutableSortedMap<String, ImmutableList<String>> peers;
+    private final ImmutableList<String> clusters;
+    private final long heartbeatNanos;
+    private final long failureTimeoutNanos;
+    private final Ticker ticker;
+    private volatile HomeResolver homes;
+
+    // only updated by the Scoop actor
+    private volatile long[] ownedSlices;
+    private volatile long version;
+    private volatile long ownedUntilNanos;
+
+    static final int SLICES = 1024;
+    static final int LEASE_HEARTBEATS = 2;
+
+    /**
+     * Heartbeats a peer cluster waits beyond the failure timeout before it takes over: the last summary may have been
+     * sent one heartbeat before the cut, the cut-off coordinator notices the lost majority on its next heartbeat,
+     * its members may hold their slices for the lease and one heartbeat covers the propagation.
+     */
+    static final int TAKEOVER_MARGIN_HEARTBEATS = LEASE_HEARTBEATS + 3;
+
+    /**
+     * @param peers names of the other clusters and the addresses of some of their members, e.g.
+     *              {@code akka.tcp://scoop-system@10.1.0.1:25551}
+     */
+    Federation(final String localCluster,
+               final Map<String, ? extends Collection<String>> peers,
+               final long heartbeat,
+               final long failureTimeout,
+               final TimeUnit unit) {
+        this(localCluster, peers, heartbeat, failureTimeout, unit, Ticker.systemTicker());
+    }
+
+    Federation(final String localCluster,
+               final Map<String, ? extends Collection<String>> peers,
+               final long heartbeat,
+               final long failureTimeout,
+               final TimeUnit unit,
+               final Ticker ticker) {
+        checkNotNull(localCluster, "local cluster must not be null");
+        checkNotNull(peers, "peers must not be null");
+        checkArgument(!peers.isEmpty(), "federation needs at least one peer cluster");
+        checkArgument(!peers.containsKey(localCluster), "local cluster must not be a peer. Got [localCluster=%s]",
+                      localCluster);
+        checkArgument(heartbeat > 0 && heartbeat < failureTimeout,
+                      "heartbeat must be > 0 and < failure timeout. Got [heartbeat=%s, failureTimeout=%s]",
+                      heartbeat, failureTimeout);
+        checkNotNull(unit, "time unit must not be null");
+
+        final ImmutableSortedMap.Builder<String, ImmutableList<String>> builder = ImmutableSortedMap.naturalOrder();
+        peers.forEach((cluster, contacts) -> {
+            checkArgument(!contacts.isEmpty(), "peer cluster needs at least one contact. Got [cluster=%s]", cluster);
+            builder.put(cluster, ImmutableList.copyOf(contacts));
+        });
+        this.localCluster = localCluster;
+        this.peers = builder.build();
+        this.clusters = Ordering.natural().immutableSortedCopy(ImmutableList.<String>builder()
+                                                                           .add(localCluster)
+                                                                           .addAll(peers.keySet())
+                                                                           .build());
+        this.heartbeatNanos = unit.toNanos(heartbeat);
+        this.failureTimeoutNanos = unit.toNanos(failureTimeout);
+        this.ticker = checkNotNull(ticker, "ticker must not be null");
+        this.ownedSlices = new long[0];
+    }
+
+    String getLocalCluster() {
+        return localCluster;
+    }
+
+    Map<String, ImmutableList<String>> getPeers() {
+        return peers;
+    }
+
+    /**
+     * @return names of all clusters of the federation in natural order
+     */
+    ImmutableList<String> getClusters() {
+        return clusters;
+    }
+
+    long getHeartbeatNanos() {
+        return heartbeatNanos;
+    }
+
+    long getFailureTimeoutNanos() {
+        return failureTimeoutNanos;
+    }
+
+    /**
+     * @return how long members keep the published slices without a refresh
+     */
+    long getLeaseNanos() {
+        return LEASE_HEARTBEATS * heartbeatNanos;
+    }
+
+    /**
+     * @return how long a peer cluster must not have been heard of before its slices are taken over
+     */
+    long getTakeoverNanos() {
+        return failureTimeoutNanos + TAKEOVER_MARGIN_HEARTBEATS * heartbeatNanos;
+    }
+
+    HomeResolver getHomes() {
+        return homes;
+    }
+
+    void setHomes(final HomeResolver homes) {
+        this.homes = homes;
+    }
+
+    /**
+     * @return first slice the given cluster is home of
+     */
+    int homeStart(final String cluster) {
+        return homeStart(clusters.indexOf(cluster));
+    }
+
+    private int homeStart(final int index) {
+        return index * SLICES / clusters.size();
+    }
+
+    /**
+     * @return cluster the slice is home of
+     */
+    String homeOf(final int slice) {
+        return clusters.get(((slice + 1) * clusters.size() - 1) / SLICES);
+    }
+
+    /**
+     * @param hash hash of the key of the id (see {@link ScoopClientImpl#hash(String, KeyExtractor)})
+     */
+    int sliceOf(final String id, final int hash) {
+        final int mixed = mix(hash);
+        final HomeResolver currentHomes = homes;
+        final String home = currentHomes == null ? null : currentHomes.homeOf(id);
+        final int index = home == null ? -1 : clusters.indexOf(home);
+        if (index < 0) {
+            return Math.floorMod(mixed, SLICES);
+        }
+
+        final int start = homeStart(index);
+        return start + Math.floorMod(mixed, homeStart(index + 1) - start);
+    }
+
+    /**
+     * Partitions are taken from the low bits of the hash, so the slice is taken from a remixed one; otherwise all ids
+     * of a partition would end up in the same slice.
+     */
+    static int mix(final int hash) {
+        int h = Integer.rotateLeft(hash, 16) * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    boolean isLocal(final String id, final int hash) {
+        if (ticker.read() - ownedUntilNanos >= 0) {
+            return false;
+        }
+
+        final int slice = sliceOf(id, hash);
+        final long[] owned = ownedSlices;
+        final int word = slice >>> 6;
+        return word < owned.length && (owned[word] & (1L << slice)) != 0;
+    }
+
+    /**
+     * Only called by the Scoop actor. The slices are owned for the lease, measured from their arrival.
+     *
+     * @return true if the assignment is newer than the current one and was applied
+     */
+    boolean update(final FederationAssignment assignment) {
+        if (assignment.getVersion() <= version) {
+            return false;
+        }
+        ownedSlices = assignment.getOwnedSlices().toLongArray();
+        ownedUntilNanos = ticker.read() + getLeaseNanos();
+        version = assignment.getVersion();
+        return true;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    BitSet getOwnedSlices() {
+        return BitSet.valueOf(ownedSlices);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("localCluster", localCluster)
+                .add("peers", peers)
+                .add("heartbeatNanos", heartbeatNanos)
+                .add("failureTimeoutNanos", failureTimeoutNanos)
+                .add("homes", homes)
+                .add("version", version)
+                .add("ownedSlices", getOwnedSlices().cardinality())
+                .toString();
+    }
+}
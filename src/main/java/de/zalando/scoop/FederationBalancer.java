@@ -0,0 +1,156 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import de.zalando.scoop.ScoopCommunication.FederationSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides which slices of a {@link Federation} the local cluster claims, from the summaries its peer clusters send
+ * every heartbeat. A slice is wanted by its home cluster while that one is up and otherwise by the cluster scoring
+ * highest for it (rendezvous hashing), so the slices of a failed cluster spread over the others and return to it
+ * when it comes back. A wanted slice is only claimed once no peer claims it anymore, so clusters which can talk to
+ * each other hand slices over without overlap.
+ *
+ * A peer which did not send a summary for the failure timeout is no longer live, but its slices are only taken over
+ * (and its claims ignored) once it was not heard of for the takeover time (see {@link Federation#getTakeoverNanos()}):
+ * with three or more clusters, a cluster which cannot reach the majority of them claims no slice at all after the
+ * failure timeout, so a cut-off cluster gave its slices up before the others take them. With two clusters, each
+ * takes over everything after the takeover time when they cannot reach each other.
+ *
+ * For the takeover time after start, no slice is claimed except the ones the balancer was created with (those the
+ * local member owned before, e.g. because the coordinator moved), so that it learns about the peers first.
+ */
+final class FederationBalancer {
+
+    private final Federation federation;
+    private final long startedAtNanos;
+    private final BitSet initialClaims;
+    private final HashMap<String, BitSet> peerClaims;
+    private final HashMap<String, Long> heardAtNanos;
+    private Set<String> wantedFor;
+    private BitSet wanted;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    FederationBalancer(final Federation federation, final BitSet initialClaims, final long nowNanos) {
+        this.federation = requireNonNull(federation, "federation must not be null");
+        this.initialClaims = (BitSet) requireNonNull(initialClaims, "initial claims must not be null").clone();
+        this.startedAtNanos = nowNanos;
+        this.peerClaims = Maps.newHashMap();
+        this.heardAtNanos = Maps.newHashMap();
+    }
+
+    /**
+     * @return false if the summary comes from an unknown cluster and was ignored
+     */
+    boolean update(final FederationSummary summary, final long nowNanos) {
+        if (!federation.getPeers().containsKey(summary.getCluster())) {
+            return false;
+        }
+        peerClaims.put(summary.getCluster(), summary.getClaimedSlices());
+        heardAtNanos.put(summary.getCluster(), nowNanos);
+        return true;
+    }
+
+    /**
+     * @return the local cluster and all peers which sent a summary within the failure timeout
+     */
+    Set<String> liveClusters(final long nowNanos) {
+        return heardWithin(federation.getFailureTimeoutNanos(), nowNanos);
+    }
+
+    /**
+     * @return the local cluster and all peers which sent a summary within the takeover time
+     */
+    Set<String> keptClusters(final long nowNanos) {
+        return heardWithin(federation.getTakeoverNanos(), nowNanos);
+    }
+
+    private Set<String> heardWithin(final long timeoutNanos, final long nowNanos) {
+        final TreeSet<String> clusters = Sets.newTreeSet();
+        clusters.add(federation.getLocalCluster());
+        heardAtNanos.forEach((cluster, heardAt) -> {
+            if (nowNanos - heardAt <= timeoutNanos) {
+                clusters.add(cluster);
+            }
+        });
+        return clusters;
+    }
+
+    BitSet claims(final long nowNanos) {
+        final int clusters = federation.getClusters().size();
+        if (clusters > 2 && liveClusters(nowNanos).size() * 2 <= clusters) {
+            return new BitSet();
+        }
+
+        final Set<String> kept = keptClusters(nowNanos);
+        final BitSet claims = nowNanos - startedAtNanos < federation.getTakeoverNanos()
+                              ? (BitSet) initialClaims.clone()
+                              : (BitSet) wanted(kept).clone();
+        kept.stream()
+            .filter(cluster -> !cluster.equals(federation.getLocalCluster()))
+            .forEach(cluster -> claims.andNot(peerClaims.get(cluster)));
+        return claims;
+    }
+
+    private BitSet wanted(final Set<String> kept) {
+        if (!kept.equals(wantedFor)) {
+            final BitSet newWanted = new BitSet(Federation.SLICES);
+            for (int slice = 0; slice < Federation.SLICES; slice++) {
+                if (ownerOf(slice, kept).equals(federation.getLocalCluster())) {
+                    newWanted.set(slice);
+                }
+            }
+            wanted = newWanted;
+            wantedFor = kept;
+        }
+        return wanted;
+    }
+
+    /**
+     * @param kept clusters whose slices are not taken over, containing at least the local one
+     * @return cluster which should own the slice
+     */
+    String ownerOf(final int slice, final Set<String> kept) {
+        final String home = federation.homeOf(slice);
+        if (kept.contains(home)) {
+            return home;
+        }
+
+        String owner = null;
+        int ownerScore = 0;
+        for (final String cluster : kept) {
+            final int score = score(slice, cluster);
+            if (owner == null || score > ownerScore || (score == ownerScore && cluster.compareTo(owner) < 0)) {
+                owner = cluster;
+                ownerScore = score;
+            }
+        }
+        return owner;
+    }
+
+    private static int score(final int slice, final String cluster) {
+        return HASH_FUNCTION.newHasher().putInt(slice).putString(cluster, StandardCharsets.UTF_8).hash().asInt();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("localCluster", federation.getLocalCluster())
+                .add("heardAtNanos", heardAtNanos)
+                .add("wantedFor", wantedFor)
+                .toString();
+    }
+}
@@ -0,0 +1,44 @@
+package de.zalando.scoop;
+
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for the seqlock of the ownership snapshot (see {@link OwnershipSnapshotWriter}), which is shared
+ * with other processes via a memory-mapped file, so that the ordering must hold on the hardware level and cannot be
+ * derived from volatile fields of this process. Uses {@code sun.misc.Unsafe} as long as Java 8 is supported; from
+ * Java 9 on, {@code VarHandle.acquireFence()} and {@code VarHandle.releaseFence()} are equivalent.
+ */
+final class Fences {
+
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+        }
+        catch (final ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Fences() {}
+
+    /**
+     * Loads before the fence are not reordered with loads and stores after it.
+     */
+    static void loadFence() {
+        UNSAFE.loadFence();
+    }
+
+    /**
+     * Loads and stores before the fence are not reordered with stores after it.
+     */
+    static void storeFence() {
+        UNSAFE.storeFence();
+    }
+}
@@ -0,0 +1,16 @@
+package de.zalando.scoop;
+
+
+/**
+ * Names the cluster of a federation (see {@link Scoop#withFederation(String, java.util.Map)}) which should handle an
+ * id as long as it is up, e.g. the region an order was placed in. Called on every ownership check: implementations
+ * must be fast and must not allocate more than necessary.
+ */
+@FunctionalInterface
+public interface HomeResolver {
+
+    /**
+     * @return name of the cluster preferred for the id; {@code null} if the id has no preference
+     */
+    String homeOf(String id);
+}
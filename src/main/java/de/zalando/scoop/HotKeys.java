@@ -0,0 +1,63 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Versioned table of keys whose work is spread over more than one owner. It is distributed by the
+ * leader to all members (the same way as {@link Rebalanced}) so that every member agrees on which
+ * keys are split and over how many owners.
+ */
+public final class HotKeys implements Serializable {
+
+    private final long version;
+    private final ImmutableMap<String, Integer> owners;
+
+    public static final HotKeys NONE = new HotKeys(0, ImmutableMap.of());
+
+    public HotKeys(final long version, final Map<String, Integer> owners) {
+        checkArgument(version > -1, "version must be > -1. Got [version=%s]", version);
+        checkNotNull(owners, "map of hot key owners must not be null");
+        owners.forEach((key, numberOfOwners) ->
+                checkArgument(numberOfOwners > 1, "hot key must have > 1 owners. Got [key=%s, owners=%s]",
+                              key, numberOfOwners));
+
+        this.version = version;
+        this.owners = ImmutableMap.copyOf(owners);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Integer> getOwners() {
+        return owners;
+    }
+
+    public boolean isHot(final String key) {
+        return owners.containsKey(key);
+    }
+
+    /**
+     * @return number of owners the given key is spread over; {@code 1} for keys which are not hot
+     */
+    public int ownersOf(final String key) {
+        final Integer numberOfOwners = owners.get(key);
+        return numberOfOwners == null ? 1 : numberOfOwners;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("version", version)
+                .add("owners", owners)
+                .toString();
+    }
+}
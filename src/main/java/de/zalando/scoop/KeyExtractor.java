@@ -0,0 +1,91 @@
+package de.zalando.scoop;
+
+
+/**
+ * Selects the part of an id which determines its partition, so that related ids (e.g. all events of a tenant)
+ * are handled by the same member. The part is given as range {@code [beginIndex, endIndex)} of the id, like
+ * {@link String#substring(int, int)}, and hashed in place without allocating a substring.
+ */
+public interface KeyExtractor {
+
+    int beginIndex(String id);
+
+    int endIndex(String id);
+
+    /**
+     * The whole id determines the partition.
+     */
+    KeyExtractor WHOLE_ID = new KeyExtractor() {
+        @Override
+        public int beginIndex(final String id) {
+            return 0;
+        }
+
+        @Override
+        public int endIndex(final String id) {
+            return id.length();
+        }
+
+        @Override
+        public String toString() {
+            return "WHOLE_ID";
+        }
+    };
+
+    /**
+     * Only the part between the first {@code '{'} and the next {@code '}'} determines the partition, e.g.
+     * {@code "{tenant-1}:order:created"}. Ids without such a (non-empty) hash tag are hashed as a whole.
+     */
+    static KeyExtractor hashTag() {
+        return new KeyExtractor() {
+            @Override
+            public int beginIndex(final String id) {
+                final int open = id.indexOf('{');
+                if (open < 0) {
+                    return 0;
+                }
+                final int close = id.indexOf('}', open + 1);
+                return close > open + 1 ? open + 1 : 0;
+            }
+
+            @Override
+            public int endIndex(final String id) {
+                final int open = id.indexOf('{');
+                if (open < 0) {
+                    return id.length();
+                }
+                final int close = id.indexOf('}', open + 1);
+                return close > open + 1 ? close : id.length();
+            }
+
+            @Override
+            public String toString() {
+                return "hashTag";
+            }
+        };
+    }
+
+    /**
+     * Only the part before the first occurrence of the delimiter determines the partition, e.g. the tenant of
+     * {@code "tenant-1:order:created"} with delimiter {@code ':'}. Ids without delimiter are hashed as a whole.
+     */
+    static KeyExtractor prefix(final char delimiter) {
+        return new KeyExtractor() {
+            @Override
+            public int beginIndex(final String id) {
+                return 0;
+            }
+
+            @Override
+            public int endIndex(final String id) {
+                final int end = id.indexOf(delimiter);
+                return end < 0 ? id.length() : end;
+            }
+
+            @Override
+            public String toString() {
+                return "prefix(" + delimiter + ")";
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Contiguous range of keys {@code [from, to)} in {@link String#compareTo(String)} order; an absent bound means the
+ * range is unbounded on that side (see {@link Scoop#withRangePartitions(int, String...)}).
+ */
+public final class KeyRange implements Serializable {
+
+    private final String from;
+    private final String to;
+
+    public static final KeyRange ALL = new KeyRange(null, null);
+
+    /**
+     * @param from lowest key in the range (inclusive); {@code null} if unbounded
+     * @param to   first key after the range (exclusive); {@code null} if unbounded
+     */
+    public KeyRange(final String from, final String to) {
+        checkArgument(from == null || to == null || from.compareTo(to) < 0,
+                      "range must not be empty. Got [from=%s, to=%s]", from, to);
+        this.from = from;
+        this.to = to;
+    }
+
+    public Optional<String> getFrom() {
+        return Optional.ofNullable(from);
+    }
+
+    public Optional<String> getTo() {
+        return Optional.ofNullable(to);
+    }
+
+    public boolean contains(final String key) {
+        checkNotNull(key, "key must not be null");
+        return (from == null || from.compareTo(key) <= 0) && (to == null || key.compareTo(to) < 0);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final KeyRange that = (KeyRange) o;
+        return Objects.equals(from, that.from) && Objects.equals(to, that.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("from", from)
+                .add("to", to)
+                .toString();
+    }
+}
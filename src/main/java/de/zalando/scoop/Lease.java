@@ -0,0 +1,196 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import de.zalando.scoop.telemetry.LeaseTelemetryMXBean;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Time-bounded right of this member to handle its partitions. The {@link ScoopActor} asks the coordinator for a
+ * renewal every renew interval; a grant extends the lease to the time of the request plus the lease duration,
+ * measured on this member's monotonic clock. The coordinator does not reassign the partitions of a removed
+ * member before the last lease it granted has run out, so a member cut off from the coordinator stops handling
+ * its partitions before anybody else starts. A member which cannot reach the majority of the cluster gives up
+ * its lease right away; once the unreachable members were removed, the first grant for a request sent after their
+ * removal gives it back, as the coordinator granting it works with the new membership.
+ */
+final class Lease implements LeaseTelemetryMXBean {
+
+    private final long durationNanos;
+    private final long renewIntervalNanos;
+    private final Ticker ticker;
+    private volatile boolean granted;
+    private volatile long expiresAtNanos;
+    private volatile boolean majorityLost;
+    private boolean liftOnGrant;
+    private long liftOnGrantAfterNanos;
+    private volatile long lastRoundTripNanos;
+    private final LongAccumulator maxRoundTripNanos;
+    private final LongAdder requests;
+    private final LongAdder grants;
+    private final LongAdder expirations;
+    private final LongAdder fencedChecks;
+
+    Lease(final long duration, final long renewInterval, final TimeUnit unit) {
+        this(duration, renewInterval, unit, Ticker.systemTicker());
+    }
+
+    Lease(final long duration, final long renewInterval, final TimeUnit unit, final Ticker ticker) {
+        checkArgument(duration > 0, "lease duration must be > 0. Got [duration=%s]", duration);
+        checkArgument(renewInterval > 0 && renewInterval < duration,
+                      "renew interval must be > 0 and < lease duration. Got [renewInterval=%s, duration=%s]",
+                      renewInterval, duration);
+        checkNotNull(unit, "time unit must not be null");
+        this.durationNanos = unit.toNanos(duration);
+        this.renewIntervalNanos = unit.toNanos(renewInterval);
+        this.ticker = checkNotNull(ticker, "ticker must not be null");
+        this.maxRoundTripNanos = new LongAccumulator(Math::max, 0);
+        this.requests = new LongAdder();
+        this.grants = new LongAdder();
+        this.expirations = new LongAdder();
+        this.fencedChecks = new LongAdder();
+    }
+
+    long getDurationNanos() {
+        return durationNanos;
+    }
+
+    long getRenewIntervalNanos() {
+        return renewIntervalNanos;
+    }
+
+    /**
+     * @return timestamp to send with the renewal request
+     */
+    long requested() {
+        requests.increment();
+        return ticker.read();
+    }
+
+    /**
+     * Only called by the Scoop actor.
+     *
+     * @return true if the lease had expired (or was never granted) and is reacquired
+     */
+    boolean granted(final long requestedAtNanos) {
+        final long now = ticker.read();
+        final boolean reacquired = !granted || now - expiresAtNanos >= 0;
+        grants.increment();
+        lastRoundTripNanos = now - requestedAtNanos;
+        maxRoundTripNanos.accumulate(lastRoundTripNanos);
+
+        final long newExpiresAtNanos = requestedAtNanos + durationNanos;
+        if (!granted || newExpiresAtNanos - expiresAtNanos > 0) {
+            expiresAtNanos = newExpiresAtNanos;
+        }
+        if (granted && reacquired) {
+            expirations.increment();
+        }
+        granted = true;
+        if (majorityLost && liftOnGrant && requestedAtNanos - liftOnGrantAfterNanos >= 0) {
+            majorityLost = false;
+            liftOnGrant = false;
+            return true;
+        }
+        return reacquired;
+    }
+
+    void setMajorityLost(final boolean majorityLost) {
+        this.majorityLost = majorityLost;
+        this.liftOnGrant = false;
+    }
+
+    /**
+     * Only called by the Scoop actor when the unreachable members were removed while the majority was lost: the
+     * lease stays fenced until a grant for a request sent from now on arrives.
+     */
+    void liftMajorityLostOnGrant() {
+        if (majorityLost && !liftOnGrant) {
+            liftOnGrant = true;
+            liftOnGrantAfterNanos = ticker.read();
+        }
+    }
+
+    @Override
+    public boolean isMajorityLost() {
+        return majorityLost;
+    }
+
+    @Override
+    public boolean isValid() {
+        return granted && !majorityLost && ticker.read() - expiresAtNanos < 0;
+    }
+
+    /**
+     * Counts an ownership check which was denied only because the lease is not valid.
+     */
+    void recordFenced() {
+        fencedChecks.increment();
+    }
+
+    @Override
+    public long getRemainingMillis() {
+        return granted ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - ticker.read())) : 0;
+    }
+
+    @Override
+    public long getLeaseDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    @Override
+    public long getRenewIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(renewIntervalNanos);
+    }
+
+    @Override
+    public long getRenewalRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRenewalGrants() {
+        return grants.sum();
+    }
+
+    /**
+     * @return number of times the lease ran out and was reacquired later
+     */
+    @Override
+    public long getLeaseExpirations() {
+        return expirations.sum();
+    }
+
+    @Override
+    public long getLastRenewalRoundTripMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastRoundTripNanos);
+    }
+
+    @Override
+    public long getMaxRenewalRoundTripMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxRoundTripNanos.get());
+    }
+
+    @Override
+    public long getFencedChecks() {
+        return fencedChecks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("durationMillis", getLeaseDurationMillis())
+                .add("renewIntervalMillis", getRenewIntervalMillis())
+                .add("valid", isValid())
+                .add("majorityLost", majorityLost)
+                .add("remainingMillis", getRemainingMillis())
+                .toString();
+    }
+}
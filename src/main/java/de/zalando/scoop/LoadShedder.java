@@ -0,0 +1,134 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.zalando.scoop.LoadShedding.Level;
+import de.zalando.scoop.ScoopCommunication.LoadReport;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lowers the capacity of members falling behind (see {@link LoadShedding}), so that the {@link AssignmentStrategy}
+ * moves part of their partitions to the other members. The capacity of an overloaded member is halved, down to
+ * {@link #MIN_CAPACITY}, and the capacity of a healthy one doubled, up to its full share again; members in between
+ * keep theirs. The capacity of a member changes at most once per {@link #HOLD_NANOS}, so every step moves a bounded
+ * number of partitions and a member does not get its partitions back right after they moved off it.
+ *
+ * Fewer than half of the eligible members are shed at a time (the ones lagging most): if most members fall behind,
+ * moving partitions around does not help. Members which did not report for {@link #REPORT_TTL_NANOS} count as
+ * healthy.
+ */
+final class LoadShedder {
+
+    private final LoadShedding thresholds;
+    private final HashMap<String, LoadReport> reports;
+    private final HashMap<String, Long> reportedAtNanos;
+    private final HashMap<String, Double> capacities;
+    private final HashMap<String, Long> changedAtNanos;
+
+    static final double MIN_CAPACITY = 0.25;
+    static final long HOLD_NANOS = TimeUnit.SECONDS.toNanos(60);
+    static final long REPORT_TTL_NANOS = 3 * LoadShedding.REFRESH_REPORTS
+                                         * TimeUnit.MILLISECONDS.toNanos(ScoopActor.LOAD_REPORT_INTERVAL.toMillis());
+
+    LoadShedder(final LoadShedding thresholds) {
+        this.thresholds = requireNonNull(thresholds, "thresholds must not be null");
+        this.reports = Maps.newHashMap();
+        this.reportedAtNanos = Maps.newHashMap();
+        this.capacities = Maps.newHashMap();
+        this.changedAtNanos = Maps.newHashMap();
+    }
+
+    void update(final LoadReport report, final long nowNanos) {
+        reports.put(report.getMember(), report);
+        reportedAtNanos.put(report.getMember(), nowNanos);
+    }
+
+    void remove(final String member) {
+        reports.remove(member);
+        reportedAtNanos.remove(member);
+        capacities.remove(member);
+        changedAtNanos.remove(member);
+    }
+
+    /**
+     * @return true if the capacity of any member changed
+     */
+    boolean adjust(final Collection<String> eligible, final long nowNanos) {
+        boolean changed = capacities.keySet().retainAll(eligible);
+
+        for (final String member : Lists.newArrayList(capacities.keySet())) {
+            if (levelOf(member, nowNanos) == Level.HEALTHY && !isHeld(member, nowNanos)) {
+                final double capacity = Math.min(1.0, capacities.get(member) * 2);
+                setCapacity(member, capacity, nowNanos);
+                changed = true;
+            }
+        }
+
+        final List<String> overloaded = Lists.newArrayList();
+        eligible.stream().filter(m -> levelOf(m, nowNanos) == Level.OVERLOADED).forEach(overloaded::add);
+        overloaded.sort(Comparator.<String>comparingLong(m -> reports.get(m).getLagMillis())
+                                  .thenComparingLong(m -> reports.get(m).getQueueDepth())
+                                  .reversed()
+                                  .thenComparing(Comparator.naturalOrder()));
+        for (final String member : overloaded) {
+            final Double capacity = capacities.get(member);
+            if (capacity == null && (capacities.size() + 1) * 2 >= eligible.size()) {
+                continue;
+            }
+            if ((capacity == null || capacity > MIN_CAPACITY) && !isHeld(member, nowNanos)) {
+                setCapacity(member, Math.max(MIN_CAPACITY, (capacity == null ? 1.0 : capacity) / 2), nowNanos);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return capacities of the members which are shed; members not contained have their full share
+     */
+    Map<String, Double> getCapacities() {
+        return ImmutableMap.copyOf(capacities);
+    }
+
+    private Level levelOf(final String member, final long nowNanos) {
+        final LoadReport report = reports.get(member);
+        if (report == null || nowNanos - reportedAtNanos.get(member) > REPORT_TTL_NANOS) {
+            return Level.HEALTHY;
+        }
+        return thresholds.levelOf(report.getQueueDepth(), report.getLagMillis());
+    }
+
+    private boolean isHeld(final String member, final long nowNanos) {
+        final Long changedAt = changedAtNanos.get(member);
+        return changedAt != null && nowNanos - changedAt < HOLD_NANOS;
+    }
+
+    private void setCapacity(final String member, final double capacity, final long nowNanos) {
+        if (capacity < 1.0) {
+            capacities.put(member, capacity);
+        }
+        else {
+            capacities.remove(member);
+        }
+        changedAtNanos.put(member, nowNanos);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("thresholds", thresholds)
+                .add("capacities", capacities)
+                .toString();
+    }
+}
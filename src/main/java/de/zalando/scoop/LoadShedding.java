@@ -0,0 +1,97 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import de.zalando.scoop.ScoopCommunication.LoadReport;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Load of this member as last reported via {@link ScoopClient#reportLoad(long, long)} and the thresholds from which on
+ * the coordinator sheds partitions of a member (see {@link LoadShedder}). A member is overloaded once its lag or queue
+ * depth exceeds its maximum and healthy again once both are below half of it; in between its partitions stay as they
+ * are, so that members around a threshold do not flap.
+ *
+ * The {@link ScoopActor} checks the level every report interval but only reports it to the coordinator when it changed
+ * or every {@link #REFRESH_REPORTS} intervals, so that a moved coordinator learns about it.
+ */
+final class LoadShedding {
+
+    enum Level { HEALTHY, ELEVATED, OVERLOADED }
+
+    private final long maxLagMillis;
+    private final long maxQueueDepth;
+    private volatile long queueDepth;
+    private volatile long lagMillis;
+
+    // only accessed by the Scoop actor
+    private Level reportedLevel;
+    private int unreportedIntervals;
+
+    static final int REFRESH_REPORTS = 6;
+
+    LoadShedding(final long maxLag, final TimeUnit unit, final long maxQueueDepth) {
+        checkArgument(maxLag > 0, "maximum lag must be > 0. Got [maxLag=%s]", maxLag);
+        checkNotNull(unit, "time unit must not be null");
+        checkArgument(maxQueueDepth > 0, "maximum queue depth must be > 0. Got [maxQueueDepth=%s]", maxQueueDepth);
+        this.maxLagMillis = unit.toMillis(maxLag);
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    void report(final long newQueueDepth, final long newLagMillis) {
+        checkArgument(newQueueDepth > -1, "queue depth must be >= 0. Got [queueDepth=%s]", newQueueDepth);
+        checkArgument(newLagMillis > -1, "lag must be >= 0. Got [lagMillis=%s]", newLagMillis);
+        this.queueDepth = newQueueDepth;
+        this.lagMillis = newLagMillis;
+    }
+
+    Level levelOf(final long reportedQueueDepth, final long reportedLagMillis) {
+        if (reportedLagMillis > maxLagMillis || reportedQueueDepth > maxQueueDepth) {
+            return Level.OVERLOADED;
+        }
+        if (reportedLagMillis * 2 < maxLagMillis && reportedQueueDepth * 2 < maxQueueDepth) {
+            return Level.HEALTHY;
+        }
+        return Level.ELEVATED;
+    }
+
+    /**
+     * Only called by the Scoop actor, once per report interval.
+     *
+     * @return report to send to the coordinator; empty if the level did not change and no refresh is due
+     */
+    Optional<LoadReport> nextReport(final String member) {
+        final long currentQueueDepth = queueDepth;
+        final long currentLagMillis = lagMillis;
+        final Level level = levelOf(currentQueueDepth, currentLagMillis);
+        if (level == reportedLevel && ++unreportedIntervals < REFRESH_REPORTS) {
+            return Optional.empty();
+        }
+
+        reportedLevel = level;
+        unreportedIntervals = 0;
+        return Optional.of(new LoadReport(member, currentQueueDepth, currentLagMillis));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxLagMillis", maxLagMillis)
+                .add("maxQueueDepth", maxQueueDepth)
+                .add("queueDepth", queueDepth)
+                .add("lagMillis", lagMillis)
+                .toString();
+    }
+}
@@ -0,0 +1,94 @@
+package de.zalando.scoop;
+
+
+/**
+ * 32-bit Murmur3 hash (seed 0) of the UTF-8 encoding of a range of characters, computed without encoding the
+ * characters into a byte array first. It matches Guava's {@code Hashing.murmur3_32().hashString(s, UTF_8)}
+ * of the corresponding substring, including the replacement of unpaired surrogates by {@code '?'}.
+ */
+final class Murmur3 {
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private Murmur3() {}
+
+    static int hashUtf8(final CharSequence input, final int beginIndex, final int endIndex) {
+        int h1 = 0;
+        int block = 0;
+        int shift = 0;
+        int length = 0;
+
+        for (int i = beginIndex; i < endIndex; i++) {
+            final char c = input.charAt(i);
+
+            // UTF-8 bytes of the character in little-endian order
+            final int bytes;
+            final int count;
+            if (c < 0x80) {
+                bytes = c;
+                count = 1;
+            }
+            else if (c < 0x800) {
+                bytes = (0xc0 | (c >>> 6)) | (0x80 | (c & 0x3f)) << 8;
+                count = 2;
+            }
+            else if (!Character.isSurrogate(c)) {
+                bytes = (0xe0 | (c >>> 12)) | (0x80 | ((c >>> 6) & 0x3f)) << 8 | (0x80 | (c & 0x3f)) << 16;
+                count = 3;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < endIndex && Character.isLowSurrogate(input.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, input.charAt(++i));
+                bytes = (0xf0 | (codePoint >>> 18))
+                        | (0x80 | ((codePoint >>> 12) & 0x3f)) << 8
+                        | (0x80 | ((codePoint >>> 6) & 0x3f)) << 16
+                        | (0x80 | (codePoint & 0x3f)) << 24;
+                count = 4;
+            }
+            else {
+                bytes = '?';
+                count = 1;
+            }
+
+            for (int b = 0; b < count; b++) {
+                block |= ((bytes >>> (8 * b)) & 0xff) << shift;
+                shift += 8;
+                if (shift == 32) {
+                    h1 = mixH1(h1, mixK1(block));
+                    block = 0;
+                    shift = 0;
+                }
+            }
+            length += count;
+        }
+
+        if (shift > 0) {
+            h1 ^= mixK1(block);
+        }
+        return fmix(h1, length);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static int mixH1(int h1, final int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+
+    private static int fmix(int h1, final int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
@@ -0,0 +1,237 @@
+package de.zalando.scoop;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * Reads the partitions owned by a Scoop member from the memory-mapped file it publishes (see
+ * {@link Scoop#withOwnershipSnapshot(Path)}), so that other processes on the same host can check ownership
+ * without asking the member. The file is laid out as follows (little-endian):
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic "SCOP" (0x504f4353)
+ *      4     4  format version (2)
+ *      8     8  sequence number: odd while the member writes, incremented before and after each update
+ *     16     8  assignment epoch (-1 before the first assignment)
+ *     24     4  number of partitions
+ *     28     4  hash algorithm (1: Murmur3 32-bit, seed 0, of the UTF-8 encoded key, partition = floorMod(hash, n))
+ *     32     4  bitmap length in bytes
+ *     36     4  reserved
+ *     40     8  lease expiry (epoch millis): the partitions are not owned from then on; 0 while the member is fenced,
+ *               Long.MAX_VALUE without leases
+ *     48     n  bitmap of owned partitions: partition p is bit (p % 8) of byte (p / 8)
+ * </pre>
+ *
+ * Readers retry until they read the same even sequence number before and after reading the other fields. The file
+ * only grows, so a reader remaps it when the bitmap does not fit its mapping. Readers in other languages need a load
+ * fence after reading the sequence number first and another one before reading it again, as the writer needs a store
+ * fence after making it odd and before making it even again. The member publishes the expiry of its lease whenever it
+ * is granted and fences the snapshot right away when it loses the majority, so readers compare it with their wall
+ * clock. Hot keys are not spread: {@link #isHandledHere(String)} answers like {@link ScoopClient#isHandledByMe(String)}.
+ */
+public final class OwnershipSnapshotReader implements Closeable {
+
+    static final int MAGIC = 0x504f4353;
+    static final int VERSION = 2;
+    static final int HASH_MURMUR3_32_UTF8 = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int EPOCH_OFFSET = 16;
+    static final int PARTITIONS_OFFSET = 24;
+    static final int HASH_OFFSET = 28;
+    static final int BITMAP_LENGTH_OFFSET = 32;
+    static final int LEASE_EXPIRY_OFFSET = 40;
+    static final int HEADER_BYTES = 48;
+
+    private final FileChannel channel;
+    private final KeyExtractor keyExtractor;
+    private volatile MappedByteBuffer buffer;
+
+    private OwnershipSnapshotReader(final FileChannel channel, final KeyExtractor keyExtractor) throws IOException {
+        this.channel = channel;
+        this.keyExtractor = keyExtractor;
+        this.buffer = map();
+    }
+
+    /**
+     * @param keyExtractor must be the key extractor the member uses (see {@link Scoop#withKeyExtractor(KeyExtractor)})
+     */
+    public static OwnershipSnapshotReader open(final Path path, final KeyExtractor keyExtractor) throws IOException {
+        checkNotNull(path, "path must not be null");
+        checkNotNull(keyExtractor, "key extractor must not be null");
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new OwnershipSnapshotReader(channel, keyExtractor);
+        }
+        catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static OwnershipSnapshotReader open(final Path path) throws IOException {
+        return open(path, KeyExtractor.WHOLE_ID);
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.capacity() < HEADER_BYTES || mapped.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("not an ownership snapshot");
+        }
+        if (mapped.getInt(VERSION_OFFSET) != VERSION || mapped.getInt(HASH_OFFSET) != HASH_MURMUR3_32_UTF8) {
+            throw new IOException("unsupported ownership snapshot [version=" + mapped.getInt(VERSION_OFFSET)
+                                  + ", hash=" + mapped.getInt(HASH_OFFSET) + "]");
+        }
+        return mapped;
+    }
+
+    /**
+     * Does not allocate unless the file grew since it was mapped.
+     *
+     * @return true if the id belongs to a partition owned by the member and its lease has not run out
+     */
+    public boolean isHandledHere(final String id) throws IOException {
+        final int beginIndex = keyExtractor.beginIndex(id);
+        final int endIndex = keyExtractor.endIndex(id);
+        checkPositionIndexes(beginIndex, endIndex, id.length());
+        final int hash = Murmur3.hashUtf8(id, beginIndex, endIndex);
+
+        while (true) {
+            final MappedByteBuffer current = buffer;
+            final long sequence = beginRead(current);
+            final int numberOfPartitions = current.getInt(PARTITIONS_OFFSET);
+            final int bitmapLength = current.getInt(BITMAP_LENGTH_OFFSET);
+            final long leaseExpiresAtMillis = current.getLong(LEASE_EXPIRY_OFFSET);
+            if (HEADER_BYTES + bitmapLength > current.capacity()) {
+                remap(current);
+                continue;
+            }
+
+            boolean owned = false;
+            if (numberOfPartitions > 0) {
+                final int partition = Math.floorMod(hash, numberOfPartitions);
+                owned = partition / 8 < bitmapLength
+                        && (current.get(HEADER_BYTES + partition / 8) & (1 << (partition % 8))) != 0;
+            }
+            if (endRead(current, sequence)) {
+                return owned && System.currentTimeMillis() < leaseExpiresAtMillis;
+            }
+        }
+    }
+
+    /**
+     * @return consistent copy of the whole snapshot
+     */
+    public Snapshot read() throws IOException {
+        while (true) {
+            final MappedByteBuffer current = buffer;
+            final long sequence = beginRead(current);
+            final long epoch = current.getLong(EPOCH_OFFSET);
+            final int numberOfPartitions = current.getInt(PARTITIONS_OFFSET);
+            final int bitmapLength = current.getInt(BITMAP_LENGTH_OFFSET);
+            final long leaseExpiresAtMillis = current.getLong(LEASE_EXPIRY_OFFSET);
+            if (HEADER_BYTES + bitmapLength > current.capacity()) {
+                remap(current);
+                continue;
+            }
+
+            final byte[] bitmap = new byte[bitmapLength];
+            for (int i = 0; i < bitmapLength; i++) {
+                bitmap[i] = current.get(HEADER_BYTES + i);
+            }
+            if (endRead(current, sequence)) {
+                return new Snapshot(epoch, numberOfPartitions, BitSet.valueOf(bitmap), leaseExpiresAtMillis);
+            }
+        }
+    }
+
+    private long beginRead(final MappedByteBuffer current) {
+        long sequence = current.getLong(SEQUENCE_OFFSET);
+        while ((sequence & 1) != 0) {
+            Thread.yield();
+            sequence = current.getLong(SEQUENCE_OFFSET);
+        }
+        // the fields are read after the sequence number
+        Fences.loadFence();
+        return sequence;
+    }
+
+    private boolean endRead(final MappedByteBuffer current, final long sequence) {
+        // the fields are read before the sequence number is read again
+        Fences.loadFence();
+        return current.getLong(SEQUENCE_OFFSET) == sequence;
+    }
+
+    private synchronized void remap(final MappedByteBuffer current) throws IOException {
+        if (buffer == current) {
+            buffer = map();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Assignment of the member at one point in time.
+     */
+    public static final class Snapshot {
+        private final long epoch;
+        private final int numberOfPartitions;
+        private final BitSet owned;
+        private final long leaseExpiresAtMillis;
+
+        Snapshot(final long epoch, final int numberOfPartitions, final BitSet owned, final long leaseExpiresAtMillis) {
+            this.epoch = epoch;
+            this.numberOfPartitions = numberOfPartitions;
+            this.owned = owned;
+            this.leaseExpiresAtMillis = leaseExpiresAtMillis;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public int getNumberOfPartitions() {
+            return numberOfPartitions;
+        }
+
+        public BitSet getOwnedPartitions() {
+            return (BitSet) owned.clone();
+        }
+
+        public boolean isOwned(final int partition) {
+            return owned.get(partition);
+        }
+
+        /**
+         * @return epoch millis from which the owned partitions must not be handled anymore
+         */
+        public long getLeaseExpiresAtMillis() {
+            return leaseExpiresAtMillis;
+        }
+
+        /**
+         * @return true if the lease of the member has run out, so that none of its partitions may be handled
+         */
+        public boolean isFenced() {
+            return System.currentTimeMillis() >= leaseExpiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package de.zalando.scoop;
+
+
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import com.google.common.base.MoreObjects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static de.zalando.scoop.OwnershipSnapshotReader.BITMAP_LENGTH_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.EPOCH_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.HASH_MURMUR3_32_UTF8;
+import static de.zalando.scoop.OwnershipSnapshotReader.HASH_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.HEADER_BYTES;
+import static de.zalando.scoop.OwnershipSnapshotReader.LEASE_EXPIRY_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.MAGIC;
+import static de.zalando.scoop.OwnershipSnapshotReader.MAGIC_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.PARTITIONS_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.SEQUENCE_OFFSET;
+import static de.zalando.scoop.OwnershipSnapshotReader.VERSION;
+import static de.zalando.scoop.OwnershipSnapshotReader.VERSION_OFFSET;
+
+/**
+ * Publishes the partitions owned by this member in a memory-mapped file whenever the assignment changes (see
+ * {@link OwnershipSnapshotReader} for the layout). An existing file is reused and only grows, so that readers
+ * which mapped it before a restart keep working. With leases, the expiry of the lease is published whenever it is
+ * granted, and the snapshot is fenced as soon as the lease becomes invalid otherwise (see {@link #onLeaseChanged()}).
+ */
+final class OwnershipSnapshotWriter implements ScoopListener, Closeable {
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private Lease lease;
+
+    static final int MIN_BITMAP_BYTES = 1024;
+    static final long NO_LEASE = Long.MAX_VALUE;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OwnershipSnapshotWriter.class);
+
+    OwnershipSnapshotWriter(final Path file) {
+        this.file = checkNotNull(file, "snapshot file must not be null");
+    }
+
+    synchronized void setLease(final Lease lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * Opens the file and resets it to "no assignment yet" (epoch -1, no partitions).
+     */
+    synchronized void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            buffer = map(Math.max(channel.size(), HEADER_BYTES + MIN_BITMAP_BYTES));
+        }
+        catch (final IOException | RuntimeException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+
+        // continue the sequence of a former writer so that its readers notice the change
+        final long sequence = buffer.getInt(MAGIC_OFFSET) == MAGIC ? buffer.getLong(SEQUENCE_OFFSET) : 0;
+        buffer.putLong(SEQUENCE_OFFSET, sequence | 1);
+        Fences.storeFence();
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(HASH_OFFSET, HASH_MURMUR3_32_UTF8);
+        buffer.putLong(EPOCH_OFFSET, -1);
+        buffer.putInt(PARTITIONS_OFFSET, 0);
+        buffer.putInt(BITMAP_LENGTH_OFFSET, 0);
+        buffer.putLong(LEASE_EXPIRY_OFFSET, leaseExpiresAtMillis());
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        Fences.storeFence();
+        buffer.putLong(SEQUENCE_OFFSET, (sequence | 1) + 1);
+    }
+
+    private MappedByteBuffer map(final long size) throws IOException {
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+
+    /**
+     * Replaces the published assignment. Readers never see a partially written one.
+     */
+    synchronized void write(final long epoch, final int numberOfPartitions, final BitSet owned) throws IOException {
+        if (channel == null) {
+            open();
+        }
+
+        final int bitmapLength = (numberOfPartitions + 7) / 8;
+        if (HEADER_BYTES + bitmapLength > buffer.capacity()) {
+            // grown before the update so that readers remap instead of reading beyond their mapping
+            buffer = map(Math.max(HEADER_BYTES + bitmapLength, 2L * buffer.capacity()));
+        }
+
+        final int formerBitmapLength = buffer.getInt(BITMAP_LENGTH_OFFSET);
+        final long sequence = buffer.getLong(SEQUENCE_OFFSET);
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+        Fences.storeFence();
+
+        buffer.putLong(EPOCH_OFFSET, epoch);
+        buffer.putInt(PARTITIONS_OFFSET, numberOfPartitions);
+        buffer.putInt(BITMAP_LENGTH_OFFSET, bitmapLength);
+        buffer.putLong(LEASE_EXPIRY_OFFSET, leaseExpiresAtMillis());
+        final byte[] bitmap = owned.toByteArray();
+        for (int i = 0; i < Math.max(bitmapLength, formerBitmapLength); i++) {
+            buffer.put(HEADER_BYTES + i, i < bitmap.length && i < bitmapLength ? bitmap[i] : 0);
+        }
+
+        Fences.storeFence();
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 2);
+    }
+
+    /**
+     * Publishes the current expiry of the lease, so that a lease which was lost before it ran out (e.g. because the
+     * majority is unreachable) fences the readers right away.
+     */
+    synchronized void writeLease() throws IOException {
+        if (channel == null) {
+            open();
+        }
+
+        final long sequence = buffer.getLong(SEQUENCE_OFFSET);
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+        Fences.storeFence();
+        buffer.putLong(LEASE_EXPIRY_OFFSET, leaseExpiresAtMillis());
+        Fences.storeFence();
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 2);
+    }
+
+    /**
+     * @return epoch millis when the lease runs out (measured from its request, so never later than the coordinator
+     *         assumes), 0 if it is not valid
+     */
+    private long leaseExpiresAtMillis() {
+        if (lease == null) {
+            return NO_LEASE;
+        }
+        return lease.isValid() ? System.currentTimeMillis() + lease.getRemainingMillis() : 0;
+    }
+
+    /**
+     * Only called by the Scoop actor whenever the lease was granted or the majority was lost or regained.
+     */
+    void onLeaseChanged() {
+        try {
+            writeLease();
+        }
+        catch (final IOException e) {
+            LOGGER.error("could not publish lease in ownership snapshot [file={}]", file, e);
+        }
+    }
+
+    @Override
+    public void init(final Cluster cluster) {
+        try {
+            open();
+        }
+        catch (final IOException e) {
+            LOGGER.error("could not open ownership snapshot [file={}] -> ownership is not published", file, e);
+        }
+    }
+
+    @Override
+    public void onAssignmentChanged(final Assignment assignment) {
+        try {
+            write(assignment.getEpoch(), assignment.getNumberOfPartitions(), assignment.getOwnedPartitionSet());
+        }
+        catch (final IOException e) {
+            LOGGER.error("could not publish ownership snapshot [file={}, epoch={}]", file, assignment.getEpoch(), e);
+        }
+    }
+
+    @Override
+    public void onRebalanced(final int partitionId, final int numberOfPartitions) {
+        // covered by onAssignmentChanged
+    }
+
+    @Override
+    public void onMemberUp(final Member member) {
+    }
+
+    @Override
+    public void onMemberRemoved(final Member member) {
+    }
+
+    @Override
+    public void onMemberUnreachable(final Member member) {
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("file", file)
+                .toString();
+    }
+}
@@ -0,0 +1,32 @@
+package de.zalando.scoop;
+
+
+import java.util.Iterator;
+
+/**
+ * A {@link ScoopListener} keeping per-partition state which is handed over to the new owner when a partition
+ * moves (see {@link Scoop#withStateHandoff(PartitionStateListener, long, java.util.concurrent.TimeUnit)}).
+ * A gained partition is not activated before its state has been restored, so the new owner does not start
+ * cold. All methods are called by the Scoop actor and must not block for long.
+ */
+public interface PartitionStateListener extends ScoopListener {
+
+    /**
+     * Called on the former owner once it stopped handling the given partition. The chunks are pulled lazily
+     * and sent to the new owner; each chunk must stay well below Akka's maximum frame size (128 KiB by
+     * default).
+     */
+    Iterator<byte[]> snapshotPartition(final int partition);
+
+    /**
+     * Called on the new owner for every chunk of the given partition, in order, before it is activated.
+     */
+    void restorePartition(final int partition, final byte[] chunk);
+
+    /**
+     * Called on the new owner right before the given partition is activated.
+     *
+     * @param complete false if the state did not arrive completely in time
+     */
+    default void onHandoffCompleted(final int partition, final boolean complete) {}
+}
@@ -0,0 +1,181 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Splits and merges the key ranges of a ranged {@link AssignmentTable} according to the load measured by the
+ * cluster telemetry. A range should carry about {@code 1 / (members * RANGES_PER_MEMBER)} of the load: the busiest
+ * range is split at the median of the keys sampled in it once it carries twice that share, and the two adjacent
+ * ranges of the same owner with the lowest load are merged once they carry less than half of it together, so that
+ * a range does not flap between split and merge. One range changes per call.
+ *
+ * Both halves of a split range keep its owner and only ranges of the same owner are merged, so no key changes its
+ * member: the table gets a different shape, for which members neither hand off state nor transfer claim filters.
+ * The {@link AssignmentStrategy} evens out the number of ranges per member afterwards, moving whole ranges.
+ */
+final class RangeBalancer {
+
+    private final int maxRanges;
+    private final String[] initialBoundaries;
+
+    static final int RANGES_PER_MEMBER = 8;
+    static final double SPLIT_SHARE = 2.0;
+    static final double MERGE_SHARE = 0.5;
+    static final long MIN_CHECKS = 10000;
+
+    /**
+     * @param splitPoints lower bounds of the initial ranges but the first one
+     */
+    RangeBalancer(final int maxRanges, final String... splitPoints) {
+        checkArgument(maxRanges > 0, "maximum number of ranges must be > 0. Got [maxRanges=%s]", maxRanges);
+        checkNotNull(splitPoints, "split points must not be null");
+        checkArgument(splitPoints.length < maxRanges,
+                      "there must be fewer split points than ranges. Got [splitPoints=%s, maxRanges=%s]",
+                      splitPoints.length, maxRanges);
+
+        final String[] boundaries = splitPoints.clone();
+        Arrays.sort(boundaries);
+        for (int i = 1; i < boundaries.length; i++) {
+            checkArgument(!boundaries[i - 1].equals(boundaries[i]), "duplicate split point. Got [%s]", boundaries[i]);
+        }
+        this.maxRanges = maxRanges;
+        this.initialBoundaries = boundaries;
+    }
+
+    int getMaxRanges() {
+        return maxRanges;
+    }
+
+    /**
+     * @return the given table if it is ranged, otherwise a table of unassigned initial ranges with the next epoch
+     */
+    AssignmentTable ranged(final AssignmentTable table) {
+        if (table.isRanged()) {
+            return table;
+        }
+        return table.withRanges(initialBoundaries, new String[initialBoundaries.length + 1]);
+    }
+
+    /**
+     * @param hits        estimated ownership checks per range
+     * @param sampledKeys keys sampled by all members
+     * @param members     number of members eligible for ranges
+     * @return table with one range split or two ranges merged and the next epoch; the given table if the load is
+     * balanced or not enough checks were measured
+     */
+    AssignmentTable balance(final AssignmentTable table,
+                            final long[] hits,
+                            final Collection<String> sampledKeys,
+                            final int members) {
+        if (!table.isRanged() || hits.length != table.getNumberOfPartitions() || members == 0) {
+            return table;
+        }
+
+        final long total = Arrays.stream(hits).sum();
+        if (total < MIN_CHECKS) {
+            return table;
+        }
+        final double target = (double) total / ((long) members * RANGES_PER_MEMBER);
+
+        int busiest = 0;
+        for (int i = 1; i < hits.length; i++) {
+            if (hits[i] > hits[busiest]) {
+                busiest = i;
+            }
+        }
+        if (hits.length < maxRanges && hits[busiest] > SPLIT_SHARE * target) {
+            final Optional<String> splitPoint = splitPoint(table.rangeOf(busiest), sampledKeys);
+            if (splitPoint.isPresent()) {
+                return split(table, busiest, splitPoint.get());
+            }
+        }
+
+        if (hits.length > members) {
+            final String[] owners = table.getOwners();
+            int coldest = -1;
+            for (int i = 0; i < hits.length - 1; i++) {
+                if (Objects.equals(owners[i], owners[i + 1])
+                        && (coldest < 0 || hits[i] + hits[i + 1] < hits[coldest] + hits[coldest + 1])) {
+                    coldest = i;
+                }
+            }
+            if (coldest >= 0 && hits[coldest] + hits[coldest + 1] < MERGE_SHARE * target) {
+                return merge(table, coldest);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return median of the sampled keys in the range which is greater than the lowest of them, so that both halves
+     * get sampled keys; empty if there is no such key (e.g. a single key carries the whole load)
+     */
+    static Optional<String> splitPoint(final KeyRange range, final Collection<String> sampledKeys) {
+        final List<String> keys = Lists.newArrayList();
+        sampledKeys.stream().filter(range::contains).forEach(keys::add);
+        if (keys.size() < 2) {
+            return Optional.empty();
+        }
+
+        keys.sort(null);
+        final String lowest = keys.get(0);
+        final String median = keys.get(keys.size() / 2);
+        if (!median.equals(lowest)) {
+            return Optional.of(median);
+        }
+        return keys.stream().filter(k -> k.compareTo(lowest) > 0).findFirst();
+    }
+
+    private static AssignmentTable split(final AssignmentTable table, final int range, final String splitPoint) {
+        final String[] boundaries = table.getBoundaries();
+        final String[] owners = table.getOwners();
+
+        final String[] newBoundaries = new String[boundaries.length + 1];
+        System.arraycopy(boundaries, 0, newBoundaries, 0, range);
+        newBoundaries[range] = splitPoint;
+        System.arraycopy(boundaries, range, newBoundaries, range + 1, boundaries.length - range);
+
+        final String[] newOwners = new String[owners.length + 1];
+        System.arraycopy(owners, 0, newOwners, 0, range + 1);
+        System.arraycopy(owners, range, newOwners, range + 1, owners.length - range);
+
+        return table.withRanges(newBoundaries, newOwners);
+    }
+
+    /**
+     * Merges the given range with its successor of the same owner.
+     */
+    private static AssignmentTable merge(final AssignmentTable table, final int range) {
+        final String[] boundaries = table.getBoundaries();
+        final String[] owners = table.getOwners();
+
+        final String[] newBoundaries = new String[boundaries.length - 1];
+        System.arraycopy(boundaries, 0, newBoundaries, 0, range);
+        System.arraycopy(boundaries, range + 1, newBoundaries, range, boundaries.length - range - 1);
+
+        final String[] newOwners = new String[owners.length - 1];
+        System.arraycopy(owners, 0, newOwners, 0, range + 1);
+        System.arraycopy(owners, range + 2, newOwners, range + 1, owners.length - range - 2);
+
+        return table.withRanges(newBoundaries, newOwners);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxRanges", maxRanges)
+                .add("initialBoundaries", Arrays.toString(initialBoundaries))
+                .toString();
+    }
+}
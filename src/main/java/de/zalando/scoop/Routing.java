@@ -0,0 +1,164 @@
+package de.zalando.scoop;
+
+
+import akka.actor.Address;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Owners and backups of all partitions as seen by one member. Backups are not part of the assignment table:
+ * every member derives them from the table and the cluster members, preferring members in zones other than
+ * the owner's zone (rendezvous hashing keeps them stable while members come and go). Requests are routed to
+ * the owner or a backup in the own zone if there is one, otherwise to the owner.
+ */
+final class Routing {
+
+    private final AssignmentTable table;
+    private final String[] boundaries;
+    private final String self;
+    private final Optional<String> selfZone;
+    private final ImmutableMap<String, Address> addresses;
+    private final ImmutableMap<String, String> zones;
+    private final String[][] backups;
+
+    static final Routing NONE = new Routing(AssignmentTable.EMPTY, "", Optional.empty(), ImmutableMap.of(),
+                                            ImmutableMap.of(), Sets.newHashSet(), 0);
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    /**
+     * @param addresses          addresses of all members which are up
+     * @param zones              zones of all members declaring one
+     * @param eligible           members which may be backups
+     * @param backupsPerPartition number of backups per partition
+     */
+    Routing(final AssignmentTable table,
+            final String self,
+            final Optional<String> selfZone,
+            final Map<String, Address> addresses,
+            final Map<String, String> zones,
+            final Set<String> eligible,
+            final int backupsPerPartition) {
+        this.table = requireNonNull(table, "table must not be null");
+        this.boundaries = table.getBoundaries();
+        this.self = requireNonNull(self, "self must not be null");
+        this.selfZone = requireNonNull(selfZone, "zone must not be null");
+        this.addresses = ImmutableMap.copyOf(addresses);
+        this.zones = ImmutableMap.copyOf(zones);
+        this.backups = new String[table.getNumberOfPartitions()][];
+        for (int p = 0; p < backups.length; p++) {
+            backups[p] = selectBackups(p, table.ownerOf(p), eligible, backupsPerPartition);
+        }
+    }
+
+    /**
+     * @return Akka cluster zone declared via role {@link Scoop#ZONE_ROLE_PREFIX}
+     */
+    static Optional<String> zoneOf(final Collection<String> roles) {
+        return roles.stream()
+                    .filter(r -> r.startsWith(Scoop.ZONE_ROLE_PREFIX))
+                    .map(r -> r.substring(Scoop.ZONE_ROLE_PREFIX.length()))
+                    .findFirst();
+    }
+
+    private String[] selectBackups(final int partition,
+                                   final Optional<String> owner,
+                                   final Set<String> eligible,
+                                   final int backupsPerPartition) {
+        if (backupsPerPartition == 0 || !owner.isPresent()) {
+            return new String[0];
+        }
+
+        final List<String> candidates = Lists.newArrayList(eligible);
+        candidates.remove(owner.get());
+        candidates.sort(Comparator.comparingInt((String m) -> score(partition, m)).reversed()
+                                  .thenComparing(Comparator.naturalOrder()));
+
+        final List<String> selected = Lists.newArrayList();
+        final Set<String> usedZones = Sets.newHashSet();
+        Optional.ofNullable(zones.get(owner.get())).ifPresent(usedZones::add);
+
+        // one backup per other zone first, then the remaining ones regardless of their zone
+        for (final String candidate : candidates) {
+            final String zone = zones.get(candidate);
+            if (selected.size() < backupsPerPartition && zone != null && usedZones.add(zone)) {
+                selected.add(candidate);
+            }
+        }
+        for (final String candidate : candidates) {
+            if (selected.size() < backupsPerPartition && !selected.contains(candidate)) {
+                selected.add(candidate);
+            }
+        }
+        return selected.toArray(new String[selected.size()]);
+    }
+
+    private static int score(final int partition, final String member) {
+        return HASH_FUNCTION.newHasher().putInt(partition).putString(member, StandardCharsets.UTF_8).hash().asInt();
+    }
+
+    AssignmentTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return lower bounds of the key ranges of the table (not copied); {@code null} if partitions are hashed
+     */
+    String[] getBoundaries() {
+        return boundaries;
+    }
+
+    List<String> backupsOf(final int partition) {
+        return partition < backups.length ? Arrays.asList(backups[partition]) : Lists.newArrayList();
+    }
+
+    boolean isBackup(final int partition) {
+        return backupsOf(partition).contains(self);
+    }
+
+    /**
+     * @return address of the owner or of a backup in the own zone; the owner's if there is none in the own zone
+     */
+    Optional<Address> routeOf(final int partition) {
+        final Optional<String> owner = table.ownerOf(partition);
+        if (!owner.isPresent()) {
+            return Optional.empty();
+        }
+
+        if (selfZone.isPresent()) {
+            final List<String> candidates = Lists.newArrayList(owner.get());
+            candidates.addAll(backupsOf(partition));
+            for (final String candidate : candidates) {
+                if (selfZone.get().equals(zones.get(candidate)) && addresses.containsKey(candidate)) {
+                    return Optional.of(addresses.get(candidate));
+                }
+            }
+        }
+        return Optional.ofNullable(addresses.get(owner.get()));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("epoch", table.getEpoch())
+                .add("self", self)
+                .add("selfZone", selfZone)
+                .add("zones", zones)
+                .toString();
+    }
+}
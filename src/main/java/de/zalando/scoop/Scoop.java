@@ -6,23 +6,50 @@ import akka.actor.ActorSystem;
 import com.amazonaws.regions.Regions;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigValueFactory;
 import de.zalando.scoop.config.AwsConfigurationBuilder;
+import de.zalando.scoop.config.ConfigException;
+import de.zalando.scoop.telemetry.ClientMetrics;
+import de.zalando.scoop.telemetry.MetricsReporter;
+import de.zalando.scoop.telemetry.OwnershipTelemetry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import scala.concurrent.duration.Duration;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
 
 import static com.google.common.base.Preconditions.*;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static de.zalando.scoop.config.AwsConfigurationBuilder.DEFAULT_HTTP_META_DATA_AVAILABILITY_ZONE_URL;
 import static de.zalando.scoop.config.AwsConfigurationBuilder.DEFAULT_HTTP_META_DATA_INSTANCE_ID_URL;
 
 public final class Scoop {
@@ -30,19 +57,81 @@ public final class Scoop {
     private boolean hasAwsConfig;
     private int clusterPort;
     private Regions region;
-    private HashSet<ScoopListener> listeners;
+    private LinkedHashSet<ScoopListener> listeners;
     private ScoopClientImpl scoopClient;
     private int port;
     private String bindHostName;
     private String awsMetaDataInstanceIdUrl;
+    private String awsMetaDataAvailabilityZoneUrl;
     private final Set<String> seeds;
     private ActorRef scoopActor;
+    private Optional<OwnershipTelemetry> telemetry;
+    private final Map<String, Integer> hotKeys;
+    private double hotKeyShare;
+    private int hotKeyOwners;
+    private int numberOfPartitions;
+    private Path stateDirectory;
+    private String nodeId;
+    private long restartGracePeriodMillis;
+    private long leaveOnShutdownMillis;
+    private PartitionStateListener stateListener;
+    private long handoffTimeoutMillis;
+    private ClaimFilter claimFilter;
+    private OwnershipSnapshotWriter ownershipSnapshot;
+    private RangeBalancer rangeBalancer;
+    private String zone;
+    private final Set<String> roles;
+    private String assignmentRole;
+    private int backups;
+    private Lease lease;
+    private LoadShedding loadShedding;
+    private volatile StartupReport startupReport;
+    private ClientMetrics metrics;
+    private MetricsReporter metricsReporter;
+    private long metricsReportIntervalMillis;
+    private Federation federation;
 
     public static final int DEFAULT_CLUSTER_PORT = 25551;
     public static final int DEFAULT_INSTANCE_PORT = DEFAULT_CLUSTER_PORT;
+    public static final long DEFAULT_HANDOFF_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Prefix of the Akka cluster role by which a member declares its stable node id.
+     */
+    public static final String NODE_ID_ROLE_PREFIX = "scoop-node-id:";
+
+    /**
+     * Prefix of the Akka cluster role by which a member declares its zone.
+     */
+    public static final String ZONE_ROLE_PREFIX = "scoop-zone:";
+
+    /**
+     * Name of the actor system created by {@link #startAsync()}; seeds found via AWS refer to it.
+     */
+    public static final String SYSTEM_NAME = "scoop-system";
 
     private static final String AKKA_CONFIG_FILE = "scoop.conf";
 
+    /**
+     * Time granted on top of the drain timeout for the cluster to remove a leaving member.
+     */
+    private static final long LEAVE_MARGIN_MILLIS = 10000;
+
+    /**
+     * Classes loaded by {@link #startAsync()} while waiting for AWS, roughly in the order the actor system needs them.
+     */
+    private static final List<String> PRELOADED_CLASSES = ImmutableList.of(
+            "com.typesafe.config.impl.ConfigImpl",
+            "akka.actor.ActorSystemImpl",
+            "akka.actor.ActorCell",
+            "akka.dispatch.Dispatchers",
+            "akka.remote.RemoteActorRefProvider",
+            "akka.remote.transport.netty.NettyTransport",
+            "org.jboss.netty.bootstrap.ServerBootstrap",
+            "akka.cluster.ClusterActorRefProvider",
+            "akka.cluster.ClusterDaemon",
+            "akka.cluster.pubsub.DistributedPubSubMediator",
+            "akka.cluster.singleton.ClusterSingletonManager");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Scoop.class);
 
@@ -52,9 +141,15 @@ public final class Scoop {
         this.region = Regions.EU_WEST_1;
         this.port = DEFAULT_INSTANCE_PORT;
         this.awsMetaDataInstanceIdUrl = DEFAULT_HTTP_META_DATA_INSTANCE_ID_URL;
+        this.awsMetaDataAvailabilityZoneUrl = DEFAULT_HTTP_META_DATA_AVAILABILITY_ZONE_URL;
         this.scoopClient = new ScoopClientImpl();
-        this.listeners = Sets.newHashSet(scoopClient);
+        // the default client is notified first so that other listeners already see the new ownership
+        this.listeners = Sets.newLinkedHashSet(ImmutableList.of(scoopClient));
         this.seeds = Sets.newHashSet();
+        this.telemetry = Optional.empty();
+        this.hotKeys = Maps.newHashMap();
+        this.handoffTimeoutMillis = DEFAULT_HANDOFF_TIMEOUT_MILLIS;
+        this.roles = Sets.newLinkedHashSet();
     }
 
     boolean hasAwsConfig() {
@@ -85,10 +180,149 @@ public final class Scoop {
         return awsMetaDataInstanceIdUrl;
     }
 
+    String getAwsMetaDataAvailabilityZoneUrl() {
+        return awsMetaDataAvailabilityZoneUrl;
+    }
+
     Set<String> getSeeds() {
         return ImmutableSet.copyOf(seeds);
     }
 
+    Optional<OwnershipTelemetry> getTelemetry() {
+        return telemetry;
+    }
+
+    Map<String, Integer> getHotKeys() {
+        return ImmutableMap.copyOf(hotKeys);
+    }
+
+    double getHotKeyShare() {
+        return hotKeyShare;
+    }
+
+    int getNumberOfPartitions() {
+        return numberOfPartitions;
+    }
+
+    Path getStateDirectory() {
+        return stateDirectory;
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    long getRestartGracePeriodMillis() {
+        return restartGracePeriodMillis;
+    }
+
+    PartitionStateListener getStateListener() {
+        return stateListener;
+    }
+
+    long getHandoffTimeoutMillis() {
+        return handoffTimeoutMillis;
+    }
+
+    String getZone() {
+        return zone;
+    }
+
+    Set<String> getRoles() {
+        return ImmutableSet.copyOf(roles);
+    }
+
+    String getAssignmentRole() {
+        return assignmentRole;
+    }
+
+    int getBackups() {
+        return backups;
+    }
+
+    Lease getLease() {
+        return lease;
+    }
+
+    LoadShedding getLoadShedding() {
+        return loadShedding;
+    }
+
+    ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    MetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    Federation getFederation() {
+        return federation;
+    }
+
+    long getMetricsReportIntervalMillis() {
+        return metricsReportIntervalMillis;
+    }
+
+    /**
+     * @return timings of the latest {@link #startAsync()}; empty if Scoop was not started that way
+     */
+    public Optional<StartupReport> getStartupReport() {
+        return Optional.ofNullable(startupReport);
+    }
+
+    ClaimFilter getClaimFilter() {
+        return claimFilter;
+    }
+
+    OwnershipSnapshotWriter getOwnershipSnapshot() {
+        return ownershipSnapshot;
+    }
+
+    RangeBalancer getRangeBalancer() {
+        return rangeBalancer;
+    }
+
+    long getLeaveOnShutdownMillis() {
+        return leaveOnShutdownMillis;
+    }
+
+    ScoopSettings settings() {
+        return new ScoopSettings(telemetry,
+                                 hotKeys,
+                                 hotKeyShare,
+                                 hotKeyOwners,
+                                 new StickyAssignmentStrategy(numberOfPartitions),
+                                 Optional.ofNullable(stateDirectory),
+                                 Duration.create(restartGracePeriodMillis, TimeUnit.MILLISECONDS),
+                                 stateListeners(),
+                                 Duration.create(handoffTimeoutMillis, TimeUnit.MILLISECONDS),
+                                 Optional.ofNullable(assignmentRole),
+                                 Optional.ofNullable(lease),
+                                 Optional.ofNullable(rangeBalancer),
+                                 Optional.ofNullable(loadShedding),
+                                 Optional.ofNullable(metrics),
+                                 Optional.ofNullable(metricsReporter),
+                                 Duration.create(metricsReportIntervalMillis, TimeUnit.MILLISECONDS),
+                                 Optional.ofNullable(federation),
+                                 Optional.ofNullable(ownershipSnapshot));
+    }
+
+    /**
+     * @return the internal claim filter (if any) followed by the user's state listener, in the order their
+     * state is handed over
+     */
+    private List<PartitionStateListener> stateListeners() {
+        final ImmutableList.Builder<PartitionStateListener> stateListeners = ImmutableList.builder();
+        if (claimFilter != null) {
+            stateListeners.add(claimFilter);
+        }
+        if (stateListener != null) {
+            stateListeners.add(stateListener);
+        }
+        return stateListeners.build();
+    }
+
     public Scoop withClusterPort(final int clusterPort) {
         checkArgument(clusterPort > 999,
                       "cluster port must be >= 1000. Got [clusterPort=%s]", clusterPort);
@@ -116,6 +350,19 @@ public final class Scoop {
         return this;
     }
 
+    /**
+     * Like {@link #withAwsConfig(String)} but the availability zone is retrieved from the given URL as well, e.g. from
+     * a meta data endpoint other than the default one.
+     */
+    public Scoop withAwsConfig(final String awsMetaDataInstanceIdUrl, final String awsMetaDataAvailabilityZoneUrl) {
+        checkArgument(!isNullOrEmpty(awsMetaDataAvailabilityZoneUrl),
+                      "AWS meta data URL to retrieve availability zone must not be null or empty");
+
+        withAwsConfig(awsMetaDataInstanceIdUrl);
+        this.awsMetaDataAvailabilityZoneUrl = awsMetaDataAvailabilityZoneUrl;
+        return this;
+    }
+
     public Scoop withRegion(final Regions region){
         this.region = checkNotNull(region, "region must not be null");
         return this;
@@ -148,39 +395,532 @@ public final class Scoop {
         return this;
     }
 
+    /**
+     * Samples one out of {@code sampleRate} ownership checks of the default client and tracks per-partition
+     * hits, the local accept ratio and the top {@code hotKeys} keys. The figures are exported via JMX and
+     * reported to the cluster leader, which exposes the merged cluster-wide view via JMX.
+     */
+    public Scoop withTelemetry(final int sampleRate, final int hotKeys) {
+        checkArgument(sampleRate > 0, "sample rate must be > 0. Got [sampleRate=%s]", sampleRate);
+        checkArgument(hotKeys > 0, "number of hot keys must be > 0. Got [hotKeys=%s]", hotKeys);
+
+        final OwnershipTelemetry ownershipTelemetry = new OwnershipTelemetry(sampleRate, hotKeys);
+        this.telemetry = Optional.of(ownershipTelemetry);
+        this.scoopClient.setTelemetry(ownershipTelemetry);
+        return this;
+    }
+
+    public Scoop withTelemetry() {
+        return withTelemetry(OwnershipTelemetry.DEFAULT_SAMPLE_RATE, OwnershipTelemetry.DEFAULT_HOT_KEYS);
+    }
+
+    /**
+     * Flags the given key as hot: its work is spread over {@code owners} members according to the sub key
+     * passed to {@link ScoopClient#isHandledByMe(String, String)}. Not supported with range partitions.
+     */
+    public Scoop withHotKey(final String key, final int owners) {
+        checkArgument(!isNullOrEmpty(key), "hot key must not be null or empty");
+        checkArgument(owners > 1, "hot key must have > 1 owners. Got [owners=%s]", owners);
+        this.hotKeys.put(key, owners);
+        return this;
+    }
+
+    /**
+     * Flags keys as hot automatically once they account for at least {@code share} of the sampled ownership
+     * checks. Requires telemetry (see {@link #withTelemetry(int, int)}).
+     */
+    public Scoop withHotKeyDetection(final double share, final int owners) {
+        checkArgument(share > 0 && share <= 1, "share must be in (0, 1]. Got [share=%s]", share);
+        checkArgument(owners > 1, "hot key must have > 1 owners. Got [owners=%s]", owners);
+        this.hotKeyShare = share;
+        this.hotKeyOwners = owners;
+        return this;
+    }
+
+    /**
+     * Uses a fixed number of partitions which are spread evenly over all members instead of one partition per
+     * member. With (many) more partitions than members, a joining or leaving member only moves its own share
+     * of the keys. Members are notified via {@link ScoopListener#onAssignmentChanged(Assignment)}.
+     */
+    public Scoop withPartitions(final int numberOfPartitions) {
+        checkArgument(numberOfPartitions > 0,
+                      "number of partitions must be > 0. Got [numberOfPartitions=%s]", numberOfPartitions);
+        this.numberOfPartitions = numberOfPartitions;
+        return this;
+    }
+
+    /**
+     * Assigns contiguous key ranges instead of hashing keys onto partitions, so that ordered keys (time series
+     * ids, sequence numbers) handled by one member are adjacent and can be scanned locally (see
+     * {@link ScoopClient#ownedRanges()}). Keys are compared by {@link String#compareTo(String)} (after applying the
+     * key extractor). The key space starts with the ranges separated by the given split points; with telemetry (see
+     * {@link #withTelemetry(int, int)}) the coordinator splits busy ranges and merges idle ones by the measured load,
+     * up to {@code maxRanges} ranges. Must be configured the same way on all members.
+     */
+    public Scoop withRangePartitions(final int maxRanges, final String... splitPoints) {
+        this.rangeBalancer = new RangeBalancer(maxRanges, splitPoints);
+        return this;
+    }
+
+    /**
+     * Persists the partition assignment (snapshot and journal) in the given directory, so that the
+     * coordinator resumes the latest assignment when it moves to this member.
+     */
+    public Scoop withStateDirectory(final Path stateDirectory) {
+        this.stateDirectory = checkNotNull(stateDirectory, "state directory must not be null");
+        return this;
+    }
+
+    /**
+     * Identifies this member by a stable node id instead of its address, so that a restarted instance (new
+     * incarnation, possibly new port) is recognized as the same member. With AWS configuration, the EC2
+     * instance id is used unless a node id is given. The id is declared as Akka cluster role
+     * {@code scoop-node-id:<nodeId>}.
+     */
+    public Scoop withNodeId(final String nodeId) {
+        checkArgument(!isNullOrEmpty(nodeId), "node id must not be null or empty");
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    /**
+     * Declares the zone (e.g. the AWS availability zone) of this member as Akka cluster role
+     * {@code scoop-zone:<zone>}. With AWS configuration, the availability zone of the EC2 instance is used unless
+     * a zone is given. Backups are spread over zones and requests are routed within the own zone if possible.
+     */
+    public Scoop withZone(final String zone) {
+        checkArgument(!isNullOrEmpty(zone), "zone must not be null or empty");
+        this.zone = zone;
+        return this;
+    }
+
+    /**
+     * Declares an additional Akka cluster role of this member, e.g. to be matched by
+     * {@link #withAssignmentRole(String)}.
+     */
+    public Scoop withRole(final String role) {
+        checkArgument(!isNullOrEmpty(role), "role must not be null or empty");
+        this.roles.add(role);
+        return this;
+    }
+
+    /**
+     * Only members with the given Akka cluster role get partitions (and become backups); all other members
+     * still know the assignment and can route requests. Must be configured on all members.
+     */
+    public Scoop withAssignmentRole(final String assignmentRole) {
+        checkArgument(!isNullOrEmpty(assignmentRole), "assignment role must not be null or empty");
+        this.assignmentRole = assignmentRole;
+        scoopClient.configureRouting(Optional.of(assignmentRole), backups);
+        return this;
+    }
+
+    /**
+     * Assigns the given number of backups to each partition, preferably in zones other than the owner's zone
+     * (see {@link ScoopClient#isBackedUpByMe(String)} and {@link ScoopClient#routeOf(String)}).
+     */
+    public Scoop withBackups(final int backups) {
+        checkArgument(backups > -1, "number of backups must be >= 0. Got [backups=%s]", backups);
+        this.backups = backups;
+        scoopClient.configureRouting(Optional.ofNullable(assignmentRole), backups);
+        return this;
+    }
+
+    /**
+     * Keeps the partitions of a removed member reserved for the given period. If the member comes back with
+     * the same node id in time, it gets its partitions back and no key moves; until then its partitions are
+     * not handled by anyone.
+     */
+    public Scoop withRestartGracePeriod(final long gracePeriod, final TimeUnit unit) {
+        checkArgument(gracePeriod > -1, "grace period must be >= 0. Got [gracePeriod=%s]", gracePeriod);
+        checkNotNull(unit, "time unit must not be null");
+        this.restartGracePeriodMillis = unit.toMillis(gracePeriod);
+        return this;
+    }
+
+    /**
+     * Hands the state of a partition over to its new owner whenever it moves: the former owner streams the
+     * snapshot of the given listener to the new owner, which restores it before it activates the partition.
+     * If the state does not arrive within the given timeout, the partition is activated without it. Must be
+     * configured on all members.
+     */
+    public Scoop withStateHandoff(final PartitionStateListener stateListener, final long timeout, final TimeUnit unit) {
+        checkNotNull(stateListener, "state listener must not be null");
+        checkArgument(timeout > 0, "handoff timeout must be > 0. Got [timeout=%s]", timeout);
+        checkNotNull(unit, "time unit must not be null");
+
+        this.stateListener = stateListener;
+        this.handoffTimeoutMillis = unit.toMillis(timeout);
+        listeners.add(stateListener);
+        return this;
+    }
+
+    /**
+     * Lets the {@link #defaultClient()} (and executors) determine the partition of an id by the part selected by
+     * the given extractor (see {@link KeyExtractor#hashTag()} and {@link KeyExtractor#prefix(char)}). Must be
+     * configured the same way on all members.
+     */
+    public Scoop withKeyExtractor(final KeyExtractor keyExtractor) {
+        scoopClient.setKeyExtractor(keyExtractor);
+        return this;
+    }
+
+    /**
+     * Fences ownership by time-bounded leases: this member renews its lease with the coordinator every renew
+     * interval, and if a renewal does not arrive in time or the majority of members becomes unreachable,
+     * {@link ScoopClient#isHandledByMe(String)} returns false for all ids until the lease is reacquired. The
+     * coordinator keeps the partitions of a removed member reserved until its lease has run out. Must be configured
+     * on all members with the same duration. Each renewal costs one message round trip per member with the
+     * coordinator.
+     */
+    public Scoop withLease(final long duration, final long renewInterval, final TimeUnit unit) {
+        this.lease = new Lease(duration, renewInterval, unit);
+        scoopClient.setLease(lease);
+        if (ownershipSnapshot != null) {
+            ownershipSnapshot.setLease(lease);
+        }
+        return this;
+    }
+
+    /**
+     * Fences ownership by leases renewed three times per lease duration
+     * (see {@link #withLease(long, long, TimeUnit)}).
+     */
+    public Scoop withLease(final long duration, final TimeUnit unit) {
+        checkNotNull(unit, "time unit must not be null");
+        final long durationMillis = unit.toMillis(duration);
+        return withLease(durationMillis, durationMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Moves partitions off members falling behind: members report their load via
+     * {@link ScoopClient#reportLoad(long, long)}, and while a member's lag or queue depth exceeds the given maximum, the
+     * coordinator halves its share of partitions (down to a quarter, at most once a minute) and gives them back the
+     * same way once both are below half of the maximum again. Members report only when their level changes (and
+     * every 30 seconds otherwise), so reporting is cheap. Must be configured on all members with the same thresholds.
+     * Requires a fixed number of partitions (see {@link #withPartitions(int)}) or range partitions: with one partition
+     * per member, every member keeps exactly one, so starting fails.
+     */
+    public Scoop withLoadShedding(final long maxLag, final TimeUnit unit, final long maxQueueDepth) {
+        this.loadShedding = new LoadShedding(maxLag, unit, maxQueueDepth);
+        scoopClient.setLoadShedding(loadShedding);
+        return this;
+    }
+
+    /**
+     * Records the ownership checks of this member in striped counters, how long assignment changes take from the
+     * coordinator's decision to the local listeners, how long each listener callback takes and how long it takes
+     * until the first assignment is applied after start. Exported via JMX as
+     * {@code de.zalando.scoop:type=ClientMetrics}. Without metrics, ownership checks only pay for reading a null field.
+     */
+    public Scoop withMetrics() {
+        if (metrics == null) {
+            this.metrics = new ClientMetrics();
+            scoopClient.setMetrics(metrics);
+        }
+        return this;
+    }
+
+    /**
+     * Records metrics (see {@link #withMetrics()}) and passes them to the given reporter every interval.
+     */
+    public Scoop withMetrics(final MetricsReporter reporter, final long interval, final TimeUnit unit) {
+        checkNotNull(reporter, "metrics reporter must not be null");
+        checkArgument(interval > 0, "report interval must be > 0. Got [interval=%s]", interval);
+        checkNotNull(unit, "time unit must not be null");
+        this.metricsReporter = reporter;
+        this.metricsReportIntervalMillis = unit.toMillis(interval);
+        return withMetrics();
+    }
+
+    /**
+     * Splits the key space between this cluster and the given peer clusters, so that every id is handled by one
+     * member of one cluster only (see {@link #withFederation(String, Map, long, long, TimeUnit)}), with a heartbeat of
+     * one second and a failure timeout of five seconds.
+     */
+    public Scoop withFederation(final String localCluster, final Map<String, ? extends Collection<String>> peers) {
+        return withFederation(localCluster, peers, 1, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Splits the key space between this cluster and the given peer clusters, so that every id is handled by one
+     * member of one cluster only. Every cluster is home of an equal share of the ids; the coordinators send each
+     * other a summary of the shares their clusters claim every heartbeat, and when a cluster did not send one for
+     * the failure timeout plus five heartbeats, the others take its share over until it is back. A cluster which
+     * cannot reach the majority of the clusters gives up its share after the failure timeout already, and members
+     * hold their share for two heartbeats without a refresh from their coordinator. Peers are given as addresses of
+     * some of their members, e.g. {@code akka.tcp://scoop-system@10.1.0.1:25551}. Must be configured on all members
+     * of all clusters with the same cluster names and timing. Without an answer from a peer cluster, this cluster
+     * only handles the ids it handled before for the takeover time after start.
+     */
+    public Scoop withFederation(final String localCluster,
+                                final Map<String, ? extends Collection<String>> peers,
+                                final long heartbeat,
+                                final long failureTimeout,
+                                final TimeUnit unit) {
+        final Federation newFederation = new Federation(localCluster, peers, heartbeat, failureTimeout, unit);
+        if (federation != null) {
+            newFederation.setHomes(federation.getHomes());
+        }
+        this.federation = newFederation;
+        scoopClient.setFederation(newFederation);
+        return this;
+    }
+
+    /**
+     * Lets ids with a home (e.g. the region they originate from) be handled by their home cluster while it is up
+     * (see {@link #withFederation(String, Map, long, long, TimeUnit)}).
+     */
+    public Scoop withFederationHomes(final HomeResolver homes) {
+        checkState(federation != null, "federation must be configured before its homes");
+        federation.setHomes(checkNotNull(homes, "home resolver must not be null"));
+        return this;
+    }
+
+    /**
+     * Lets {@link ScoopClient#claim(String)} reject ids which were processed by the former owner of a partition
+     * within the given window before the partition moved. Claimed ids are remembered per owned partition in a
+     * Bloom filter sized for {@code expectedIds} per window, which is handed over to the new owner together with
+     * the partition (see {@link #withStateHandoff(PartitionStateListener, long, TimeUnit)}). Must be configured
+     * on all members.
+     */
+    public Scoop withDeduplication(final long window, final TimeUnit unit, final int expectedIds) {
+        checkArgument(window > 0, "window must be > 0. Got [window=%s]", window);
+        checkNotNull(unit, "time unit must not be null");
+        checkArgument(expectedIds > 0, "expected ids must be > 0. Got [expectedIds=%s]", expectedIds);
+
+        if (claimFilter != null) {
+            listeners.remove(claimFilter);
+        }
+        claimFilter = new ClaimFilter(window, unit, expectedIds);
+        scoopClient.setClaimFilter(claimFilter);
+        listeners.add(claimFilter);
+        return this;
+    }
+
+    /**
+     * Publishes the partitions owned by this member in the given memory-mapped file whenever the assignment
+     * changes, so that other processes on the same host (sidecars, proxies) can check ownership without a
+     * round trip to this member (see {@link OwnershipSnapshotReader}). Leases are reflected; federations and key
+     * ranges are not supported.
+     */
+    public Scoop withOwnershipSnapshot(final Path file) {
+        checkNotNull(file, "snapshot file must not be null");
+
+        if (ownershipSnapshot != null) {
+            listeners.remove(ownershipSnapshot);
+        }
+        ownershipSnapshot = new OwnershipSnapshotWriter(file);
+        ownershipSnapshot.setLease(lease);
+        listeners.add(ownershipSnapshot);
+        return this;
+    }
+
+    /**
+     * Leaves the cluster gracefully when the JVM shuts down (see {@link #leave(long, TimeUnit)}). The
+     * shutdown hook blocks until this member has been removed from the cluster, at most for the drain
+     * timeout plus a margin for the cluster to settle.
+     */
+    public Scoop withLeaveOnShutdown(final long drainTimeout, final TimeUnit unit) {
+        checkArgument(drainTimeout > 0, "drain timeout must be > 0. Got [drainTimeout=%s]", drainTimeout);
+        checkNotNull(unit, "time unit must not be null");
+        this.leaveOnShutdownMillis = unit.toMillis(drainTimeout);
+        return this;
+    }
+
+    /**
+     * Leaves the cluster gracefully: the coordinator reassigns the partitions of this member while it is
+     * still up, then the listeners drain their in-flight work (see {@link ScoopListener#onDrain(long)}) until
+     * all of them are done or the timeout elapsed, and only then this member leaves the cluster.
+     *
+     * @return completed once this member has been removed from the cluster
+     */
+    public CompletionStage<Void> leave(final long drainTimeout, final TimeUnit unit) {
+        checkArgument(drainTimeout > -1, "drain timeout must be >= 0. Got [drainTimeout=%s]", drainTimeout);
+        checkNotNull(unit, "time unit must not be null");
+        checkState(scoopActor != null, "scoop actor is not running -> use startScoopActor(system)");
+
+        final CompletableFuture<Void> left = new CompletableFuture<>();
+        scoopActor.tell(new ScoopCommunication.Leave(System.currentTimeMillis() + unit.toMillis(drainTimeout), left),
+                        ActorRef.noSender());
+        return left;
+    }
+
+    private void leaveOnShutdown() {
+        LOGGER.info("JVM is shutting down -> leaving cluster [drainTimeoutMillis={}]", leaveOnShutdownMillis);
+        try {
+            leave(leaveOnShutdownMillis, TimeUnit.MILLISECONDS).toCompletableFuture()
+                                                               .get(leaveOnShutdownMillis + LEAVE_MARGIN_MILLIS,
+                                                                    TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException | TimeoutException e) {
+            LOGGER.warn("could not leave cluster gracefully", e);
+        }
+    }
+
+    /**
+     * Creates an executor running tasks of keys owned by this member, ordered per key, on the given number
+     * of threads. Tasks for keys not owned are dropped. Must be called before the scoop actor is started.
+     */
+    public ScoopExecutor newExecutor(final int numberOfStripes) {
+        return registerExecutor(new ScoopExecutor(scoopClient, numberOfStripes));
+    }
+
+    /**
+     * Like {@link #newExecutor(int)} but tasks for keys not owned are passed to the given handler.
+     */
+    public ScoopExecutor newExecutor(final int numberOfStripes, final BiConsumer<String, Runnable> notOwnedHandler) {
+        return registerExecutor(new ScoopExecutor(scoopClient, numberOfStripes, notOwnedHandler));
+    }
+
+    /**
+     * Like {@link #newExecutor(int, BiConsumer)} but the number of queued tasks cancelled because an assignment change
+     * revoked their keys is passed to the given handler.
+     */
+    public ScoopExecutor newExecutor(final int numberOfStripes,
+                                     final BiConsumer<String, Runnable> notOwnedHandler,
+                                     final IntConsumer revokedHandler) {
+        return registerExecutor(new ScoopExecutor(scoopClient, numberOfStripes, notOwnedHandler, revokedHandler));
+    }
+
+    private ScoopExecutor registerExecutor(final ScoopExecutor executor) {
+        checkState(scoopActor == null, "scoop actor is already running -> create executors before starting it");
+        listeners.add(executor);
+        return executor;
+    }
+
     public ScoopClient defaultClient() {
         return this.scoopClient;
     }
 
+    /**
+     * Creates a client sharing the ownership of the {@link #defaultClient()} which determines the partition of an
+     * id by the part selected by the given extractor, e.g. {@code newClient(KeyExtractor.prefix(':'))} handles all
+     * ids of a tenant ({@code "tenant-1:order:created"}) on the same member.
+     */
+    public ScoopClient newClient(final KeyExtractor keyExtractor) {
+        return scoopClient.withKeyExtractor(keyExtractor);
+    }
+
 
-    Config prepareConfig(){
+    Config prepareConfig() {
+        return join(prepareConfigAsync(MoreExecutors.directExecutor(), new StartupReport()));
+    }
+
+    /**
+     * Fetches the AWS meta data, builds the AWS clients and loads the configuration file in parallel on the given
+     * executor; only the lookups of the current IP and of the seeds wait for the instance id.
+     */
+    private CompletableFuture<Config> prepareConfigAsync(final Executor executor, final StartupReport report) {
         checkState(bindHostName != null, "host name to bind to is null -> use withBindHostName(\"myHostName\")");
+        checkFeatures();
 
-        Config config;
-        if(hasAwsConfig) {
-            checkState(seeds.isEmpty(), "CONFLICT! [seeds=%s] but automatic AWS configuration is activated", seeds);
-            LOGGER.info("fetching AWS related configuration");
-            final AwsConfigurationBuilder builder = new AwsConfigurationBuilder(region,
-                                                                                clusterPort,
-                                                                                awsMetaDataInstanceIdUrl);
-            config = builder.build();
-        }
-        else {
+        if (!hasAwsConfig) {
             // TODO could be done nicer e.g. suitable seeds are generated out of list of IPs
             LOGGER.info("fetching configuration from current Scoop settings and {}", AKKA_CONFIG_FILE);
-            config = ConfigFactory.load(AKKA_CONFIG_FILE)
-                                  .withValue("akka.cluster.seed-nodes", ConfigValueFactory.fromIterable(seeds));
+            return CompletableFuture.supplyAsync(() -> report.time("config", () -> ConfigFactory.load(AKKA_CONFIG_FILE)),
+                                                 executor)
+                                    .thenApply(config -> completeConfig(
+                                            config.withValue("akka.cluster.seed-nodes",
+                                                             ConfigValueFactory.fromIterable(seeds)),
+                                            nodeId,
+                                            zone));
         }
 
-        return config.withValue("akka.remote.netty.tcp.port",
-                            ConfigValueFactory.fromAnyRef(String.valueOf(port)))
-                     .withValue("akka.remote.netty.tcp.bind-hostname",
-                             ConfigValueFactory.fromAnyRef(bindHostName))
-                     .withValue("akka.remote.netty.tcp.bind-port",
-                             ConfigValueFactory.fromAnyRef(String.valueOf(port)));
+        checkState(seeds.isEmpty(), "CONFLICT! [seeds=%s] but automatic AWS configuration is activated", seeds);
+        LOGGER.info("fetching AWS related configuration");
+        final AwsConfigurationBuilder builder = new AwsConfigurationBuilder(region,
+                                                                            clusterPort,
+                                                                            awsMetaDataInstanceIdUrl,
+                                                                            awsMetaDataAvailabilityZoneUrl);
+
+        final CompletableFuture<Void> clients = CompletableFuture.runAsync(
+                () -> report.time("aws-clients", () -> {
+                    builder.prepareClients();
+                    return null;
+                }),
+                executor);
+        final CompletableFuture<Config> fileConfig = CompletableFuture.supplyAsync(
+                () -> report.time("config", () -> ConfigFactory.load(AKKA_CONFIG_FILE)), executor);
+        final CompletableFuture<String> instanceId = CompletableFuture.supplyAsync(
+                () -> report.time("instance-id", () -> {
+                    try {
+                        return builder.currentInstanceId();
+                    }
+                    catch (final IOException e) {
+                        throw new ConfigException(e);
+                    }
+                }),
+                executor);
+        final CompletableFuture<String> currentZone = zone != null ? CompletableFuture.completedFuture(zone)
+                : CompletableFuture.supplyAsync(() -> report.time("availability-zone", () -> {
+                    try {
+                        return builder.currentAvailabilityZone();
+                    }
+                    catch (final IOException e) {
+                        LOGGER.warn("could not determine availability zone -> zone is not declared", e);
+                        return null;
+                    }
+                }), executor);
+        final CompletableFuture<String> currentIp = instanceId.thenApplyAsync(
+                id -> report.time("current-ip", builder::currentIp), executor);
+        final CompletableFuture<List<String>> awsSeeds = instanceId.thenApplyAsync(
+                id -> report.time("seeds", builder::seeds), executor);
+
+        return CompletableFuture.allOf(clients, fileConfig, instanceId, currentZone, currentIp, awsSeeds)
+                                .thenApply(v -> completeConfig(
+                                        fileConfig.join()
+                                                  .withValue("akka.remote.netty.tcp.hostname",
+                                                             ConfigValueFactory.fromAnyRef(currentIp.join()))
+                                                  .withValue("akka.cluster.seed-nodes",
+                                                             ConfigValueFactory.fromIterable(awsSeeds.join())),
+                                        nodeId != null ? nodeId : instanceId.join(),
+                                        currentZone.join()));
+    }
+
+    private Config completeConfig(final Config baseConfig, final String currentNodeId, final String currentZone) {
+        final List<String> clusterRoles = Lists.newArrayList(baseConfig.getStringList("akka.cluster.roles"));
+        clusterRoles.addAll(roles);
+        if (currentNodeId != null) {
+            clusterRoles.add(NODE_ID_ROLE_PREFIX + currentNodeId);
+        }
+        if (currentZone != null) {
+            clusterRoles.add(ZONE_ROLE_PREFIX + currentZone);
+        }
 
+        return baseConfig.withValue("akka.cluster.roles", ConfigValueFactory.fromIterable(clusterRoles))
+                         .withValue("akka.remote.netty.tcp.port",
+                                    ConfigValueFactory.fromAnyRef(String.valueOf(port)))
+                         .withValue("akka.remote.netty.tcp.bind-hostname",
+                                    ConfigValueFactory.fromAnyRef(bindHostName))
+                         .withValue("akka.remote.netty.tcp.bind-port",
+                                    ConfigValueFactory.fromAnyRef(String.valueOf(port)));
     }
 
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        }
+        catch (final CompletionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw e;
+        }
+    }
+
+
+    private void checkFeatures() {
+        checkState(rangeBalancer == null || ownershipSnapshot == null,
+                   "ownership snapshot does not support range partitions -> use either of them");
+        checkState(federation == null || ownershipSnapshot == null,
+                   "ownership snapshot does not support federations -> use either of them");
+        checkState(loadShedding == null || numberOfPartitions > 0 || rangeBalancer != null,
+                   "load shedding cannot move partitions with one partition per member -> use withPartitions(n)");
+        checkState(rangeBalancer == null || (hotKeys.isEmpty() && hotKeyShare == 0),
+                   "hot keys are not spread over range partitions -> use either of them");
+    }
 
     public Config buildConfiguration() {
         return prepareConfig();
@@ -190,7 +930,17 @@ public final class Scoop {
         checkNotNull(system, "actor system must not be null");
 
         if(scoopActor == null){
-            scoopActor = system.actorOf(ScoopActor.props(listeners), "scoop-actor");
+            checkFeatures();
+            if (hotKeyShare > 0 && !telemetry.isPresent()) {
+                LOGGER.warn("hot key detection requires telemetry -> only manually flagged hot keys are used");
+            }
+            if (rangeBalancer != null && !telemetry.isPresent()) {
+                LOGGER.warn("splitting ranges by load requires telemetry -> ranges stay as configured");
+            }
+            scoopActor = system.actorOf(ScoopActor.props(listeners, settings()), ScoopActor.NAME);
+            if (leaveOnShutdownMillis > 0) {
+                Runtime.getRuntime().addShutdownHook(new Thread(this::leaveOnShutdown, "scoop-leave"));
+            }
         }
         else {
             LOGGER.warn("a scoop actor is already running -> returning reference to running actor");
@@ -199,6 +949,67 @@ public final class Scoop {
         return scoopActor;
     }
 
+    /**
+     * Starts Scoop without blocking the caller: creates an actor system named {@value #SYSTEM_NAME} from
+     * {@link #buildConfiguration()}, overridden by the application configuration, and starts the Scoop actor in it.
+     * With AWS configuration, the AWS clients are built, the meta data and the seeds are fetched and the Akka classes
+     * are loaded in parallel. How long each phase took is logged and available via {@link #getStartupReport()}.
+     *
+     * @return actor system running the Scoop actor
+     */
+    public CompletableFuture<ActorSystem> startAsync() {
+        final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                                                                               .setNameFormat("scoop-startup-%d")
+                                                                               .setDaemon(true)
+                                                                               .build());
+        final StartupReport report = new StartupReport();
+        startupReport = report;
+        try {
+            final CompletableFuture<Config> config = prepareConfigAsync(executor, report);
+            if (hasAwsConfig) {
+                executor.execute(Scoop::preloadAkkaClasses);
+            }
+
+            final CompletableFuture<ActorSystem> started = config.thenApplyAsync(c -> {
+                final ActorSystem system = report.time("actor-system", () -> ActorSystem.create(
+                        SYSTEM_NAME, ConfigFactory.defaultApplication().withFallback(c)));
+                try {
+                    report.time("scoop-actor", () -> startScoopActor(system));
+                }
+                catch (final RuntimeException e) {
+                    system.terminate();
+                    throw e;
+                }
+                report.complete();
+                LOGGER.info("started Scoop [startupReport={}]", report);
+                return system;
+            }, executor);
+            started.whenComplete((system, e) -> executor.shutdown());
+            return started;
+        }
+        catch (final RuntimeException e) {
+            executor.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Much of the time needed to create an actor system is spent on loading classes, which can happen while waiting
+     * for AWS. The classes are only loaded, not initialized, so nothing is started twice; it is not a phase of its
+     * own as the actor system does not wait for it.
+     */
+    private static void preloadAkkaClasses() {
+        final ClassLoader classLoader = Scoop.class.getClassLoader();
+        for (final String className : PRELOADED_CLASSES) {
+            try {
+                Class.forName(className, false, classLoader);
+            }
+            catch (final ClassNotFoundException | LinkageError e) {
+                LOGGER.debug("could not preload class [class={}]", className, e);
+            }
+        }
+    }
+
 
     @Override
     public String toString() {
@@ -211,7 +1022,31 @@ public final class Scoop {
                 .add("port", port)
                 .add("bindHostName", bindHostName)
                 .add("awsMetaDataInstanceIdUrl", awsMetaDataInstanceIdUrl)
+                .add("awsMetaDataAvailabilityZoneUrl", awsMetaDataAvailabilityZoneUrl)
                 .add("seeds", seeds)
+                .add("telemetry", telemetry)
+                .add("hotKeys", hotKeys)
+                .add("hotKeyShare", hotKeyShare)
+                .add("hotKeyOwners", hotKeyOwners)
+                .add("numberOfPartitions", numberOfPartitions)
+                .add("stateDirectory", stateDirectory)
+                .add("nodeId", nodeId)
+                .add("restartGracePeriodMillis", restartGracePeriodMillis)
+                .add("leaveOnShutdownMillis", leaveOnShutdownMillis)
+                .add("stateListener", stateListener)
+                .add("handoffTimeoutMillis", handoffTimeoutMillis)
+                .add("claimFilter", claimFilter)
+                .add("zone", zone)
+                .add("roles", roles)
+                .add("assignmentRole", assignmentRole)
+                .add("backups", backups)
+                .add("lease", lease)
+                .add("loadShedding", loadShedding)
+                .add("metrics", metrics)
+                .add("metricsReporter", metricsReporter)
+                .add("ownershipSnapshot", ownershipSnapshot)
+                .add("rangeBalancer", rangeBalancer)
+                .add("federation", federation)
                 .toString();
     }
 }
@@ -1,35 +1,163 @@
 package de.zalando.scoop;
 
 
-import akka.actor.ActorSelection;
+import akka.actor.ActorRef;
+import akka.actor.Address;
+import akka.actor.Cancellable;
+import akka.actor.PoisonPill;
 import akka.actor.Props;
 import akka.actor.UntypedActor;
 import akka.cluster.*;
 import akka.cluster.ClusterEvent.*;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+import akka.cluster.singleton.ClusterSingletonManager;
+import akka.cluster.singleton.ClusterSingletonManagerSettings;
+import akka.cluster.singleton.ClusterSingletonProxy;
+import akka.cluster.singleton.ClusterSingletonProxySettings;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import de.zalando.scoop.ScoopCommunication.CurrentAssignment;
+import de.zalando.scoop.ScoopCommunication.DepartureAccepted;
+import de.zalando.scoop.ScoopCommunication.DepartureTimeout;
+import de.zalando.scoop.ScoopCommunication.Departing;
+import de.zalando.scoop.ScoopCommunication.DrainCompleted;
+import de.zalando.scoop.ScoopCommunication.FederationAck;
+import de.zalando.scoop.ScoopCommunication.FederationAssignment;
+import de.zalando.scoop.ScoopCommunication.FederationSummary;
+import de.zalando.scoop.ScoopCommunication.GetAssignment;
+import de.zalando.scoop.ScoopCommunication.GetAssignmentTable;
+import de.zalando.scoop.ScoopCommunication.HandoffTimeout;
+import de.zalando.scoop.ScoopCommunication.HotKeyProposal;
+import de.zalando.scoop.ScoopCommunication.Leave;
+import de.zalando.scoop.ScoopCommunication.LeaseGranted;
+import de.zalando.scoop.ScoopCommunication.LeaseRequest;
 import de.zalando.scoop.ScoopCommunication.NewScoopListener;
-
-import java.util.HashSet;
+import de.zalando.scoop.ScoopCommunication.RenewLease;
+import de.zalando.scoop.ScoopCommunication.ReportLoad;
+import de.zalando.scoop.ScoopCommunication.ReportMetrics;
+import de.zalando.scoop.ScoopCommunication.ReportTelemetry;
+import de.zalando.scoop.ScoopCommunication.StateChunk;
+import de.zalando.scoop.ScoopCommunication.StateChunkAck;
+import de.zalando.scoop.ScoopCommunication.StateRequest;
+import de.zalando.scoop.ScoopCommunication.TelemetryReport;
+import de.zalando.scoop.telemetry.ClientMetrics;
+import de.zalando.scoop.telemetry.HotKey;
+import de.zalando.scoop.telemetry.JmxRegistration;
+import de.zalando.scoop.telemetry.OwnershipTelemetry;
+import de.zalando.scoop.telemetry.TelemetrySnapshot;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Runs on every member: receives the assignment computed by the {@link AssignmentCoordinator}, persists it
+ * and notifies the {@link ScoopListener}s. It also starts the coordinator as cluster singleton, so the
+ * coordinator always lives on the oldest member.
+ *
+ * On {@link Leave}, the member announces its departure to the coordinator, lets the listeners drain once
+ * it applied the change reassigning its partitions and only then leaves the cluster.
+ *
+ * With a {@link PartitionStateListener}, gained partitions are activated once their state has been requested
+ * from and sent by their former owners (see {@link StateHandoff}).
+ *
+ * Assignment changes arrive as {@link AssignmentDelta}s on the pub-sub topic {@link #ASSIGNMENT_TOPIC}. A delta
+ * which does not apply to the local table (because an earlier one was missed) makes the member ask the
+ * coordinator for the full table.
+ *
+ * With a {@link Lease}, the member renews its lease with the coordinator every renew interval and gives it up
+ * as soon as it cannot reach the majority of the cluster members.
+ *
+ * With {@link LoadShedding}, the member checks its reported load every {@link #LOAD_REPORT_INTERVAL} and sends it
+ * to the coordinator when its level changed.
+ *
+ * With a {@link Federation}, the member applies the slices its cluster claims, acknowledges them when asked to and
+ * forwards the summaries of peer clusters to its coordinator.
+ *
+ * With {@link ClientMetrics}, the member times its listener callbacks and how long assignment changes take to reach
+ * it.
+ */
 final class ScoopActor extends UntypedActor {
 
     private final LoggingAdapter logger;
     private final Cluster cluster;
     private Set<ScoopListener> listeners;
-    private final HashSet<ActorSelection> memberSet;
-
-
-    public ScoopActor(final Set<ScoopListener> listeners) {
+    private final ScoopSettings settings;
+    private final Optional<OwnershipTelemetry> telemetry;
+    private Optional<AssignmentStore> store;
+    private Cancellable telemetryTask;
+    private ActorRef coordinator;
+    private AssignmentTable table;
+    private long appliedEpoch;
+    private HotKeys hotKeys;
+    private Set<String> detectedHotKeys;
+    private Map<String, Integer> proposedHotKeys;
+    private ActorRef proposedTo;
+    private Leave leave;
+    private Cancellable leaveTask;
+    private boolean draining;
+    private long acceptedDepartureEpoch;
+    private final Optional<StateHandoff> handoff;
+    private final HashMap<String, Address> memberAddresses;
+    private final Optional<Lease> lease;
+    private final Set<Address> unreachable;
+    private Cancellable leaseTask;
+    private final Optional<LoadShedding> loadShedding;
+    private Cancellable loadTask;
+    private final Optional<ClientMetrics> metrics;
+    private Cancellable metricsTask;
+    private final Optional<Federation> federation;
+    private final Optional<OwnershipSnapshotWriter> ownershipSnapshot;
+
+    static final String NAME = "scoop-actor";
+    static final String PATH = "/user/" + NAME;
+    static final String ASSIGNMENT_TOPIC = "scoop-assignment";
+
+    static final FiniteDuration TELEMETRY_REPORT_INTERVAL = Duration.create(30, TimeUnit.SECONDS);
+    static final FiniteDuration LOAD_REPORT_INTERVAL = Duration.create(5, TimeUnit.SECONDS);
+    static final long DEPARTURE_TIMEOUT_MILLIS = 5000;
+    static final long REASSIGNMENT_RETRY_MILLIS = 1000;
+
+    private static final String OWNERSHIP_TELEMETRY_MBEAN = "OwnershipTelemetry";
+    private static final String LEASE_MBEAN = "Lease";
+    private static final String CLIENT_METRICS_MBEAN = "ClientMetrics";
+
+
+    public ScoopActor(final Set<ScoopListener> listeners, final ScoopSettings settings) {
         this.listeners = requireNonNull(listeners, "set of listeners must not be null");
+        this.settings = requireNonNull(settings, "settings must not be null");
+        this.telemetry = settings.getTelemetry();
+        this.store = Optional.empty();
+        this.table = AssignmentTable.EMPTY;
+        this.appliedEpoch = -1;
+        this.acceptedDepartureEpoch = -1;
+        this.hotKeys = HotKeys.NONE;
+        this.detectedHotKeys = ImmutableSet.of();
+        this.handoff = settings.getStateListeners().isEmpty() ? Optional.empty()
+                                                              : Optional.of(new StateHandoff(settings.getStateListeners()));
+        this.memberAddresses = Maps.newHashMap();
+        this.lease = settings.getLease();
+        this.unreachable = Sets.newHashSet();
+        this.loadShedding = settings.getLoadShedding();
+        this.metrics = settings.getMetrics();
+        this.federation = settings.getFederation();
+        this.ownershipSnapshot = settings.getOwnershipSnapshot();
         this.logger = Logging.getLogger(context().system(), this);
         this.cluster = Cluster.get(context().system());
-        this.memberSet = Sets.newHashSet();
 
         if(listeners.isEmpty()) {
             logger.warning("list of ScoopActor listeners is empty");
@@ -38,28 +166,130 @@ final class ScoopActor extends UntypedActor {
 
 
     public static Props props(final Set<ScoopListener> listeners) {
+        return props(listeners, ScoopSettings.DEFAULT);
+    }
+
+
+    static Props props(final Set<ScoopListener> listeners, final ScoopSettings settings) {
         requireNonNull(listeners, "set of listeners must not be null");
-        return Props.create(ScoopActor.class, listeners);
+        requireNonNull(settings, "settings must not be null");
+        return Props.create(ScoopActor.class, listeners, settings);
     }
 
 
     @Override
     public void preStart() {
+        metrics.ifPresent(ClientMetrics::started);
+
+        if (settings.getStateDirectory().isPresent()) {
+            try {
+                final AssignmentStore assignmentStore = new AssignmentStore(settings.getStateDirectory().get());
+                table = assignmentStore.load();
+                store = Optional.of(assignmentStore);
+            }
+            catch (final IOException e) {
+                logger.error(e, "could not open assignment store -> assignment is not persisted");
+            }
+        }
+
+        final String coordinatorName = "coordinator";
+        context().actorOf(ClusterSingletonManager.props(AssignmentCoordinator.props(settings, store),
+                                                        PoisonPill.getInstance(),
+                                                        ClusterSingletonManagerSettings.create(context().system())),
+                          coordinatorName);
+        coordinator = context().actorOf(ClusterSingletonProxy.props(self().path().toStringWithoutAddress()
+                                                                            + "/" + coordinatorName,
+                                                                    ClusterSingletonProxySettings.create(context().system())),
+                                        coordinatorName + "-proxy");
+
         cluster.subscribe(self(),
                 MemberEvent.class,
                 MemberUp.class,
                 MemberRemoved.class,
-                UnreachableMember.class);
+                UnreachableMember.class,
+                ReachableMember.class);
 
         context().system().eventStream().subscribe(self(), NewScoopListener.class);
+        DistributedPubSub.get(context().system())
+                         .mediator()
+                         .tell(new DistributedPubSubMediator.Subscribe(ASSIGNMENT_TOPIC, self()), self());
 
         listeners.forEach(l -> l.init(cluster));
+
+        if (telemetry.isPresent()) {
+            JmxRegistration.register(OWNERSHIP_TELEMETRY_MBEAN, telemetry.get());
+            telemetryTask = context().system().scheduler().schedule(TELEMETRY_REPORT_INTERVAL,
+                                                                    TELEMETRY_REPORT_INTERVAL,
+                                                                    self(),
+                                                                    ReportTelemetry.INSTANCE,
+                                                                    context().dispatcher(),
+                                                                    self());
+        }
+
+        if (lease.isPresent()) {
+            JmxRegistration.register(LEASE_MBEAN, lease.get());
+            final FiniteDuration renewInterval = Duration.create(lease.get().getRenewIntervalNanos(),
+                                                                 TimeUnit.NANOSECONDS);
+            leaseTask = context().system().scheduler().schedule(Duration.Zero(),
+                                                                renewInterval,
+                                                                self(),
+                                                                RenewLease.INSTANCE,
+                                                                context().dispatcher(),
+                                                                self());
+        }
+
+        if (loadShedding.isPresent()) {
+            loadTask = context().system().scheduler().schedule(LOAD_REPORT_INTERVAL,
+                                                               LOAD_REPORT_INTERVAL,
+                                                               self(),
+                                                               ReportLoad.INSTANCE,
+                                                               context().dispatcher(),
+                                                               self());
+        }
+
+        if (metrics.isPresent()) {
+            JmxRegistration.register(CLIENT_METRICS_MBEAN, metrics.get());
+            if (settings.getMetricsReporter().isPresent()) {
+                metricsTask = context().system().scheduler().schedule(settings.getMetricsReportInterval(),
+                                                                      settings.getMetricsReportInterval(),
+                                                                      self(),
+                                                                      ReportMetrics.INSTANCE,
+                                                                      context().dispatcher(),
+                                                                      self());
+            }
+        }
     }
 
 
     @Override
     public void postStop() {
         cluster.unsubscribe(getSelf());
+
+        if (telemetryTask != null) {
+            telemetryTask.cancel();
+            JmxRegistration.unregister(OWNERSHIP_TELEMETRY_MBEAN);
+        }
+
+        if (leaveTask != null) {
+            leaveTask.cancel();
+        }
+
+        if (leaseTask != null) {
+            leaseTask.cancel();
+            JmxRegistration.unregister(LEASE_MBEAN);
+        }
+
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
+
+        if (metrics.isPresent()) {
+            JmxRegistration.unregister(CLIENT_METRICS_MBEAN);
+        }
+
+        if (metricsTask != null) {
+            metricsTask.cancel();
+        }
     }
 
 
@@ -71,32 +301,160 @@ final class ScoopActor extends UntypedActor {
         if (message instanceof MemberUp) {
             final MemberUp mUp = (MemberUp) message;
             final Member member = mUp.member();
-            register(member);
+            memberAddresses.put(AssignmentCoordinator.memberKey(member), member.address());
             listeners.stream().forEach(l -> l.onMemberUp(member));
         } else if (message instanceof CurrentClusterState) {
             final CurrentClusterState state = (CurrentClusterState) message;
             for (Member member : state.getMembers()) {
                 if (member.status().equals(MemberStatus.up())) {
-                    register(member);
+                    memberAddresses.put(AssignmentCoordinator.memberKey(member), member.address());
                     listeners.stream().forEach(l -> l.onMemberUp(member));
                 }
             }
         } else if (message instanceof MemberRemoved) {
             final MemberRemoved memberRemoved = (MemberRemoved) message;
             final Member removedMember = memberRemoved.member();
-            unregister(removedMember);
+            memberAddresses.remove(AssignmentCoordinator.memberKey(removedMember), removedMember.address());
+            unreachable.remove(removedMember.address());
+            checkMajority(true);
             listeners.stream().forEach(l -> l.onMemberRemoved(removedMember));
+        } else if (message instanceof AssignmentTable) {
+            onAssignmentTable((AssignmentTable) message);
+        } else if (message instanceof AssignmentDelta) {
+            onAssignmentDelta((AssignmentDelta) message);
+        } else if (message instanceof DistributedPubSubMediator.SubscribeAck) {
+            logger.debug("subscribed to assignment topic");
         } else if (message instanceof Rebalanced) {
             final Rebalanced rebalanced = (Rebalanced) message;
             final int partitionId = rebalanced.getPartitionId();
             final int numberOfPartitions = rebalanced.getNumberOfPartitions();
-            listeners.stream().forEach(l -> l.onRebalanced(partitionId, numberOfPartitions));
+            notifyListeners(l -> l.onRebalanced(partitionId, numberOfPartitions));
+        }
+        else if (message instanceof HotKeys) {
+            applyHotKeys((HotKeys) message);
+        }
+        else if (message instanceof GetAssignment) {
+            sender().tell(new CurrentAssignment(selfKey(), table, hotKeys), self());
         }
         else if (message instanceof UnreachableMember) {
             final UnreachableMember um = (UnreachableMember) message;
             final Member unreachableMember = um.member();
+            unreachable.add(unreachableMember.address());
+            checkMajority(false);
             listeners.stream().forEach(l -> l.onMemberUnreachable(unreachableMember));
         }
+        else if (message instanceof ReachableMember) {
+            unreachable.remove(((ReachableMember) message).member().address());
+            checkMajority(false);
+        }
+        else if (message instanceof RenewLease) {
+            coordinator.tell(new LeaseRequest(selfKey(), lease.get().requested()), self());
+        }
+        else if (message instanceof LeaseGranted) {
+            if (lease.get().granted(((LeaseGranted) message).getRequestedAtNanos()) && lease.get().isValid()) {
+                logger.info("lease acquired [lease={}]", lease.get());
+            }
+            ownershipSnapshot.ifPresent(OwnershipSnapshotWriter::onLeaseChanged);
+        }
+        else if (message instanceof ReportLoad) {
+            loadShedding.get().nextReport(selfKey()).ifPresent(report -> coordinator.tell(report, self()));
+        }
+        else if (message instanceof FederationAssignment) {
+            final FederationAssignment assignment = (FederationAssignment) message;
+            if (federation.isPresent() && federation.get().update(assignment)) {
+                logger.debug("federation assignment applied [version={}, slices={}]",
+                             assignment.getVersion(), assignment.getOwnedSlices().cardinality());
+                if (assignment.isAckRequested()) {
+                    sender().tell(new FederationAck(selfKey(), assignment.getVersion()), self());
+                }
+            }
+        }
+        else if (message instanceof FederationSummary) {
+            if (federation.isPresent()) {
+                coordinator.tell(message, sender());
+            }
+        }
+        else if (message instanceof ReportMetrics) {
+            try {
+                settings.getMetricsReporter().get().report(metrics.get());
+            }
+            catch (final RuntimeException e) {
+                logger.warning("could not report metrics [error={}]", e);
+            }
+        }
+        else if (message instanceof ReportTelemetry) {
+            final TelemetrySnapshot snapshot = telemetry.get().snapshot();
+            coordinator.tell(new TelemetryReport(selfKey(), snapshot), self());
+            if (detectHotKeys(snapshot)) {
+                // the coordinator which sent the last table, so that it is not proposed again along with the next
+                proposeHotKeys(proposedTo == null ? coordinator : proposedTo);
+            }
+        }
+        else if (message instanceof StateRequest) {
+            handoff.ifPresent(h -> h.onRequest((StateRequest) message, sender(), self()));
+        }
+        else if (message instanceof StateChunk) {
+            if (handoff.isPresent() && handoff.get().onChunk((StateChunk) message, sender(), self())) {
+                notifyAssignment();
+            }
+        }
+        else if (message instanceof StateChunkAck) {
+            handoff.ifPresent(h -> h.onAck((StateChunkAck) message, self()));
+        }
+        else if (message instanceof HandoffTimeout) {
+            final StateHandoff stateHandoff = handoff.get();
+            if (((HandoffTimeout) message).getEpoch() == stateHandoff.getEpoch()) {
+                final BitSet aborted = stateHandoff.abort();
+                if (!aborted.isEmpty()) {
+                    logger.warning("state handoff timed out -> activating partitions without state [partitions={}]",
+                                   aborted);
+                    notifyAssignment();
+                }
+            }
+        }
+        else if (message instanceof Leave) {
+            onLeave((Leave) message);
+        }
+        else if (message instanceof DepartureAccepted) {
+            if (leave != null && !draining) {
+                acceptedDepartureEpoch = ((DepartureAccepted) message).getEpoch();
+                leaveTask.cancel();
+                if (!drainIfReassigned()) {
+                    logger.info("departure accepted -> waiting for reassignment [epoch={}, appliedEpoch={}]",
+                                acceptedDepartureEpoch, appliedEpoch);
+                    leaveTask = schedule(reassignmentRetryMillis(), DepartureTimeout.INSTANCE);
+                }
+            }
+        }
+        else if (message instanceof DepartureTimeout) {
+            if (leave != null && !draining) {
+                if (acceptedDepartureEpoch < 0) {
+                    logger.warning("departure was not confirmed by coordinator -> draining anyway");
+                    drain();
+                }
+                else if (System.currentTimeMillis() >= leave.getDeadlineMillis()) {
+                    logger.warning("reassignment was not applied until deadline -> draining anyway [epoch={}]",
+                                   acceptedDepartureEpoch);
+                    drain();
+                }
+                else {
+                    logger.info("reassignment not applied yet -> requesting table [epoch={}, appliedEpoch={}]",
+                                acceptedDepartureEpoch, appliedEpoch);
+                    coordinator.tell(GetAssignmentTable.INSTANCE, self());
+                    leaveTask = schedule(reassignmentRetryMillis(), DepartureTimeout.INSTANCE);
+                }
+            }
+        }
+        else if (message instanceof DrainCompleted) {
+            if (draining) {
+                draining = false;
+                leaveTask.cancel();
+                logger.info("drained -> leaving cluster");
+                final CompletableFuture<Void> left = leave.getLeft();
+                cluster.registerOnMemberRemoved(() -> left.complete(null));
+                cluster.leave(cluster.selfAddress());
+            }
+        }
         else if(message instanceof NewScoopListener){
             final NewScoopListener nsl = (NewScoopListener) message;
             final ScoopListener listener = nsl.getListener();
@@ -114,39 +472,317 @@ final class ScoopActor extends UntypedActor {
         }
     }
 
-    private ActorSelection selectActorByMember(final Member member){
-        return context().actorSelection(member.address() + "/user/scoop-actor");
+    /**
+     * A member which cannot reach the majority of the members may be on the minority side of a network
+     * partition, where the coordinator reassigns its partitions as soon as it is removed. When the majority is
+     * regained by removing the unreachable members (e.g. downed by this side), this member cannot tell whether they
+     * are gone or just cut off, so it stays fenced until the coordinator, which works with the new membership,
+     * grants the lease again.
+     *
+     * @param removed true if a member was removed, false if the reachability of a member changed
+     */
+    private void checkMajority(final boolean removed) {
+        if (!lease.isPresent()) {
+            return;
+        }
+
+        final Set<Address> known = Sets.newHashSet(memberAddresses.values());
+        known.addAll(unreachable);
+        final boolean majorityLost = unreachable.size() * 2 >= known.size() && !unreachable.isEmpty();
+        if (majorityLost) {
+            if (!lease.get().isMajorityLost()) {
+                logger.warning("majority of members is unreachable -> giving up lease [unreachable={}, members={}]",
+                               unreachable.size(), known.size());
+            }
+            // also cancels lifting the fence on the next grant
+            lease.get().setMajorityLost(true);
+            ownershipSnapshot.ifPresent(OwnershipSnapshotWriter::onLeaseChanged);
+        }
+        else if (!lease.get().isMajorityLost()) {
+            return;
+        }
+        else if (removed) {
+            logger.info("unreachable members were removed -> fenced until the lease is granted again "
+                        + "[unreachable={}, members={}]", unreachable.size(), known.size());
+            lease.get().liftMajorityLostOnGrant();
+        }
+        else {
+            logger.info("majority of members is reachable again [unreachable={}, members={}]",
+                        unreachable.size(), known.size());
+            lease.get().setMajorityLost(false);
+            ownershipSnapshot.ifPresent(OwnershipSnapshotWriter::onLeaseChanged);
+        }
     }
 
-    private void unregister(final Member member) {
-        final ActorSelection actorSelection = selectActorByMember(member);
-        memberSet.remove(actorSelection);
+    private String selfKey() {
+        return AssignmentCoordinator.memberKey(cluster.selfAddress(), cluster.getSelfRoles());
+    }
+
+    /**
+     * Tables older than the latest known one come from a coordinator which missed updates (e.g. after it
+     * moved); it gets the latest table in return so that it can catch up.
+     */
+    private void onAssignmentTable(final AssignmentTable newTable) {
+        onAssignmentTable(newTable, 0);
+    }
+
+    /**
+     * @param decidedAtMillis wall clock time at which the coordinator decided the change; 0 if unknown
+     */
+    private void onAssignmentTable(final AssignmentTable newTable, final long decidedAtMillis) {
+        if (newTable.getEpoch() < table.getEpoch()) {
+            logger.info("received outdated assignment [epoch={}, current={}]", newTable.getEpoch(), table.getEpoch());
+            sender().tell(new CurrentAssignment(selfKey(), table, hotKeys), self());
+            return;
+        }
+
+        if (newTable.getEpoch() <= appliedEpoch) {
+            return;
+        }
+
+        final AssignmentTable previousTable = table;
+        final boolean previousApplied = previousTable.getEpoch() == appliedEpoch;
+        table = newTable;
+        appliedEpoch = newTable.getEpoch();
+
+        if (store.isPresent()) {
+            try {
+                store.get().save(newTable);
+            }
+            catch (final IOException e) {
+                logger.error(e, "could not persist assignment [epoch={}]", newTable.getEpoch());
+            }
+        }
+
+        // listeners stop handling revoked partitions before their state is requested
+        if (handoff.isPresent() && previousApplied && hasSamePartitions(previousTable)) {
+            final String self = selfKey();
+            final BitSet revoked = previousTable.partitionsOf(self);
+            revoked.andNot(newTable.partitionsOf(self));
+            handoff.get().begin(newTable.getEpoch(), revoked, expectedHandoffs(previousTable));
+        }
+        else if (handoff.isPresent()) {
+            handoff.get().begin(newTable.getEpoch(), new BitSet(), new BitSet());
+        }
+
+        notifyAssignment();
+        if (metrics.isPresent()) {
+            metrics.get().recordAssignmentChange(decidedAtMillis);
+            metrics.get().ready();
+        }
+
+        if (handoff.isPresent()) {
+            requestState(previousTable);
+        }
 
-        rebalanceIfLeader();
+        proposeHotKeys(sender());
+
+        if (leave != null && !draining) {
+            drainIfReassigned();
+        }
     }
 
-    private void register(final Member member) {
-        final ActorSelection actorSelection = selectActorByMember(member);
-        memberSet.add(actorSelection);
+    private void onAssignmentDelta(final AssignmentDelta delta) {
+        if (delta.getEpoch() <= table.getEpoch()) {
+            return;
+        }
 
-        rebalanceIfLeader();
+        if (delta.appliesTo(table)) {
+            onAssignmentTable(delta.applyTo(table), delta.getDecidedAtMillis());
+        }
+        else {
+            logger.info("missed assignment change -> requesting table [epoch={}, delta={}]", table.getEpoch(), delta);
+            sender().tell(GetAssignmentTable.INSTANCE, self());
+        }
     }
 
+    private void onLeave(final Leave newLeave) {
+        if (leave != null) {
+            leave.getLeft().whenComplete((v, e) -> newLeave.getLeft().complete(null));
+            return;
+        }
 
-    private void rebalanceIfLeader() {
-        if(cluster.readView().isLeader()) {
-            logger.info("I am LEADER -> rebalancing");
-            final int numberOfMembers = memberSet.size();
+        leave = newLeave;
+        logger.info("leaving -> announcing departure to coordinator");
+        coordinator.tell(new Departing(selfKey()), self());
+
+        final long remaining = Math.max(0, newLeave.getDeadlineMillis() - System.currentTimeMillis());
+        leaveTask = schedule(Math.min(remaining, DEPARTURE_TIMEOUT_MILLIS), DepartureTimeout.INSTANCE);
+    }
 
-            int i = 0;
-            for (ActorSelection memberSelection : memberSet) {
-                memberSelection.tell(new Rebalanced(i, numberOfMembers), self());
-                i++;
+    /**
+     * The coordinator accepts the departure before the change which takes the partitions off this member reaches
+     * it, so draining waits until that change (or a later one) is applied and this member owns no partition
+     * anymore. Otherwise the listeners would drain while this member still handles ids.
+     *
+     * @return true if draining started
+     */
+    private boolean drainIfReassigned() {
+        if (acceptedDepartureEpoch < 0 || appliedEpoch < acceptedDepartureEpoch
+            || !table.partitionsOf(selfKey()).isEmpty()) {
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * @return delay until the full table is requested in case the change reassigning this member got lost
+     */
+    private long reassignmentRetryMillis() {
+        final long remaining = Math.max(0, leave.getDeadlineMillis() - System.currentTimeMillis());
+        return Math.min(remaining, REASSIGNMENT_RETRY_MILLIS);
+    }
+
+    /**
+     * Called once the partitions of this member are reassigned and the change is applied locally: the listeners
+     * get until the deadline to finish their in-flight work.
+     */
+    private void drain() {
+        draining = true;
+        leaveTask.cancel();
+
+        final long deadlineMillis = leave.getDeadlineMillis();
+        final CompletableFuture<?>[] drained = listeners.stream()
+                                                        .map(l -> l.onDrain(deadlineMillis).toCompletableFuture())
+                                                        .toArray(CompletableFuture[]::new);
+
+        final ActorRef self = self();
+        CompletableFuture.allOf(drained).whenComplete((v, e) -> {
+            if (e != null) {
+                logger.warning("draining failed [error={}]", e);
             }
+            self.tell(DrainCompleted.INSTANCE, ActorRef.noSender());
+        });
+        leaveTask = schedule(Math.max(0, deadlineMillis - System.currentTimeMillis()), DrainCompleted.INSTANCE);
+    }
+
+    private Cancellable schedule(final long delayMillis, final Object message) {
+        return context().system().scheduler().scheduleOnce(Duration.create(delayMillis, TimeUnit.MILLISECONDS),
+                                                           self(),
+                                                           message,
+                                                           context().dispatcher(),
+                                                           self());
+    }
+
+    private void notifyAssignment() {
+        final BitSet pending = handoff.map(StateHandoff::getPending).orElseGet(BitSet::new);
+        final Assignment assignment = new Assignment(table, selfKey(), pending);
+        logger.info("assignment changed [assignment={}]", assignment);
+        notifyListeners(l -> l.onAssignmentChanged(assignment));
+
+        final int[] ownedPartitions = assignment.getOwnedPartitions();
+        if (ownedPartitions.length == 1) {
+            notifyListeners(l -> l.onRebalanced(ownedPartitions[0], assignment.getNumberOfPartitions()));
         }
-        else {
-            logger.info("I am NOT a LEADER");
+    }
+
+    private void notifyListeners(final Consumer<ScoopListener> callback) {
+        if (!metrics.isPresent()) {
+            listeners.forEach(callback);
+            return;
+        }
+
+        final ClientMetrics clientMetrics = metrics.get();
+        for (final ScoopListener listener : listeners) {
+            final long startedAtNanos = clientMetrics.nanoTime();
+            callback.accept(listener);
+            clientMetrics.recordListener(clientMetrics.nanoTime() - startedAtNanos);
         }
     }
 
+    private boolean hasSamePartitions(final AssignmentTable previousTable) {
+        return previousTable.hasSamePartitionsAs(table);
+    }
+
+    /**
+     * @return gained partitions whose former owner is still up and is asked for their state
+     */
+    private BitSet expectedHandoffs(final AssignmentTable previousTable) {
+        final String self = selfKey();
+        final BitSet gained = table.partitionsOf(self);
+        gained.andNot(previousTable.partitionsOf(self));
+
+        final BitSet expected = new BitSet();
+        gained.stream()
+              .filter(p -> previousTable.ownerOf(p).filter(memberAddresses::containsKey).isPresent())
+              .forEach(expected::set);
+        return expected;
+    }
+
+    private void requestState(final AssignmentTable previousTable) {
+        final StateHandoff stateHandoff = handoff.get();
+        final BitSet pending = stateHandoff.getPending();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        pending.stream().forEach(p -> {
+            final Address formerOwner = memberAddresses.get(previousTable.ownerOf(p).get());
+            logger.info("requesting state [partition={}, formerOwner={}]", p, formerOwner);
+            context().actorSelection(formerOwner + PATH).tell(new StateRequest(stateHandoff.getEpoch(), p), self());
+        });
+        schedule(settings.getHandoffTimeout().toMillis(), new HandoffTimeout(stateHandoff.getEpoch()));
+    }
+
+    /**
+     * Keys are detected as hot when their share of the sampled checks reaches the configured threshold. They
+     * stay hot until their share drops below half of it so that keys around the threshold do not flap.
+     *
+     * @return true if the set of detected hot keys changed
+     */
+    private boolean detectHotKeys(final TelemetrySnapshot snapshot) {
+        if (!settings.isHotKeyDetectionEnabled() || snapshot.getSampledChecks() == 0) {
+            return false;
+        }
+
+        final Set<String> detected = Sets.newHashSet();
+        for (final HotKey hotKey : snapshot.getHotKeys()) {
+            final double share = (double) hotKey.getCount() / snapshot.getSampledChecks();
+            final double threshold = detectedHotKeys.contains(hotKey.getKey()) ? settings.getHotKeyShare() / 2
+                                                                               : settings.getHotKeyShare();
+            if (share >= threshold) {
+                detected.add(hotKey.getKey());
+            }
+        }
+
+        final boolean changed = !detected.equals(detectedHotKeys);
+        if (changed) {
+            logger.info("detected hot keys changed [detectedHotKeys={}]", detected);
+            detectedHotKeys = ImmutableSet.copyOf(detected);
+        }
+        return changed;
+    }
+
+    /**
+     * The coordinator collects the hot keys of all members; a member only sends them along with a rebalance if they
+     * changed since it sent them last or if the table comes from another coordinator (e.g. after it moved), so that
+     * a rebalance does not cost a reply of every member. Newly detected hot keys are sent the same way.
+     */
+    private void proposeHotKeys(final ActorRef tableSender) {
+        final HotKeyProposal proposal = hotKeyProposal();
+        if (tableSender.equals(proposedTo) && proposal.getHotKeys().equals(proposedHotKeys)) {
+            return;
+        }
+        tableSender.tell(proposal, self());
+        proposedHotKeys = proposal.getHotKeys();
+        proposedTo = tableSender;
+    }
+
+    private HotKeyProposal hotKeyProposal() {
+        final HashMap<String, Integer> proposed = Maps.newHashMap();
+        detectedHotKeys.forEach(key -> proposed.put(key, settings.getHotKeyOwners()));
+        proposed.putAll(settings.getHotKeys());
+        return new HotKeyProposal(selfKey(), proposed);
+    }
+
+    private void applyHotKeys(final HotKeys newHotKeys) {
+        if (newHotKeys.getVersion() <= hotKeys.getVersion()) {
+            logger.debug("ignoring outdated hot keys [hotKeys={}, current={}]", newHotKeys, hotKeys);
+            return;
+        }
+
+        hotKeys = newHotKeys;
+        listeners.stream().forEach(l -> l.onHotKeysChanged(newHotKeys));
+    }
 }
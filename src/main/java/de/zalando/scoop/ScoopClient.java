@@ -1,8 +1,65 @@
 package de.zalando.scoop;
 
 
+import akka.actor.Address;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
 public interface ScoopClient {
 
     boolean isHandledByMe(final String id);
 
+    /**
+     * Like {@link #isHandledByMe(String)} but for keys flagged as hot (see {@link HotKeys}) the work is spread
+     * over several owners, each owning the subset of sub keys (e.g. an order id of a hot merchant id) hashing
+     * onto it. For keys which are not hot, the sub key is ignored.
+     */
+    default boolean isHandledByMe(final String id, final String subKey) {
+        return isHandledByMe(id);
+    }
+
+    /**
+     * Like {@link #isHandledByMe(String)} but additionally rejects ids which were already processed by the former
+     * owner of a recently moved partition (see {@link Scoop#withDeduplication(long, java.util.concurrent.TimeUnit, int)}).
+     * Only ids which are actually going to be processed should be claimed.
+     */
+    default boolean claim(final String id) {
+        return isHandledByMe(id);
+    }
+
+    /**
+     * @return true if this member is one of the backups of the partition the given id belongs to (see
+     * {@link Scoop#withBackups(int)})
+     */
+    default boolean isBackedUpByMe(final String id) {
+        return false;
+    }
+
+    /**
+     * @return address of the member to send work for the given id to: the owner or a backup of its partition in
+     * the own zone if there is one, otherwise the owner; empty if the partition is not assigned
+     */
+    default Optional<Address> routeOf(final String id) {
+        return Optional.empty();
+    }
+
+    /**
+     * @return key ranges owned by this member in key order, adjacent ranges joined, so that they can be scanned
+     * locally; empty unless partitions are key ranges (see {@link Scoop#withRangePartitions(int, String...)})
+     */
+    default List<KeyRange> ownedRanges() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reports how far this member falls behind, e.g. once per second from the consumer loop, so that the coordinator
+     * moves partitions off it while it lags (see {@link Scoop#withLoadShedding(long, java.util.concurrent.TimeUnit,
+     * long)}). Only stores the values; does nothing unless load shedding is configured.
+     *
+     * @param queueDepth number of items waiting to be processed
+     * @param lagMillis  age of the oldest item waiting to be processed
+     */
+    default void reportLoad(final long queueDepth, final long lagMillis) {}
 }
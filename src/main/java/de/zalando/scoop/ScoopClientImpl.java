@@ -1,24 +1,48 @@
 package de.zalando.scoop;
 
 
+import akka.actor.Address;
 import akka.cluster.Cluster;
 import akka.cluster.Member;
 import com.google.common.base.MoreObjects;
-import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import de.zalando.scoop.telemetry.ClientMetrics;
+import de.zalando.scoop.telemetry.OwnershipTelemetry;
 
-import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 
 final class ScoopClientImpl implements ScoopClient, ScoopListener{
 
-    private int partitionId;
-    private int numberOfPartitions;
+    private volatile Ownership ownership = Ownership.NONE;
+    private volatile OwnershipTelemetry telemetry;
+    private volatile HotKeys hotKeys = HotKeys.NONE;
+    private volatile ClaimFilter claimFilter;
+    private volatile Routing routing = Routing.NONE;
+    private volatile Lease lease;
+    private volatile LoadShedding loadShedding;
+    private volatile ClientMetrics metrics;
+    private volatile Federation federation;
+    private volatile KeyExtractor keyExtractor = KeyExtractor.WHOLE_ID;
 
-    private static final Charset CHARSET = Charset.forName("UTF-8");
-    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+    // only accessed by the Scoop actor
+    private final HashMap<String, Member> members = Maps.newHashMap();
+    private String selfKey = "";
+    private Optional<String> selfZone = Optional.empty();
+    private Optional<String> assignmentRole = Optional.empty();
+    private int backups;
 
     @Override
     public void onRebalanced(final int partitionId, final int numberOfPartitions) {
@@ -27,41 +51,486 @@ final class ScoopClientImpl implements ScoopClient, ScoopListener{
         checkArgument(partitionId > -1, "[partitionId=%s] is negative", partitionId);
         checkArgument(numberOfPartitions > 0, "[numberOfPartitions=%s] must be > 0", numberOfPartitions);
 
-        this.partitionId = partitionId;
-        this.numberOfPartitions = numberOfPartitions;
+        final BitSet owned = new BitSet(numberOfPartitions);
+        owned.set(partitionId);
+        // already known from onAssignmentChanged, which also knows the key ranges
+        final Ownership currentOwnership = ownership;
+        if (currentOwnership.numberOfPartitions != numberOfPartitions || !currentOwnership.owned.equals(owned)) {
+            updateOwnership(new Ownership(numberOfPartitions, owned, null, null));
+        }
     }
 
+    @Override
+    public void onAssignmentChanged(final Assignment assignment) {
+        updateOwnership(new Ownership(assignment.getNumberOfPartitions(),
+                                      assignment.getOwnedPartitionSet(),
+                                      assignment.getTable().getOwners(),
+                                      assignment.getTable().getBoundaries()));
+        updateRouting(assignment.getTable());
+    }
+
+    void configureRouting(final Optional<String> assignmentRole, final int backups) {
+        this.assignmentRole = checkNotNull(assignmentRole, "assignment role must not be null");
+        checkArgument(backups > -1, "number of backups must be >= 0. Got [backups=%s]", backups);
+        this.backups = backups;
+    }
+
+    private void updateRouting(final AssignmentTable table) {
+        final Map<String, Address> addresses = Maps.newHashMap();
+        final Map<String, String> zones = Maps.newHashMap();
+        members.forEach((key, member) -> {
+            addresses.put(key, member.address());
+            Routing.zoneOf(member.getRoles()).ifPresent(zone -> zones.put(key, zone));
+        });
+        final Set<String> eligible = members.entrySet()
+                                            .stream()
+                                            .filter(e -> !assignmentRole.isPresent()
+                                                         || e.getValue().hasRole(assignmentRole.get()))
+                                            .map(Map.Entry::getKey)
+                                            .collect(Collectors.toSet());
+
+        routing = new Routing(table, selfKey, selfZone, addresses, zones, eligible, backups);
+    }
+
+    Routing getRouting() {
+        return routing;
+    }
+
+    private void updateOwnership(final Ownership newOwnership) {
+        this.ownership = newOwnership;
+
+        final OwnershipTelemetry currentTelemetry = telemetry;
+        if (currentTelemetry != null) {
+            currentTelemetry.onRebalanced(newOwnership.numberOfPartitions);
+        }
+    }
+
+    void setTelemetry(final OwnershipTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    void setLease(final Lease lease) {
+        this.lease = lease;
+    }
+
+    void setLoadShedding(final LoadShedding loadShedding) {
+        this.loadShedding = loadShedding;
+    }
+
+    void setMetrics(final ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setFederation(final Federation federation) {
+        this.federation = federation;
+    }
+
+    void setKeyExtractor(final KeyExtractor keyExtractor) {
+        this.keyExtractor = checkNotNull(keyExtractor, "key extractor must not be null");
+    }
+
+    /**
+     * @return client sharing the ownership of this client but determining partitions with the given extractor
+     */
+    ScoopClient withKeyExtractor(final KeyExtractor keyExtractor) {
+        return new KeyedClient(checkNotNull(keyExtractor, "key extractor must not be null"));
+    }
+
+    void setClaimFilter(final ClaimFilter claimFilter) {
+        this.claimFilter = claimFilter;
+    }
+
+    @Override
+    public void onHotKeysChanged(final HotKeys hotKeys) {
+        this.hotKeys = checkNotNull(hotKeys, "hot keys must not be null");
+    }
+
+    HotKeys getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * @return lowest partition owned by this member or -1 if it does not own any
+     */
     int getPartitionId() {
-        return partitionId;
+        return ownership.owned.nextSetBit(0);
     }
 
     int getNumberOfPartitions() {
-        return numberOfPartitions;
+        return ownership.numberOfPartitions;
     }
 
     @Override
-    public void init(final Cluster cluster) {}
+    public void init(final Cluster cluster) {
+        selfKey = AssignmentCoordinator.memberKey(cluster.selfAddress(), cluster.getSelfRoles());
+        selfZone = Routing.zoneOf(cluster.getSelfRoles());
+    }
 
     @Override
-    public void onMemberUp(final Member member) {}
+    public void onMemberUp(final Member member) {
+        members.put(AssignmentCoordinator.memberKey(member), member);
+        updateRouting(routing.getTable());
+    }
 
     @Override
-    public void onMemberRemoved(final Member member) {}
+    public void onMemberRemoved(final Member member) {
+        members.remove(AssignmentCoordinator.memberKey(member), member);
+        updateRouting(routing.getTable());
+    }
 
     @Override
     public void onMemberUnreachable(final Member member) {}
 
     @Override
     public boolean isHandledByMe(final String id) {
-        final HashCode hashCode = HASH_FUNCTION.hashString(id, CHARSET);
-        return hashCode.asInt() % numberOfPartitions == partitionId;
+        return isHandledByMe(id, keyExtractor);
+    }
+
+    @Override
+    public boolean isHandledByMe(final String id, final String subKey) {
+        return isHandledByMe(id, subKey, keyExtractor);
+    }
+
+    @Override
+    public boolean claim(final String id) {
+        return claim(id, keyExtractor);
+    }
+
+    @Override
+    public boolean isBackedUpByMe(final String id) {
+        return isBackedUpByMe(id, keyExtractor);
+    }
+
+    @Override
+    public Optional<Address> routeOf(final String id) {
+        return routeOf(id, keyExtractor);
+    }
+
+    @Override
+    public List<KeyRange> ownedRanges() {
+        final Ownership currentOwnership = ownership;
+        final Lease currentLease = lease;
+        if (currentLease != null && !currentLease.isValid()) {
+            return ImmutableList.of();
+        }
+        return currentOwnership.ranges;
+    }
+
+    @Override
+    public void reportLoad(final long queueDepth, final long lagMillis) {
+        final LoadShedding currentLoadShedding = loadShedding;
+        if (currentLoadShedding != null) {
+            currentLoadShedding.report(queueDepth, lagMillis);
+        }
+    }
+
+    private boolean isHandledByMe(final String id, final KeyExtractor extractor) {
+        final Ownership currentOwnership = ownership;
+        if (currentOwnership.numberOfPartitions == 0) {
+            return false;
+        }
+
+        return isMyPartition(currentOwnership, id, extractor, currentOwnership.partitionOf(id, extractor));
+    }
+
+    private boolean claim(final String id, final KeyExtractor extractor) {
+        final Ownership currentOwnership = ownership;
+        if (currentOwnership.numberOfPartitions == 0) {
+            return false;
+        }
+
+        final int partition = currentOwnership.partitionOf(id, extractor);
+        if (!isMyPartition(currentOwnership, id, extractor, partition)) {
+            return false;
+        }
+
+        final ClaimFilter currentClaimFilter = claimFilter;
+        return currentClaimFilter == null || currentClaimFilter.claim(partition, id);
+    }
+
+    private boolean isBackedUpByMe(final String id, final KeyExtractor extractor) {
+        final Routing currentRouting = routing;
+        final int numberOfPartitions = currentRouting.getTable().getNumberOfPartitions();
+        return numberOfPartitions > 0
+               && currentRouting.isBackup(partitionOf(id, extractor, numberOfPartitions, currentRouting.getBoundaries()));
+    }
+
+    private Optional<Address> routeOf(final String id, final KeyExtractor extractor) {
+        final Routing currentRouting = routing;
+        final int numberOfPartitions = currentRouting.getTable().getNumberOfPartitions();
+        if (numberOfPartitions == 0) {
+            return Optional.empty();
+        }
+        return currentRouting.routeOf(partitionOf(id, extractor, numberOfPartitions, currentRouting.getBoundaries()));
+    }
+
+    /**
+     * A hot key with k owners is spread over the partition of the key itself and the partitions following it
+     * whose owners are distinct from the ones chosen before, so that up to k members share the work. The sub key
+     * determines which of these partitions handles it. Hot keys are not spread over key ranges, as a range
+     * owner would miss them when scanning its {@link #ownedRanges()}.
+     */
+    private boolean isHandledByMe(final String id, final String subKey, final KeyExtractor extractor) {
+        final int owners = hotKeys.ownersOf(id);
+        final Ownership currentOwnership = ownership;
+        if (owners < 2 || currentOwnership.boundaries != null) {
+            return isHandledByMe(id, extractor);
+        }
+
+        if (currentOwnership.numberOfPartitions == 0) {
+            return false;
+        }
+
+        final int[] partitions = currentOwnership.hotKeyPartitions(currentOwnership.partitionOf(id, extractor), owners);
+        final int offset = partitionOf(hash(subKey, KeyExtractor.WHOLE_ID), partitions.length);
+        return isMyPartition(currentOwnership, id, extractor, partitions[offset]);
+    }
+
+    /**
+     * Without a valid lease (see {@link Scoop#withLease(long, long, java.util.concurrent.TimeUnit)}) no partition
+     * is handled by this member.
+     */
+    private boolean isMyPartition(final Ownership currentOwnership,
+                                  final String id,
+                                  final KeyExtractor extractor,
+                                  final int partition) {
+        boolean handledByMe = currentOwnership.owned.get(partition);
+
+        final Lease currentLease = lease;
+        if (handledByMe && currentLease != null && !currentLease.isValid()) {
+            currentLease.recordFenced();
+            handledByMe = false;
+        }
+
+        final Federation currentFederation = federation;
+        if (handledByMe && currentFederation != null && !currentFederation.isLocal(id, hash(id, extractor))) {
+            handledByMe = false;
+        }
+
+        final OwnershipTelemetry currentTelemetry = telemetry;
+        if (currentTelemetry != null) {
+            if (currentOwnership.boundaries == null) {
+                currentTelemetry.record(id, partition, handledByMe);
+            }
+            else {
+                // split points of ranges are picked from the sampled keys
+                currentTelemetry.record(id, extractor.beginIndex(id), extractor.endIndex(id), partition, handledByMe);
+            }
+        }
+
+        final ClientMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.recordCheck(handledByMe);
+        }
+
+        return handledByMe;
+    }
+
+    /**
+     * @return Murmur3 hash of the UTF-8 encoded part of the id selected by the extractor
+     */
+    static int hash(final String id, final KeyExtractor extractor) {
+        final int beginIndex = extractor.beginIndex(id);
+        final int endIndex = extractor.endIndex(id);
+        checkPositionIndexes(beginIndex, endIndex, id.length());
+        return Murmur3.hashUtf8(id, beginIndex, endIndex);
+    }
+
+    /**
+     * Maps a hash onto [0, numberOfPartitions). Negative hashes must not produce negative
+     * remainders, otherwise their keys would not be handled by any partition.
+     */
+    static int partitionOf(final int hash, final int numberOfPartitions) {
+        return Math.floorMod(hash, numberOfPartitions);
+    }
+
+    /**
+     * @param boundaries lower bounds of the key ranges {@code 1..n-1}; {@code null} if partitions are hashed
+     */
+    static int partitionOf(final String id,
+                           final KeyExtractor extractor,
+                           final int numberOfPartitions,
+                           final String[] boundaries) {
+        final int beginIndex = extractor.beginIndex(id);
+        final int endIndex = extractor.endIndex(id);
+        checkPositionIndexes(beginIndex, endIndex, id.length());
+        return boundaries == null ? partitionOf(Murmur3.hashUtf8(id, beginIndex, endIndex), numberOfPartitions)
+                                  : rangeOf(boundaries, id, beginIndex, endIndex);
+    }
+
+    /**
+     * Binary search for the range of the part of the id, compared like {@link String#compareTo(String)} without
+     * copying it.
+     *
+     * @return number of boundaries lower than or equal to the part of the id
+     */
+    static int rangeOf(final String[] boundaries, final String id, final int beginIndex, final int endIndex) {
+        int low = 0;
+        int high = boundaries.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (compare(id, beginIndex, endIndex, boundaries[middle]) < 0) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(final String id, final int beginIndex, final int endIndex, final String boundary) {
+        final int length = endIndex - beginIndex;
+        final int common = Math.min(length, boundary.length());
+        for (int i = 0; i < common; i++) {
+            final int difference = id.charAt(beginIndex + i) - boundary.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - boundary.length();
     }
 
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
-                .add("partitionId", partitionId)
-                .add("numberOfPartitions", numberOfPartitions)
+                .add("ownedPartitions", ownership.owned)
+                .add("numberOfPartitions", ownership.numberOfPartitions)
+                .add("keyExtractor", keyExtractor)
                 .toString();
     }
+
+    /**
+     * View on the ownership of the enclosing client with its own key extractor.
+     */
+    private final class KeyedClient implements ScoopClient {
+        private final KeyExtractor extractor;
+
+        private KeyedClient(final KeyExtractor extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        public boolean isHandledByMe(final String id) {
+            return ScoopClientImpl.this.isHandledByMe(id, extractor);
+        }
+
+        @Override
+        public boolean isHandledByMe(final String id, final String subKey) {
+            return ScoopClientImpl.this.isHandledByMe(id, subKey, extractor);
+        }
+
+        @Override
+        public boolean claim(final String id) {
+            return ScoopClientImpl.this.claim(id, extractor);
+        }
+
+        @Override
+        public boolean isBackedUpByMe(final String id) {
+            return ScoopClientImpl.this.isBackedUpByMe(id, extractor);
+        }
+
+        @Override
+        public Optional<Address> routeOf(final String id) {
+            return ScoopClientImpl.this.routeOf(id, extractor);
+        }
+
+        @Override
+        public List<KeyRange> ownedRanges() {
+            return ScoopClientImpl.this.ownedRanges();
+        }
+
+        @Override
+        public void reportLoad(final long queueDepth, final long lagMillis) {
+            ScoopClientImpl.this.reportLoad(queueDepth, lagMillis);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("client", ScoopClientImpl.this)
+                    .add("keyExtractor", extractor)
+                    .toString();
+        }
+    }
+
+    /**
+     * Partitions owned by this member; replaced as a whole so that checks always see a consistent state.
+     */
+    private static final class Ownership {
+        private final int numberOfPartitions;
+        private final BitSet owned;
+        private final String[] owners;
+        private final int distinctOwners;
+        private final String[] boundaries;
+        private final ImmutableList<KeyRange> ranges;
+
+        private static final Ownership NONE = new Ownership(0, new BitSet(), null, null);
+
+        /**
+         * @param owners owner of each partition; {@code null} with one partition per member, where each partition
+         *               has an owner of its own
+         * @param boundaries lower bounds of the key ranges {@code 1..n-1}; {@code null} if partitions are hashed
+         */
+        private Ownership(final int numberOfPartitions,
+                          final BitSet owned,
+                          final String[] owners,
+                          final String[] boundaries) {
+            this.numberOfPartitions = numberOfPartitions;
+            this.owned = owned;
+            this.owners = owners;
+            this.distinctOwners = owners == null ? numberOfPartitions
+                                                 : (int) Arrays.stream(owners).filter(Objects::nonNull).distinct().count();
+            this.boundaries = boundaries;
+            this.ranges = boundaries == null ? ImmutableList.of() : coalesce(owned, boundaries);
+        }
+
+        private int partitionOf(final String id, final KeyExtractor extractor) {
+            return ScoopClientImpl.partitionOf(id, extractor, numberOfPartitions, boundaries);
+        }
+
+        /**
+         * @return {@code partition} followed by the next partitions (wrapping around) whose owners are neither
+         *         unassigned nor one of the owners chosen before, at most {@code hotKeyOwners} partitions
+         */
+        private int[] hotKeyPartitions(final int partition, final int hotKeyOwners) {
+            final int[] partitions = new int[Math.max(1, Math.min(hotKeyOwners, distinctOwners))];
+            partitions[0] = partition;
+            int chosen = 1;
+            for (int i = 1; i < numberOfPartitions && chosen < partitions.length; i++) {
+                final int candidate = (partition + i) % numberOfPartitions;
+                if (owners == null || isNewOwner(owners[candidate], partitions, chosen)) {
+                    partitions[chosen++] = candidate;
+                }
+            }
+            return chosen == partitions.length ? partitions : Arrays.copyOf(partitions, chosen);
+        }
+
+        private boolean isNewOwner(final String owner, final int[] partitions, final int chosen) {
+            if (owner == null) {
+                return false;
+            }
+            for (int i = 0; i < chosen; i++) {
+                if (owner.equals(owners[partitions[i]])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return owned ranges in key order, adjacent ones joined
+         */
+        private static ImmutableList<KeyRange> coalesce(final BitSet owned, final String[] boundaries) {
+            final ImmutableList.Builder<KeyRange> ranges = ImmutableList.builder();
+            int first = owned.nextSetBit(0);
+            while (first > -1) {
+                final int end = owned.nextClearBit(first);
+                ranges.add(new KeyRange(first == 0 ? null : boundaries[first - 1],
+                                        end > boundaries.length ? null : boundaries[end - 1]));
+                first = owned.nextSetBit(end);
+            }
+            return ranges.build();
+        }
+    }
 }
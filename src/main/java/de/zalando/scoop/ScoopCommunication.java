@@ -1,6 +1,16 @@
 package de.zalando.scoop;
 
 import akka.cluster.Cluster;
+import de.zalando.scoop.telemetry.TelemetrySnapshot;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Objects.requireNonNull;
 
 public final class ScoopCommunication {
     public static final class NewScoopListener{
@@ -14,4 +24,444 @@ public final class ScoopCommunication {
             return listener;
         }
     }
+
+    static final class ReportTelemetry {
+        static final ReportTelemetry INSTANCE = new ReportTelemetry();
+
+        private ReportTelemetry() {}
+    }
+
+    public static final class TelemetryReport implements Serializable {
+        private final String member;
+        private final TelemetrySnapshot snapshot;
+
+        public TelemetryReport(final String member, final TelemetrySnapshot snapshot) {
+            this.member = requireNonNull(member, "member must not be null");
+            this.snapshot = requireNonNull(snapshot, "snapshot must not be null");
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public TelemetrySnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    public static final class HotKeyProposal implements Serializable {
+        private final String member;
+        private final ImmutableMap<String, Integer> hotKeys;
+
+        public HotKeyProposal(final String member, final Map<String, Integer> hotKeys) {
+            this.member = requireNonNull(member, "member must not be null");
+            this.hotKeys = ImmutableMap.copyOf(requireNonNull(hotKeys, "hot keys must not be null"));
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public Map<String, Integer> getHotKeys() {
+            return hotKeys;
+        }
+    }
+
+    public static final class GetAssignment implements Serializable {
+        public static final GetAssignment INSTANCE = new GetAssignment();
+
+        private GetAssignment() {}
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    /**
+     * Sent by a member which missed an {@link AssignmentDelta}; answered with the current {@link AssignmentTable}.
+     */
+    public static final class GetAssignmentTable implements Serializable {
+        public static final GetAssignmentTable INSTANCE = new GetAssignmentTable();
+
+        private GetAssignmentTable() {}
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    public static final class CurrentAssignment implements Serializable {
+        private final String member;
+        private final AssignmentTable table;
+        private final HotKeys hotKeys;
+
+        public CurrentAssignment(final String member, final AssignmentTable table, final HotKeys hotKeys) {
+            this.member = requireNonNull(member, "member must not be null");
+            this.table = requireNonNull(table, "assignment table must not be null");
+            this.hotKeys = requireNonNull(hotKeys, "hot keys must not be null");
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public AssignmentTable getTable() {
+            return table;
+        }
+
+        public HotKeys getHotKeys() {
+            return hotKeys;
+        }
+    }
+
+    static final class RecoveryTimeout {
+        static final RecoveryTimeout INSTANCE = new RecoveryTimeout();
+
+        private RecoveryTimeout() {}
+    }
+
+    static final class BalanceRanges {
+        static final BalanceRanges INSTANCE = new BalanceRanges();
+
+        private BalanceRanges() {}
+    }
+
+    static final class ReservationExpired {
+        private final String member;
+
+        ReservationExpired(final String member) {
+            this.member = requireNonNull(member, "member must not be null");
+        }
+
+        String getMember() {
+            return member;
+        }
+    }
+
+    static final class Leave {
+        private final long deadlineMillis;
+        private final CompletableFuture<Void> left;
+
+        Leave(final long deadlineMillis, final CompletableFuture<Void> left) {
+            this.deadlineMillis = deadlineMillis;
+            this.left = requireNonNull(left, "future must not be null");
+        }
+
+        long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        CompletableFuture<Void> getLeft() {
+            return left;
+        }
+    }
+
+    public static final class Departing implements Serializable {
+        private final String member;
+
+        public Departing(final String member) {
+            this.member = requireNonNull(member, "member must not be null");
+        }
+
+        public String getMember() {
+            return member;
+        }
+    }
+
+    public static final class DepartureAccepted implements Serializable {
+        private final long epoch;
+
+        public DepartureAccepted(final long epoch) {
+            this.epoch = epoch;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+    }
+
+    static final class DepartureTimeout {
+        static final DepartureTimeout INSTANCE = new DepartureTimeout();
+
+        private DepartureTimeout() {}
+    }
+
+    static final class DrainCompleted {
+        static final DrainCompleted INSTANCE = new DrainCompleted();
+
+        private DrainCompleted() {}
+    }
+
+    public static final class StateRequest implements Serializable {
+        private final long epoch;
+        private final int partition;
+
+        public StateRequest(final long epoch, final int partition) {
+            this.epoch = epoch;
+            this.partition = partition;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+    }
+
+    public static final class StateChunk implements Serializable {
+        private final long epoch;
+        private final int partition;
+        private final long sequenceNumber;
+        private final int listener;
+        private final byte[] data;
+        private final boolean last;
+
+        public StateChunk(final long epoch,
+                          final int partition,
+                          final long sequenceNumber,
+                          final int listener,
+                          final byte[] data,
+                          final boolean last) {
+            this.epoch = epoch;
+            this.partition = partition;
+            this.sequenceNumber = sequenceNumber;
+            this.listener = listener;
+            this.data = requireNonNull(data, "data must not be null");
+            this.last = last;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public long getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        /**
+         * @return index of the {@link PartitionStateListener} the chunk belongs to
+         */
+        public int getListener() {
+            return listener;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+    }
+
+    public static final class StateChunkAck implements Serializable {
+        private final long epoch;
+        private final int partition;
+        private final long sequenceNumber;
+
+        public StateChunkAck(final long epoch, final int partition, final long sequenceNumber) {
+            this.epoch = epoch;
+            this.partition = partition;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public long getSequenceNumber() {
+            return sequenceNumber;
+        }
+    }
+
+    static final class HandoffTimeout {
+        private final long epoch;
+
+        HandoffTimeout(final long epoch) {
+            this.epoch = epoch;
+        }
+
+        long getEpoch() {
+            return epoch;
+        }
+    }
+
+    static final class RenewLease {
+        static final RenewLease INSTANCE = new RenewLease();
+
+        private RenewLease() {}
+    }
+
+    /**
+     * The requesting member's timestamp is returned unchanged with the grant, so the member measures its lease
+     * from the moment it asked for it.
+     */
+    public static final class LeaseRequest implements Serializable {
+        private final String member;
+        private final long requestedAtNanos;
+
+        public LeaseRequest(final String member, final long requestedAtNanos) {
+            this.member = requireNonNull(member, "member must not be null");
+            this.requestedAtNanos = requestedAtNanos;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public long getRequestedAtNanos() {
+            return requestedAtNanos;
+        }
+    }
+
+    public static final class LeaseGranted implements Serializable {
+        private final long requestedAtNanos;
+
+        public LeaseGranted(final long requestedAtNanos) {
+            this.requestedAtNanos = requestedAtNanos;
+        }
+
+        public long getRequestedAtNanos() {
+            return requestedAtNanos;
+        }
+    }
+
+    static final class ReportLoad {
+        static final ReportLoad INSTANCE = new ReportLoad();
+
+        private ReportLoad() {}
+    }
+
+    static final class CheckLoad {
+        static final CheckLoad INSTANCE = new CheckLoad();
+
+        private CheckLoad() {}
+    }
+
+    static final class ReportMetrics {
+        static final ReportMetrics INSTANCE = new ReportMetrics();
+
+        private ReportMetrics() {}
+    }
+
+    /**
+     * Load last reported via {@link ScoopClient#reportLoad(long, long)}; sent when the member's load level changes
+     * and every {@link LoadShedding#REFRESH_REPORTS} report intervals otherwise.
+     */
+    public static final class LoadReport implements Serializable {
+        private final String member;
+        private final long queueDepth;
+        private final long lagMillis;
+
+        public LoadReport(final String member, final long queueDepth, final long lagMillis) {
+            this.member = requireNonNull(member, "member must not be null");
+            this.queueDepth = queueDepth;
+            this.lagMillis = lagMillis;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+
+    static final class FederationTick {
+        static final FederationTick INSTANCE = new FederationTick();
+
+        private FederationTick() {}
+    }
+
+    /**
+     * Sent by the coordinator of a federated cluster (see {@link Federation}) to the Scoop actors of its peer clusters
+     * every heartbeat, which forward it to their coordinator: the slices the cluster currently claims.
+     */
+    public static final class FederationSummary implements Serializable {
+        private final String cluster;
+        private final long[] claimedSlices;
+
+        public FederationSummary(final String cluster, final BitSet claimedSlices) {
+            this.cluster = requireNonNull(cluster, "cluster must not be null");
+            this.claimedSlices = requireNonNull(claimedSlices, "claimed slices must not be null").toLongArray();
+        }
+
+        public String getCluster() {
+            return cluster;
+        }
+
+        public BitSet getClaimedSlices() {
+            return BitSet.valueOf(claimedSlices);
+        }
+    }
+
+    /**
+     * Published by the coordinator of a federated cluster to all its members every heartbeat: the slices they may
+     * handle. Versions are based on the coordinator's wall clock, so that they keep increasing when the coordinator
+     * moves. While slices released by the cluster are not yet advertised to its peers, members acknowledge each
+     * assignment they apply with a {@link FederationAck}.
+     */
+    public static final class FederationAssignment implements Serializable {
+        private final long version;
+        private final long[] ownedSlices;
+        private final boolean ackRequested;
+
+        public FederationAssignment(final long version, final BitSet ownedSlices) {
+            this(version, ownedSlices, false);
+        }
+
+        public FederationAssignment(final long version, final BitSet ownedSlices, final boolean ackRequested) {
+            this.version = version;
+            this.ownedSlices = requireNonNull(ownedSlices, "owned slices must not be null").toLongArray();
+            this.ackRequested = ackRequested;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public BitSet getOwnedSlices() {
+            return BitSet.valueOf(ownedSlices);
+        }
+
+        public boolean isAckRequested() {
+            return ackRequested;
+        }
+    }
+
+    /**
+     * Sent by a member to its coordinator once it applied the {@link FederationAssignment} of the given version.
+     */
+    public static final class FederationAck implements Serializable {
+        private final String member;
+        private final long version;
+
+        public FederationAck(final String member, final long version) {
+            this.member = requireNonNull(member, "member must not be null");
+            this.version = version;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
 }
@@ -0,0 +1,262 @@
+package de.zalando.scoop;
+
+
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs tasks for keys owned by this member. Tasks of the same key run one after another in submission order
+ * as a key is always mapped onto the same single-threaded stripe. Tasks for keys not owned are passed to
+ * the configured handler (dropped by default).
+ *
+ * Whenever the assignment changes, queued tasks of revoked keys are cancelled and their number is passed to the
+ * configured handler, as is every task dropped right before it would run because its key was revoked meanwhile. Ownership of a task's key is checked once on submission, and once more (when the task is
+ * cancelled or right before it runs) only if the assignment changed in between, so that a task never runs for a key
+ * this member lost but ownership telemetry and metrics count every task once unless it was rebalanced.
+ */
+public final class ScoopExecutor implements ScoopListener {
+
+    private final ScoopClient client;
+    private final ThreadPoolExecutor[] stripes;
+    private final BiConsumer<String, Runnable> notOwnedHandler;
+    private final IntConsumer revokedHandler;
+    private volatile long generation;
+    private final LongAdder executed;
+    private final LongAdder notOwned;
+    private final LongAdder cancelled;
+
+    private static final BiConsumer<String, Runnable> DROP = (key, task) -> {};
+    private static final IntConsumer IGNORE = count -> {};
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScoopExecutor.class);
+
+    public ScoopExecutor(final ScoopClient client, final int numberOfStripes) {
+        this(client, numberOfStripes, DROP);
+    }
+
+    /**
+     * @param notOwnedHandler gets tasks for keys which are not owned by this member, e.g. to forward them to
+     *                        the owner
+     */
+    public ScoopExecutor(final ScoopClient client,
+                         final int numberOfStripes,
+                         final BiConsumer<String, Runnable> notOwnedHandler) {
+        this(client, numberOfStripes, notOwnedHandler, IGNORE);
+    }
+
+    /**
+     * @param revokedHandler gets the number of tasks cancelled after an assignment change revoked their keys: the
+     *                       queued ones at once by the thread notifying listeners (only if any task was cancelled),
+     *                       a task revoked while it was being queued alone by the stripe which would have run it
+     */
+    public ScoopExecutor(final ScoopClient client,
+                         final int numberOfStripes,
+                         final BiConsumer<String, Runnable> notOwnedHandler,
+                         final IntConsumer revokedHandler) {
+        this.client = checkNotNull(client, "scoop client must not be null");
+        checkArgument(numberOfStripes > 0, "number of stripes must be > 0. Got [numberOfStripes=%s]", numberOfStripes);
+        this.notOwnedHandler = checkNotNull(notOwnedHandler, "handler of not owned tasks must not be null");
+        this.revokedHandler = checkNotNull(revokedHandler, "handler of revoked tasks must not be null");
+
+        final int instance = INSTANCES.getAndIncrement();
+        this.stripes = new ThreadPoolExecutor[numberOfStripes];
+        for (int i = 0; i < numberOfStripes; i++) {
+            final String name = "scoop-executor-" + instance + "-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                                new ThreadFactoryBuilder().setNameFormat(name)
+                                                                          .setDaemon(true)
+                                                                          .build());
+        }
+
+        this.executed = new LongAdder();
+        this.notOwned = new LongAdder();
+        this.cancelled = new LongAdder();
+    }
+
+    /**
+     * @return true if the task was queued, false if the key is not owned by this member
+     * @throws RejectedExecutionException if this executor has been shut down
+     */
+    public boolean execute(final String key, final Runnable task) {
+        checkNotNull(key, "key must not be null");
+        checkNotNull(task, "task must not be null");
+
+        // read before checking, so that a change applied in between leads to another check
+        final long checkedGeneration = generation;
+        if (!client.isHandledByMe(key)) {
+            notOwned.increment();
+            notOwnedHandler.accept(key, task);
+            return false;
+        }
+
+        stripeOf(key).execute(new KeyedTask(key, task, checkedGeneration));
+        return true;
+    }
+
+    private ThreadPoolExecutor stripeOf(final String key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    /**
+     * Removes all queued tasks for keys which are not owned by this member anymore. The remaining ones are marked as
+     * checked, so that they are not checked again before they run.
+     *
+     * @return number of cancelled tasks
+     */
+    int cancelRevoked() {
+        final long currentGeneration = ++generation;
+        int count = 0;
+        for (final ThreadPoolExecutor stripe : stripes) {
+            for (final Runnable queued : stripe.getQueue()) {
+                if (!(queued instanceof KeyedTask)) {
+                    continue;
+                }
+                final KeyedTask keyedTask = (KeyedTask) queued;
+                if (client.isHandledByMe(keyedTask.key)) {
+                    keyedTask.checkedGeneration = currentGeneration;
+                }
+                else if (stripe.remove(queued)) {
+                    count++;
+                }
+            }
+        }
+
+        if (count > 0) {
+            LOGGER.info("cancelled queued tasks of revoked keys [count={}]", count);
+            revoked(count);
+        }
+        return count;
+    }
+
+    private void revoked(final int count) {
+        cancelled.add(count);
+        try {
+            revokedHandler.accept(count);
+        }
+        catch (final RuntimeException e) {
+            LOGGER.warn("handler of revoked tasks failed [count={}]", count, e);
+        }
+    }
+
+    @Override
+    public void onAssignmentChanged(final Assignment assignment) {
+        cancelRevoked();
+    }
+
+    /**
+     * Revoked tasks are already cancelled by {@link #onAssignmentChanged(Assignment)}, which is always called before.
+     */
+    @Override
+    public void onRebalanced(final int partitionId, final int numberOfPartitions) {}
+
+    /**
+     * @return completed once all tasks queued so far have been run (or cancelled)
+     */
+    @Override
+    public CompletionStage<?> onDrain(final long deadlineMillis) {
+        final CompletableFuture<?>[] drained = new CompletableFuture<?>[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            drained[i] = CompletableFuture.runAsync(() -> {}, stripes[i]);
+        }
+        return CompletableFuture.allOf(drained);
+    }
+
+    @Override
+    public void init(final Cluster cluster) {}
+
+    @Override
+    public void onMemberUp(final Member member) {}
+
+    @Override
+    public void onMemberRemoved(final Member member) {}
+
+    @Override
+    public void onMemberUnreachable(final Member member) {}
+
+    public long getExecutedTasks() {
+        return executed.sum();
+    }
+
+    public long getNotOwnedTasks() {
+        return notOwned.sum();
+    }
+
+    public long getCancelledTasks() {
+        return cancelled.sum();
+    }
+
+    public void shutdown() {
+        for (final ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (final ThreadPoolExecutor stripe : stripes) {
+            if (!stripe.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("stripes", stripes.length)
+                .add("executed", executed)
+                .add("notOwned", notOwned)
+                .add("cancelled", cancelled)
+                .toString();
+    }
+
+    private final class KeyedTask implements Runnable {
+        private final String key;
+        private final Runnable task;
+        private volatile long checkedGeneration;
+
+        private KeyedTask(final String key, final Runnable task, final long checkedGeneration) {
+            this.key = key;
+            this.task = task;
+            this.checkedGeneration = checkedGeneration;
+        }
+
+        @Override
+        public void run() {
+            if (checkedGeneration != generation && !client.isHandledByMe(key)) {
+                revoked(1);
+                return;
+            }
+
+            try {
+                task.run();
+            }
+            catch (final RuntimeException e) {
+                LOGGER.error("task failed [key={}]", key, e);
+            }
+            finally {
+                executed.increment();
+            }
+        }
+    }
+}
@@ -5,15 +5,43 @@ import akka.cluster.Cluster;
 import akka.cluster.ClusterReadView;
 import akka.cluster.Member;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface ScoopListener {
 
     void init(Cluster cluster);
 
+    /**
+     * Called when this member owns exactly one partition after a rebalance, which is always the case unless
+     * a fixed number of partitions is configured (see {@link Scoop#withPartitions(int)}).
+     */
     void onRebalanced(final int partitionId, final int numberOfPartitions);
 
+    /**
+     * Called with the partitions this member owns whenever the cluster-wide assignment changes. It is called
+     * before {@link #onRebalanced(int, int)}.
+     */
+    default void onAssignmentChanged(final Assignment assignment) {}
+
     void onMemberUp(final Member member);
 
     void onMemberRemoved(final Member member);
 
     void onMemberUnreachable(final Member member);
+
+    /**
+     * Called whenever the cluster-wide table of keys spread over multiple owners changes.
+     */
+    default void onHotKeysChanged(final HotKeys hotKeys) {}
+
+    /**
+     * Called when this member leaves gracefully (see {@link Scoop#leave(long, java.util.concurrent.TimeUnit)}),
+     * after its partitions have been reassigned to the remaining members. In-flight work should be finished
+     * (or handed over) until the given deadline (epoch millis); the member leaves the cluster once all
+     * returned stages are completed or the deadline has passed.
+     */
+    default CompletionStage<?> onDrain(final long deadlineMillis) {
+        return CompletableFuture.completedFuture(null);
+    }
 }
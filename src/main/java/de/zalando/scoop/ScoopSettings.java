@@ -0,0 +1,245 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.zalando.scoop.telemetry.ClientMetrics;
+import de.zalando.scoop.telemetry.MetricsReporter;
+import de.zalando.scoop.telemetry.OwnershipTelemetry;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable snapshot of the {@link Scoop} settings the {@link ScoopActor} needs at runtime.
+ */
+final class ScoopSettings {
+
+    private final Optional<OwnershipTelemetry> telemetry;
+    private final ImmutableMap<String, Integer> hotKeys;
+    private final double hotKeyShare;
+    private final int hotKeyOwners;
+    private final AssignmentStrategy assignmentStrategy;
+    private final Optional<Path> stateDirectory;
+    private final FiniteDuration restartGracePeriod;
+    private final ImmutableList<PartitionStateListener> stateListeners;
+    private final FiniteDuration handoffTimeout;
+    private final Optional<String> assignmentRole;
+    private final Optional<Lease> lease;
+    private final Optional<RangeBalancer> rangeBalancer;
+    private final Optional<LoadShedding> loadShedding;
+    private final Optional<ClientMetrics> metrics;
+    private final Optional<MetricsReporter> metricsReporter;
+    private final FiniteDuration metricsReportInterval;
+    private final Optional<Federation> federation;
+    private final Optional<OwnershipSnapshotWriter> ownershipSnapshot;
+
+    static final ScoopSettings DEFAULT = new ScoopSettings(Optional.empty(),
+                                                           ImmutableMap.of(),
+                                                           0.0,
+                                                           0,
+                                                           new StickyAssignmentStrategy(),
+                                                           Optional.empty(),
+                                                           Duration.Zero(),
+                                                           ImmutableList.of(),
+                                                           Duration.Zero(),
+                                                           Optional.empty(),
+                                                           Optional.empty(),
+                                                           Optional.empty(),
+                                                           Optional.empty(),
+                                                           Optional.empty(),
+                                                           Optional.empty(),
+                                                           Duration.Zero(),
+                                                           Optional.empty(),
+                                                           Optional.empty());
+
+    ScoopSettings(final Optional<OwnershipTelemetry> telemetry,
+                  final Map<String, Integer> hotKeys,
+                  final double hotKeyShare,
+                  final int hotKeyOwners,
+                  final AssignmentStrategy assignmentStrategy,
+                  final Optional<Path> stateDirectory,
+                  final FiniteDuration restartGracePeriod,
+                  final List<PartitionStateListener> stateListeners,
+                  final FiniteDuration handoffTimeout,
+                  final Optional<String> assignmentRole,
+                  final Optional<Lease> lease,
+                  final Optional<RangeBalancer> rangeBalancer,
+                  final Optional<LoadShedding> loadShedding,
+                  final Optional<ClientMetrics> metrics,
+                  final Optional<MetricsReporter> metricsReporter,
+                  final FiniteDuration metricsReportInterval,
+                  final Optional<Federation> federation,
+                  final Optional<OwnershipSnapshotWriter> ownershipSnapshot) {
+        this.telemetry = requireNonNull(telemetry, "telemetry must not be null");
+        this.hotKeys = ImmutableMap.copyOf(requireNonNull(hotKeys, "hot keys must not be null"));
+        this.hotKeyShare = hotKeyShare;
+        this.hotKeyOwners = hotKeyOwners;
+        this.assignmentStrategy = requireNonNull(assignmentStrategy, "assignment strategy must not be null");
+        this.stateDirectory = requireNonNull(stateDirectory, "state directory must not be null");
+        this.restartGracePeriod = requireNonNull(restartGracePeriod, "restart grace period must not be null");
+        this.stateListeners = ImmutableList.copyOf(requireNonNull(stateListeners, "state listeners must not be null"));
+        this.handoffTimeout = requireNonNull(handoffTimeout, "handoff timeout must not be null");
+        this.assignmentRole = requireNonNull(assignmentRole, "assignment role must not be null");
+        this.lease = requireNonNull(lease, "lease must not be null");
+        this.rangeBalancer = requireNonNull(rangeBalancer, "range balancer must not be null");
+        this.loadShedding = requireNonNull(loadShedding, "load shedding must not be null");
+        this.metrics = requireNonNull(metrics, "metrics must not be null");
+        this.metricsReporter = requireNonNull(metricsReporter, "metrics reporter must not be null");
+        this.metricsReportInterval = requireNonNull(metricsReportInterval, "metrics report interval must not be null");
+        this.federation = requireNonNull(federation, "federation must not be null");
+        this.ownershipSnapshot = requireNonNull(ownershipSnapshot, "ownership snapshot must not be null");
+    }
+
+    Optional<OwnershipTelemetry> getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @return manually flagged hot keys and their number of owners
+     */
+    Map<String, Integer> getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * @return share of sampled checks from which on a key is detected as hot; {@code 0} if detection is disabled
+     */
+    double getHotKeyShare() {
+        return hotKeyShare;
+    }
+
+    int getHotKeyOwners() {
+        return hotKeyOwners;
+    }
+
+    boolean isHotKeyDetectionEnabled() {
+        return hotKeyShare > 0 && telemetry.isPresent();
+    }
+
+    AssignmentStrategy getAssignmentStrategy() {
+        return assignmentStrategy;
+    }
+
+    /**
+     * @return directory in which the assignment is persisted; empty if it is kept in memory only
+     */
+    Optional<Path> getStateDirectory() {
+        return stateDirectory;
+    }
+
+    /**
+     * @return how long the partitions of a removed member are kept for it; zero if they are reassigned at once
+     */
+    FiniteDuration getRestartGracePeriod() {
+        return restartGracePeriod;
+    }
+
+    /**
+     * @return listeners whose partition state is handed over to new owners, in the order their chunks are sent;
+     * empty if partitions move without state
+     */
+    List<PartitionStateListener> getStateListeners() {
+        return stateListeners;
+    }
+
+    /**
+     * @return how long a gained partition waits for its state before it is activated anyway
+     */
+    FiniteDuration getHandoffTimeout() {
+        return handoffTimeout;
+    }
+
+    /**
+     * @return Akka cluster role members need to get partitions; empty if all members get partitions
+     */
+    Optional<String> getAssignmentRole() {
+        return assignmentRole;
+    }
+
+    /**
+     * @return ownership lease of this member; empty if ownership is not fenced by leases
+     */
+    Optional<Lease> getLease() {
+        return lease;
+    }
+
+    /**
+     * @return balancer of the key ranges; empty if keys are hashed onto partitions
+     */
+    Optional<RangeBalancer> getRangeBalancer() {
+        return rangeBalancer;
+    }
+
+    /**
+     * @return thresholds and reported load of this member; empty if partitions are not shed from lagging members
+     */
+    Optional<LoadShedding> getLoadShedding() {
+        return loadShedding;
+    }
+
+    /**
+     * @return metrics of the ownership checks and assignment changes on this member; empty if they are not recorded
+     */
+    Optional<ClientMetrics> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return reporter the metrics are passed to every {@link #getMetricsReportInterval()}; empty if they are
+     * exported via JMX only
+     */
+    Optional<MetricsReporter> getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    FiniteDuration getMetricsReportInterval() {
+        return metricsReportInterval;
+    }
+
+    /**
+     * @return clusters sharing the key space with this one and the slices this member owns; empty if this cluster
+     * handles all keys
+     */
+    Optional<Federation> getFederation() {
+        return federation;
+    }
+
+    /**
+     * @return memory-mapped file publishing the ownership of this member; empty if it is not published
+     */
+    Optional<OwnershipSnapshotWriter> getOwnershipSnapshot() {
+        return ownershipSnapshot;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("telemetry", telemetry)
+                .add("hotKeys", hotKeys)
+                .add("hotKeyShare", hotKeyShare)
+                .add("hotKeyOwners", hotKeyOwners)
+                .add("assignmentStrategy", assignmentStrategy)
+                .add("stateDirectory", stateDirectory)
+                .add("restartGracePeriod", restartGracePeriod)
+                .add("stateListeners", stateListeners)
+                .add("handoffTimeout", handoffTimeout)
+                .add("assignmentRole", assignmentRole)
+                .add("lease", lease)
+                .add("rangeBalancer", rangeBalancer)
+                .add("loadShedding", loadShedding)
+                .add("metrics", metrics)
+                .add("metricsReporter", metricsReporter)
+                .add("metricsReportInterval", metricsReportInterval)
+                .add("federation", federation)
+                .add("ownershipSnapshot", ownershipSnapshot)
+                .toString();
+    }
+}
@@ -0,0 +1,113 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Ordering;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Timings of the phases of {@link Scoop#startAsync()}. Phases run in parallel where they do not depend on each
+ * other, so the total is usually less than the sum of the phases; the offsets show which phases overlapped.
+ */
+public final class StartupReport {
+
+    private final Ticker ticker;
+    private final long startedAtNanos;
+    private final ConcurrentLinkedQueue<Phase> phases;
+    private volatile long totalNanos;
+
+    StartupReport(final Ticker ticker) {
+        this.ticker = checkNotNull(ticker, "ticker must not be null");
+        this.startedAtNanos = ticker.read();
+        this.phases = new ConcurrentLinkedQueue<>();
+        this.totalNanos = -1;
+    }
+
+    StartupReport() {
+        this(Ticker.systemTicker());
+    }
+
+    /**
+     * Runs the step on the calling thread and records its duration, also if it fails.
+     */
+    <T> T time(final String phase, final Supplier<T> step) {
+        final long start = ticker.read();
+        try {
+            return step.get();
+        }
+        finally {
+            phases.add(new Phase(phase, start - startedAtNanos, ticker.read() - start));
+        }
+    }
+
+    void complete() {
+        totalNanos = ticker.read() - startedAtNanos;
+    }
+
+    /**
+     * @return finished phases in the order they started
+     */
+    public List<Phase> getPhases() {
+        return Ordering.from(Comparator.<Phase>comparingLong(p -> p.offsetNanos)).immutableSortedCopy(phases);
+    }
+
+    /**
+     * @return milliseconds from the start to the Scoop actor running; -1 if startup has not completed
+     */
+    public long getTotalMillis() {
+        final long total = totalNanos;
+        return total < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    @Override
+    public String toString() {
+        final MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this).add("totalMillis", getTotalMillis());
+        getPhases().forEach(p -> helper.add(p.getName(), p.getMillis() + "ms@+" + p.getOffsetMillis()));
+        return helper.toString();
+    }
+
+
+    public static final class Phase {
+        private final String name;
+        private final long offsetNanos;
+        private final long durationNanos;
+
+        private Phase(final String name, final long offsetNanos, final long durationNanos) {
+            this.name = name;
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return milliseconds from the start of startup to the start of this phase
+         */
+        public long getOffsetMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(offsetNanos);
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("name", name)
+                    .add("offsetMillis", getOffsetMillis())
+                    .add("millis", getMillis())
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package de.zalando.scoop;
+
+
+import akka.actor.ActorRef;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.zalando.scoop.ScoopCommunication.StateChunk;
+import de.zalando.scoop.ScoopCommunication.StateChunkAck;
+import de.zalando.scoop.ScoopCommunication.StateRequest;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * State of the partition handoffs of one member, driven by the {@link ScoopActor}. The new owner of a partition
+ * requests its state from the former owner, which sends the snapshot chunk by chunk with at most
+ * {@link #WINDOW} chunks not acknowledged. The new owner restores the chunks in order and activates the
+ * partition with the last one. Handoffs belong to a single assignment epoch and are given up once a newer
+ * assignment arrives. Requests for an epoch this member has not applied yet are kept until it does.
+ *
+ * The chunks of several listeners are sent one listener after another, tagged with the listener's index; all
+ * members must therefore use the same listeners in the same order.
+ */
+final class StateHandoff {
+
+    private final ImmutableList<PartitionStateListener> listeners;
+    private final HashMap<Integer, Transfer> outgoing;
+    private final HashMap<Integer, Long> incoming;
+    private final List<EarlyRequest> early;
+    private BitSet revoked;
+    private long epoch;
+
+    static final int WINDOW = 8;
+
+    StateHandoff(final List<PartitionStateListener> listeners) {
+        this.listeners = ImmutableList.copyOf(requireNonNull(listeners, "listeners must not be null"));
+        this.outgoing = Maps.newHashMap();
+        this.incoming = Maps.newHashMap();
+        this.early = Lists.newArrayList();
+        this.revoked = new BitSet();
+        this.epoch = -1;
+    }
+
+    /**
+     * Gives up all handoffs of the former epoch.
+     *
+     * @param revokedPartitions partitions this member lost and whose state it sends on request
+     * @param expected          partitions this member gained and whose state it is going to request
+     * @return partitions of the former epoch whose state did not arrive completely
+     */
+    BitSet begin(final long newEpoch, final BitSet revokedPartitions, final BitSet expected) {
+        final BitSet aborted = abort();
+        epoch = newEpoch;
+        revoked = (BitSet) revokedPartitions.clone();
+        expected.stream().forEach(p -> incoming.put(p, 0L));
+
+        final List<EarlyRequest> buffered = Lists.newArrayList(early);
+        early.clear();
+        buffered.forEach(e -> onRequest(e.request, e.sender, e.self));
+        return aborted;
+    }
+
+    /**
+     * Gives up all handoffs of the current epoch.
+     *
+     * @return partitions whose state did not arrive completely
+     */
+    BitSet abort() {
+        outgoing.clear();
+        revoked = new BitSet();
+
+        final BitSet aborted = new BitSet();
+        incoming.keySet().forEach(aborted::set);
+        incoming.clear();
+        aborted.stream().forEach(p -> listeners.forEach(l -> l.onHandoffCompleted(p, false)));
+        return aborted;
+    }
+
+    long getEpoch() {
+        return epoch;
+    }
+
+    BitSet getPending() {
+        final BitSet pending = new BitSet();
+        incoming.keySet().forEach(pending::set);
+        return pending;
+    }
+
+    /**
+     * Starts sending the state of a revoked partition. A partition this member did not lose is answered with
+     * an empty state so that the requester does not wait for it.
+     */
+    void onRequest(final StateRequest request, final ActorRef sender, final ActorRef self) {
+        if (request.getEpoch() > epoch) {
+            early.add(new EarlyRequest(request, sender, self));
+            return;
+        }
+
+        final int partition = request.getPartition();
+        if (request.getEpoch() < epoch || outgoing.containsKey(partition)) {
+            return;
+        }
+
+        final Iterator<Chunk> chunks = revoked.get(partition) ? snapshot(partition) : Iterators.emptyIterator();
+        revoked.clear(partition);
+
+        final Transfer transfer = new Transfer(partition, chunks, sender);
+        outgoing.put(partition, transfer);
+        transfer.pump(self);
+    }
+
+    /**
+     * @return chunks of all listeners; the snapshot of a listener is taken once its chunks are due
+     */
+    private Iterator<Chunk> snapshot(final int partition) {
+        final Iterator<Iterator<Chunk>> perListener = Iterators.transform(
+                IntStream.range(0, listeners.size()).iterator(),
+                i -> Iterators.transform(requireNonNull(listeners.get(i).snapshotPartition(partition),
+                                                        "snapshot of partition must not be null"),
+                                         data -> new Chunk(i, data)));
+        return Iterators.concat(perListener);
+    }
+
+    void onAck(final StateChunkAck ack, final ActorRef self) {
+        final Transfer transfer = outgoing.get(ack.getPartition());
+        if (ack.getEpoch() != epoch || transfer == null || ack.getSequenceNumber() <= transfer.acked) {
+            return;
+        }
+
+        transfer.acked = ack.getSequenceNumber();
+        if (transfer.sentLast && transfer.acked == transfer.next - 1) {
+            outgoing.remove(ack.getPartition());
+        }
+        else {
+            transfer.pump(self);
+        }
+    }
+
+    /**
+     * @return true if the chunk completed the state of its partition
+     */
+    boolean onChunk(final StateChunk chunk, final ActorRef sender, final ActorRef self) {
+        final Long expected = incoming.get(chunk.getPartition());
+        if (chunk.getEpoch() != epoch || expected == null || chunk.getSequenceNumber() != expected) {
+            return false;
+        }
+
+        if (chunk.getData().length > 0 && chunk.getListener() < listeners.size()) {
+            listeners.get(chunk.getListener()).restorePartition(chunk.getPartition(), chunk.getData());
+        }
+        sender.tell(new StateChunkAck(epoch, chunk.getPartition(), chunk.getSequenceNumber()), self);
+
+        if (chunk.isLast()) {
+            incoming.remove(chunk.getPartition());
+            listeners.forEach(l -> l.onHandoffCompleted(chunk.getPartition(), true));
+            return true;
+        }
+
+        incoming.put(chunk.getPartition(), expected + 1);
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("epoch", epoch)
+                .add("revoked", revoked)
+                .add("outgoing", outgoing.keySet())
+                .add("incoming", incoming.keySet())
+                .toString();
+    }
+
+    private static final class EarlyRequest {
+        private final StateRequest request;
+        private final ActorRef sender;
+        private final ActorRef self;
+
+        private EarlyRequest(final StateRequest request, final ActorRef sender, final ActorRef self) {
+            this.request = request;
+            this.sender = sender;
+            this.self = self;
+        }
+    }
+
+    private static final class Chunk {
+        private final int listener;
+        private final byte[] data;
+
+        private Chunk(final int listener, final byte[] data) {
+            this.listener = listener;
+            this.data = data;
+        }
+    }
+
+    private final class Transfer {
+        private final int partition;
+        private final Iterator<Chunk> chunks;
+        private final ActorRef newOwner;
+        private long next;
+        private long acked;
+        private boolean sentLast;
+
+        private Transfer(final int partition, final Iterator<Chunk> chunks, final ActorRef newOwner) {
+            this.partition = partition;
+            this.chunks = chunks;
+            this.newOwner = newOwner;
+            this.acked = -1;
+        }
+
+        /**
+         * Sends chunks until the window is full. A partition without state is sent as a single empty chunk.
+         */
+        private void pump(final ActorRef self) {
+            while (!sentLast && next - acked <= WINDOW) {
+                final Chunk chunk = chunks.hasNext() ? chunks.next() : new Chunk(0, new byte[0]);
+                sentLast = !chunks.hasNext();
+                newOwner.tell(new StateChunk(epoch, partition, next++, chunk.listener, chunk.data, sentLast), self);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spreads partitions evenly over all members while keeping as many partitions as possible with their
+ * current owner: only the partitions of removed members and the surplus of members owning more than
+ * their share are moved.
+ *
+ * With a partition count of {@code 0} every member owns exactly one partition (the number of partitions
+ * follows the number of members). When a member leaves, the member owning the last partition takes
+ * over the free partition id so that all other members keep theirs.
+ */
+public final class StickyAssignmentStrategy implements AssignmentStrategy {
+
+    private final int numberOfPartitions;
+
+    public static final int PARTITION_PER_MEMBER = 0;
+
+    public StickyAssignmentStrategy(final int numberOfPartitions) {
+        checkArgument(numberOfPartitions > -1,
+                      "number of partitions must be > -1. Got [numberOfPartitions=%s]", numberOfPartitions);
+        this.numberOfPartitions = numberOfPartitions;
+    }
+
+    public StickyAssignmentStrategy() {
+        this(PARTITION_PER_MEMBER);
+    }
+
+    public int getNumberOfPartitions() {
+        return numberOfPartitions;
+    }
+
+    @Override
+    public AssignmentTable assign(final AssignmentTable current, final Collection<String> members) {
+        return assign(current, members, ImmutableMap.of());
+    }
+
+    /**
+     * Members get partitions in proportion to their capacity; the remainder goes to the members with the largest
+     * fraction of a partition left.
+     */
+    @Override
+    public AssignmentTable assign(final AssignmentTable current,
+                                  final Collection<String> members,
+                                  final Map<String, Double> capacities) {
+        checkNotNull(current, "current assignment must not be null");
+        checkNotNull(members, "members must not be null");
+        checkNotNull(capacities, "capacities must not be null");
+
+        if (current.isRanged()) {
+            return assign(current, members, capacities, current.getNumberOfPartitions());
+        }
+        return assign(current, members, capacities,
+                      numberOfPartitions == PARTITION_PER_MEMBER ? members.size() : numberOfPartitions);
+    }
+
+    private AssignmentTable assign(final AssignmentTable current,
+                                   final Collection<String> members,
+                                   final Map<String, Double> capacities,
+                                   final int partitions) {
+        if (members.isEmpty()) {
+            return current.withOwners(new String[partitions]);
+        }
+
+        final String[] owners = new String[partitions];
+        final HashMap<String, Integer> counts = Maps.newHashMap();
+        members.forEach(m -> counts.put(m, 0));
+
+        final int retained = Math.min(partitions, current.getNumberOfPartitions());
+        for (int i = 0; i < retained; i++) {
+            final String owner = current.ownerOf(i).orElse(null);
+            if (owner != null && counts.containsKey(owner)) {
+                owners[i] = owner;
+                counts.merge(owner, 1, Integer::sum);
+            }
+        }
+
+        // members already owning the most partitions get the extra ones to keep movement low
+        final List<String> ordered = Lists.newArrayList(counts.keySet());
+        ordered.sort(Comparator.<String>comparingInt(counts::get).reversed().thenComparing(Comparator.naturalOrder()));
+
+        final HashMap<String, Integer> quotas = quotas(ordered, capacities, partitions);
+
+        for (int i = partitions - 1; i > -1; i--) {
+            final String owner = owners[i];
+            if (owner != null && counts.get(owner) > quotas.get(owner)) {
+                owners[i] = null;
+                counts.merge(owner, -1, Integer::sum);
+            }
+        }
+
+        int next = 0;
+        for (int i = 0; i < partitions; i++) {
+            if (owners[i] == null) {
+                while (counts.get(ordered.get(next)) >= quotas.get(ordered.get(next))) {
+                    next++;
+                }
+                owners[i] = ordered.get(next);
+                counts.merge(ordered.get(next), 1, Integer::sum);
+            }
+        }
+
+        return current.withOwners(owners);
+    }
+
+    private static HashMap<String, Integer> quotas(final List<String> ordered,
+                                                   final Map<String, Double> capacities,
+                                                   final int partitions) {
+        final HashMap<String, Integer> quotas = Maps.newHashMap();
+        if (capacities.isEmpty()) {
+            final int base = partitions / ordered.size();
+            final int extra = partitions % ordered.size();
+            for (int i = 0; i < ordered.size(); i++) {
+                quotas.put(ordered.get(i), i < extra ? base + 1 : base);
+            }
+            return quotas;
+        }
+
+        final double totalCapacity = ordered.stream().mapToDouble(m -> capacities.getOrDefault(m, 1.0)).sum();
+        final HashMap<String, Double> fractions = Maps.newHashMap();
+        int remainder = partitions;
+        for (final String member : ordered) {
+            final double share = partitions * capacities.getOrDefault(member, 1.0) / totalCapacity;
+            quotas.put(member, (int) share);
+            fractions.put(member, share - (int) share);
+            remainder -= (int) share;
+        }
+
+        final List<String> byFraction = Lists.newArrayList(ordered);
+        byFraction.sort(Comparator.comparingDouble(fractions::get).reversed());
+        for (int i = 0; i < remainder; i++) {
+            quotas.merge(byFraction.get(i % byFraction.size()), 1, Integer::sum);
+        }
+        return quotas;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("numberOfPartitions", numberOfPartitions)
+                .toString();
+    }
+}
@@ -1,6 +1,7 @@
 package de.zalando.scoop.config;
 
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.regions.Region;
@@ -13,6 +14,9 @@ import com.amazonaws.services.autoscaling.model.DescribeAutoScalingInstancesResu
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.ec2.model.*;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
@@ -26,6 +30,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -45,18 +50,28 @@ import static java.lang.String.format;
  *
  * Most of the AWS related logic is taken from this article:
  * http://chrisloy.net/2014/05/11/akka-cluster-ec2-autoscaling.html
+ *
+ * The AWS clients are built on first use (or by {@link #prepareClients()}), so that the meta data lookups,
+ * which do not need them, do not wait for the SDK to initialize. All methods are thread safe and may run in
+ * parallel.
  */
 public final class AwsConfigurationBuilder {
 
-    private final AmazonAutoScalingClient scaling;
-    private final AmazonEC2Client ec2;
+    private final AWSCredentialsProvider credentials;
+    private final Supplier<AmazonAutoScalingClient> scaling;
+    private final Supplier<AmazonEC2Client> ec2;
     private final String awsMetaDataInstanceIdUrl;
+    private final String awsMetaDataAvailabilityZoneUrl;
     private int akkaClusterPort;
+    private volatile String instanceId;
 
 
     public static final String DEFAULT_HTTP_META_DATA_INSTANCE_ID_URL =
                                                                   "http://169.254.169.254/latest/meta-data/instance-id";
 
+    public static final String DEFAULT_HTTP_META_DATA_AVAILABILITY_ZONE_URL =
+                                                       "http://169.254.169.254/latest/meta-data/placement/availability-zone";
+
     private static final String AKKA_CONFIG_FILE = "scoop.conf";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AwsConfigurationBuilder.class);
@@ -64,6 +79,13 @@ public final class AwsConfigurationBuilder {
     public AwsConfigurationBuilder(final Regions regions,
                                    final int akkaClusterPort,
                                    final String awsMetaDataInstanceIdUrl) {
+        this(regions, akkaClusterPort, awsMetaDataInstanceIdUrl, DEFAULT_HTTP_META_DATA_AVAILABILITY_ZONE_URL);
+    }
+
+    public AwsConfigurationBuilder(final Regions regions,
+                                   final int akkaClusterPort,
+                                   final String awsMetaDataInstanceIdUrl,
+                                   final String awsMetaDataAvailabilityZoneUrl) {
 
         checkNotNull(regions, "regions must not be null");
 
@@ -73,15 +95,20 @@ public final class AwsConfigurationBuilder {
 
         this.awsMetaDataInstanceIdUrl = checkNotNull(awsMetaDataInstanceIdUrl,
                                                     "AWS meta data URL to retrieve instance id must not be null");
-
-        final AWSCredentialsProvider credentials = new DefaultAWSCredentialsProviderChain();
-        final Region region = Region.getRegion(regions);
-
-        this.scaling = new AmazonAutoScalingClient(credentials);
-        this.scaling.setRegion(region);
-
-        this.ec2 = new AmazonEC2Client(credentials);
-        this.ec2.setRegion(region);
+        this.awsMetaDataAvailabilityZoneUrl = checkNotNull(awsMetaDataAvailabilityZoneUrl,
+                                                          "AWS meta data URL to retrieve availability zone must not be null");
+
+        this.credentials = new DefaultAWSCredentialsProviderChain();
+        this.scaling = Suppliers.memoize(() -> {
+            final AmazonAutoScalingClient client = new AmazonAutoScalingClient(credentials);
+            client.setRegion(Region.getRegion(regions));
+            return client;
+        });
+        this.ec2 = Suppliers.memoize(() -> {
+            final AmazonEC2Client client = new AmazonEC2Client(credentials);
+            client.setRegion(Region.getRegion(regions));
+            return client;
+        });
 
         this.akkaClusterPort = akkaClusterPort;
 
@@ -93,17 +120,52 @@ public final class AwsConfigurationBuilder {
     }
 
 
-    String currentInstanceId() throws IOException {
-        LOGGER.debug("determining current instance id...");
+    /**
+     * Builds the AWS clients and resolves the credentials ahead of their first use, e.g. while the meta data is
+     * fetched. Unresolvable credentials are only logged here; the calls needing them fail later on.
+     */
+    public void prepareClients() {
+        scaling.get();
+        ec2.get();
+        try {
+            credentials.getCredentials();
+        }
+        catch (final AmazonClientException e) {
+            LOGGER.warn("could not resolve AWS credentials", e);
+        }
+    }
 
-        final URL url = new URL(awsMetaDataInstanceIdUrl);
+
+    /**
+     * @return id of the current instance; fetched once
+     */
+    public String currentInstanceId() throws IOException {
+        String currentInstanceId = instanceId;
+        if (currentInstanceId == null) {
+            LOGGER.debug("determining current instance id...");
+            currentInstanceId = metaData(awsMetaDataInstanceIdUrl);
+            instanceId = currentInstanceId;
+            LOGGER.debug("current instance id is [currentInstanceId={}]", currentInstanceId);
+        }
+        return currentInstanceId;
+    }
+
+
+    public String currentAvailabilityZone() throws IOException {
+        LOGGER.debug("determining current availability zone...");
+        final String zone = metaData(awsMetaDataAvailabilityZoneUrl);
+        LOGGER.debug("current availability zone is [zone={}]", zone);
+        return zone;
+    }
+
+
+    private static String metaData(final String metaDataUrl) throws IOException {
+        final URL url = new URL(metaDataUrl);
         final URLConnection connection = url.openConnection();
         final InputStream in = connection.getInputStream();
 
         try {
-            final String instanceId = IOUtils.toString(in);
-            LOGGER.debug("current instance id is [currentInstanceId={}]", instanceId);
-            return instanceId;
+            return IOUtils.toString(in);
         }
         finally {
             IOUtils.closeQuietly(in);
@@ -117,7 +179,7 @@ public final class AwsConfigurationBuilder {
         final DescribeAutoScalingInstancesRequest request = new DescribeAutoScalingInstancesRequest();
         request.setInstanceIds(Sets.newHashSet(instanceId));
 
-        final DescribeAutoScalingInstancesResult result = scaling.describeAutoScalingInstances(request);
+        final DescribeAutoScalingInstancesResult result = scaling.get().describeAutoScalingInstances(request);
         final String groupName = result.getAutoScalingInstances().get(0).getAutoScalingGroupName();
 
         LOGGER.debug("autoscaling group for [instanceId={}] is [groupName={}]", instanceId, groupName);
@@ -131,7 +193,7 @@ public final class AwsConfigurationBuilder {
         final DescribeAutoScalingGroupsRequest request = new DescribeAutoScalingGroupsRequest();
         request.setAutoScalingGroupNames(Sets.newHashSet(groupName));
 
-        final DescribeAutoScalingGroupsResult result = scaling.describeAutoScalingGroups(request);
+        final DescribeAutoScalingGroupsResult result = scaling.get().describeAutoScalingGroups(request);
         final List<String> instanceIds = result.getAutoScalingGroups()
                                                 .get(0)
                                                 .getInstances()
@@ -148,12 +210,30 @@ public final class AwsConfigurationBuilder {
         LOGGER.debug("fetching instance with [instanceId={}]", instanceId);
         final DescribeInstancesRequest request = new DescribeInstancesRequest();
         request.setInstanceIds(Sets.newHashSet(instanceId));
-        final DescribeInstancesResult result = ec2.describeInstances(request);
+        final DescribeInstancesResult result = ec2.get().describeInstances(request);
         return result.getReservations().get(0).getInstances().get(0);
     }
 
 
-    String currentIp() {
+    /**
+     * @return instances in the order of the given ids, fetched in a single request
+     */
+    List<Instance> instancesFromIds(final List<String> instanceIds) {
+        LOGGER.debug("fetching instances with [instanceIds={}]", instanceIds);
+        final DescribeInstancesRequest request = new DescribeInstancesRequest();
+        request.setInstanceIds(instanceIds);
+        final DescribeInstancesResult result = ec2.get().describeInstances(request);
+
+        final Map<String, Instance> instances = Maps.newHashMap();
+        result.getReservations().forEach(r -> r.getInstances().forEach(i -> instances.put(i.getInstanceId(), i)));
+        return instanceIds.stream()
+                          .map(instances::get)
+                          .filter(Objects::nonNull)
+                          .collect(Collectors.toList());
+    }
+
+
+    public String currentIp() {
         try {
             LOGGER.debug("determining current IP...");
             final String currentInstanceId = currentInstanceId();
@@ -172,9 +252,8 @@ public final class AwsConfigurationBuilder {
 
         final String groupName = autoScalingGroup(instanceId);
         final List<String> instanceIds = groupInstanceIds(groupName);
-        final List<String> siblings = instanceIds
+        final List<String> siblings = instancesFromIds(instanceIds)
                                         .stream()
-                .map(instId -> instanceFromId(instId))
                 .filter(instance -> Objects.equals(instance.getState().getName(), InstanceStateName.Running.toString()))
                 .map(instance -> instance.getPrivateIpAddress())
                                         .collect(Collectors.toList());
@@ -184,7 +263,7 @@ public final class AwsConfigurationBuilder {
     }
 
 
-    List<String> seeds() {
+    public List<String> seeds() {
         try {
             LOGGER.debug("determining seed...");
             List<String> seeds = siblingIps(currentInstanceId())
@@ -212,8 +291,8 @@ public final class AwsConfigurationBuilder {
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
-                .add("scaling", scaling)
-                .add("ec2", ec2)
+                .add("awsMetaDataInstanceIdUrl", awsMetaDataInstanceIdUrl)
+                .add("awsMetaDataAvailabilityZoneUrl", awsMetaDataAvailabilityZoneUrl)
                 .add("akkaClusterPort", akkaClusterPort)
                 .toString();
     }
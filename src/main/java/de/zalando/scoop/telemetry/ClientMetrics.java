@@ -0,0 +1,147 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counts the ownership checks of a {@link de.zalando.scoop.ScoopClient} in striped counters and records how
+ * long assignment changes take on this member:
+ * <ul>
+ *     <li>propagation: from the coordinator deciding a change to the local listeners being notified of it,
+ *     measured with wall clocks of different members and thus only as accurate as their clocks are in sync</li>
+ *     <li>listener: duration of every listener callback notifying an assignment change</li>
+ *     <li>ready: from the start of the Scoop actor to the first assignment it applied</li>
+ * </ul>
+ */
+public final class ClientMetrics implements ClientMetricsMXBean {
+
+    private final Ticker ticker;
+    private final LongAdder checks;
+    private final LongAdder handledChecks;
+    private final LongAdder assignmentChanges;
+    private final LatencyHistogram propagationLatency;
+    private final LatencyHistogram listenerLatency;
+    private volatile long startedAtNanos;
+    private volatile long readyMillis;
+
+    public ClientMetrics(final Ticker ticker) {
+        this.ticker = checkNotNull(ticker, "ticker must not be null");
+        this.checks = new LongAdder();
+        this.handledChecks = new LongAdder();
+        this.assignmentChanges = new LongAdder();
+        this.propagationLatency = new LatencyHistogram();
+        this.listenerLatency = new LatencyHistogram();
+        this.startedAtNanos = -1;
+        this.readyMillis = -1;
+    }
+
+    public ClientMetrics() {
+        this(Ticker.systemTicker());
+    }
+
+
+    public void recordCheck(final boolean handled) {
+        checks.increment();
+        if (handled) {
+            handledChecks.increment();
+        }
+    }
+
+    /**
+     * @param decidedAtMillis wall clock time at which the coordinator decided the applied change
+     */
+    public void recordAssignmentChange(final long decidedAtMillis) {
+        assignmentChanges.increment();
+        if (decidedAtMillis > 0) {
+            propagationLatency.record(System.currentTimeMillis() - decidedAtMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void recordListener(final long durationNanos) {
+        listenerLatency.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long nanoTime() {
+        return ticker.read();
+    }
+
+    public void started() {
+        startedAtNanos = ticker.read();
+        readyMillis = -1;
+    }
+
+    public void ready() {
+        final long startedAt = startedAtNanos;
+        if (readyMillis < 0 && startedAt > -1) {
+            readyMillis = TimeUnit.NANOSECONDS.toMillis(ticker.read() - startedAt);
+        }
+    }
+
+
+    @Override
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    @Override
+    public long getHandledChecks() {
+        return handledChecks.sum();
+    }
+
+    @Override
+    public double getHandledRatio() {
+        // read handled before checks so that the ratio never exceeds 1
+        final long handled = handledChecks.sum();
+        final long checked = Math.max(handled, checks.sum());
+        return checked == 0 ? 0.0 : (double) handled / checked;
+    }
+
+    @Override
+    public long getAssignmentChanges() {
+        return assignmentChanges.sum();
+    }
+
+    /**
+     * @return milliseconds from the start of the Scoop actor to its first applied assignment; -1 if not ready yet
+     */
+    @Override
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    @Override
+    public LatencySummary getPropagationLatency() {
+        return propagationLatency.summary();
+    }
+
+    @Override
+    public LatencySummary getListenerLatency() {
+        return listenerLatency.summary();
+    }
+
+    public LatencyHistogram getPropagationHistogram() {
+        return propagationLatency;
+    }
+
+    public LatencyHistogram getListenerHistogram() {
+        return listenerLatency;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("checks", checks)
+                .add("handledChecks", handledChecks)
+                .add("assignmentChanges", assignmentChanges)
+                .add("readyMillis", readyMillis)
+                .add("propagationLatency", propagationLatency)
+                .add("listenerLatency", listenerLatency)
+                .toString();
+    }
+}
@@ -0,0 +1,22 @@
+package de.zalando.scoop.telemetry;
+
+
+/**
+ * JMX view on the ownership checks of this member and the time it takes assignment changes to reach it.
+ */
+public interface ClientMetricsMXBean {
+
+    long getChecks();
+
+    long getHandledChecks();
+
+    double getHandledRatio();
+
+    long getAssignmentChanges();
+
+    long getReadyMillis();
+
+    LatencySummary getPropagationLatency();
+
+    LatencySummary getListenerLatency();
+}
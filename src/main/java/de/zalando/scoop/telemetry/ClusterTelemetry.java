@@ -0,0 +1,142 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * Keeps the latest {@link TelemetrySnapshot} of every member and merges them into a cluster-wide
+ * view. Sampled figures are scaled by each member's sample rate before they are merged.
+ */
+public final class ClusterTelemetry implements ClusterTelemetryMXBean {
+
+    private final int hotKeys;
+    private final ConcurrentHashMap<String, TelemetrySnapshot> snapshots;
+
+    public ClusterTelemetry(final int hotKeys) {
+        checkArgument(hotKeys > 0, "number of hot keys must be > 0. Got [hotKeys=%s]", hotKeys);
+        this.hotKeys = hotKeys;
+        this.snapshots = new ConcurrentHashMap<>();
+    }
+
+    public void update(final String member, final TelemetrySnapshot snapshot) {
+        checkNotNull(member, "member must not be null");
+        checkNotNull(snapshot, "snapshot must not be null");
+        snapshots.put(member, snapshot);
+    }
+
+    public void remove(final String member) {
+        snapshots.remove(member);
+    }
+
+    /**
+     * Drops all snapshots, e.g. once they no longer match the partitions.
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    public Map<String, TelemetrySnapshot> getSnapshots() {
+        return ImmutableMap.copyOf(snapshots);
+    }
+
+    /**
+     * @return estimated hits per partition over all members. Members reporting a different number
+     * of partitions than the most recent majority (e.g. during a rebalance) are ignored.
+     */
+    @Override
+    public long[] getPartitionHits() {
+        final Map<Integer, Long> partitionCounts = snapshots.values()
+                .stream()
+                .collect(Collectors.groupingBy(s -> s.getPartitionHits().length, Collectors.counting()));
+
+        final int numberOfPartitions = partitionCounts.entrySet()
+                .stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(0);
+
+        final long[] hits = new long[numberOfPartitions];
+        for (final TelemetrySnapshot snapshot : snapshots.values()) {
+            final long[] memberHits = snapshot.getPartitionHits();
+            if (memberHits.length == numberOfPartitions) {
+                for (int i = 0; i < numberOfPartitions; i++) {
+                    hits[i] += memberHits[i] * snapshot.getSampleRate();
+                }
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public double getPartitionSkew() {
+        return TelemetrySnapshot.skew(getPartitionHits());
+    }
+
+    public List<HotKey> mergedHotKeys() {
+        final HashMap<String, long[]> merged = Maps.newHashMap();
+        for (final TelemetrySnapshot snapshot : snapshots.values()) {
+            for (final HotKey hotKey : snapshot.getHotKeys()) {
+                final long[] counter = merged.computeIfAbsent(hotKey.getKey(), k -> new long[2]);
+                counter[0] += hotKey.getCount() * snapshot.getSampleRate();
+                counter[1] += hotKey.getError() * snapshot.getSampleRate();
+            }
+        }
+
+        return merged.entrySet()
+                     .stream()
+                     .map(e -> new HotKey(e.getKey(), e.getValue()[0], e.getValue()[1]))
+                     .sorted(Comparator.comparingLong(HotKey::getCount).reversed())
+                     .limit(hotKeys)
+                     .collect(Collectors.toList());
+    }
+
+    /**
+     * @return sampled keys of all members
+     */
+    public List<String> sampledKeys() {
+        return snapshots.values()
+                        .stream()
+                        .flatMap(s -> s.getSampledKeys().stream())
+                        .collect(Collectors.toList());
+    }
+
+    @Override
+    public String[] getHotKeys() {
+        return OwnershipTelemetry.formatHotKeys(mergedHotKeys());
+    }
+
+    @Override
+    public String[] getReportingMembers() {
+        return snapshots.keySet().stream().sorted().toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getAcceptRatios() {
+        return snapshots.entrySet()
+                        .stream()
+                        .sorted(Map.Entry.comparingByKey())
+                        .map(e -> format("%s=%.4f", e.getKey(), e.getValue().getAcceptRatio()))
+                        .toArray(String[]::new);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("hotKeys", hotKeys)
+                .add("members", snapshots.keySet())
+                .toString();
+    }
+}
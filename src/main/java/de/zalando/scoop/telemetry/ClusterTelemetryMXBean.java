@@ -0,0 +1,19 @@
+package de.zalando.scoop.telemetry;
+
+
+/**
+ * JMX view on the ownership telemetry reported by all members. Only the member receiving the
+ * reports (the leader) has data.
+ */
+public interface ClusterTelemetryMXBean {
+
+    String[] getReportingMembers();
+
+    String[] getAcceptRatios();
+
+    long[] getPartitionHits();
+
+    double getPartitionSkew();
+
+    String[] getHotKeys();
+}
@@ -0,0 +1,50 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+
+import java.io.Serializable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A key reported by {@link SpaceSaving} together with its estimated (sampled) frequency. The true
+ * frequency lies within {@code [count - error, count]}.
+ */
+public final class HotKey implements Serializable {
+
+    private final String key;
+    private final long count;
+    private final long error;
+
+    public HotKey(final String key, final long count, final long error) {
+        this.key = checkNotNull(key, "key must not be null");
+        checkArgument(count > 0, "count must be > 0. Got [count=%s]", count);
+        checkArgument(error > -1 && error < count, "error must be in [0, count). Got [count=%s, error=%s]",
+                      count, error);
+        this.count = count;
+        this.error = error;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("key", key)
+                .add("count", count)
+                .add("error", error)
+                .toString();
+    }
+}
@@ -0,0 +1,60 @@
+package de.zalando.scoop.telemetry;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Registers Scoop MBeans with the platform MBean server under {@code de.zalando.scoop:type=<type>}.
+ * Failures are logged only: missing JMX data must never prevent Scoop from running.
+ */
+public final class JmxRegistration {
+
+    public static final String DOMAIN = "de.zalando.scoop";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxRegistration.class);
+
+    private JmxRegistration() {}
+
+    public static void register(final String type, final Object mbean) {
+        checkNotNull(type, "type must not be null");
+        checkNotNull(mbean, "mbean must not be null");
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = objectName(type);
+            if (server.isRegistered(name)) {
+                LOGGER.warn("replacing already registered MBean [name={}]", name);
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        }
+        catch (final JMException e) {
+            LOGGER.warn("could not register MBean [type={}]", type, e);
+        }
+    }
+
+    public static void unregister(final String type) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = objectName(type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (final JMException e) {
+            LOGGER.warn("could not unregister MBean [type={}]", type, e);
+        }
+    }
+
+    private static ObjectName objectName(final String type) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type);
+    }
+}
@@ -0,0 +1,122 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lock-free histogram of latencies in microseconds with log-linear buckets (like HdrHistogram, at
+ * a fixed precision of 1/16): values below {@link #SUB_BUCKETS} are counted exactly, larger ones in one of
+ * {@link #SUB_BUCKETS} buckets per power of two, so a reported percentile is at most 1/16 above the recorded
+ * value. Recording is a few array and adder increments without allocation; reading scans all buckets and is
+ * meant for reporting intervals, not for the hot path.
+ */
+public final class LatencyHistogram {
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAccumulator max;
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Negative durations (e.g. caused by clock skew between members) are recorded as zero.
+     */
+    public void record(final long duration, final TimeUnit unit) {
+        recordMicros(checkNotNull(unit, "time unit must not be null").toMicros(duration));
+    }
+
+    public void recordMicros(final long micros) {
+        final long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile in (0, 100]
+     * @return highest value equivalent to the recorded value at the given percentile; 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        checkArgument(percentile > 0 && percentile <= 100,
+                      "percentile must be in (0, 100]. Got [percentile=%s]", percentile);
+
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public LatencySummary summary() {
+        return new LatencySummary(getCount(),
+                                  getValueAtPercentile(50),
+                                  getValueAtPercentile(99),
+                                  getValueAtPercentile(99.9),
+                                  getMaxMicros());
+    }
+
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        // value >>> shift is in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        final long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", count)
+                .add("maxMicros", max)
+                .toString();
+    }
+}
@@ -0,0 +1,61 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+
+import java.io.Serializable;
+
+/**
+ * Immutable view on a {@link LatencyHistogram}; exported via JMX as composite data.
+ */
+public final class LatencySummary implements Serializable {
+
+    private final long count;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    public LatencySummary(final long count,
+                          final long p50Micros,
+                          final long p99Micros,
+                          final long p999Micros,
+                          final long maxMicros) {
+        this.count = count;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", count)
+                .add("p50Micros", p50Micros)
+                .add("p99Micros", p99Micros)
+                .add("p999Micros", p999Micros)
+                .add("maxMicros", maxMicros)
+                .toString();
+    }
+}
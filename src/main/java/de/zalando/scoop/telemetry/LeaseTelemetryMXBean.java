@@ -0,0 +1,30 @@
+package de.zalando.scoop.telemetry;
+
+
+/**
+ * JMX view on the ownership lease of this member and the cost of renewing it.
+ */
+public interface LeaseTelemetryMXBean {
+
+    boolean isValid();
+
+    boolean isMajorityLost();
+
+    long getRemainingMillis();
+
+    long getLeaseDurationMillis();
+
+    long getRenewIntervalMillis();
+
+    long getRenewalRequests();
+
+    long getRenewalGrants();
+
+    long getLeaseExpirations();
+
+    long getLastRenewalRoundTripMicros();
+
+    long getMaxRenewalRoundTripMicros();
+
+    long getFencedChecks();
+}
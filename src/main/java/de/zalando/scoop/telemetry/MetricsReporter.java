@@ -0,0 +1,12 @@
+package de.zalando.scoop.telemetry;
+
+
+/**
+ * Receives the {@link ClientMetrics} of this member periodically, e.g. to forward them to a monitoring system.
+ * Called on the Scoop actor: implementations must not block.
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    void report(ClientMetrics metrics);
+}
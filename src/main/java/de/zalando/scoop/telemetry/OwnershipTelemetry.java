@@ -0,0 +1,186 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * Samples ownership checks of a {@link de.zalando.scoop.ScoopClient}: one out of {@code sampleRate}
+ * checks is recorded with its partition, whether it was accepted locally and its key (fed into a
+ * {@link SpaceSaving} sketch of bounded size). A uniform sample of the recorded keys is kept as well, from
+ * which the coordinator picks the split points of key ranges. All counters are reset when the number of
+ * partitions changes as the figures are not comparable across different partition counts.
+ */
+public final class OwnershipTelemetry implements OwnershipTelemetryMXBean {
+
+    private final int sampleRate;
+    private final SpaceSaving hotKeys;
+    private final LongAdder sampledChecks;
+    private final LongAdder sampledAccepted;
+    private volatile AtomicLongArray partitionHits;
+    private final AtomicReferenceArray<String> keySamples;
+    private final AtomicLong offeredKeys;
+
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+    public static final int DEFAULT_HOT_KEYS = 20;
+    public static final int KEY_SAMPLES = 256;
+
+    public OwnershipTelemetry(final int sampleRate, final int hotKeys) {
+        checkArgument(sampleRate > 0, "sample rate must be > 0. Got [sampleRate=%s]", sampleRate);
+        checkArgument(hotKeys > 0, "number of hot keys must be > 0. Got [hotKeys=%s]", hotKeys);
+        this.sampleRate = sampleRate;
+        this.hotKeys = new SpaceSaving(hotKeys);
+        this.sampledChecks = new LongAdder();
+        this.sampledAccepted = new LongAdder();
+        this.partitionHits = new AtomicLongArray(0);
+        this.keySamples = new AtomicReferenceArray<>(KEY_SAMPLES);
+        this.offeredKeys = new AtomicLong();
+    }
+
+    public OwnershipTelemetry() {
+        this(DEFAULT_SAMPLE_RATE, DEFAULT_HOT_KEYS);
+    }
+
+
+    public void record(final String id, final int partition, final boolean accepted) {
+        record(id, 0, id.length(), partition, accepted);
+    }
+
+    /**
+     * @param beginIndex start of the part of the id which determines its partition
+     * @param endIndex   end of the part of the id which determines its partition
+     */
+    public void record(final String id,
+                       final int beginIndex,
+                       final int endIndex,
+                       final int partition,
+                       final boolean accepted) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+
+        sampledChecks.increment();
+        if (accepted) {
+            sampledAccepted.increment();
+        }
+
+        final AtomicLongArray hits = partitionHits;
+        if (partition > -1 && partition < hits.length()) {
+            hits.incrementAndGet(partition);
+        }
+
+        hotKeys.offer(id);
+        sampleKey(id, beginIndex, endIndex);
+    }
+
+    /**
+     * Reservoir sampling: the n-th offered key replaces a random sample with probability {@code KEY_SAMPLES / n}.
+     */
+    private void sampleKey(final String id, final int beginIndex, final int endIndex) {
+        final long offered = offeredKeys.incrementAndGet();
+        final long slot = offered <= KEY_SAMPLES ? offered - 1 : ThreadLocalRandom.current().nextLong(offered);
+        if (slot < KEY_SAMPLES) {
+            keySamples.set((int) slot, id.substring(beginIndex, endIndex));
+        }
+    }
+
+
+    public void onRebalanced(final int numberOfPartitions) {
+        if (partitionHits.length() != numberOfPartitions) {
+            partitionHits = new AtomicLongArray(numberOfPartitions);
+            sampledChecks.reset();
+            sampledAccepted.reset();
+            hotKeys.clear();
+            offeredKeys.set(0);
+            for (int i = 0; i < KEY_SAMPLES; i++) {
+                keySamples.set(i, null);
+            }
+        }
+    }
+
+
+    public TelemetrySnapshot snapshot() {
+        final AtomicLongArray hits = partitionHits;
+        final long[] copy = new long[hits.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = hits.get(i);
+        }
+
+        // read accepted before checks so that accepted never exceeds checks in the snapshot
+        final long accepted = sampledAccepted.sum();
+        final long checks = Math.max(accepted, sampledChecks.sum());
+        final List<String> sampledKeys = Lists.newArrayList();
+        for (int i = 0; i < KEY_SAMPLES; i++) {
+            final String key = keySamples.get(i);
+            if (key != null) {
+                sampledKeys.add(key);
+            }
+        }
+        return new TelemetrySnapshot(sampleRate, checks, accepted, copy, hotKeys.top(), sampledKeys);
+    }
+
+    public int getHotKeyCapacity() {
+        return hotKeys.getCapacity();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public long getSampledChecks() {
+        return sampledChecks.sum();
+    }
+
+    @Override
+    public long getSampledAccepted() {
+        return sampledAccepted.sum();
+    }
+
+    @Override
+    public double getAcceptRatio() {
+        return snapshot().getAcceptRatio();
+    }
+
+    @Override
+    public long[] getPartitionHits() {
+        return snapshot().getPartitionHits();
+    }
+
+    @Override
+    public double getPartitionSkew() {
+        return snapshot().getPartitionSkew();
+    }
+
+    @Override
+    public String[] getHotKeys() {
+        return formatHotKeys(hotKeys.top());
+    }
+
+    static String[] formatHotKeys(final List<HotKey> hotKeys) {
+        return hotKeys.stream()
+                      .map(k -> format("%s=%s (+/-%s)", k.getKey(), k.getCount(), k.getError()))
+                      .toArray(String[]::new);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sampleRate", sampleRate)
+                .add("hotKeys", hotKeys)
+                .add("sampledChecks", sampledChecks)
+                .add("sampledAccepted", sampledAccepted)
+                .toString();
+    }
+}
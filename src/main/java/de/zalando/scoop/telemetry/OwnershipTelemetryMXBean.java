@@ -0,0 +1,22 @@
+package de.zalando.scoop.telemetry;
+
+
+/**
+ * JMX view on the ownership checks sampled on this member.
+ */
+public interface OwnershipTelemetryMXBean {
+
+    int getSampleRate();
+
+    long getSampledChecks();
+
+    long getSampledAccepted();
+
+    double getAcceptRatio();
+
+    long[] getPartitionHits();
+
+    double getPartitionSkew();
+
+    String[] getHotKeys();
+}
@@ -0,0 +1,85 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Space-Saving sketch (Metwally et al.) keeping the approximate top-k most frequent keys in a
+ * fixed number of counters. When all counters are taken, the key with the lowest count is
+ * replaced and the newcomer inherits its count as error bound.
+ *
+ * The sketch is fed with sampled keys only, so a plain monitor and a linear scan on eviction
+ * are cheap enough here.
+ */
+public final class SpaceSaving {
+
+    private final int capacity;
+    private final HashMap<String, long[]> counters;
+
+    private static final int COUNT = 0;
+    private static final int ERROR = 1;
+
+    public SpaceSaving(final int capacity) {
+        checkArgument(capacity > 0, "capacity must be > 0. Got [capacity=%s]", capacity);
+        this.capacity = capacity;
+        this.counters = Maps.newHashMapWithExpectedSize(capacity + 1);
+    }
+
+    public synchronized void offer(final String key) {
+        final long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[COUNT]++;
+            return;
+        }
+
+        if (counters.size() < capacity) {
+            counters.put(key, new long[]{1, 0});
+            return;
+        }
+
+        String minKey = null;
+        long minCount = Long.MAX_VALUE;
+        for (final Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (entry.getValue()[COUNT] < minCount) {
+                minCount = entry.getValue()[COUNT];
+                minKey = entry.getKey();
+            }
+        }
+
+        counters.remove(minKey);
+        counters.put(key, new long[]{minCount + 1, minCount});
+    }
+
+    public synchronized List<HotKey> top() {
+        return counters.entrySet()
+                       .stream()
+                       .map(e -> new HotKey(e.getKey(), e.getValue()[COUNT], e.getValue()[ERROR]))
+                       .sorted(Comparator.comparingLong(HotKey::getCount).reversed())
+                       .collect(Collectors.toList());
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("capacity", capacity)
+                .add("size", counters.size())
+                .toString();
+    }
+}
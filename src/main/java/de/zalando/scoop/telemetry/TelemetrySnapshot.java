@@ -0,0 +1,116 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable view on the sampled ownership checks of a single member. Counts are sampled counts;
+ * multiply with {@link #getSampleRate()} to estimate the real number of checks.
+ */
+public final class TelemetrySnapshot implements Serializable {
+
+    private final int sampleRate;
+    private final long sampledChecks;
+    private final long sampledAccepted;
+    private final long[] partitionHits;
+    private final ImmutableList<HotKey> hotKeys;
+    private final ImmutableList<String> sampledKeys;
+
+    public TelemetrySnapshot(final int sampleRate,
+                             final long sampledChecks,
+                             final long sampledAccepted,
+                             final long[] partitionHits,
+                             final List<HotKey> hotKeys) {
+        this(sampleRate, sampledChecks, sampledAccepted, partitionHits, hotKeys, ImmutableList.of());
+    }
+
+    /**
+     * @param sampledKeys uniform sample of the checked keys
+     */
+    public TelemetrySnapshot(final int sampleRate,
+                             final long sampledChecks,
+                             final long sampledAccepted,
+                             final long[] partitionHits,
+                             final List<HotKey> hotKeys,
+                             final List<String> sampledKeys) {
+        checkArgument(sampleRate > 0, "sample rate must be > 0. Got [sampleRate=%s]", sampleRate);
+        checkArgument(sampledAccepted <= sampledChecks,
+                      "more accepted than checked keys. Got [sampledChecks=%s, sampledAccepted=%s]",
+                      sampledChecks, sampledAccepted);
+        this.sampleRate = sampleRate;
+        this.sampledChecks = sampledChecks;
+        this.sampledAccepted = sampledAccepted;
+        this.partitionHits = checkNotNull(partitionHits, "partition hits must not be null").clone();
+        this.hotKeys = ImmutableList.copyOf(checkNotNull(hotKeys, "hot keys must not be null"));
+        this.sampledKeys = ImmutableList.copyOf(checkNotNull(sampledKeys, "sampled keys must not be null"));
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getSampledChecks() {
+        return sampledChecks;
+    }
+
+    public long getSampledAccepted() {
+        return sampledAccepted;
+    }
+
+    public long[] getPartitionHits() {
+        return partitionHits.clone();
+    }
+
+    public List<HotKey> getHotKeys() {
+        return hotKeys;
+    }
+
+    public List<String> getSampledKeys() {
+        return sampledKeys;
+    }
+
+    public double getAcceptRatio() {
+        return sampledChecks == 0 ? 0.0 : (double) sampledAccepted / sampledChecks;
+    }
+
+    /**
+     * @return ratio of the busiest partition to the average partition; 1.0 means perfectly balanced
+     */
+    public double getPartitionSkew() {
+        return skew(partitionHits);
+    }
+
+    static double skew(final long[] hits) {
+        if (hits.length == 0) {
+            return 0.0;
+        }
+
+        final long total = Arrays.stream(hits).sum();
+        if (total == 0) {
+            return 0.0;
+        }
+
+        final long max = Arrays.stream(hits).max().getAsLong();
+        return max / ((double) total / hits.length);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sampleRate", sampleRate)
+                .add("sampledChecks", sampledChecks)
+                .add("sampledAccepted", sampledAccepted)
+                .add("partitionHits", Arrays.toString(partitionHits))
+                .add("hotKeys", hotKeys)
+                .add("sampledKeys", sampledKeys.size())
+                .toString();
+    }
+}
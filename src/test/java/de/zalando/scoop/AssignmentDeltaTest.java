@@ -0,0 +1,211 @@
+package de.zalando.scoop;
+
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Address;
+import akka.cluster.Cluster;
+import akka.cluster.ClusterEvent;
+import akka.cluster.ClusterEvent.CurrentClusterState;
+import akka.cluster.ClusterEvent.MemberEvent;
+import akka.cluster.ClusterEvent.MemberUp;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.UniqueAddress;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+import akka.testkit.TestActors;
+import akka.testkit.TestProbe;
+import com.google.common.collect.Lists;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import de.zalando.scoop.ScoopCommunication.CurrentAssignment;
+import de.zalando.scoop.ScoopCommunication.GetAssignment;
+import de.zalando.scoop.ScoopCommunication.GetAssignmentTable;
+import org.junit.Test;
+import scala.collection.JavaConversions;
+import scala.collection.immutable.HashSet;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AssignmentDeltaTest {
+
+    private static final FiniteDuration TIMEOUT = Duration.create(30, TimeUnit.SECONDS);
+
+    @Test
+    public void testApplyDelta() throws Exception {
+        final AssignmentTable base = new AssignmentTable(3, new String[]{"a", "b", "c", null});
+        final AssignmentTable target = new AssignmentTable(4, new String[]{"a", "d", null, "d"});
+
+        final AssignmentDelta delta = AssignmentDelta.between(base, target);
+
+        assertEquals("wrong number of changed partitions", 3, delta.size());
+        assertTrue("delta does not apply to its base", delta.appliesTo(base));
+        assertEquals("delta does not turn base into target", target, delta.applyTo(base));
+    }
+
+    @Test
+    public void testDeltaDoesNotApplyToOtherEpoch() throws Exception {
+        final AssignmentTable base = new AssignmentTable(3, new String[]{"a", "b"});
+        final AssignmentDelta delta = AssignmentDelta.between(base, new AssignmentTable(4, new String[]{"a", "a"}));
+
+        assertFalse("delta applies to older table", delta.appliesTo(new AssignmentTable(2, new String[]{"a", "b"})));
+        assertFalse("delta applies to other number of partitions", delta.appliesTo(new AssignmentTable(3, new String[3])));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDeltaBetweenDifferentNumberOfPartitions() throws Exception {
+        AssignmentDelta.between(AssignmentTable.EMPTY, new AssignmentTable(1, new String[]{"a"}));
+    }
+
+    /**
+     * Sending the full table to every member costs one message of the size of the table per member, i.e. the bytes
+     * grow quadratically with the cluster. A real coordinator publishes the delta once; pub-sub still delivers it
+     * to every member, but its size depends on the moved partitions only. The published messages are counted at a
+     * subscriber of the assignment topic, the messages sent to single members at a stand-in for their Scoop actor.
+     */
+    @Test
+    public void testMessagesAndBytesPerRebalanceAtScale() throws Exception {
+        final ScoopSettings settings = new Scoop().withPartitions(4096).settings();
+        final ActorSystem system = ActorSystem.create(Scoop.SYSTEM_NAME, clusterConfig());
+        try {
+            // all members share the address of this system, so messages to single members go to the stand-in
+            final Address address = Cluster.get(system).selfAddress();
+            final TestProbe direct = new TestProbe(system);
+            system.actorOf(TestActors.forwardActorProps(direct.ref()), ScoopActor.NAME);
+            final TestProbe published = new TestProbe(system);
+            DistributedPubSub.get(system).mediator().tell(
+                    new DistributedPubSubMediator.Subscribe(ScoopActor.ASSIGNMENT_TOPIC, published.ref()),
+                    published.ref());
+            published.expectMsgClass(DistributedPubSubMediator.SubscribeAck.class);
+
+            final ActorRef coordinator = system.actorOf(AssignmentCoordinator.props(settings, Optional.empty()));
+            awaitRecovery(system, coordinator);
+
+            for (int i = 0; i < 500; i++) {
+                coordinator.tell(new MemberUp(member(address, i, String.format("i-%017x", i * 7919L))),
+                                 ActorRef.noSender());
+            }
+            // the current table, the hot keys and the change of the table to the new member
+            direct.receiveN(3 * 500, TIMEOUT);
+            final AssignmentTable base = currentTable(system, coordinator);
+            // one table or delta per epoch, starting with the unassigned partitions after the recovery
+            published.receiveN((int) base.getEpoch(), TIMEOUT);
+
+            coordinator.tell(new MemberUp(member(address, 500, "i-new-member-0000000")), ActorRef.noSender());
+            final AssignmentDelta delta = published.expectMsgClass(TIMEOUT, AssignmentDelta.class);
+            published.expectNoMsg(Duration.create(500, TimeUnit.MILLISECONDS));
+            final List<Object> sent = JavaConversions.seqAsJavaList(direct.receiveN(3, TIMEOUT));
+            direct.expectNoMsg(Duration.create(500, TimeUnit.MILLISECONDS));
+            final AssignmentTable target = currentTable(system, coordinator);
+
+            assertEquals("only the share of the new member must move", 4096 / 501, delta.size());
+            assertEquals("delta does not turn base into target", target, delta.applyTo(base));
+
+            final int members = target.getMembers().size();
+            long bytesDelta = members * serializedSize(delta);
+            for (final Object message : sent) {
+                bytesDelta += serializedSize(message);
+            }
+            final long bytesFullTable = members * serializedSize(target);
+            assertTrue("delta does not save bytes [delta=" + bytesDelta + ", fullTable=" + bytesFullTable + "]",
+                       bytesDelta * 50 < bytesFullTable);
+        }
+        finally {
+            system.terminate();
+            Await.ready(system.whenTerminated(), TIMEOUT);
+        }
+    }
+
+    /**
+     * Each Scoop actor gets the delta once and, as its hot keys did not change, does not reply to the coordinator.
+     */
+    @Test
+    public void testScoopActorsProposeHotKeysOncePerCoordinator() throws Exception {
+        final AssignmentTable base = new AssignmentTable(1, new String[]{"a", "b", "c", "d"});
+        final AssignmentTable target = new AssignmentTable(2, new String[]{"a", "b", "c", "a"});
+        final AssignmentDelta delta = AssignmentDelta.between(base, target);
+
+        final ActorSystem system = ActorSystem.create(Scoop.SYSTEM_NAME, clusterConfig());
+        try {
+            final List<ActorRef> scoopActors = Lists.newArrayList();
+            for (int i = 0; i < 50; i++) {
+                scoopActors.add(system.actorOf(ScoopActor.props(Collections.emptySet()), ScoopActor.NAME + "-" + i));
+            }
+            final TestProbe coordinator = new TestProbe(system);
+            scoopActors.forEach(a -> a.tell(base, coordinator.ref()));
+            assertEquals("every member must propose its hot keys to a coordinator once",
+                         scoopActors.size(), coordinator.receiveN(scoopActors.size(), TIMEOUT).size());
+
+            // what the pub-sub mediators deliver for one published delta
+            scoopActors.forEach(a -> a.tell(delta, coordinator.ref()));
+            final TestProbe requester = new TestProbe(system);
+            scoopActors.forEach(a -> a.tell(GetAssignment.INSTANCE, requester.ref()));
+            for (final Object reply : JavaConversions.seqAsJavaList(requester.receiveN(scoopActors.size(), TIMEOUT))) {
+                assertEquals("delta was not applied", target, ((CurrentAssignment) reply).getTable());
+            }
+            coordinator.expectNoMsg(Duration.create(500, TimeUnit.MILLISECONDS));
+
+            final TestProbe movedCoordinator = new TestProbe(system);
+            final AssignmentTable next = new AssignmentTable(target.getEpoch() + 1, base.getOwners());
+            scoopActors.forEach(a -> a.tell(AssignmentDelta.between(target, next), movedCoordinator.ref()));
+            assertEquals("a moved coordinator must get the hot keys of every member again",
+                         scoopActors.size(), movedCoordinator.receiveN(scoopActors.size(), TIMEOUT).size());
+        }
+        finally {
+            system.terminate();
+            Await.ready(system.whenTerminated(), TIMEOUT);
+        }
+    }
+
+    private static Config clusterConfig() {
+        return ConfigFactory.parseString("akka.actor.provider = \"akka.cluster.ClusterActorRefProvider\"\n"
+                                         + "akka.remote.netty.tcp.hostname = \"127.0.0.1\"\n"
+                                         + "akka.remote.netty.tcp.port = 0\n"
+                                         + "akka.loglevel = WARNING");
+    }
+
+    /**
+     * The coordinator recovers once it got the state of the cluster, which the cluster sends to its subscribers in
+     * order of subscription.
+     */
+    private static void awaitRecovery(final ActorSystem system, final ActorRef coordinator) {
+        currentTable(system, coordinator);
+        final TestProbe subscriber = new TestProbe(system);
+        Cluster.get(system).subscribe(subscriber.ref(), ClusterEvent.initialStateAsSnapshot(), MemberEvent.class);
+        subscriber.expectMsgClass(TIMEOUT, CurrentClusterState.class);
+        currentTable(system, coordinator);
+    }
+
+    private static AssignmentTable currentTable(final ActorSystem system, final ActorRef coordinator) {
+        final TestProbe requester = new TestProbe(system);
+        coordinator.tell(GetAssignmentTable.INSTANCE, requester.ref());
+        return requester.expectMsgClass(TIMEOUT, AssignmentTable.class);
+    }
+
+    private static Member member(final Address address, final int uid, final String nodeId) {
+        return new Member(new UniqueAddress(address, uid), uid, MemberStatus.up(),
+                          new HashSet<String>().$plus(Scoop.NODE_ID_ROLE_PREFIX + nodeId));
+    }
+
+    private static long serializedSize(final Object message) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.size();
+    }
+}
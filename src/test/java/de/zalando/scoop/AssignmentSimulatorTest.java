@@ -0,0 +1,145 @@
+package de.zalando.scoop;
+
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AssignmentSimulatorTest {
+
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testNewMemberTakesItsShare() throws Exception {
+        final AssignmentTable current = new StickyAssignmentStrategy(12).assign(AssignmentTable.EMPTY,
+                                                                                 Lists.newArrayList("a", "b", "c"));
+
+        final AssignmentSimulator.Result result = new AssignmentSimulator(current)
+                .simulate(Lists.newArrayList("a", "b", "c", "d"));
+
+        assertEquals("wrong number of moved partitions", 3, result.getMovedPartitions());
+        assertEquals("wrong share of moved keys", 0.25, result.getMovedKeyShare(), DELTA);
+        assertEquals("moved load must equal moved keys without load", 0.25, result.getMovedLoadShare(), DELTA);
+        assertEquals("new member must get its share", 0.25, result.getLoadShares().get("d"), DELTA);
+        assertEquals("load must be balanced", 1.0, result.getLoadSkew(), DELTA);
+        assertEquals("delta must be sent to every member", 4, result.getMessages());
+        assertEquals("former owners stay up", 3, result.getHandoffs());
+    }
+
+    @Test
+    public void testStateHandoffMessages() throws Exception {
+        final AssignmentTable current = new AssignmentTable(3, new String[]{"a", "b", "a", "b"});
+
+        final AssignmentSimulator.Result result = new AssignmentSimulator(current)
+                .withStateHandoff(2)
+                .simulate(Lists.newArrayList("a", "c"));
+
+        assertEquals("wrong number of moved partitions", 2, result.getMovedPartitions());
+        assertEquals("partitions of departed member must not be handed over", 0, result.getHandoffs());
+        assertEquals("wrong number of messages", 2, result.getMessages());
+
+        final AssignmentSimulator.Result joined = new AssignmentSimulator(current)
+                .withStateHandoff(2)
+                .simulate(Lists.newArrayList("a", "b", "c", "d"));
+
+        assertEquals("wrong number of handoffs", 2, joined.getHandoffs());
+        assertEquals("handoff needs request, chunks and acks", 4 + 2 * (1 + 2 * 2), joined.getMessages());
+    }
+
+    @Test
+    public void testLoadIsWeighted() throws Exception {
+        final AssignmentTable current = new AssignmentTable(3, new String[]{"a", "b", "a", "b"});
+        final AssignmentSimulator simulator = new AssignmentSimulator(current).withLoad(new long[]{300, 50, 300, 50});
+
+        final AssignmentSimulator.Result unchanged = simulator.simulate(Lists.newArrayList("a", "b"));
+        assertEquals("nothing must move", 0, unchanged.getMovedPartitions());
+        assertEquals("unchanged table must not be sent", 0, unchanged.getMessages());
+        assertEquals("wrong load", 600.0 / 700, unchanged.getLoadShares().get("a"), DELTA);
+        assertEquals("wrong load", 100.0 / 700, unchanged.getLoadShares().get("b"), DELTA);
+        assertEquals("wrong skew", 600.0 / 350, unchanged.getLoadSkew(), DELTA);
+
+        final AssignmentSimulator.Result moved = simulator.compare(
+                new AssignmentTable(4, new String[]{"b", "b", "a", "a"}), Lists.newArrayList("a", "b"));
+        assertEquals("wrong share of moved keys", 0.5, moved.getMovedKeyShare(), DELTA);
+        assertEquals("wrong share of moved load", 350.0 / 700, moved.getMovedLoadShare(), DELTA);
+        assertEquals("load must be balanced", 1.0, moved.getLoadSkew(), DELTA);
+    }
+
+    @Test
+    public void testChangedPartitionCountIsExact() throws Exception {
+        final AssignmentSimulator simulator = new AssignmentSimulator(
+                new AssignmentTable(3, new String[]{"a", "b", "a", "b"}));
+        final List<String> members = Lists.newArrayList("a", "b");
+
+        assertEquals("doubled partitions can keep every key", 0.0, simulator.compare(
+                new AssignmentTable(4, new String[]{"a", "b", "a", "b", "a", "b", "a", "b"}), members)
+                .getMovedKeyShare(), DELTA);
+
+        final AssignmentSimulator.Result result = simulator.compare(
+                new AssignmentTable(4, new String[]{"a", "a", "a", "a", "b", "b", "b", "b"}), members);
+        assertEquals("wrong share of moved keys", 0.5, result.getMovedKeyShare(), DELTA);
+        assertEquals("wrong number of moved partitions", 4, result.getMovedPartitions());
+        assertEquals("changed partitions must not be handed over", 0, result.getHandoffs());
+    }
+
+    @Test
+    public void testCoprimePartitionCounts() throws Exception {
+        final String[] owners = new String[1000];
+        for (int p = 0; p < owners.length; p++) {
+            owners[p] = p % 2 == 0 ? "a" : "b";
+        }
+        final String[] proposed = new String[1001];
+        Arrays.fill(proposed, "a");
+
+        final AssignmentSimulator.Result result = new AssignmentSimulator(new AssignmentTable(3, owners))
+                .compare(new AssignmentTable(4, proposed), Lists.newArrayList("a"));
+
+        assertEquals("wrong share of moved keys", 0.5, result.getMovedKeyShare(), DELTA);
+        assertEquals("every partition gets keys of b", 1001, result.getMovedPartitions());
+        assertEquals("full table must be sent", 1, result.getMessages());
+    }
+
+    @Test
+    public void testHashesMoveLikeKeys() throws Exception {
+        final AssignmentTable current = new StickyAssignmentStrategy(12).assign(AssignmentTable.EMPTY,
+                                                                                 Lists.newArrayList("a", "b", "c"));
+        final AssignmentStrategy strategy = new StickyAssignmentStrategy(20);
+        final List<String> members = Lists.newArrayList("a", "b", "c", "d");
+        final List<String> keys = Lists.newArrayList();
+        for (int i = 0; i < 20000; i++) {
+            keys.add("key-" + i);
+        }
+
+        final AssignmentSimulator.Result hashed = new AssignmentSimulator(current).simulate(strategy, members);
+        final AssignmentSimulator.Result sampled = new AssignmentSimulator(current).withKeys(keys)
+                                                                                   .simulate(strategy, members);
+
+        assertEquals("wrong share of moved keys", sampled.getMovedKeyShare(), hashed.getMovedKeyShare(), 0.02);
+        assertEquals("wrong number of moved partitions", sampled.getMovedPartitions(), hashed.getMovedPartitions());
+    }
+
+    @Test
+    public void testChangedRangesNeedKeys() throws Exception {
+        final AssignmentTable current = new AssignmentTable(3, new String[]{"a", "b"}, new String[]{"m"});
+        final AssignmentTable proposed = new AssignmentTable(4, new String[]{"a", "b", "b"}, new String[]{"g", "m"});
+        final List<String> members = Lists.newArrayList("a", "b");
+
+        try {
+            new AssignmentSimulator(current).compare(proposed, members);
+            throw new AssertionError("moved keys of changed ranges were guessed");
+        }
+        catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        final AssignmentSimulator.Result result = new AssignmentSimulator(current)
+                .withKeys(Lists.newArrayList("c", "f", "h", "x"))
+                .compare(proposed, members);
+        assertEquals("wrong share of moved keys", 0.25, result.getMovedKeyShare(), DELTA);
+        assertEquals("wrong number of moved partitions", 1, result.getMovedPartitions());
+    }
+}
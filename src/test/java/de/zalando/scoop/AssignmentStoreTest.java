@@ -0,0 +1,126 @@
+package de.zalando.scoop;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class AssignmentStoreTest {
+
+    private Path directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("scoop-store");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(directory)
+             .sorted((a, b) -> b.compareTo(a))
+             .forEach(path -> path.toFile().delete());
+    }
+
+    @Test
+    public void testLoadWithoutState() throws Exception {
+        assertEquals("empty store must yield empty table", AssignmentTable.EMPTY, new AssignmentStore(directory).load());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final AssignmentStore store = new AssignmentStore(directory);
+        store.save(new AssignmentTable(1, new String[]{"a", "b"}));
+        store.save(new AssignmentTable(2, new String[]{"a", "c", null}));
+
+        assertEquals("journal was not replayed",
+                     new AssignmentTable(2, new String[]{"a", "c", null}),
+                     new AssignmentStore(directory).load());
+    }
+
+    @Test
+    public void testOutdatedTableIsNotPersisted() throws Exception {
+        final AssignmentStore store = new AssignmentStore(directory);
+        store.save(new AssignmentTable(2, new String[]{"a"}));
+        store.save(new AssignmentTable(1, new String[]{"b"}));
+
+        assertEquals("outdated table was persisted",
+                     new AssignmentTable(2, new String[]{"a"}),
+                     new AssignmentStore(directory).load());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final AssignmentStore store = new AssignmentStore(directory);
+        for (int epoch = 1; epoch <= AssignmentStore.SNAPSHOT_INTERVAL + 5; epoch++) {
+            store.save(new AssignmentTable(epoch, new String[]{"a", "member-" + epoch}));
+        }
+
+        final long epoch = AssignmentStore.SNAPSHOT_INTERVAL + 5;
+        assertEquals("snapshot and journal were not combined",
+                     new AssignmentTable(epoch, new String[]{"a", "member-" + epoch}),
+                     new AssignmentStore(directory).load());
+    }
+
+    @Test
+    public void testRangesArePersisted() throws Exception {
+        final AssignmentStore store = new AssignmentStore(directory);
+        store.save(new AssignmentTable(1, new String[]{"a", "b"}));
+        store.save(new AssignmentTable(2, new String[]{"a", "b"}, new String[]{"m"}));
+        store.save(new AssignmentTable(3, new String[]{"b", "a"}, new String[]{"m"}));
+        store.save(new AssignmentTable(4, new String[]{"b", "a", "a"}, new String[]{"m", "t"}));
+        store.save(new AssignmentTable(5, new String[]{"b", "b", "a"}, new String[]{"m", "t"}));
+
+        assertEquals("ranges were not restored",
+                     new AssignmentTable(5, new String[]{"b", "b", "a"}, new String[]{"m", "t"}),
+                     new AssignmentStore(directory).load());
+    }
+
+    @Test
+    public void testTornJournalRecordIsIgnored() throws Exception {
+        final AssignmentStore store = new AssignmentStore(directory);
+        store.save(new AssignmentTable(1, new String[]{"a", "b"}));
+        store.save(new AssignmentTable(2, new String[]{"b", "a"}));
+
+        truncateBy(directory.resolve("assignment.journal"), 3);
+
+        assertEquals("torn record must be ignored",
+                     new AssignmentTable(1, new String[]{"a", "b"}),
+                     new AssignmentStore(directory).load());
+    }
+
+    @Test
+    public void testStaleJournalNextToNewerSnapshotIsSkipped() throws Exception {
+        final AssignmentStore store = new AssignmentStore(directory);
+        store.save(new AssignmentTable(1, new String[]{"a", "b"}));
+        store.save(new AssignmentTable(2, new String[]{"b", "a"}));
+        final Path journal = directory.resolve("assignment.journal");
+        final byte[] staleJournal = Files.readAllBytes(journal);
+
+        // a range change is written as snapshot; crash before the journal was deleted
+        store.save(new AssignmentTable(3, new String[]{"c", "c"}, new String[]{"m"}));
+        Files.write(journal, staleJournal);
+
+        final AssignmentStore restarted = new AssignmentStore(directory);
+        assertEquals("stale journal was replayed on top of the newer snapshot",
+                     new AssignmentTable(3, new String[]{"c", "c"}, new String[]{"m"}),
+                     restarted.load());
+
+        restarted.save(new AssignmentTable(4, new String[]{"c", "d"}, new String[]{"m"}));
+        assertEquals("record appended after the stale ones was not replayed",
+                     new AssignmentTable(4, new String[]{"c", "d"}, new String[]{"m"}),
+                     new AssignmentStore(directory).load());
+    }
+
+    private static void truncateBy(final Path file, final int bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - bytes);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClaimFilterTest {
+
+    private ManualTicker ticker;
+    private ClaimFilter formerOwner;
+    private ClaimFilter newOwner;
+
+    @Before
+    public void setup() throws Exception {
+        ticker = new ManualTicker();
+        formerOwner = new ClaimFilter(1, TimeUnit.MINUTES, 1000, 0.001, ticker);
+        newOwner = new ClaimFilter(1, TimeUnit.MINUTES, 1000, 0.001, ticker);
+    }
+
+    @Test
+    public void testIdsProcessedByFormerOwnerAreRejected() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            assertTrue("first claim must succeed", formerOwner.claim(3, "id-" + i));
+        }
+
+        handOver(3);
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse("id processed by former owner was claimed", newOwner.claim(3, "id-" + i));
+        }
+        int accepted = 0;
+        for (int i = 100; i < 1100; i++) {
+            if (newOwner.claim(3, "id-" + i)) {
+                accepted++;
+            }
+        }
+        assertTrue("too many false positives [accepted=" + accepted + "]", accepted > 990);
+    }
+
+    @Test
+    public void testRejectionEndsAfterWindow() throws Exception {
+        formerOwner.claim(3, "id");
+        handOver(3);
+
+        ticker.advance(61, TimeUnit.SECONDS);
+        assertTrue("id was rejected after window", newOwner.claim(3, "id"));
+    }
+
+    @Test
+    public void testIdsOlderThanTwoWindowsAreNotHandedOver() throws Exception {
+        formerOwner.claim(3, "old");
+        ticker.advance(61, TimeUnit.SECONDS);
+        formerOwner.claim(3, "recent");
+        ticker.advance(61, TimeUnit.SECONDS);
+        formerOwner.claim(3, "new");
+
+        handOver(3);
+
+        assertTrue("id older than two windows was handed over", newOwner.claim(3, "old"));
+        assertFalse("id of former window was not handed over", newOwner.claim(3, "recent"));
+        assertFalse("id of current window was not handed over", newOwner.claim(3, "new"));
+    }
+
+    @Test
+    public void testOtherPartitionsAreNotAffected() throws Exception {
+        formerOwner.claim(3, "id");
+        handOver(3);
+
+        assertTrue("claim of other partition was rejected", newOwner.claim(4, "id"));
+    }
+
+    @Test
+    public void testLargeFilterIsChunked() throws Exception {
+        final ClaimFilter large = new ClaimFilter(1, TimeUnit.MINUTES, 200000, 0.001, ticker);
+        large.claim(3, "id");
+
+        final List<byte[]> chunks = Lists.newArrayList(large.snapshotPartition(3));
+
+        assertTrue("large filter was not chunked", chunks.size() > 1);
+        for (final byte[] chunk : chunks) {
+            assertTrue("chunk is too large", chunk.length <= ClaimFilter.CHUNK_BYTES);
+        }
+    }
+
+    @Test
+    public void testPartitionWithoutClaimsHasNoState() throws Exception {
+        assertFalse("partition without claims has state", formerOwner.snapshotPartition(3).hasNext());
+    }
+
+    @Test
+    public void testIncompleteHandoffIsDiscarded() throws Exception {
+        formerOwner.claim(3, "id");
+        final Iterator<byte[]> chunks = formerOwner.snapshotPartition(3);
+        newOwner.restorePartition(3, chunks.next());
+        newOwner.onHandoffCompleted(3, false);
+
+        assertTrue("incomplete filter was used", newOwner.claim(3, "id"));
+    }
+
+    private void handOver(final int partition) {
+        final Iterator<byte[]> chunks = formerOwner.snapshotPartition(partition);
+        while (chunks.hasNext()) {
+            newOwner.restorePartition(partition, chunks.next());
+        }
+        newOwner.onHandoffCompleted(partition, true);
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long duration, final TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package de.zalando.scoop;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import de.zalando.scoop.ScoopCommunication.FederationSummary;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FederationBalancerTest {
+
+    private static final long HEARTBEAT = TimeUnit.SECONDS.toNanos(1);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+    private static final long TAKEOVER = TIMEOUT + Federation.TAKEOVER_MARGIN_HEARTBEATS * HEARTBEAT;
+
+    private static Federation federation(final String local, final String... peers) {
+        final ImmutableMap.Builder<String, ImmutableList<String>> builder = ImmutableMap.builder();
+        for (final String peer : peers) {
+            builder.put(peer, ImmutableList.of("akka.tcp://scoop-system@" + peer + ":25551"));
+        }
+        return new Federation(local, builder.build(), 1, 5, TimeUnit.SECONDS);
+    }
+
+    private static BitSet home(final Federation federation, final String cluster) {
+        final BitSet home = new BitSet();
+        for (int slice = 0; slice < Federation.SLICES; slice++) {
+            if (federation.homeOf(slice).equals(cluster)) {
+                home.set(slice);
+            }
+        }
+        return home;
+    }
+
+    @Test
+    public void testOnlyInitialClaimsDuringStartup() throws Exception {
+        final Federation federation = federation("a", "b");
+        final BitSet initial = new BitSet();
+        initial.set(7);
+        final FederationBalancer balancer = new FederationBalancer(federation, initial, 0);
+
+        balancer.update(new FederationSummary("b", new BitSet()), TIMEOUT);
+        assertEquals("only initial claims must be kept during startup", initial, balancer.claims(TAKEOVER - 1));
+        balancer.update(new FederationSummary("b", new BitSet()), TAKEOVER);
+        assertEquals("home slices must be claimed after startup", home(federation, "a"), balancer.claims(TAKEOVER));
+    }
+
+    @Test
+    public void testLiveClustersSplitSlicesByHome() throws Exception {
+        final Federation federation = federation("a", "b");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+        balancer.update(new FederationSummary("b", home(federation, "b")), TAKEOVER);
+
+        assertEquals("wrong live clusters", ImmutableSet.of("a", "b"), balancer.liveClusters(TAKEOVER));
+        assertEquals("wrong claims", home(federation, "a"), balancer.claims(TAKEOVER));
+        assertEquals("home blocks must split the slices evenly", Federation.SLICES / 2,
+                     balancer.claims(TAKEOVER).cardinality());
+    }
+
+    @Test
+    public void testSlicesOfFailedClusterAreTakenOverAndReturned() throws Exception {
+        final Federation federation = federation("a", "b", "c");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+        balancer.update(new FederationSummary("b", home(federation, "b")), TAKEOVER);
+        balancer.update(new FederationSummary("c", home(federation, "c")), TAKEOVER);
+        assertEquals("wrong claims", home(federation, "a"), balancer.claims(TAKEOVER));
+
+        final long failed = 2 * TAKEOVER + HEARTBEAT;
+        balancer.update(new FederationSummary("b", home(federation, "b")), failed);
+        assertEquals("wrong live clusters", ImmutableSet.of("a", "b"), balancer.liveClusters(failed));
+        final BitSet claims = balancer.claims(failed);
+        final BitSet takenOver = (BitSet) claims.clone();
+        takenOver.andNot(home(federation, "a"));
+        assertTrue("home slices must be kept", claims.stream().filter(s -> federation.homeOf(s).equals("a")).count()
+                                                == home(federation, "a").cardinality());
+        assertTrue("slices of failed cluster must be taken over", takenOver.cardinality() > 0);
+        assertTrue("slices of failed cluster must be split between the live ones",
+                   takenOver.cardinality() < home(federation, "c").cardinality());
+        assertFalse("slices of live peer must not be taken over", takenOver.intersects(home(federation, "b")));
+
+        balancer.update(new FederationSummary("c", new BitSet()), failed);
+        assertEquals("slices must be returned to recovered cluster", home(federation, "a"), balancer.claims(failed));
+    }
+
+    @Test
+    public void testSlicesOfSilentPeerAreTakenOverOnlyAfterTakeoverTime() throws Exception {
+        final Federation federation = federation("a", "b", "c");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+        balancer.update(new FederationSummary("b", home(federation, "b")), TAKEOVER);
+        balancer.update(new FederationSummary("c", home(federation, "c")), TAKEOVER);
+
+        final long silent = 2 * TAKEOVER - 1;
+        balancer.update(new FederationSummary("b", home(federation, "b")), silent);
+        assertEquals("silent peer must not be live after failure timeout",
+                     ImmutableSet.of("a", "b"), balancer.liveClusters(silent));
+        assertEquals("slices of silent peer were taken over within takeover time",
+                     home(federation, "a"), balancer.claims(silent));
+
+        balancer.update(new FederationSummary("b", home(federation, "b")), 2 * TAKEOVER + 1);
+        assertTrue("slices of silent peer must be taken over after takeover time",
+                   balancer.claims(2 * TAKEOVER + 1).cardinality() > home(federation, "a").cardinality());
+    }
+
+    @Test
+    public void testCutOffClusterGivesUpSlicesBeforeTakeover() throws Exception {
+        final Federation federation = federation("a", "b", "c");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+        balancer.update(new FederationSummary("b", home(federation, "b")), TAKEOVER);
+        balancer.update(new FederationSummary("c", home(federation, "c")), TAKEOVER);
+        assertEquals("wrong claims", home(federation, "a"), balancer.claims(TAKEOVER));
+
+        // noticed on the next heartbeat; the peers may have heard of this cluster a heartbeat before it heard of them
+        final long fenced = TAKEOVER + TIMEOUT + HEARTBEAT;
+        assertTrue("cut-off cluster kept its slices", balancer.claims(fenced).isEmpty());
+        assertTrue("members of cut-off cluster may still hold slices (for the lease plus propagation) on takeover",
+                   fenced + federation.getLeaseNanos() + HEARTBEAT
+                   <= TAKEOVER - HEARTBEAT + federation.getTakeoverNanos());
+    }
+
+    @Test
+    public void testSlicesAreClaimedOnlyAfterPeerReleasedThem() throws Exception {
+        final Federation federation = federation("a", "b");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+        final BitSet all = new BitSet();
+        all.set(0, Federation.SLICES);
+        balancer.update(new FederationSummary("b", all), TAKEOVER);
+
+        assertTrue("slices still claimed by peer were claimed", balancer.claims(TAKEOVER).isEmpty());
+
+        balancer.update(new FederationSummary("b", home(federation, "b")), TAKEOVER + HEARTBEAT);
+        assertEquals("released slices were not claimed", home(federation, "a"),
+                     balancer.claims(TAKEOVER + HEARTBEAT));
+    }
+
+    @Test
+    public void testNothingIsClaimedWithoutMajority() throws Exception {
+        final Federation federation = federation("a", "b", "c");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+
+        assertTrue("slices were claimed without majority", balancer.claims(TAKEOVER).isEmpty());
+
+        balancer.update(new FederationSummary("b", new BitSet()), TAKEOVER);
+        final BitSet claims = balancer.claims(TAKEOVER);
+        final BitSet home = home(federation, "a");
+        home.andNot(claims);
+        assertTrue("home slices must be claimed with majority", home.isEmpty());
+        assertTrue("slices of failed cluster must be taken over with majority",
+                   claims.cardinality() > home(federation, "a").cardinality());
+    }
+
+    @Test
+    public void testTwoClustersTakeOverEverything() throws Exception {
+        final Federation federation = federation("a", "b");
+        final FederationBalancer balancer = new FederationBalancer(federation, new BitSet(), 0);
+
+        assertEquals("all slices must be claimed without peer", Federation.SLICES,
+                     balancer.claims(TAKEOVER).cardinality());
+    }
+
+    @Test
+    public void testSummaryOfUnknownClusterIsIgnored() throws Exception {
+        final FederationBalancer balancer = new FederationBalancer(federation("a", "b"), new BitSet(), 0);
+
+        assertFalse("summary of unknown cluster was accepted", balancer.update(new FederationSummary("x", new BitSet()), 0));
+        assertEquals("wrong live clusters", ImmutableSet.of("a"), balancer.liveClusters(0));
+    }
+}
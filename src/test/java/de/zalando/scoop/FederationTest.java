@@ -0,0 +1,227 @@
+package de.zalando.scoop;
+
+
+import akka.actor.ActorSystem;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.zalando.scoop.ScoopCommunication.FederationAssignment;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FederationTest {
+
+    private static final long HEARTBEAT_MILLIS = 200;
+    private static final long TIMEOUT_MILLIS = 1000;
+    private static final int KEYS = 1000;
+
+    private final Federation federation = new Federation("eu",
+                                                         ImmutableMap.of("us", ImmutableList.of("akka.tcp://a@us:1"),
+                                                                         "ap", ImmutableList.of("akka.tcp://a@ap:1")),
+                                                         1, 5, TimeUnit.SECONDS);
+
+    @Test
+    public void testHomeBlocksCoverAllSlices() throws Exception {
+        assertEquals("wrong clusters", ImmutableList.of("ap", "eu", "us"), federation.getClusters());
+        for (final String cluster : federation.getClusters()) {
+            final int start = federation.homeStart(cluster);
+            assertEquals("block must start with a home slice of its cluster", cluster, federation.homeOf(start));
+            if (start > 0) {
+                assertFalse("block must start after the one of the previous cluster",
+                            cluster.equals(federation.homeOf(start - 1)));
+            }
+        }
+        assertEquals("last slice must belong to last cluster", "us", federation.homeOf(Federation.SLICES - 1));
+    }
+
+    @Test
+    public void testIdsWithHomeAreHashedOntoHomeSlices() throws Exception {
+        federation.setHomes(id -> id.startsWith("us-") ? "us" : id.startsWith("xx-") ? "xx" : null);
+        final Set<String> homes = Sets.newHashSet();
+        final Set<Integer> slices = Sets.newHashSet();
+        for (int i = 0; i < 1000; i++) {
+            final String id = "us-" + i;
+            final int slice = federation.sliceOf(id, ScoopClientImpl.hash(id, KeyExtractor.WHOLE_ID));
+            homes.add(federation.homeOf(slice));
+            slices.add(slice);
+        }
+        assertEquals("ids must be hashed onto slices of their home", Sets.newHashSet("us"), homes);
+        assertTrue("ids must spread over the home slices", slices.size() > 200);
+
+        final Set<String> unknownHomes = Sets.newHashSet();
+        for (int i = 0; i < 1000; i++) {
+            final String id = "xx-" + i;
+            unknownHomes.add(federation.homeOf(federation.sliceOf(id, ScoopClientImpl.hash(id, KeyExtractor.WHOLE_ID))));
+        }
+        assertEquals("ids with unknown home must spread over all clusters", 3, unknownHomes.size());
+    }
+
+    @Test
+    public void testSlicesAreIndependentOfPartitions() throws Exception {
+        final Set<Integer> slices = Sets.newHashSet();
+        for (int i = 0; i < 10000; i++) {
+            final String id = "id-" + i;
+            final int hash = ScoopClientImpl.hash(id, KeyExtractor.WHOLE_ID);
+            if (Math.floorMod(hash, 16) == 3) {
+                slices.add(federation.sliceOf(id, hash));
+            }
+        }
+        assertTrue("ids of one partition must spread over the slices. Got " + slices.size(), slices.size() > 400);
+    }
+
+    @Test
+    public void testOnlyNewerAssignmentsAreApplied() throws Exception {
+        final BitSet all = new BitSet();
+        all.set(0, Federation.SLICES);
+        assertFalse("nothing must be local before the first assignment", federation.isLocal("some_id", 42));
+
+        assertTrue("first assignment was not applied", federation.update(new FederationAssignment(2, all)));
+        assertTrue("id was not local with all slices", federation.isLocal("some_id", 42));
+
+        assertFalse("older assignment was applied", federation.update(new FederationAssignment(1, new BitSet())));
+        assertTrue("id was not local with all slices", federation.isLocal("some_id", 42));
+
+        assertTrue("newer assignment was not applied", federation.update(new FederationAssignment(3, new BitSet())));
+        assertFalse("id was local without slices", federation.isLocal("some_id", 42));
+        assertEquals("wrong version", 3, federation.getVersion());
+    }
+
+    @Test
+    public void testSlicesAreOwnedForLeaseOnly() throws Exception {
+        final ManualTicker ticker = new ManualTicker();
+        final Federation leased = new Federation("eu", ImmutableMap.of("us", ImmutableList.of("akka.tcp://a@us:1")),
+                                                 1, 5, TimeUnit.SECONDS, ticker);
+        final BitSet all = new BitSet();
+        all.set(0, Federation.SLICES);
+
+        leased.update(new FederationAssignment(1, all));
+        ticker.advance(leased.getLeaseNanos() - 1);
+        assertTrue("id was not local within lease", leased.isLocal("some_id", 42));
+
+        leased.update(new FederationAssignment(2, all));
+        ticker.advance(leased.getLeaseNanos() - 1);
+        assertTrue("refresh did not extend lease", leased.isLocal("some_id", 42));
+
+        ticker.advance(1);
+        assertFalse("id was local after lease ran out", leased.isLocal("some_id", 42));
+        assertTrue("takeover must wait for the lease of the cut-off members",
+                   leased.getTakeoverNanos() - leased.getFailureTimeoutNanos() > leased.getLeaseNanos());
+    }
+
+    @Test
+    public void testSplitAndTakeoverAcrossClusters() throws Exception {
+        final Map<String, Integer> ports = ImmutableMap.of("eu", 25801, "us", 25811, "ap", 25821);
+        final Map<String, Scoop> scoops = Maps.newTreeMap();
+        final Map<String, ActorSystem> systems = Maps.newHashMap();
+        try {
+            ports.forEach((cluster, port) -> {
+                final Map<String, List<String>> peers = Maps.newHashMap();
+                ports.forEach((peer, peerPort) -> {
+                    if (!peer.equals(cluster)) {
+                        peers.put(peer, ImmutableList.of("akka.tcp://scoop-system@localhost:" + peerPort));
+                    }
+                });
+                final Scoop scoop = new Scoop().withBindHostName("127.0.0.1")
+                                               .withPort(port)
+                                               .withSeed("akka.tcp://scoop-system@localhost:" + port)
+                                               .withNodeId(cluster)
+                                               .withPartitions(4)
+                                               .withFederation(cluster, peers, HEARTBEAT_MILLIS, TIMEOUT_MILLIS,
+                                                               TimeUnit.MILLISECONDS);
+                final ActorSystem system = ActorSystem.create(Scoop.SYSTEM_NAME, scoop.buildConfiguration());
+                scoop.startScoopActor(system);
+                scoops.put(cluster, scoop);
+                systems.put(cluster, system);
+            });
+
+            awaitSingleOwners(scoops, 30000);
+            final Map<String, Integer> keysPerCluster = Maps.newHashMap();
+            for (int i = 0; i < KEYS; i++) {
+                final String key = "key-" + i;
+                scoops.forEach((cluster, scoop) -> {
+                    if (scoop.defaultClient().isHandledByMe(key)) {
+                        keysPerCluster.merge(cluster, 1, Integer::sum);
+                    }
+                });
+            }
+            for (final String cluster : ports.keySet()) {
+                assertTrue("keys must be split between the clusters. Got " + keysPerCluster,
+                           keysPerCluster.getOrDefault(cluster, 0) > KEYS / 5);
+            }
+
+            final long killedAt = System.nanoTime();
+            systems.remove("ap").terminate();
+            scoops.remove("ap");
+            awaitSingleOwners(scoops, 15000);
+            final long takeoverMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - killedAt);
+            assertTrue("slices were taken over before the failure timeout. Got " + takeoverMillis + "ms",
+                       takeoverMillis >= TIMEOUT_MILLIS);
+        }
+        finally {
+            for (final ActorSystem system : systems.values()) {
+                system.terminate();
+                Await.ready(system.whenTerminated(), Duration.create(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    /**
+     * Fails as soon as a key is handled by more than one cluster.
+     */
+    private static void awaitSingleOwners(final Map<String, Scoop> scoops, final long timeoutMillis) throws Exception {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            int unowned = 0;
+            for (int i = 0; i < KEYS; i++) {
+                final String key = "key-" + i;
+                final long owners = scoops.values().stream()
+                                          .filter(scoop -> scoop.defaultClient().isHandledByMe(key))
+                                          .count();
+                assertTrue("key was handled by several clusters [key=" + key + "]", owners < 2);
+                unowned += owners == 0 ? 1 : 0;
+            }
+            if (unowned == 0) {
+                return;
+            }
+            assertTrue("keys were not owned in time [unowned=" + unowned + "]",
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLocalClusterMustNotBePeer() throws Exception {
+        new Federation("eu", ImmutableMap.of("eu", ImmutableList.of("akka.tcp://a@eu:1")), 1, 5, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHeartbeatMustBeShorterThanFailureTimeout() throws Exception {
+        new Federation("eu", ImmutableMap.of("us", ImmutableList.of("akka.tcp://a@us:1")), 5, 5, TimeUnit.SECONDS);
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long nanos) {
+            this.nanos += nanos;
+        }
+    }
+}
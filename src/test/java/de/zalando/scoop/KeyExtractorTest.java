@@ -0,0 +1,41 @@
+package de.zalando.scoop;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyExtractorTest {
+
+    @Test
+    public void testHashTag() throws Exception {
+        assertKey("tenant-1", KeyExtractor.hashTag(), "{tenant-1}:order:created");
+        assertKey("tenant-1", KeyExtractor.hashTag(), "order:{tenant-1}:created");
+        assertKey("a", KeyExtractor.hashTag(), "{a}{b}");
+    }
+
+    @Test
+    public void testWithoutHashTag() throws Exception {
+        assertKey("order:created", KeyExtractor.hashTag(), "order:created");
+        assertKey("{}:order", KeyExtractor.hashTag(), "{}:order");
+        assertKey("{tenant-1:order", KeyExtractor.hashTag(), "{tenant-1:order");
+        assertKey("tenant}:{order", KeyExtractor.hashTag(), "tenant}:{order");
+    }
+
+    @Test
+    public void testPrefix() throws Exception {
+        assertKey("tenant-1", KeyExtractor.prefix(':'), "tenant-1:order:created");
+        assertKey("tenant-1", KeyExtractor.prefix(':'), "tenant-1");
+        assertKey("", KeyExtractor.prefix(':'), ":order");
+    }
+
+    @Test
+    public void testWholeId() throws Exception {
+        assertKey("tenant-1:order", KeyExtractor.WHOLE_ID, "tenant-1:order");
+    }
+
+    private static void assertKey(final String expected, final KeyExtractor extractor, final String id) {
+        assertEquals("wrong key of [id=" + id + "]", expected,
+                     id.substring(extractor.beginIndex(id), extractor.endIndex(id)));
+    }
+}
@@ -0,0 +1,135 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LeaseTest {
+
+    private ManualTicker ticker;
+    private Lease lease;
+
+    @Before
+    public void setup() throws Exception {
+        ticker = new ManualTicker();
+        lease = new Lease(10, 3, TimeUnit.SECONDS, ticker);
+    }
+
+    @Test
+    public void testNotValidBeforeFirstGrant() throws Exception {
+        assertFalse("lease is valid before first grant", lease.isValid());
+        assertEquals("lease has remaining time before first grant", 0, lease.getRemainingMillis());
+    }
+
+    @Test
+    public void testLeaseIsMeasuredFromRequest() throws Exception {
+        final long requestedAt = lease.requested();
+        ticker.advance(2, TimeUnit.SECONDS);
+        assertTrue("first grant was not reported as acquired", lease.granted(requestedAt));
+
+        assertTrue("lease is not valid after grant", lease.isValid());
+        assertEquals("lease is not measured from request", 8000, lease.getRemainingMillis());
+        assertEquals("wrong round trip", 2000000, lease.getLastRenewalRoundTripMicros());
+
+        ticker.advance(8, TimeUnit.SECONDS);
+        assertFalse("lease is valid after it ran out", lease.isValid());
+    }
+
+    @Test
+    public void testRenewalExtendsLease() throws Exception {
+        lease.granted(lease.requested());
+        ticker.advance(9, TimeUnit.SECONDS);
+        assertFalse("renewal in time was reported as reacquired", lease.granted(lease.requested()));
+
+        ticker.advance(9, TimeUnit.SECONDS);
+        assertTrue("renewed lease is not valid", lease.isValid());
+        assertEquals("wrong number of expirations", 0, lease.getLeaseExpirations());
+        assertEquals("wrong number of grants", 2, lease.getRenewalGrants());
+    }
+
+    @Test
+    public void testOutdatedGrantDoesNotShortenLease() throws Exception {
+        final long first = lease.requested();
+        ticker.advance(1, TimeUnit.SECONDS);
+        lease.granted(lease.requested());
+        lease.granted(first);
+
+        assertEquals("outdated grant shortened lease", 10000, lease.getRemainingMillis());
+        assertEquals("wrong max round trip", 1000000, lease.getMaxRenewalRoundTripMicros());
+    }
+
+    @Test
+    public void testExpiredLeaseIsReacquired() throws Exception {
+        lease.granted(lease.requested());
+        ticker.advance(11, TimeUnit.SECONDS);
+
+        assertTrue("expired lease was not reported as reacquired", lease.granted(lease.requested()));
+        assertTrue("reacquired lease is not valid", lease.isValid());
+        assertEquals("wrong number of expirations", 1, lease.getLeaseExpirations());
+        assertEquals("wrong number of requests", 2, lease.getRenewalRequests());
+    }
+
+    @Test
+    public void testLostMajorityFencesLease() throws Exception {
+        lease.granted(lease.requested());
+
+        lease.setMajorityLost(true);
+        assertFalse("lease is valid without majority", lease.isValid());
+
+        lease.setMajorityLost(false);
+        assertTrue("lease is not valid with majority again", lease.isValid());
+    }
+
+    @Test
+    public void testGrantAfterRemovalLiftsLostMajority() throws Exception {
+        lease.granted(lease.requested());
+        lease.setMajorityLost(true);
+        final long requestedBeforeRemoval = lease.requested();
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        lease.liftMajorityLostOnGrant();
+        lease.granted(requestedBeforeRemoval);
+        assertFalse("grant requested before the removal lifted the fence", lease.isValid());
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertTrue("lifted fence was not reported as reacquired", lease.granted(lease.requested()));
+        assertTrue("lease is not valid after grant following the removal", lease.isValid());
+        assertFalse("majority is still lost", lease.isMajorityLost());
+    }
+
+    @Test
+    public void testLostMajorityAgainCancelsLifting() throws Exception {
+        lease.granted(lease.requested());
+        lease.setMajorityLost(true);
+        lease.liftMajorityLostOnGrant();
+
+        lease.setMajorityLost(true);
+        lease.granted(lease.requested());
+        assertFalse("fence was lifted although the majority was lost again", lease.isValid());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRenewIntervalNotShorterThanDuration() throws Exception {
+        new Lease(10, 10, TimeUnit.SECONDS);
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long duration, final TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.zalando.scoop;
+
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import de.zalando.scoop.ScoopCommunication.LoadReport;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoadShedderTest {
+
+    private final LoadShedder shedder = new LoadShedder(new LoadShedding(2, TimeUnit.SECONDS, 100));
+    private final List<String> members = Lists.newArrayList("a", "b", "c", "d", "e");
+
+    @Test
+    public void testOverloadedMemberIsShedStepwise() throws Exception {
+        shedder.update(new LoadReport("a", 0, 5000), 0);
+
+        assertTrue("overloaded member was not shed", shedder.adjust(members, 0));
+        assertEquals("wrong capacities", ImmutableMap.of("a", 0.5), shedder.getCapacities());
+
+        assertFalse("capacity changed within hold period", shedder.adjust(members, LoadShedder.HOLD_NANOS - 1));
+        shedder.update(new LoadReport("a", 0, 5000), LoadShedder.HOLD_NANOS);
+        assertTrue("still overloaded member was not shed further", shedder.adjust(members, LoadShedder.HOLD_NANOS));
+        assertEquals("wrong capacities", ImmutableMap.of("a", 0.25), shedder.getCapacities());
+
+        shedder.update(new LoadReport("a", 0, 5000), 2 * LoadShedder.HOLD_NANOS);
+        assertFalse("capacity dropped below minimum", shedder.adjust(members, 2 * LoadShedder.HOLD_NANOS));
+    }
+
+    @Test
+    public void testRecoveredMemberGetsCapacityBack() throws Exception {
+        shedder.update(new LoadReport("a", 0, 5000), 0);
+        shedder.adjust(members, 0);
+
+        shedder.update(new LoadReport("a", 60, 0), LoadShedder.HOLD_NANOS);
+        assertFalse("elevated member got capacity back", shedder.adjust(members, LoadShedder.HOLD_NANOS));
+
+        shedder.update(new LoadReport("a", 10, 100), LoadShedder.HOLD_NANOS);
+        assertTrue("healthy member did not get capacity back", shedder.adjust(members, LoadShedder.HOLD_NANOS));
+        assertEquals("wrong capacities", ImmutableMap.of(), shedder.getCapacities());
+    }
+
+    @Test
+    public void testFewerThanHalfOfMembersAreShed() throws Exception {
+        shedder.update(new LoadReport("a", 0, 3000), 0);
+        shedder.update(new LoadReport("b", 0, 9000), 0);
+        shedder.update(new LoadReport("c", 0, 5000), 0);
+
+        assertTrue("overloaded members were not shed", shedder.adjust(members, 0));
+        assertEquals("members lagging most must be shed first",
+                     ImmutableMap.of("b", 0.5, "c", 0.5), shedder.getCapacities());
+    }
+
+    @Test
+    public void testSilentMemberCountsAsHealthy() throws Exception {
+        shedder.update(new LoadReport("a", 0, 5000), 0);
+        shedder.adjust(members, 0);
+
+        final long expired = LoadShedder.REPORT_TTL_NANOS + 1;
+        assertTrue("silent member did not get capacity back", shedder.adjust(members, expired));
+        assertEquals("wrong capacities", ImmutableMap.of(), shedder.getCapacities());
+    }
+
+    @Test
+    public void testRemovedMemberIsForgotten() throws Exception {
+        shedder.update(new LoadReport("a", 0, 5000), 0);
+        shedder.adjust(members, 0);
+
+        shedder.remove("a");
+        assertEquals("wrong capacities", ImmutableMap.of(), shedder.getCapacities());
+        assertFalse("removed member was shed", shedder.adjust(members, 0));
+    }
+}
@@ -0,0 +1,56 @@
+package de.zalando.scoop;
+
+
+import de.zalando.scoop.LoadShedding.Level;
+import de.zalando.scoop.ScoopCommunication.LoadReport;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoadSheddingTest {
+
+    private final LoadShedding loadShedding = new LoadShedding(2, TimeUnit.SECONDS, 100);
+
+    @Test
+    public void testLevels() throws Exception {
+        assertEquals("wrong level", Level.HEALTHY, loadShedding.levelOf(49, 999));
+        assertEquals("wrong level", Level.ELEVATED, loadShedding.levelOf(50, 0));
+        assertEquals("wrong level", Level.ELEVATED, loadShedding.levelOf(0, 2000));
+        assertEquals("wrong level", Level.OVERLOADED, loadShedding.levelOf(0, 2001));
+        assertEquals("wrong level", Level.OVERLOADED, loadShedding.levelOf(101, 0));
+    }
+
+    @Test
+    public void testReportsOnlyChangedLevel() throws Exception {
+        assertTrue("initial level was not reported", loadShedding.nextReport("a").isPresent());
+
+        loadShedding.report(10, 500);
+        assertFalse("unchanged level was reported", loadShedding.nextReport("a").isPresent());
+
+        loadShedding.report(10, 3000);
+        final Optional<LoadReport> report = loadShedding.nextReport("a");
+        assertTrue("changed level was not reported", report.isPresent());
+        assertEquals("wrong member", "a", report.get().getMember());
+        assertEquals("wrong queue depth", 10, report.get().getQueueDepth());
+        assertEquals("wrong lag", 3000, report.get().getLagMillis());
+    }
+
+    @Test
+    public void testUnchangedLevelIsRefreshed() throws Exception {
+        loadShedding.nextReport("a");
+        for (int i = 1; i < LoadShedding.REFRESH_REPORTS; i++) {
+            assertFalse("unchanged level was reported", loadShedding.nextReport("a").isPresent());
+        }
+        assertTrue("level was not refreshed", loadShedding.nextReport("a").isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLag() throws Exception {
+        loadShedding.report(0, -1);
+    }
+}
@@ -0,0 +1,63 @@
+package de.zalando.scoop;
+
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Murmur3Test {
+
+    private static final HashFunction GUAVA = Hashing.murmur3_32();
+
+    @Test
+    public void testMatchesGuavaForAllTailLengths() throws Exception {
+        final StringBuilder id = new StringBuilder();
+        for (int length = 0; length < 20; length++) {
+            assertMatchesGuava(id.toString());
+            id.append((char) ('a' + length));
+        }
+    }
+
+    @Test
+    public void testMatchesGuavaForMultiByteCharacters() throws Exception {
+        assertMatchesGuava("h\u00e4ndler-\u00df");
+        assertMatchesGuava("\u5546\u5bb6:\u8ba2\u5355");
+        assertMatchesGuava("tenant-\uD83D\uDE00-emoji");
+    }
+
+    @Test
+    public void testMatchesGuavaForUnpairedSurrogates() throws Exception {
+        assertMatchesGuava("high-\uD83D-only");
+        assertMatchesGuava("low-\uDE00-only");
+        assertMatchesGuava("ends-with-high-\uD83D");
+    }
+
+    @Test
+    public void testMatchesGuavaForRandomRanges() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final char[] chars = new char[random.nextInt(40)];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = (char) (random.nextBoolean() ? 'a' + random.nextInt(26) : random.nextInt(Character.MAX_VALUE));
+            }
+            final String id = new String(chars);
+            final int beginIndex = id.isEmpty() ? 0 : random.nextInt(id.length());
+            final int endIndex = beginIndex + random.nextInt(id.length() - beginIndex + 1);
+
+            assertEquals("hash differs from Guava [id=" + id + ", range=" + beginIndex + ".." + endIndex + "]",
+                         GUAVA.hashString(id.substring(beginIndex, endIndex), StandardCharsets.UTF_8).asInt(),
+                         Murmur3.hashUtf8(id, beginIndex, endIndex));
+        }
+    }
+
+    private static void assertMatchesGuava(final String id) {
+        assertEquals("hash differs from Guava [id=" + id + "]",
+                     GUAVA.hashString(id, StandardCharsets.UTF_8).asInt(),
+                     Murmur3.hashUtf8(id, 0, id.length()));
+    }
+}
@@ -0,0 +1,200 @@
+package de.zalando.scoop;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OwnershipSnapshotTest {
+
+    private Path directory;
+    private Path file;
+    private OwnershipSnapshotWriter writer;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("scoop-ownership");
+        file = directory.resolve("ownership");
+        writer = new OwnershipSnapshotWriter(file);
+        writer.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.close();
+        Files.walk(directory)
+             .sorted((a, b) -> b.compareTo(a))
+             .forEach(path -> path.toFile().delete());
+    }
+
+    @Test
+    public void testNothingIsOwnedBeforeFirstAssignment() throws Exception {
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+            assertEquals("wrong initial epoch", -1, reader.read().getEpoch());
+            assertFalse("id was owned before first assignment", reader.isHandledHere("id"));
+        }
+    }
+
+    @Test
+    public void testReaderSeesOwnershipOfClient() throws Exception {
+        final AssignmentTable table = new AssignmentTable(7, new String[]{"me", "other", "me", null, "other"});
+        final Assignment assignment = new Assignment(table, "me");
+        final ScoopClientImpl client = new ScoopClientImpl();
+        client.onAssignmentChanged(assignment);
+        writer.onAssignmentChanged(assignment);
+
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+            final OwnershipSnapshotReader.Snapshot snapshot = reader.read();
+            assertEquals("wrong epoch", 7, snapshot.getEpoch());
+            assertEquals("wrong number of partitions", 5, snapshot.getNumberOfPartitions());
+            assertEquals("wrong owned partitions", assignment.getOwnedPartitionSet(), snapshot.getOwnedPartitions());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("reader and client disagree [id=id-" + i + "]",
+                             client.isHandledByMe("id-" + i), reader.isHandledHere("id-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testKeyExtractorIsApplied() throws Exception {
+        final BitSet owned = new BitSet();
+        owned.set(Math.floorMod(ScoopClientImpl.hash("tenant-1", KeyExtractor.WHOLE_ID), 64));
+        writer.write(1, 64, owned);
+
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file, KeyExtractor.prefix(':'))) {
+            assertTrue("id of owned tenant was not owned", reader.isHandledHere("tenant-1:order"));
+        }
+    }
+
+    @Test
+    public void testReaderRemapsGrownFile() throws Exception {
+        final BitSet owned = new BitSet();
+        owned.set(3);
+        writer.write(1, 8, owned);
+
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+            final long sizeBefore = Files.size(file);
+            final BitSet many = new BitSet();
+            many.set(0, 100000);
+            writer.write(2, 100000, many);
+
+            assertTrue("file did not grow", Files.size(file) > sizeBefore);
+            assertTrue("id was not owned after growth", reader.isHandledHere("id"));
+            assertEquals("wrong owned partitions after growth", many, reader.read().getOwnedPartitions());
+
+            writer.write(3, 8, owned);
+            assertEquals("bitmap of former assignment was not cleared", owned, reader.read().getOwnedPartitions());
+        }
+    }
+
+    @Test
+    public void testRestartedWriterContinuesSequence() throws Exception {
+        final BitSet owned = new BitSet();
+        owned.set(1);
+        writer.write(4, 2, owned);
+        writer.close();
+
+        writer = new OwnershipSnapshotWriter(file);
+        writer.open();
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+            assertEquals("restarted writer did not reset assignment", -1, reader.read().getEpoch());
+            assertTrue("file was truncated", reader.read().getOwnedPartitions().isEmpty());
+        }
+    }
+
+    @Test
+    public void testLeaseFencesReaders() throws Exception {
+        final Lease lease = new Lease(500, 100, TimeUnit.MILLISECONDS);
+        writer.setLease(lease);
+        final BitSet all = new BitSet();
+        all.set(0, 8);
+        writer.write(1, 8, all);
+
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+            assertFalse("id was owned before the lease was granted", reader.isHandledHere("id"));
+            assertTrue("snapshot was not fenced before the lease was granted", reader.read().isFenced());
+
+            lease.granted(lease.requested());
+            writer.onLeaseChanged();
+            assertTrue("id was not owned with a valid lease", reader.isHandledHere("id"));
+
+            lease.setMajorityLost(true);
+            writer.onLeaseChanged();
+            assertFalse("id was owned after the majority was lost", reader.isHandledHere("id"));
+
+            lease.setMajorityLost(false);
+            lease.granted(lease.requested());
+            writer.onLeaseChanged();
+            assertTrue("id was not owned after the lease was granted again", reader.isHandledHere("id"));
+            Thread.sleep(600);
+            assertFalse("id was owned after the lease ran out", reader.isHandledHere("id"));
+        }
+    }
+
+    @Test
+    public void testNotFencedWithoutLease() throws Exception {
+        final BitSet all = new BitSet();
+        all.set(0, 8);
+        writer.write(1, 8, all);
+
+        try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+            assertFalse("snapshot was fenced without lease", reader.read().isFenced());
+            assertEquals("wrong lease expiry without lease",
+                         OwnershipSnapshotWriter.NO_LEASE, reader.read().getLeaseExpiresAtMillis());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOtherFilesAreRejected() throws Exception {
+        final Path other = directory.resolve("other");
+        Files.write(other, new byte[64]);
+        OwnershipSnapshotReader.open(other);
+    }
+
+    @Test
+    public void testConcurrentReadsAreConsistent() throws Exception {
+        // epoch e owns all partitions if e is even and none otherwise
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CompletableFuture<Integer> reads = CompletableFuture.supplyAsync(() -> {
+            int count = 0;
+            try (OwnershipSnapshotReader reader = OwnershipSnapshotReader.open(file)) {
+                while (!stop.get()) {
+                    final OwnershipSnapshotReader.Snapshot snapshot = reader.read();
+                    final int owned = snapshot.getOwnedPartitions().cardinality();
+                    if (snapshot.getEpoch() > 0) {
+                        final int expected = snapshot.getEpoch() % 2 == 0 ? snapshot.getNumberOfPartitions() : 0;
+                        assertEquals("torn snapshot [epoch=" + snapshot.getEpoch() + "]", expected, owned);
+                    }
+                    count++;
+                }
+            }
+            catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return count;
+        });
+
+        final BitSet all = new BitSet();
+        for (int epoch = 1; epoch <= 20000; epoch++) {
+            final int numberOfPartitions = 512 + epoch % 3 * 256;
+            all.set(0, numberOfPartitions);
+            writer.write(epoch, numberOfPartitions, epoch % 2 == 0 ? all : new BitSet());
+            all.clear();
+        }
+        stop.set(true);
+
+        assertTrue("reader did not read", reads.get(10, TimeUnit.SECONDS) > 0);
+    }
+}
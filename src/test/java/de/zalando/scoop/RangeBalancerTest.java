@@ -0,0 +1,120 @@
+package de.zalando.scoop;
+
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RangeBalancerTest {
+
+    private final RangeBalancer balancer = new RangeBalancer(64, "m", "f");
+
+    @Test
+    public void testInitialRanges() throws Exception {
+        final AssignmentTable ranged = balancer.ranged(new AssignmentTable(4, new String[]{"a", "b"}));
+
+        assertEquals("wrong epoch", 5, ranged.getEpoch());
+        assertArrayEquals("split points were not sorted", new String[]{"f", "m"}, ranged.getBoundaries());
+        assertArrayEquals("ranges must start unassigned", new String[3], ranged.getOwners());
+        assertSame("ranged table was changed", ranged, balancer.ranged(ranged));
+    }
+
+    @Test
+    public void testBusiestRangeIsSplitAtMedianKey() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "b", "c"}, new String[]{"f", "m"});
+        final List<String> keys = Lists.newArrayList("a", "g", "h", "i", "j", "k", "z");
+
+        final AssignmentTable split = balancer.balance(table, new long[]{1000, 100000, 1000}, keys, 3);
+
+        assertEquals("wrong epoch", 2, split.getEpoch());
+        assertArrayEquals("range was not split at median", new String[]{"f", "i", "m"}, split.getBoundaries());
+        assertArrayEquals("both halves must keep the owner", new String[]{"a", "b", "b", "c"}, split.getOwners());
+    }
+
+    @Test
+    public void testColdestAdjacentRangesAreMerged() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "c", "c", "a", "b"},
+                                                          new String[]{"f", "m", "p", "t"});
+        final long[] hits = {30000, 10, 20, 30000, 30000};
+
+        final AssignmentTable merged = balancer.balance(table, hits, Collections.emptyList(), 1);
+
+        assertEquals("wrong epoch", 2, merged.getEpoch());
+        assertArrayEquals("wrong ranges were merged", new String[]{"f", "p", "t"}, merged.getBoundaries());
+        assertArrayEquals("merged range must keep its owner", new String[]{"a", "c", "a", "b"}, merged.getOwners());
+    }
+
+    @Test
+    public void testRangesOfDifferentOwnersAreNotMerged() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "b", "c", "a", "a"},
+                                                          new String[]{"f", "m", "p", "t"});
+        final long[] hits = {30000, 10, 20, 1000, 1000};
+
+        final AssignmentTable merged = balancer.balance(table, hits, Collections.emptyList(), 1);
+
+        assertArrayEquals("coldest ranges of the same owner were not merged", new String[]{"f", "m", "p"},
+                          merged.getBoundaries());
+        assertArrayEquals("owners of the other ranges were changed", new String[]{"a", "b", "c", "a"},
+                          merged.getOwners());
+        for (final String key : Lists.newArrayList("a", "g", "n", "q", "u")) {
+            assertEquals("key moved to another member [key=" + key + "]", ownerOf(table, key), ownerOf(merged, key));
+        }
+
+        final AssignmentTable spread = new AssignmentTable(1, new String[]{"a", "b", "c", "a", "b"},
+                                                           new String[]{"f", "m", "p", "t"});
+        assertSame("ranges of different owners were merged", spread, balancer.balance(spread, hits,
+                                                                                      Collections.emptyList(), 1));
+    }
+
+    @Test
+    public void testBalancedRangesAreKept() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "a", "a", "a", "a", "a", "a", "a"},
+                                                          new String[]{"b", "c", "d", "e", "f", "g", "h"});
+        final List<String> keys = Lists.newArrayList("a", "b1", "b2", "c1", "c2", "h1", "h2");
+        final long[] hits = {8000, 12000, 10000, 10000, 10000, 10000, 10000, 10000};
+
+        assertSame("balanced ranges were changed", table, balancer.balance(table, hits, keys, 1));
+        assertSame("ranges were changed without enough checks",
+                   table, balancer.balance(table, new long[]{10, 5000, 10, 10, 10, 10, 10, 10}, keys, 1));
+        assertSame("ranges were changed by telemetry of other ranges",
+                   table, balancer.balance(table, new long[]{10, 50000}, keys, 1));
+    }
+
+    @Test
+    public void testSingleKeyIsNotSplit() throws Exception {
+        assertEquals("single key was split", Optional.empty(),
+                     RangeBalancer.splitPoint(KeyRange.ALL, Lists.newArrayList("k", "k", "k")));
+        assertEquals("split point must be above lowest key", Optional.of("l"),
+                     RangeBalancer.splitPoint(KeyRange.ALL, Lists.newArrayList("k", "k", "k", "l")));
+    }
+
+    @Test
+    public void testNumberOfRangesIsLimited() throws Exception {
+        final RangeBalancer limited = new RangeBalancer(3, "f", "m");
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "b", "c"}, new String[]{"f", "m"});
+
+        assertSame("range was split beyond maximum",
+                   table, limited.balance(table, new long[]{1000, 100000, 1000}, Lists.newArrayList("g", "h"), 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManySplitPoints() throws Exception {
+        new RangeBalancer(2, "f", "m");
+    }
+
+    private static Optional<String> ownerOf(final AssignmentTable table, final String key) {
+        for (int i = 0; i < table.getNumberOfPartitions(); i++) {
+            if (table.rangeOf(i).contains(key)) {
+                return table.ownerOf(i);
+            }
+        }
+        throw new AssertionError("no range contains key [key=" + key + "]");
+    }
+}
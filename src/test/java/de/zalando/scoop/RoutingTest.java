@@ -0,0 +1,117 @@
+package de.zalando.scoop;
+
+
+import akka.actor.Address;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RoutingTest {
+
+    private static final Map<String, Address> ADDRESSES = ImmutableMap.of(
+            "a1", address(1), "a2", address(2), "b1", address(3), "c1", address(4));
+    private static final Map<String, String> ZONES = ImmutableMap.of(
+            "a1", "zone-a", "a2", "zone-a", "b1", "zone-b", "c1", "zone-c");
+    private static final AssignmentTable TABLE = new AssignmentTable(1, new String[]{"a1", "a1", "b1", "c1"});
+
+    @Test
+    public void testBackupsAreSpreadOverOtherZones() throws Exception {
+        final Routing routing = routing("a1", Optional.of("zone-a"), ADDRESSES.keySet(), 2);
+
+        for (int p = 0; p < TABLE.getNumberOfPartitions(); p++) {
+            final List<String> backups = routing.backupsOf(p);
+            assertEquals("wrong number of backups", 2, backups.size());
+
+            final Set<String> zones = Sets.newHashSet(ZONES.get(TABLE.ownerOf(p).get()));
+            for (final String backup : backups) {
+                assertTrue("backup is not in another zone [partition=" + p + "]", zones.add(ZONES.get(backup)));
+            }
+        }
+    }
+
+    @Test
+    public void testRouteWithinOwnZone() throws Exception {
+        final Routing routing = routing("a2", Optional.of("zone-a"), ADDRESSES.keySet(), 3);
+
+        assertEquals("owner in own zone was not chosen", Optional.of(address(1)), routing.routeOf(0));
+        for (int p = 0; p < TABLE.getNumberOfPartitions(); p++) {
+            final String member = memberOf(routing.routeOf(p).get());
+            assertEquals("route leaves own zone [partition=" + p + "]", "zone-a", ZONES.get(member));
+        }
+    }
+
+    @Test
+    public void testRouteToOwnerWithoutZone() throws Exception {
+        final Routing routing = routing("a2", Optional.empty(), ADDRESSES.keySet(), 3);
+        assertEquals("owner was not chosen", Optional.of(address(3)), routing.routeOf(2));
+    }
+
+    @Test
+    public void testBackupsAreStable() throws Exception {
+        final Routing before = routing("a1", Optional.empty(), ADDRESSES.keySet(), 1);
+        final Routing after = routing("a1", Optional.empty(), ImmutableSet.of("a1", "a2", "b1", "c1", "d1"), 1);
+
+        int moved = 0;
+        for (int p = 0; p < TABLE.getNumberOfPartitions(); p++) {
+            if (!before.backupsOf(p).equals(after.backupsOf(p))) {
+                assertEquals("backup moved to other than the new member", "d1", after.backupsOf(p).get(0));
+                moved++;
+            }
+        }
+        assertNotEquals("all backups moved", TABLE.getNumberOfPartitions(), moved);
+    }
+
+    @Test
+    public void testOnlyEligibleMembersAreBackups() throws Exception {
+        final Routing routing = routing("a2", Optional.of("zone-a"), ImmutableSet.of("a1", "a2"), 1);
+
+        for (int p = 0; p < TABLE.getNumberOfPartitions(); p++) {
+            routing.backupsOf(p).forEach(b -> assertTrue("not eligible member is backup", b.startsWith("a")));
+        }
+        assertTrue("eligible member is not backup", routing.isBackup(2));
+    }
+
+    @Test
+    public void testWithoutBackups() throws Exception {
+        final Routing routing = routing("a1", Optional.of("zone-a"), ADDRESSES.keySet(), 0);
+
+        for (int p = 0; p < TABLE.getNumberOfPartitions(); p++) {
+            assertTrue("backup without backups configured", routing.backupsOf(p).isEmpty());
+            assertFalse("backup without backups configured", routing.isBackup(p));
+        }
+        assertEquals("owner was not chosen", Optional.of(address(4)), routing.routeOf(3));
+    }
+
+    @Test
+    public void testZoneOf() throws Exception {
+        assertEquals("zone was not found", Optional.of("eu-west-1a"),
+                     Routing.zoneOf(ImmutableSet.of("worker", Scoop.ZONE_ROLE_PREFIX + "eu-west-1a")));
+        assertEquals("zone without role", Optional.empty(), Routing.zoneOf(ImmutableSet.of("worker")));
+    }
+
+    private static Routing routing(final String self,
+                                   final Optional<String> selfZone,
+                                   final Set<String> eligible,
+                                   final int backups) {
+        return new Routing(TABLE, self, selfZone, ADDRESSES, ZONES, eligible, backups);
+    }
+
+    private static Address address(final int port) {
+        return new Address("akka.tcp", "scoop-system", "127.0.0.1", port);
+    }
+
+    private static String memberOf(final Address address) {
+        return ADDRESSES.entrySet().stream().filter(e -> e.getValue().equals(address)).findFirst().get().getKey();
+    }
+}
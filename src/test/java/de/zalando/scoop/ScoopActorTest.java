@@ -0,0 +1,197 @@
+package de.zalando.scoop;
+
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Address;
+import akka.cluster.Cluster;
+import akka.cluster.ClusterEvent.MemberRemoved;
+import akka.cluster.ClusterEvent.MemberUp;
+import akka.cluster.ClusterEvent.UnreachableMember;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.UniqueAddress;
+import akka.testkit.TestProbe;
+import com.google.common.collect.ImmutableMap;
+import de.zalando.scoop.ScoopCommunication.DepartureAccepted;
+import de.zalando.scoop.ScoopCommunication.HotKeyProposal;
+import de.zalando.scoop.ScoopCommunication.LeaseGranted;
+import de.zalando.scoop.ScoopCommunication.ReportTelemetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.collection.immutable.HashSet;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScoopActorTest {
+
+    private Scoop scoop;
+    private DrainListener drainListener;
+    private ActorSystem system;
+    private ActorRef scoopActor;
+
+    @Before
+    public void setup() throws Exception {
+        drainListener = new DrainListener();
+        // the seed does not exist, so no coordinator interferes with the tables sent by the test
+        scoop = new Scoop().withBindHostName("127.0.0.1")
+                           .withPort(25591)
+                           .withSeed("akka.tcp://scoop-system@127.0.0.1:25590")
+                           .withNodeId("leaving")
+                           .withPartitions(4)
+                           .withListener(drainListener);
+        system = ActorSystem.create(Scoop.SYSTEM_NAME, scoop.buildConfiguration());
+        scoopActor = scoop.startScoopActor(system);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        system.terminate();
+        Await.ready(system.whenTerminated(), Duration.create(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDrainWaitsForReassignmentArrivingAfterDepartureAccepted() throws Exception {
+        final AssignmentTable owned = new AssignmentTable(1, new String[]{"leaving", "other", "leaving", "other"});
+        final AssignmentTable reassigned = new AssignmentTable(2, new String[]{"other", "other", "other", "other"});
+        scoopActor.tell(owned, ActorRef.noSender());
+        scoop.leave(10, TimeUnit.SECONDS);
+
+        scoopActor.tell(new DepartureAccepted(reassigned.getEpoch()), ActorRef.noSender());
+        Thread.sleep(500);
+        assertFalse("drained before the reassignment was applied", drainListener.drained.isDone());
+        assertEquals("partitions must still be owned before the reassignment",
+                     2, drainListener.assignment.getOwnedPartitions().length);
+
+        scoopActor.tell(AssignmentDelta.between(owned, reassigned), ActorRef.noSender());
+        assertFalse("partitions were still owned while draining", drainListener.drained.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDrainStartsAtDeadlineWithoutReassignment() throws Exception {
+        scoopActor.tell(new AssignmentTable(1, new String[]{"leaving", "other", "leaving", "other"}),
+                        ActorRef.noSender());
+        scoop.leave(1, TimeUnit.SECONDS);
+
+        scoopActor.tell(new DepartureAccepted(2), ActorRef.noSender());
+        assertTrue("member must drain at the deadline even though it still owns partitions",
+                   drainListener.drained.get(5, TimeUnit.SECONDS));
+        assertEquals("listener must be drained once", 1, drainListener.calls);
+    }
+
+    @Test
+    public void testRemovedUnreachableMembersLiftFencingOnNextGrant() throws Exception {
+        final Scoop leased = new Scoop().withBindHostName("127.0.0.1")
+                                        .withPort(25592)
+                                        .withSeed("akka.tcp://scoop-system@127.0.0.1:25590")
+                                        .withPartitions(4)
+                                        .withLease(1, TimeUnit.MINUTES);
+        final ActorSystem leasedSystem = ActorSystem.create(Scoop.SYSTEM_NAME, leased.buildConfiguration());
+        try {
+            final ActorRef actor = leased.startScoopActor(leasedSystem);
+            final Member other = new Member(new UniqueAddress(new Address("akka.tcp", Scoop.SYSTEM_NAME,
+                                                                          "127.0.0.1", 25593), 1),
+                                            1, MemberStatus.up(), new HashSet<>());
+            actor.tell(new LeaseGranted(System.nanoTime()), ActorRef.noSender());
+            awaitLeaseValid(leased, true);
+            actor.tell(new MemberUp(other), ActorRef.noSender());
+            actor.tell(new UnreachableMember(other), ActorRef.noSender());
+            awaitLeaseValid(leased, false);
+            assertTrue("majority was not lost", leased.getLease().isMajorityLost());
+
+            actor.tell(new MemberRemoved(other.copy(MemberStatus.removed()), MemberStatus.down()),
+                       ActorRef.noSender());
+            Thread.sleep(500);
+            assertFalse("removal alone lifted the fencing", leased.getLease().isValid());
+
+            actor.tell(new LeaseGranted(System.nanoTime()), ActorRef.noSender());
+            awaitLeaseValid(leased, true);
+            assertFalse("majority is still lost", leased.getLease().isMajorityLost());
+        }
+        finally {
+            leasedSystem.terminate();
+            Await.ready(leasedSystem.whenTerminated(), Duration.create(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testDetectedHotKeysAreProposedToCoordinatorOfLastTable() throws Exception {
+        final Scoop detecting = new Scoop().withPartitions(4)
+                                           .withTelemetry(1, 4)
+                                           .withHotKeyDetection(0.5, 2);
+        final ActorRef actor = system.actorOf(ScoopActor.props(Collections.emptySet(), detecting.settings()),
+                                              "detecting-" + ScoopActor.NAME);
+        final TestProbe coordinator = new TestProbe(system);
+        actor.tell(new AssignmentTable(1, new String[]{"a", "b", "c", "d"}), coordinator.ref());
+        assertTrue("initial hot keys were not proposed",
+                   coordinator.expectMsgClass(HotKeyProposal.class).getHotKeys().isEmpty());
+
+        for (int i = 0; i < 100; i++) {
+            detecting.getTelemetry().get().record("hot", 0, true);
+        }
+        actor.tell(ReportTelemetry.INSTANCE, ActorRef.noSender());
+        assertEquals("detected hot key was not proposed to the coordinator",
+                     ImmutableMap.of("hot", 2), coordinator.expectMsgClass(HotKeyProposal.class).getHotKeys());
+
+        actor.tell(new AssignmentTable(2, new String[]{"b", "a", "c", "d"}), coordinator.ref());
+        coordinator.expectNoMsg(Duration.create(500, TimeUnit.MILLISECONDS));
+    }
+
+    private static void awaitLeaseValid(final Scoop scoop, final boolean valid) throws InterruptedException {
+        for (int i = 0; i < 50 && scoop.getLease().isValid() != valid; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("lease validity", valid, scoop.getLease().isValid());
+    }
+
+    /**
+     * Completes with whether this member still owned partitions when it was asked to drain.
+     */
+    private static final class DrainListener implements ScoopListener {
+        private final CompletableFuture<Boolean> drained = new CompletableFuture<>();
+        private volatile Assignment assignment;
+        private volatile int calls;
+
+        @Override
+        public void init(final Cluster cluster) {
+        }
+
+        @Override
+        public void onRebalanced(final int partitionId, final int numberOfPartitions) {
+        }
+
+        @Override
+        public void onAssignmentChanged(final Assignment newAssignment) {
+            assignment = newAssignment;
+        }
+
+        @Override
+        public void onMemberUp(final Member member) {
+        }
+
+        @Override
+        public void onMemberRemoved(final Member member) {
+        }
+
+        @Override
+        public void onMemberUnreachable(final Member member) {
+        }
+
+        @Override
+        public CompletionStage<?> onDrain(final long deadlineMillis) {
+            calls++;
+            drained.complete(assignment.getOwnedPartitions().length > 0);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package de.zalando.scoop;
 
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import de.zalando.scoop.telemetry.ClientMetrics;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ScoopClientImplTest {
@@ -52,4 +65,290 @@ public class ScoopClientImplTest {
         assertTrue("did not recognize my slot", client.isHandledByMe("2"));
 
     }
+
+    @Test
+    public void testPartitionOfNegativeHash() throws Exception {
+        assertEquals("negative hash mapped outside of partition range", 2, ScoopClientImpl.partitionOf(-1, 3));
+        assertEquals("positive hash mapped to wrong partition", 1, ScoopClientImpl.partitionOf(4, 3));
+    }
+
+    @Test
+    public void testIsHandledByMeCoversAllKeys() throws Exception {
+        final int numberOfPartitions = 3;
+        for (int i = 0; i < 100; i++) {
+            final String id = "id-" + i;
+            int owners = 0;
+            for (int partitionId = 0; partitionId < numberOfPartitions; partitionId++) {
+                client.onRebalanced(partitionId, numberOfPartitions);
+                if (client.isHandledByMe(id)) {
+                    owners++;
+                }
+            }
+            assertEquals("[id=" + id + "] must be handled by exactly one partition", 1, owners);
+        }
+    }
+
+    @Test
+    public void testIsHandledByMeWithSubKeyForHotKey() throws Exception {
+        final int numberOfPartitions = 3;
+        client.onHotKeysChanged(new HotKeys(1, ImmutableMap.of("hot", 2)));
+
+        final Set<Integer> owningPartitions = Sets.newHashSet();
+        for (int i = 0; i < 100; i++) {
+            final String subKey = "sub-" + i;
+            int owners = 0;
+            for (int partitionId = 0; partitionId < numberOfPartitions; partitionId++) {
+                client.onRebalanced(partitionId, numberOfPartitions);
+                if (client.isHandledByMe("hot", subKey)) {
+                    owners++;
+                    owningPartitions.add(partitionId);
+                }
+            }
+            assertEquals("[subKey=" + subKey + "] must be handled by exactly one partition", 1, owners);
+        }
+
+        assertEquals("hot key must be spread over exactly 2 partitions", 2, owningPartitions.size());
+    }
+
+    @Test
+    public void testHotKeyIsSpreadOverDistinctMembers() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "a", "a", "b", "b", "b", "c", "c"});
+        client.onHotKeysChanged(new HotKeys(1, ImmutableMap.of("hot", 3)));
+
+        final Map<String, Integer> handledBy = Maps.newHashMap();
+        for (int i = 0; i < 300; i++) {
+            final String subKey = "sub-" + i;
+            int owners = 0;
+            for (final String member : table.getMembers()) {
+                client.onAssignmentChanged(new Assignment(table, member));
+                if (client.isHandledByMe("hot", subKey)) {
+                    owners++;
+                    handledBy.merge(member, 1, Integer::sum);
+                }
+            }
+            assertEquals("[subKey=" + subKey + "] must be handled by exactly one member", 1, owners);
+        }
+
+        assertEquals("hot key must be spread over 3 distinct members", 3, handledBy.size());
+    }
+
+    @Test
+    public void testHotKeyIsNotSpreadOverRanges() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"a", "b", "a", "b"},
+                                                          new String[]{"g", "n", "t"});
+        client.onHotKeysChanged(new HotKeys(1, ImmutableMap.of("hot", 2)));
+        client.onAssignmentChanged(new Assignment(table, "a"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("hot key must be handled by the owner of its range",
+                         client.isHandledByMe("hot"), client.isHandledByMe("hot", "sub-" + i));
+        }
+    }
+
+    @Test
+    public void testIsHandledByMeWithSubKeyForColdKey() throws Exception {
+        client.onRebalanced(0, 2);
+        for (int i = 0; i < 100; i++) {
+            final String id = "id-" + i;
+            assertEquals("sub key must be ignored for keys which are not hot",
+                         client.isHandledByMe(id), client.isHandledByMe(id, "sub-" + i));
+        }
+        assertFalse("no hot keys expected by default", client.getHotKeys().isHot("id-1"));
+    }
+
+    @Test
+    public void testOnAssignmentChangedWithMultiplePartitions() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"me", "other", "me", "other"});
+        client.onAssignmentChanged(new Assignment(table, "me"));
+
+        assertEquals("wrong number of partitions", 4, client.getNumberOfPartitions());
+        for (int i = 0; i < 100; i++) {
+            final String id = "id-" + i;
+            final int hash = Hashing.murmur3_32().hashString(id, StandardCharsets.UTF_8).asInt();
+            final int partition = ScoopClientImpl.partitionOf(hash, 4);
+            assertEquals("wrong ownership of [id=" + id + "]", partition % 2 == 0, client.isHandledByMe(id));
+        }
+    }
+
+    @Test
+    public void testPendingPartitionsAreNotHandled() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"me", "other", "me", "other"});
+        final BitSet pending = new BitSet();
+        pending.set(2);
+        client.onAssignmentChanged(new Assignment(table, "me", pending));
+
+        for (int i = 0; i < 100; i++) {
+            final String id = "id-" + i;
+            final int hash = Hashing.murmur3_32().hashString(id, StandardCharsets.UTF_8).asInt();
+            final int partition = ScoopClientImpl.partitionOf(hash, 4);
+            assertEquals("wrong ownership of [id=" + id + "]", partition == 0, client.isHandledByMe(id));
+        }
+    }
+
+    @Test
+    public void testClaimWithoutClaimFilter() throws Exception {
+        client.onRebalanced(0, 1);
+        assertTrue("owned id was not claimed", client.claim("some_id"));
+        assertTrue("owned id was not claimed again", client.claim("some_id"));
+    }
+
+    @Test
+    public void testClaimRejectsIdsOfNotOwnedPartitions() throws Exception {
+        client.setClaimFilter(new ClaimFilter(1, TimeUnit.MINUTES, 100));
+        assertFalse("id was claimed before first assignment", client.claim("some_id"));
+
+        client.onRebalanced(0, 1);
+        assertTrue("owned id was not claimed", client.claim("some_id"));
+    }
+
+    @Test
+    public void testIsHandledByMeBeforeFirstAssignment() throws Exception {
+        assertFalse("nothing must be handled before the first assignment", client.isHandledByMe("some_id"));
+    }
+
+    @Test
+    public void testNothingIsHandledWithoutValidLease() throws Exception {
+        final Lease lease = new Lease(60, 20, TimeUnit.SECONDS);
+        client.setLease(lease);
+        client.onRebalanced(0, 1);
+        assertFalse("id was handled before lease was granted", client.isHandledByMe("some_id"));
+        assertFalse("id was claimed before lease was granted", client.claim("some_id"));
+
+        lease.granted(lease.requested());
+        assertTrue("id was not handled with valid lease", client.isHandledByMe("some_id"));
+
+        lease.setMajorityLost(true);
+        assertFalse("id was handled without majority", client.isHandledByMe("some_id"));
+        assertEquals("wrong number of fenced checks", 3, lease.getFencedChecks());
+    }
+
+    @Test
+    public void testFederationLimitsHandledIds() throws Exception {
+        final Federation federation = new Federation("eu", ImmutableMap.of("us", Lists.newArrayList("akka.tcp://a@us:1")),
+                                                     1, 5, TimeUnit.SECONDS);
+        federation.setHomes(id -> id.substring(0, 2));
+        client.setFederation(federation);
+        client.onRebalanced(0, 1);
+        assertFalse("id was handled before slices were assigned", client.isHandledByMe("eu-1"));
+
+        final BitSet eu = new BitSet();
+        eu.set(0, federation.homeStart("us"));
+        federation.update(new ScoopCommunication.FederationAssignment(1, eu));
+        assertTrue("id of local slice was not handled", client.isHandledByMe("eu-1"));
+        assertFalse("id of peer slice was handled", client.isHandledByMe("us-1"));
+    }
+
+    @Test
+    public void testReportedLoadIsKeptForScoopActor() throws Exception {
+        client.reportLoad(10, 100);
+
+        final LoadShedding loadShedding = new LoadShedding(1, TimeUnit.SECONDS, 100);
+        client.setLoadShedding(loadShedding);
+        client.withKeyExtractor(KeyExtractor.prefix(':')).reportLoad(200, 5000);
+
+        final ScoopCommunication.LoadReport report = loadShedding.nextReport("me").get();
+        assertEquals("wrong queue depth", 200, report.getQueueDepth());
+        assertEquals("wrong lag", 5000, report.getLagMillis());
+    }
+
+    @Test
+    public void testChecksAreCountedWithMetrics() throws Exception {
+        client.onAssignmentChanged(new Assignment(new AssignmentTable(1, new String[]{"me", "other"}), "me"));
+        final ClientMetrics metrics = new ClientMetrics();
+        client.setMetrics(metrics);
+
+        int handled = 0;
+        for (int i = 0; i < 100; i++) {
+            handled += client.isHandledByMe("id-" + i) ? 1 : 0;
+        }
+
+        assertEquals("wrong number of checks", 100, metrics.getChecks());
+        assertEquals("wrong number of handled checks", handled, metrics.getHandledChecks());
+    }
+
+    @Test
+    public void testKeyExtractorCoLocatesIds() throws Exception {
+        client.onAssignmentChanged(new Assignment(new AssignmentTable(1, new String[]{"me", "other", "other"}), "me"));
+        client.setKeyExtractor(KeyExtractor.prefix(':'));
+
+        for (int tenant = 0; tenant < 20; tenant++) {
+            final boolean handled = client.isHandledByMe("tenant-" + tenant);
+            for (int event = 0; event < 10; event++) {
+                assertEquals("events of a tenant are not handled together", handled,
+                             client.isHandledByMe("tenant-" + tenant + ":order-" + event + ":created"));
+            }
+        }
+    }
+
+    @Test
+    public void testClientWithOwnKeyExtractor() throws Exception {
+        client.onAssignmentChanged(new Assignment(new AssignmentTable(1, new String[]{"me", "other", "other"}), "me"));
+        final ScoopClient tagged = client.withKeyExtractor(KeyExtractor.hashTag());
+
+        int differing = 0;
+        for (int i = 0; i < 100; i++) {
+            final String id = "order-" + i + ":{tenant-1}";
+            assertEquals("hash tag was not used", client.isHandledByMe("tenant-1"), tagged.isHandledByMe(id));
+            if (client.isHandledByMe(id) != tagged.isHandledByMe(id)) {
+                differing++;
+            }
+        }
+        assertTrue("default client used the key extractor of the other client", differing > 0);
+    }
+
+    @Test
+    public void testRangesAreFoundByBinarySearch() throws Exception {
+        final String[] boundaries = {"b", "d", "d5", "f"};
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"me", "other", "me", "me", "other"}, boundaries);
+        client.onAssignmentChanged(new Assignment(table, "me"));
+
+        for (final String id : new String[]{"", "a", "b", "c", "d", "d4", "d5", "d50", "e", "f", "g", "\uffff"}) {
+            int range = 0;
+            while (!table.rangeOf(range).contains(id)) {
+                range++;
+            }
+            assertEquals("wrong range [id=" + id + "]", range, ScoopClientImpl.rangeOf(boundaries, id, 0, id.length()));
+            assertEquals("wrong ownership [id=" + id + "]", table.ownerOf(range).get().equals("me"),
+                         client.isHandledByMe(id));
+        }
+    }
+
+    @Test
+    public void testOwnedRangesAreJoined() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"me", "other", "me", "me", "other"},
+                                                          new String[]{"b", "d", "d5", "f"});
+        client.onAssignmentChanged(new Assignment(table, "me"));
+
+        assertEquals("wrong owned ranges",
+                     Lists.newArrayList(new KeyRange(null, "b"), new KeyRange("d", "f")),
+                     client.ownedRanges());
+    }
+
+    @Test
+    public void testRangesAreKeptByOnRebalanced() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"other", "me"}, new String[]{"m"});
+        client.onAssignmentChanged(new Assignment(table, "me"));
+        client.onRebalanced(1, 2);
+
+        assertTrue("ranges were lost by onRebalanced", client.isHandledByMe("x"));
+        assertEquals("wrong owned ranges", Lists.newArrayList(new KeyRange("m", null)), client.ownedRanges());
+    }
+
+    @Test
+    public void testRangesUseKeyExtractor() throws Exception {
+        final AssignmentTable table = new AssignmentTable(1, new String[]{"other", "me"}, new String[]{"tenant-5"});
+        client.onAssignmentChanged(new Assignment(table, "me"));
+        final ScoopClient tagged = client.withKeyExtractor(KeyExtractor.hashTag());
+
+        assertTrue("lower bound is not inclusive", tagged.isHandledByMe("order:{tenant-5}"));
+        assertTrue("hash tag was not compared", tagged.isHandledByMe("order:{tenant-7}"));
+        assertFalse("whole id was compared", client.isHandledByMe("order:{tenant-7}"));
+        assertFalse("id of other range was handled", tagged.isHandledByMe("order:{tenant-3}"));
+        assertEquals("wrong owned ranges", Lists.newArrayList(new KeyRange("tenant-5", null)), tagged.ownedRanges());
+    }
+
+    @Test
+    public void testHashedPartitionsHaveNoRanges() throws Exception {
+        client.onAssignmentChanged(new Assignment(new AssignmentTable(1, new String[]{"me", "other"}), "me"));
+        assertTrue("hashed partitions have ranges", client.ownedRanges().isEmpty());
+    }
 }
@@ -0,0 +1,206 @@
+package de.zalando.scoop;
+
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScoopExecutorTest {
+
+    private ScoopClientImpl client;
+    private ScoopExecutor executor;
+    private List<String> forwarded;
+
+    @Before
+    public void setup() throws Exception {
+        client = new ScoopClientImpl();
+        forwarded = Collections.synchronizedList(Lists.newArrayList());
+        executor = new ScoopExecutor(client, 4, (key, task) -> forwarded.add(key));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTasksOfSameKeyRunInOrder() throws Exception {
+        client.onRebalanced(0, 1);
+
+        final List<Integer> order = Collections.synchronizedList(Lists.newArrayList());
+        for (int i = 0; i < 1000; i++) {
+            final int task = i;
+            assertTrue("task of owned key was not accepted", executor.execute("key", () -> order.add(task)));
+        }
+        executor.onDrain(0).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals("wrong number of executed tasks", 1000, order.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("tasks of same key ran out of order", i, (int) order.get(i));
+        }
+        assertEquals("wrong executed count", 1000, executor.getExecutedTasks());
+    }
+
+    @Test
+    public void testTasksOfNotOwnedKeysAreForwarded() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        assertFalse("task was accepted before first assignment", executor.execute("key", runs::incrementAndGet));
+
+        executor.onDrain(0).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("task of not owned key was run", 0, runs.get());
+        assertEquals("task was not forwarded", Lists.newArrayList("key"), forwarded);
+        assertEquals("wrong not owned count", 1, executor.getNotOwnedTasks());
+    }
+
+    @Test
+    public void testQueuedTasksOfRevokedKeysAreCancelled() throws Exception {
+        client.onRebalanced(0, 1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        executor.execute("key", () -> {
+            started.countDown();
+            try {
+                blocked.await();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue("blocking task did not start", started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            executor.execute("key", runs::incrementAndGet);
+        }
+
+        final Assignment revoked = new Assignment(new AssignmentTable(1, new String[]{"other"}), "me");
+        client.onAssignmentChanged(revoked);
+        assertEquals("wrong number of cancelled tasks", 10, executor.cancelRevoked());
+
+        blocked.countDown();
+        executor.onDrain(0).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("task of revoked key was run", 0, runs.get());
+        assertEquals("wrong cancelled count", 10, executor.getCancelledTasks());
+    }
+
+    @Test
+    public void testOwnershipIsCheckedOncePerTask() throws Exception {
+        client.onRebalanced(0, 1);
+        final AtomicInteger checks = new AtomicInteger();
+        final ScoopExecutor countingExecutor = new ScoopExecutor(id -> {
+            checks.incrementAndGet();
+            return client.isHandledByMe(id);
+        }, 4);
+        try {
+            for (int i = 0; i < 100; i++) {
+                countingExecutor.execute("key-" + i, () -> {});
+            }
+            countingExecutor.onDrain(0).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+            assertEquals("wrong executed count", 100, countingExecutor.getExecutedTasks());
+            assertEquals("ownership must be checked once per task without assignment change", 100, checks.get());
+        }
+        finally {
+            countingExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNumberOfRevokedTasksIsReported() throws Exception {
+        client.onRebalanced(0, 1);
+        final List<Integer> reported = Collections.synchronizedList(Lists.newArrayList());
+        final ScoopExecutor reportingExecutor = new ScoopExecutor(client, 1, (key, task) -> {}, reported::add);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            reportingExecutor.execute("key", () -> {
+                try {
+                    blocked.await();
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < 5; i++) {
+                reportingExecutor.execute("key", () -> {});
+            }
+
+            final Assignment unchanged = new Assignment(new AssignmentTable(1, new String[]{"me"}), "me");
+            client.onAssignmentChanged(unchanged);
+            reportingExecutor.onAssignmentChanged(unchanged);
+            assertTrue("nothing must be reported without revoked tasks", reported.isEmpty());
+
+            final Assignment revoked = new Assignment(new AssignmentTable(2, new String[]{"other"}), "me");
+            client.onAssignmentChanged(revoked);
+            reportingExecutor.onAssignmentChanged(revoked);
+            reportingExecutor.onRebalanced(0, 1);
+            assertEquals("wrong reported number of revoked tasks", Lists.newArrayList(5), reported);
+        }
+        finally {
+            blocked.countDown();
+            reportingExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTaskRevokedWhileQueuedIsReported() throws Exception {
+        final AtomicBoolean owned = new AtomicBoolean(true);
+        final List<Integer> reported = Collections.synchronizedList(Lists.newArrayList());
+        final AtomicReference<ScoopExecutor> racing = new AtomicReference<>();
+        // the assignment changes after the key was checked but before the task was queued
+        racing.set(new ScoopExecutor(id -> {
+            final boolean handledByMe = owned.getAndSet(false);
+            racing.get().cancelRevoked();
+            return handledByMe;
+        }, 1, (key, task) -> {}, reported::add));
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            assertTrue("task of owned key was not accepted", racing.get().execute("key", runs::incrementAndGet));
+            racing.get().onDrain(0).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+            assertEquals("task of revoked key was run", 0, runs.get());
+            assertEquals("dropped task was not reported", Lists.newArrayList(1), reported);
+            assertEquals("wrong cancelled count", 1, racing.get().getCancelledTasks());
+        }
+        finally {
+            racing.get().shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadNamesAreUniqueAcrossExecutors() throws Exception {
+        client.onRebalanced(0, 1);
+        final ScoopExecutor other = new ScoopExecutor(client, 4);
+        try {
+            final CompletableFuture<String> name = new CompletableFuture<>();
+            final CompletableFuture<String> otherName = new CompletableFuture<>();
+            executor.execute("key", () -> name.complete(Thread.currentThread().getName()));
+            other.execute("key", () -> otherName.complete(Thread.currentThread().getName()));
+
+            assertNotEquals("executors share thread names",
+                            name.get(5, TimeUnit.SECONDS), otherName.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            other.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithoutStripes() throws Exception {
+        new ScoopExecutor(client, 0);
+    }
+}
@@ -1,17 +1,29 @@
 package de.zalando.scoop;
 
 
+import akka.actor.ActorSystem;
 import akka.cluster.Cluster;
 import akka.cluster.Member;
 import com.amazonaws.regions.Regions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.typesafe.config.Config;
+import de.zalando.scoop.telemetry.MetricsReporter;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static de.zalando.scoop.config.AwsConfigurationBuilder.DEFAULT_HTTP_META_DATA_INSTANCE_ID_URL;
 import static org.junit.Assert.*;
@@ -208,6 +220,21 @@ public final class ScoopTest {
                 scoopAgain.getAwsMetaDataInstanceIdUrl());
     }
 
+    @Test
+    public void testWithAwsConfigWithCustomAvailabilityZoneUrl() throws Exception {
+        final Scoop scoopAgain = scoop.withAwsConfig("http://localhost/instance-id", "http://localhost/zone");
+        assertTrue("AWS setting was not applied", scoopAgain.hasAwsConfig());
+        assertEquals("custom meta data instance url was not applied",
+                     "http://localhost/instance-id", scoopAgain.getAwsMetaDataInstanceIdUrl());
+        assertEquals("custom meta data availability zone url was not applied",
+                     "http://localhost/zone", scoopAgain.getAwsMetaDataAvailabilityZoneUrl());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithAwsConfigWithEmptyAvailabilityZoneUrl() throws Exception {
+        scoop.withAwsConfig("http://localhost/instance-id", "");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testWithAwsConfigWithNullCustomMetaDataUrl() throws Exception {
         scoop.withAwsConfig(null);
@@ -218,6 +245,65 @@ public final class ScoopTest {
         scoop.withAwsConfig("");
     }
 
+    @Test
+    public void testWithTelemetry() throws Exception {
+        assertFalse("telemetry must be disabled by default", scoop.getTelemetry().isPresent());
+
+        final Scoop scoopAgain = scoop.withTelemetry(10, 5);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertTrue("telemetry setting was not applied", scoopAgain.getTelemetry().isPresent());
+        assertEquals("sample rate was not applied", 10, scoopAgain.getTelemetry().get().getSampleRate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithTelemetryWithInvalidSampleRate() throws Exception {
+        scoop.withTelemetry(0, 5);
+    }
+
+    @Test
+    public void testWithHotKey() throws Exception {
+        final Scoop scoopAgain = scoop.withHotKey("merchant-1", 3);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("hot key setting was not applied",
+                     Integer.valueOf(3),
+                     scoopAgain.getHotKeys().get("merchant-1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithHotKeyWithSingleOwner() throws Exception {
+        scoop.withHotKey("merchant-1", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithHotKeyDetectionWithInvalidShare() throws Exception {
+        scoop.withHotKeyDetection(1.5, 2);
+    }
+
+    @Test
+    public void testWithPartitions() throws Exception {
+        final Scoop scoopAgain = scoop.withPartitions(64);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("number of partitions was not applied", 64, scoopAgain.getNumberOfPartitions());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithPartitionsWithInvalidNumber() throws Exception {
+        scoop.withPartitions(0);
+    }
+
+    @Test
+    public void testWithStateDirectory() throws Exception {
+        final Path stateDirectory = Paths.get("/var/lib/scoop");
+        final Scoop scoopAgain = scoop.withStateDirectory(stateDirectory);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("state directory was not applied", stateDirectory, scoopAgain.getStateDirectory());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testWithNullStateDirectory() throws Exception {
+        scoop.withStateDirectory(null);
+    }
+
     /**
      * Actually, we just test configuration preparation here as this is the part
      * where most of the logic is located.
@@ -256,6 +342,171 @@ public final class ScoopTest {
     }
 
 
+    @Test
+    public void testBuildWithNodeId() throws Exception {
+        final Config config = scoop.withBindHostName("my-host")
+                                   .withSeed("seed-1")
+                                   .withNodeId("i-1234")
+                                   .prepareConfig();
+
+        assertTrue("node id is not declared as cluster role",
+                   config.getStringList("akka.cluster.roles").contains(Scoop.NODE_ID_ROLE_PREFIX + "i-1234"));
+    }
+
+    @Test
+    public void testBuildWithZoneAndRole() throws Exception {
+        final Config config = scoop.withBindHostName("my-host")
+                                   .withSeed("seed-1")
+                                   .withZone("eu-west-1a")
+                                   .withRole("worker")
+                                   .prepareConfig();
+
+        final List<String> roles = config.getStringList("akka.cluster.roles");
+        assertTrue("zone is not declared as cluster role", roles.contains(Scoop.ZONE_ROLE_PREFIX + "eu-west-1a"));
+        assertTrue("role is not declared as cluster role", roles.contains("worker"));
+    }
+
+    @Test
+    public void testWithAssignmentRoleAndBackups() throws Exception {
+        final Scoop scoopAgain = scoop.withAssignmentRole("worker").withBackups(2);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("assignment role was not applied", Optional.of("worker"),
+                     scoopAgain.settings().getAssignmentRole());
+        assertEquals("backups were not applied", 2, scoopAgain.getBackups());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithNegativeBackups() throws Exception {
+        scoop.withBackups(-1);
+    }
+
+    @Test
+    public void testWithLease() throws Exception {
+        final Scoop scoopAgain = scoop.withLease(9, TimeUnit.SECONDS);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("lease duration was not applied", 9000, scoopAgain.getLease().getLeaseDurationMillis());
+        assertEquals("default renew interval was not applied", 3000, scoopAgain.getLease().getRenewIntervalMillis());
+        assertEquals("lease was not applied", Optional.of(scoopAgain.getLease()), scoopAgain.settings().getLease());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithLeaseWithTooLongRenewInterval() throws Exception {
+        scoop.withLease(10, 20, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testWithLoadShedding() throws Exception {
+        final Scoop scoopAgain = scoop.withLoadShedding(2, TimeUnit.SECONDS, 500);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("maximum lag was not applied", 2000, scoopAgain.getLoadShedding().getMaxLagMillis());
+        assertEquals("maximum queue depth was not applied", 500, scoopAgain.getLoadShedding().getMaxQueueDepth());
+        assertEquals("load shedding was not applied",
+                     Optional.of(scoopAgain.getLoadShedding()), scoopAgain.settings().getLoadShedding());
+    }
+
+    @Test
+    public void testWithMetrics() throws Exception {
+        final MetricsReporter reporter = metrics -> {};
+        final Scoop scoopAgain = scoop.withMetrics(reporter, 10, TimeUnit.SECONDS);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertNotNull("metrics were not applied", scoopAgain.getMetrics());
+        assertEquals("metrics were not applied", Optional.of(scoopAgain.getMetrics()), scoopAgain.settings().getMetrics());
+        assertEquals("reporter was not applied", Optional.of(reporter), scoopAgain.settings().getMetricsReporter());
+        assertEquals("report interval was not applied", 10000, scoopAgain.getMetricsReportIntervalMillis());
+    }
+
+    @Test
+    public void testWithFederation() throws Exception {
+        final HomeResolver homes = id -> null;
+        final Scoop scoopAgain = scoop.withFederation("eu", ImmutableMap.of("us", ImmutableList.of("akka.tcp://us:25551")))
+                                      .withFederationHomes(homes);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("local cluster was not applied", "eu", scoopAgain.getFederation().getLocalCluster());
+        assertEquals("heartbeat was not applied", TimeUnit.SECONDS.toNanos(1), scoopAgain.getFederation().getHeartbeatNanos());
+        assertEquals("homes were not applied", homes, scoopAgain.getFederation().getHomes());
+        assertEquals("federation was not applied",
+                     Optional.of(scoopAgain.getFederation()), scoopAgain.settings().getFederation());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWithFederationHomesWithoutFederation() throws Exception {
+        scoop.withFederationHomes(id -> null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithEmptyZone() throws Exception {
+        scoop.withZone("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithEmptyNodeId() throws Exception {
+        scoop.withNodeId("");
+    }
+
+    @Test
+    public void testWithRestartGracePeriod() throws Exception {
+        final Scoop scoopAgain = scoop.withRestartGracePeriod(2, TimeUnit.MINUTES);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("restart grace period was not applied", 120000, scoopAgain.getRestartGracePeriodMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithStateHandoffWithoutTimeout() throws Exception {
+        scoop.withStateHandoff(new StateListener(), 0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testWithStateHandoff() throws Exception {
+        final StateListener listener = new StateListener();
+        final Scoop scoopAgain = scoop.withStateHandoff(listener, 10, TimeUnit.SECONDS);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("state listener was not applied", listener, scoopAgain.getStateListener());
+        assertTrue("state listener was not registered", scoopAgain.getListeners().contains(listener));
+        assertEquals("handoff timeout was not applied", 10000, scoopAgain.getHandoffTimeoutMillis());
+    }
+
+    @Test
+    public void testWithDeduplication() throws Exception {
+        final Scoop scoopAgain = scoop.withDeduplication(5, TimeUnit.MINUTES, 10000);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertNotNull("claim filter was not applied", scoopAgain.getClaimFilter());
+        assertTrue("claim filter was not registered", scoopAgain.getListeners().contains(scoopAgain.getClaimFilter()));
+        assertEquals("claim filter is not handed over", ImmutableList.of(scoopAgain.getClaimFilter()),
+                     scoopAgain.settings().getStateListeners());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithDeduplicationWithoutExpectedIds() throws Exception {
+        scoop.withDeduplication(5, TimeUnit.MINUTES, 0);
+    }
+
+    @Test
+    public void testWithOwnershipSnapshot() throws Exception {
+        final Scoop scoopAgain = scoop.withOwnershipSnapshot(Paths.get("/tmp/scoop.ownership"))
+                                      .withOwnershipSnapshot(Paths.get("/tmp/scoop.ownership"));
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertNotNull("ownership snapshot was not applied", scoopAgain.getOwnershipSnapshot());
+        assertEquals("ownership snapshot was not registered once", 1,
+                     scoopAgain.getListeners().stream().filter(l -> l instanceof OwnershipSnapshotWriter).count());
+    }
+
+    @Test
+    public void testWithLeaveOnShutdown() throws Exception {
+        final Scoop scoopAgain = scoop.withLeaveOnShutdown(30, TimeUnit.SECONDS);
+        assertNotNull("Scoop instance returned after build step must not be null", scoopAgain);
+        assertEquals("leave on shutdown was not applied", 30000, scoopAgain.getLeaveOnShutdownMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithZeroLeaveOnShutdown() throws Exception {
+        scoop.withLeaveOnShutdown(0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLeaveWithoutScoopActor() throws Exception {
+        scoop.leave(10, TimeUnit.SECONDS);
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testBuildWithoutBindHostName() throws Exception {
         scoop.withSeed("seed-1")
@@ -263,6 +514,66 @@ public final class ScoopTest {
              .buildConfiguration();
     }
 
+    @Test
+    public void testStartAsync() throws Exception {
+        final ActorSystem system = scoop.withBindHostName("127.0.0.1")
+                                        .withPort(25598)
+                                        .withSeed("akka.tcp://scoop-system@127.0.0.1:25599")
+                                        .startAsync()
+                                        .get(30, TimeUnit.SECONDS);
+        try {
+            assertEquals("wrong actor system", Scoop.SYSTEM_NAME, system.name());
+
+            final StartupReport report = scoop.getStartupReport().get();
+            final List<String> phases = report.getPhases().stream()
+                                              .map(StartupReport.Phase::getName)
+                                              .collect(Collectors.toList());
+            assertEquals("wrong phases", Lists.newArrayList("config", "actor-system", "scoop-actor"), phases);
+            assertTrue("startup must be complete", report.getTotalMillis() > -1);
+        }
+        finally {
+            system.terminate();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStartAsyncWithoutBindHostName() throws Exception {
+        scoop.withSeed("seed-1")
+             .startAsync();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuildWithLoadSheddingWithPartitionPerMember() throws Exception {
+        scoop.withBindHostName("127.0.0.1")
+             .withLoadShedding(5, TimeUnit.SECONDS, 10000)
+             .buildConfiguration();
+    }
+
+    @Test
+    public void testBuildWithLoadSheddingWithPartitions() throws Exception {
+        scoop.withBindHostName("127.0.0.1")
+             .withPartitions(12)
+             .withLoadShedding(5, TimeUnit.SECONDS, 10000)
+             .buildConfiguration();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuildWithHotKeyWithRangePartitions() throws Exception {
+        scoop.withBindHostName("127.0.0.1")
+             .withRangePartitions(8, "m")
+             .withHotKey("merchant-1", 3)
+             .buildConfiguration();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuildWithOwnershipSnapshotWithFederation() throws Exception {
+        scoop.withBindHostName("127.0.0.1")
+             .withPartitions(12)
+             .withFederation("eu", ImmutableMap.of("us", ImmutableList.of("akka.tcp://us:25551")))
+             .withOwnershipSnapshot(Paths.get("/tmp/scoop.ownership"))
+             .buildConfiguration();
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testBuildWithConfigurationConflict() throws Exception {
            scoop.withSeed("seed-1")
@@ -272,7 +583,7 @@ public final class ScoopTest {
 
 
 
-    private static final class EmptyListener implements ScoopListener {;
+    private static class EmptyListener implements ScoopListener {;
         @Override
         public void init(Cluster cluster) {
         }
@@ -293,4 +604,15 @@ public final class ScoopTest {
         public void onMemberUnreachable(Member member) {
         }
     }
+
+    private static final class StateListener extends EmptyListener implements PartitionStateListener {
+        @Override
+        public Iterator<byte[]> snapshotPartition(final int partition) {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public void restorePartition(final int partition, final byte[] chunk) {
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package de.zalando.scoop;
+
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class StartupReportTest {
+
+    private ManualTicker ticker;
+    private StartupReport report;
+
+    @Before
+    public void setup() throws Exception {
+        ticker = new ManualTicker();
+        report = new StartupReport(ticker);
+    }
+
+    @Test
+    public void testPhasesAreOrderedByStart() throws Exception {
+        ticker.advance(10, TimeUnit.MILLISECONDS);
+        report.time("outer", () -> {
+            ticker.advance(5, TimeUnit.MILLISECONDS);
+            report.time("inner", () -> ticker.advance(20, TimeUnit.MILLISECONDS));
+            return null;
+        });
+        assertEquals("startup must not be complete yet", -1, report.getTotalMillis());
+        report.complete();
+
+        final List<StartupReport.Phase> phases = report.getPhases();
+        assertEquals("wrong first phase", "outer", phases.get(0).getName());
+        assertEquals("wrong offset", 10, phases.get(0).getOffsetMillis());
+        assertEquals("wrong duration", 25, phases.get(0).getMillis());
+        assertEquals("wrong second phase", "inner", phases.get(1).getName());
+        assertEquals("wrong offset", 15, phases.get(1).getOffsetMillis());
+        assertEquals("wrong total", 35, report.getTotalMillis());
+    }
+
+    @Test
+    public void testFailedPhaseIsRecorded() throws Exception {
+        try {
+            report.time("failing", () -> {
+                ticker.advance(3, TimeUnit.MILLISECONDS);
+                throw new IllegalStateException("failed");
+            });
+            throw new AssertionError("failure was swallowed");
+        }
+        catch (final IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals("failed phase must be recorded", 3, report.getPhases().get(0).getMillis());
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private long advance(final long duration, final TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package de.zalando.scoop;
+
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.typesafe.config.ConfigFactory;
+import de.zalando.scoop.ScoopCommunication.StateChunk;
+import de.zalando.scoop.ScoopCommunication.StateChunkAck;
+import de.zalando.scoop.ScoopCommunication.StateRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateHandoffTest {
+
+    private ActorSystem system;
+    private BlockingQueue<Object> toNewOwner;
+    private BlockingQueue<Object> toFormerOwner;
+    private ActorRef newOwnerRef;
+    private ActorRef formerOwnerRef;
+    private StateListener formerListener;
+    private StateListener newListener;
+    private StateHandoff formerOwner;
+    private StateHandoff newOwner;
+
+    @Before
+    public void setup() throws Exception {
+        system = ActorSystem.create("handoff", ConfigFactory.parseString(
+                "akka.actor.provider = \"akka.actor.LocalActorRefProvider\""));
+        toNewOwner = new LinkedBlockingQueue<>();
+        toFormerOwner = new LinkedBlockingQueue<>();
+        newOwnerRef = system.actorOf(Props.create(Collector.class, toNewOwner), "new-owner");
+        formerOwnerRef = system.actorOf(Props.create(Collector.class, toFormerOwner), "former-owner");
+
+        formerListener = new StateListener();
+        newListener = new StateListener();
+        formerOwner = new StateHandoff(ImmutableList.of(formerListener));
+        newOwner = new StateHandoff(ImmutableList.of(newListener));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        system.terminate();
+    }
+
+    @Test
+    public void testStateIsTransferredInOrderWithinWindow() throws Exception {
+        final List<byte[]> state = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            state.add(new byte[]{(byte) i});
+        }
+        formerListener.state.put(3, state);
+
+        formerOwner.begin(7, partitions(3), new BitSet());
+        newOwner.begin(7, new BitSet(), partitions(3));
+        formerOwner.onRequest(new StateRequest(7, 3), newOwnerRef, formerOwnerRef);
+
+        Thread.sleep(100);
+        assertEquals("window of unacknowledged chunks was not respected", StateHandoff.WINDOW, toNewOwner.size());
+
+        transfer();
+
+        assertEquals("wrong number of restored chunks", 20, newListener.restored.size());
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals("chunks were restored out of order", state.get(i), newListener.restored.get(i));
+        }
+        assertEquals("handoff was not completed", Boolean.TRUE, newListener.completed.get(3));
+        assertTrue("partition is still pending", newOwner.getPending().isEmpty());
+    }
+
+    @Test
+    public void testPartitionNotRevokedIsAnsweredWithEmptyState() throws Exception {
+        formerListener.state.put(3, Lists.newArrayList(new byte[]{42}));
+        formerOwner.begin(7, new BitSet(), new BitSet());
+        newOwner.begin(7, new BitSet(), partitions(3));
+        formerOwner.onRequest(new StateRequest(7, 3), newOwnerRef, formerOwnerRef);
+
+        transfer();
+
+        assertTrue("state of partition which was not revoked was sent", newListener.restored.isEmpty());
+        assertEquals("handoff was not completed", Boolean.TRUE, newListener.completed.get(3));
+    }
+
+    @Test
+    public void testRequestsOfUnappliedEpochAreReplayed() throws Exception {
+        formerListener.state.put(3, Lists.newArrayList(new byte[]{42}));
+        formerOwner.begin(7, new BitSet(), new BitSet());
+        newOwner.begin(8, new BitSet(), partitions(3));
+
+        formerOwner.onRequest(new StateRequest(8, 3), newOwnerRef, formerOwnerRef);
+        assertNull("state was sent before epoch was applied", toNewOwner.poll(100, TimeUnit.MILLISECONDS));
+
+        formerOwner.begin(8, partitions(3), new BitSet());
+        transfer();
+
+        assertArrayEquals("state was not sent", new byte[]{42}, newListener.restored.get(0));
+        assertTrue("partition is still pending", newOwner.getPending().isEmpty());
+    }
+
+    @Test
+    public void testAbortActivatesPendingPartitions() throws Exception {
+        newOwner.begin(7, new BitSet(), partitions(1, 3));
+
+        final BitSet aborted = newOwner.abort();
+
+        assertEquals("wrong aborted partitions", partitions(1, 3), aborted);
+        assertEquals("handoff was not reported as incomplete", Boolean.FALSE, newListener.completed.get(3));
+        assertTrue("partitions are still pending", newOwner.getPending().isEmpty());
+    }
+
+    @Test
+    public void testChunksOfOtherEpochAreIgnored() throws Exception {
+        newOwner.begin(7, new BitSet(), partitions(3));
+
+        newOwner.onChunk(new StateChunk(6, 3, 0, 0, new byte[]{1}, true), formerOwnerRef, newOwnerRef);
+
+        assertTrue("chunk of former epoch was restored", newListener.restored.isEmpty());
+        assertNull("handoff was completed", newListener.completed.get(3));
+        assertEquals("partition is not pending anymore", partitions(3), newOwner.getPending());
+    }
+
+    /**
+     * Delivers chunks and acknowledgements between both members until the transfer is done.
+     */
+    private void transfer() throws Exception {
+        while (true) {
+            final Object chunk = toNewOwner.poll(500, TimeUnit.MILLISECONDS);
+            if (chunk == null) {
+                return;
+            }
+            newOwner.onChunk((StateChunk) chunk, formerOwnerRef, newOwnerRef);
+
+            final Object ack = toFormerOwner.poll(5, TimeUnit.SECONDS);
+            assertNotNull("chunk was not acknowledged", ack);
+            formerOwner.onAck((StateChunkAck) ack, formerOwnerRef);
+        }
+    }
+
+    private static BitSet partitions(final int... partitions) {
+        final BitSet bitSet = new BitSet();
+        for (final int partition : partitions) {
+            bitSet.set(partition);
+        }
+        return bitSet;
+    }
+
+    public static final class Collector extends UntypedActor {
+        private final BlockingQueue<Object> queue;
+
+        public Collector(final BlockingQueue<Object> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void onReceive(final Object message) throws Exception {
+            queue.add(message);
+        }
+    }
+
+    private static final class StateListener implements PartitionStateListener {
+        private final Map<Integer, List<byte[]>> state = Maps.newHashMap();
+        private final List<byte[]> restored = Lists.newArrayList();
+        private final Map<Integer, Boolean> completed = Maps.newHashMap();
+
+        @Override
+        public Iterator<byte[]> snapshotPartition(final int partition) {
+            return state.getOrDefault(partition, Lists.newArrayList()).iterator();
+        }
+
+        @Override
+        public void restorePartition(final int partition, final byte[] chunk) {
+            restored.add(chunk);
+        }
+
+        @Override
+        public void onHandoffCompleted(final int partition, final boolean complete) {
+            completed.put(partition, complete);
+        }
+
+        @Override
+        public void init(final Cluster cluster) {}
+
+        @Override
+        public void onRebalanced(final int partitionId, final int numberOfPartitions) {}
+
+        @Override
+        public void onMemberUp(final Member member) {}
+
+        @Override
+        public void onMemberRemoved(final Member member) {}
+
+        @Override
+        public void onMemberUnreachable(final Member member) {}
+    }
+}
@@ -0,0 +1,151 @@
+package de.zalando.scoop;
+
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import de.zalando.scoop.ScoopCommunication.LoadReport;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StickyAssignmentStrategyTest {
+
+    @Test
+    public void testPartitionPerMember() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy();
+        final AssignmentTable table = strategy.assign(AssignmentTable.EMPTY, Lists.newArrayList("a", "b", "c"));
+
+        assertEquals("wrong epoch", 1, table.getEpoch());
+        assertEquals("wrong number of partitions", 3, table.getNumberOfPartitions());
+        assertArrayEquals("wrong owners", new String[]{"a", "b", "c"}, table.getOwners());
+    }
+
+    @Test
+    public void testPartitionPerMemberKeepsIdsWhenMemberLeaves() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy();
+        final AssignmentTable table = new AssignmentTable(5, new String[]{"a", "b", "c", "d"});
+
+        final AssignmentTable rebalanced = strategy.assign(table, Lists.newArrayList("a", "c", "d"));
+        assertEquals("wrong epoch", 6, rebalanced.getEpoch());
+        assertArrayEquals("only the last member should take over the free partition id",
+                          new String[]{"a", "d", "c"}, rebalanced.getOwners());
+    }
+
+    @Test
+    public void testFixedPartitionsMovesOnlyShareOfNewMember() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy(12);
+        final AssignmentTable table = strategy.assign(AssignmentTable.EMPTY, Lists.newArrayList("a", "b", "c"));
+        final AssignmentTable rebalanced = strategy.assign(table, Lists.newArrayList("a", "b", "c", "d"));
+
+        int moved = 0;
+        for (int i = 0; i < 12; i++) {
+            if (!table.ownerOf(i).equals(rebalanced.ownerOf(i))) {
+                moved++;
+                assertEquals("partitions must only move to the new member", "d", rebalanced.ownerOf(i).get());
+            }
+        }
+        assertEquals("new member must get exactly its share", 3, moved);
+
+        for (final String member : Lists.newArrayList("a", "b", "c", "d")) {
+            assertEquals("partitions not spread evenly", 3, rebalanced.partitionsOf(member).cardinality());
+        }
+    }
+
+    @Test
+    public void testFixedPartitionsMovesOnlyPartitionsOfRemovedMember() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy(10);
+        final List<String> members = Lists.newArrayList("a", "b", "c");
+        final AssignmentTable table = strategy.assign(AssignmentTable.EMPTY, members);
+        final AssignmentTable rebalanced = strategy.assign(table, Lists.newArrayList("a", "c"));
+
+        for (int i = 0; i < 10; i++) {
+            if (!table.ownerOf(i).get().equals("b")) {
+                assertEquals("partition of remaining member moved", table.ownerOf(i), rebalanced.ownerOf(i));
+            }
+        }
+        assertEquals("partitions not spread evenly", 5, rebalanced.partitionsOf("a").cardinality());
+        assertEquals("partitions not spread evenly", 5, rebalanced.partitionsOf("c").cardinality());
+    }
+
+    @Test
+    public void testUnchangedMembersKeepTable() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy(7);
+        final AssignmentTable table = strategy.assign(AssignmentTable.EMPTY, Lists.newArrayList("a", "b"));
+
+        assertSame("table must not change without membership change",
+                   table, strategy.assign(table, Lists.newArrayList("b", "a")));
+    }
+
+    @Test
+    public void testNoMembers() throws Exception {
+        final AssignmentTable table = new StickyAssignmentStrategy().assign(AssignmentTable.EMPTY,
+                                                                            Collections.emptyList());
+        assertEquals("no partitions expected without members", 0, table.getNumberOfPartitions());
+    }
+
+    @Test
+    public void testRangedTableKeepsItsRanges() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy(12);
+        final AssignmentTable table = new AssignmentTable(3, new String[]{"a", "a", "a", null}, new String[]{"f", "m", "t"});
+
+        final AssignmentTable rebalanced = strategy.assign(table, Lists.newArrayList("a", "b"));
+        assertEquals("wrong number of ranges", 4, rebalanced.getNumberOfPartitions());
+        assertArrayEquals("ranges changed", table.getBoundaries(), rebalanced.getBoundaries());
+        assertArrayEquals("wrong owners", new String[]{"a", "a", "b", "b"}, rebalanced.getOwners());
+    }
+
+    @Test
+    public void testCapacityLimitsShare() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy(12);
+        final List<String> members = Lists.newArrayList("a", "b", "c");
+        final AssignmentTable table = strategy.assign(AssignmentTable.EMPTY, members);
+
+        final AssignmentTable shed = strategy.assign(table, members, ImmutableMap.of("a", 0.5));
+        assertEquals("lagging member must get half of its share", 2, shed.partitionsOf("a").cardinality());
+        assertEquals("only partitions of lagging member may move", 2, moved(table, shed));
+
+        final AssignmentTable restored = strategy.assign(shed, members, ImmutableMap.of());
+        assertEquals("recovered member must get its share back", 4, restored.partitionsOf("a").cardinality());
+        assertEquals("only partitions of recovered member may move", 2, moved(shed, restored));
+    }
+
+    @Test
+    public void testLaggingMemberGetsPartitionsBackAfterHoldPeriod() throws Exception {
+        final StickyAssignmentStrategy strategy = new StickyAssignmentStrategy(12);
+        final LoadShedder shedder = new LoadShedder(new LoadShedding(2, TimeUnit.SECONDS, 100));
+        final List<String> members = Lists.newArrayList("a", "b", "c");
+        final AssignmentTable table = strategy.assign(AssignmentTable.EMPTY, members);
+
+        shedder.update(new LoadReport("a", 0, 5000), 0);
+        assertTrue("lagging member was not shed", shedder.adjust(members, 0));
+        final AssignmentTable shed = strategy.assign(table, members, shedder.getCapacities());
+        assertEquals("lagging member must lose partitions", 2, shed.partitionsOf("a").cardinality());
+
+        shedder.update(new LoadReport("a", 0, 0), LoadShedder.HOLD_NANOS - 1);
+        assertFalse("capacity changed within hold period", shedder.adjust(members, LoadShedder.HOLD_NANOS - 1));
+        assertSame("partitions moved within hold period",
+                   shed, strategy.assign(shed, members, shedder.getCapacities()));
+
+        assertTrue("recovered member did not get capacity back", shedder.adjust(members, LoadShedder.HOLD_NANOS));
+        final AssignmentTable restored = strategy.assign(shed, members, shedder.getCapacities());
+        assertEquals("recovered member must get its share back", 4, restored.partitionsOf("a").cardinality());
+    }
+
+    private static int moved(final AssignmentTable from, final AssignmentTable to) {
+        int moved = 0;
+        for (int p = 0; p < from.getNumberOfPartitions(); p++) {
+            if (!from.ownerOf(p).equals(to.ownerOf(p))) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
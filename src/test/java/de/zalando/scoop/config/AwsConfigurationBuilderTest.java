@@ -0,0 +1,40 @@
+package de.zalando.scoop.config;
+
+
+import com.amazonaws.regions.Regions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class AwsConfigurationBuilderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMetaDataIsReadFromConfiguredUrls() throws Exception {
+        final File instanceId = folder.newFile("instance-id");
+        Files.write(instanceId.toPath(), "i-0123456789".getBytes(StandardCharsets.UTF_8));
+        final File zone = folder.newFile("availability-zone");
+        Files.write(zone.toPath(), "eu-central-1b".getBytes(StandardCharsets.UTF_8));
+
+        final AwsConfigurationBuilder builder = new AwsConfigurationBuilder(Regions.EU_CENTRAL_1,
+                                                                            25551,
+                                                                            instanceId.toURI().toString(),
+                                                                            zone.toURI().toString());
+
+        assertEquals("wrong instance id", "i-0123456789", builder.currentInstanceId());
+        assertEquals("wrong availability zone", "eu-central-1b", builder.currentAvailabilityZone());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testWithoutAvailabilityZoneUrl() throws Exception {
+        new AwsConfigurationBuilder(Regions.EU_CENTRAL_1, 25551, "http://localhost/instance-id", null);
+    }
+}
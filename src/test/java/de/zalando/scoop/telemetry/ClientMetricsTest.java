@@ -0,0 +1,92 @@
+package de.zalando.scoop.telemetry;
+
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClientMetricsTest {
+
+    private ManualTicker ticker;
+    private ClientMetrics metrics;
+
+    @Before
+    public void setup() throws Exception {
+        ticker = new ManualTicker();
+        metrics = new ClientMetrics(ticker);
+    }
+
+    @Test
+    public void testChecks() throws Exception {
+        metrics.recordCheck(true);
+        metrics.recordCheck(false);
+        metrics.recordCheck(false);
+        metrics.recordCheck(true);
+
+        assertEquals("wrong number of checks", 4, metrics.getChecks());
+        assertEquals("wrong number of handled checks", 2, metrics.getHandledChecks());
+        assertEquals("wrong ratio", 0.5, metrics.getHandledRatio(), 0.0001);
+    }
+
+    @Test
+    public void testReadyOnlyOnce() throws Exception {
+        metrics.ready();
+        assertEquals("must not be ready before start", -1, metrics.getReadyMillis());
+
+        metrics.started();
+        ticker.advance(1500, TimeUnit.MILLISECONDS);
+        metrics.ready();
+        ticker.advance(1, TimeUnit.SECONDS);
+        metrics.ready();
+
+        assertEquals("wrong readiness time", 1500, metrics.getReadyMillis());
+    }
+
+    @Test
+    public void testAssignmentChanges() throws Exception {
+        metrics.recordAssignmentChange(System.currentTimeMillis() - 200);
+        metrics.recordAssignmentChange(0);
+        metrics.recordListener(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals("every change must be counted", 2, metrics.getAssignmentChanges());
+        assertEquals("changes without decision time must not be timed", 1, metrics.getPropagationLatency().getCount());
+        assertEquals("wrong listener latency", 2000, metrics.getListenerLatency().getMaxMicros());
+    }
+
+    @Test
+    public void testJmxExport() throws Exception {
+        metrics.recordListener(TimeUnit.MICROSECONDS.toNanos(10));
+        JmxRegistration.register("ClientMetricsTest", metrics);
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(JmxRegistration.DOMAIN + ":type=ClientMetricsTest");
+            final CompositeData latency = (CompositeData) server.getAttribute(name, "ListenerLatency");
+            assertEquals("wrong exported count", 1L, latency.get("count"));
+            assertEquals("wrong exported max", 10L, latency.get("maxMicros"));
+        }
+        finally {
+            JmxRegistration.unregister("ClientMetricsTest");
+        }
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long duration, final TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
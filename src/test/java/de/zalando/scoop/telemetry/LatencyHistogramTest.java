@@ -0,0 +1,70 @@
+package de.zalando.scoop.telemetry;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setup() throws Exception {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals("wrong count", 1000, histogram.getCount());
+        assertEquals("wrong max", 1000, histogram.getMaxMicros());
+        assertWithinPrecision(500, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(990, histogram.getValueAtPercentile(99));
+        assertEquals("highest percentile must not exceed max", 1000, histogram.getValueAtPercentile(100));
+        assertEquals("small values must be exact", 1, histogram.getValueAtPercentile(0.1));
+    }
+
+    @Test
+    public void testBucketsCoverAllValues() throws Exception {
+        int previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue("buckets must be ordered", bucket == previous || bucket == previous + 1);
+            assertTrue("value must not exceed its bucket", value <= LatencyHistogram.highestEquivalentValue(bucket));
+            previous = bucket;
+        }
+        assertEquals("largest value must fit", LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals("wrong highest value", Long.MAX_VALUE,
+                     LatencyHistogram.highestEquivalentValue(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testUnitsAndNegativeDurations() throws Exception {
+        histogram.record(3, TimeUnit.MILLISECONDS);
+        histogram.record(-5, TimeUnit.MILLISECONDS);
+
+        final LatencySummary summary = histogram.summary();
+        assertEquals("wrong count", 2, summary.getCount());
+        assertEquals("negative duration must be recorded as zero", 0, summary.getP50Micros());
+        assertWithinPrecision(3000, summary.getP99Micros());
+        assertEquals("wrong max", 3000, summary.getMaxMicros());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertEquals("empty histogram must report zero", 0, histogram.getValueAtPercentile(99));
+    }
+
+    private static void assertWithinPrecision(final long expected, final long actual) {
+        assertTrue("wrong value [expected=" + expected + ", actual=" + actual + "]",
+                   actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
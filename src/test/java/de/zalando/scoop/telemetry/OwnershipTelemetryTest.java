@@ -0,0 +1,84 @@
+package de.zalando.scoop.telemetry;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OwnershipTelemetryTest {
+
+    private OwnershipTelemetry telemetry;
+
+    @Before
+    public void setup() throws Exception {
+        telemetry = new OwnershipTelemetry(1, 2);
+        telemetry.onRebalanced(2);
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        telemetry.record("a", 0, true);
+        telemetry.record("a", 0, true);
+        telemetry.record("b", 1, false);
+
+        final TelemetrySnapshot snapshot = telemetry.snapshot();
+        assertEquals("wrong number of sampled checks", 3, snapshot.getSampledChecks());
+        assertEquals("wrong number of accepted checks", 2, snapshot.getSampledAccepted());
+        assertArrayEquals("wrong partition hits", new long[]{2, 1}, snapshot.getPartitionHits());
+        assertEquals("wrong hottest key", "a", snapshot.getHotKeys().get(0).getKey());
+        assertEquals("wrong skew", 4.0 / 3.0, snapshot.getPartitionSkew(), 0.0001);
+    }
+
+    @Test
+    public void testRebalanceWithNewPartitionCountResetsCounters() throws Exception {
+        telemetry.record("a", 0, true);
+        telemetry.onRebalanced(3);
+
+        final TelemetrySnapshot snapshot = telemetry.snapshot();
+        assertEquals("sampled checks were not reset", 0, snapshot.getSampledChecks());
+        assertEquals("partition hits were not resized", 3, snapshot.getPartitionHits().length);
+        assertTrue("hot keys were not reset", snapshot.getHotKeys().isEmpty());
+    }
+
+    @Test
+    public void testSpaceSavingKeepsHeavyHitters() throws Exception {
+        final SpaceSaving sketch = new SpaceSaving(2);
+        for (int i = 0; i < 100; i++) {
+            sketch.offer("heavy");
+            sketch.offer("noise-" + i);
+            sketch.offer("heavy");
+        }
+
+        final List<HotKey> top = sketch.top();
+        assertEquals("sketch must not grow beyond its capacity", 2, top.size());
+        assertEquals("heavy hitter got evicted", "heavy", top.get(0).getKey());
+        assertEquals("heavy hitter count must be exact as it was never evicted", 200, top.get(0).getCount());
+        assertEquals("heavy hitter must not carry an error as it was never evicted", 0, top.get(0).getError());
+        assertTrue("heavy hitter must dominate the noise", top.get(1).getCount() < top.get(0).getCount());
+    }
+
+    @Test
+    public void testClusterTelemetryMergesMembers() throws Exception {
+        final ClusterTelemetry clusterTelemetry = new ClusterTelemetry(2);
+        telemetry.record("a", 0, true);
+        clusterTelemetry.update("member-1", telemetry.snapshot());
+
+        final OwnershipTelemetry other = new OwnershipTelemetry(1, 2);
+        other.onRebalanced(2);
+        other.record("a", 0, false);
+        other.record("b", 1, true);
+        clusterTelemetry.update("member-2", other.snapshot());
+
+        assertArrayEquals("wrong merged partition hits", new long[]{2, 1}, clusterTelemetry.getPartitionHits());
+        assertEquals("wrong merged hot key", "a", clusterTelemetry.mergedHotKeys().get(0).getKey());
+        assertEquals("wrong merged hot key count", 2, clusterTelemetry.mergedHotKeys().get(0).getCount());
+
+        clusterTelemetry.remove("member-2");
+        assertArrayEquals("removed member still counted", new long[]{1, 0}, clusterTelemetry.getPartitionHits());
+    }
+}